@@ -0,0 +1,224 @@
+package com.example.emr_server.repository;
+
+import com.example.emr_server.controller.dto.MedicalFileDto;
+import com.example.emr_server.controller.dto.VisitDto;
+import com.example.emr_server.entity.MedicalFile;
+import com.example.emr_server.entity.Patient;
+import com.example.emr_server.entity.User;
+import com.example.emr_server.entity.Visit;
+import com.example.emr_server.repository.projection.MedicalFileListRow;
+import com.example.emr_server.repository.spec.VisitSpecifications;
+import com.example.emr_server.security.AuthorizationService;
+import com.example.emr_server.security.encryption.EncryptionService;
+import com.example.emr_server.security.encryption.TestEncryptionKeys;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.AvailableSettings;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.support.SimpleJpaRepository;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Listy tylko do odczytu: dotychczasowa ścieżka przez encje (findAll(spec, pageable) / findByPatient_Id +
+ * canReadPatient na encji Patient) kontra projekcje DTO (VisitRepositoryCustomImpl, findListRowsByPatientId).
+ * Hibernate na H2 w pamięci, strona 50 wierszy, osobna sesja na operację – jak żądanie HTTP.
+ * Alokacje na wiersz = gc.alloc.rate.norm / 50 (profiler gc).
+ * Uruchomienie: mvn -Pbenchmark test-compile exec:exec -Djmh.args="ListProjectionBenchmark -prof gc"
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ListProjectionBenchmark {
+
+    private static final int ROWS = 50;
+    private static final Pageable PAGE = PageRequest.of(0, ROWS, Sort.by(Sort.Direction.DESC, "visitDate", "id"));
+
+    private SessionFactory sessionFactory;
+    private AuthorizationService authorizationService;
+    private String fileRowsQuery;
+    private User doctor;
+    private UUID patientId;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        EncryptionService encryption = TestEncryptionKeys.encryptionService();
+
+        StandardServiceRegistry registry = new StandardServiceRegistryBuilder()
+                .applySetting(AvailableSettings.JAKARTA_JDBC_URL, "jdbc:h2:mem:listbench;MODE=PostgreSQL;DB_CLOSE_DELAY=-1;"
+                        + "INIT=CREATE SCHEMA IF NOT EXISTS emr")
+                .applySetting(AvailableSettings.JAKARTA_JDBC_USER, "sa")
+                .applySetting(AvailableSettings.DEFAULT_SCHEMA, "emr")
+                .applySetting(AvailableSettings.DEFAULT_BATCH_FETCH_SIZE, 64)
+                .build();
+        sessionFactory = new MetadataSources(registry)
+                .addAnnotatedClasses(User.class, Patient.class, Visit.class, MedicalFile.class)
+                .buildMetadata()
+                .buildSessionFactory();
+        // twórca pacjenta: decyzja CREATOR zapada bez sprawdzania zgód (ConsentCache niepotrzebny)
+        authorizationService = new AuthorizationService(null, new SimpleMeterRegistry());
+        fileRowsQuery = MedicalFileRepository.class.getMethod("findListRowsByPatientId", UUID.class)
+                .getAnnotation(Query.class).value();
+
+        sessionFactory.inTransaction(s -> {
+            s.doWork(c -> {
+                try (var st = c.createStatement()) {
+                    st.execute("CREATE TABLE emr.users (id UUID PRIMARY KEY, username VARCHAR(50) NOT NULL, "
+                            + "email VARCHAR(100) NOT NULL, password_hash TEXT NOT NULL, role VARCHAR(20) NOT NULL, "
+                            + "created_at TIMESTAMP WITH TIME ZONE, last_password_change TIMESTAMP WITH TIME ZONE, "
+                            + "is_account_locked BOOLEAN, failed_login_attempts INT, mfa_secret VARCHAR(256), "
+                            + "last_login_at TIMESTAMP WITH TIME ZONE, last_login_ip VARCHAR(64), password_algo VARCHAR(30), "
+                            + "mfa_enabled BOOLEAN)");
+                    st.execute("CREATE TABLE emr.patients (id UUID DEFAULT random_uuid() PRIMARY KEY, "
+                            + "first_name VARCHAR(300) NOT NULL, last_name VARCHAR(300) NOT NULL, date_of_birth DATE NOT NULL, "
+                            + "gender VARCHAR(10), pesel VARCHAR(200) NOT NULL, contact_info JSON, address TEXT, "
+                            + "created_by UUID, created_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP)");
+                    st.execute("CREATE TABLE emr.visits (id UUID PRIMARY KEY, patient_id UUID NOT NULL, doctor_id UUID NOT NULL, "
+                            + "visit_date TIMESTAMP WITH TIME ZONE NOT NULL, end_date TIMESTAMP WITH TIME ZONE, visit_type VARCHAR(50), "
+                            + "reason TEXT, diagnosis TEXT, notes TEXT, is_confidential BOOLEAN, status VARCHAR(20))");
+                    st.execute("CREATE TABLE emr.medical_files (id UUID PRIMARY KEY, patient_id UUID NOT NULL, uploaded_by UUID, "
+                            + "file_name TEXT, file_path TEXT, mime_type TEXT, uploaded_at TIMESTAMP WITH TIME ZONE NOT NULL)");
+                }
+            });
+            doctor = new User();
+            doctor.setId(UUID.randomUUID());
+            doctor.setUsername("lekarz");
+            doctor.setEmail("lekarz@emr.local");
+            doctor.setPasswordHash("x");
+            doctor.setRole("doctor");
+            s.persist(doctor);
+            Patient patient = new Patient();
+            patient.setFirstName("Zofia");
+            patient.setLastName("Wiśniewska");
+            patient.setPesel("75010112345");
+            patient.setDateOfBirth(LocalDate.of(1975, 1, 1));
+            patient.setAddress("ul. Długa 5/3, 00-238 Warszawa");
+            patient.setCreatedBy(doctor);
+            s.persist(patient);
+            patientId = patient.getId();
+            // więcej wierszy niż strona – obie ścieżki wykonują też COUNT
+            for (int i = 0; i < ROWS + 10; i++) {
+                Visit v = new Visit();
+                v.setId(UUID.randomUUID());
+                v.setPatient(patient);
+                v.setDoctor(doctor);
+                v.setVisitDate(Instant.parse("2025-01-01T08:00:00Z").plusSeconds(i * 3600L));
+                v.setVisitType("kontrolna");
+                v.setReason("Kontrola ciśnienia");
+                v.setDiagnosis("I10 Nadciśnienie tętnicze samoistne");
+                v.setNotes("Pacjentka zgłasza bóle głowy rano; zalecono pomiary domowe 2x dziennie. Wizyta " + i);
+                v.setStatus(Visit.Status.COMPLETED);
+                s.persist(v);
+            }
+            for (int i = 0; i < ROWS; i++) {
+                MedicalFile f = new MedicalFile();
+                f.setId(UUID.randomUUID());
+                f.setPatient(patient);
+                f.setUploadedBy(doctor);
+                f.setFileName("wynik-" + i + ".pdf");
+                f.setFilePath("/files/" + i);
+                f.setMimeType("application/pdf");
+                s.persist(f);
+            }
+        });
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        sessionFactory.close();
+    }
+
+    @Benchmark
+    public List<VisitDto> visitsEntities() {
+        try (Session s = sessionFactory.openSession()) {
+            // dotychczasowe VisitServiceImpl.searchVisible: findAll(spec, pageable).map(this::toDto)
+            return new SimpleJpaRepository<Visit, UUID>(Visit.class, s).findAll(visitSpec(), PAGE).map(v -> new VisitDto(
+                    v.getId(),
+                    v.getPatient() != null ? v.getPatient().getId() : null,
+                    v.getDoctor() != null ? v.getDoctor().getId() : null,
+                    v.getVisitDate(),
+                    v.getEndDate(),
+                    v.getVisitType(),
+                    v.getReason(),
+                    v.getDiagnosis(),
+                    v.getNotes(),
+                    v.getConfidential(),
+                    v.getStatus() != null ? v.getStatus().name() : null
+            )).getContent();
+        }
+    }
+
+    @Benchmark
+    public List<VisitDto> visitsProjection() {
+        try (Session s = sessionFactory.openSession()) {
+            VisitRepositoryCustomImpl repository = new VisitRepositoryCustomImpl();
+            ReflectionTestUtils.setField(repository, "em", s);
+            return repository.findDtos(visitSpec(), PAGE).getContent();
+        }
+    }
+
+    @Benchmark
+    public List<MedicalFileDto> filesEntities() {
+        try (Session s = sessionFactory.openSession()) {
+            // dotychczasowe MedicalFileServiceImpl.getVisibleByPatient: encje + canReadPatient na encji Patient
+            return s.createSelectionQuery("select f from MedicalFile f where f.patient.id = :patientId", MedicalFile.class)
+                    .setParameter("patientId", patientId)
+                    .getResultList().stream()
+                    .filter(f -> authorizationService.canReadPatient(doctor, f.getPatient()))
+                    .map(f -> new MedicalFileDto(
+                            f.getId(),
+                            f.getPatient() != null ? f.getPatient().getId() : null,
+                            f.getUploadedBy() != null ? f.getUploadedBy().getId() : null,
+                            f.getFileName(),
+                            f.getMimeType(),
+                            f.getUploadedAt()))
+                    .toList();
+        }
+    }
+
+    @Benchmark
+    public List<MedicalFileDto> filesProjection() {
+        try (Session s = sessionFactory.openSession()) {
+            return s.createSelectionQuery(fileRowsQuery, MedicalFileListRow.class)
+                    .setParameter("patientId", patientId)
+                    .getResultList().stream()
+                    .filter(r -> authorizationService.canReadPatient(doctor, r.patientId(), r.patientCreatedById()))
+                    .map(MedicalFileListRow::toDto)
+                    .toList();
+        }
+    }
+
+    private Specification<Visit> visitSpec() {
+        return VisitSpecifications.withFilters(Optional.of(patientId), Optional.empty(), Optional.empty(), Optional.empty(),
+                Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty());
+    }
+}
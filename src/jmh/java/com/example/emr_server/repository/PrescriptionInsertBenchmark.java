@@ -0,0 +1,145 @@
+package com.example.emr_server.repository;
+
+import com.example.emr_server.entity.Medication;
+import com.example.emr_server.entity.Patient;
+import com.example.emr_server.entity.Prescription;
+import com.example.emr_server.entity.PrescriptionMedication;
+import com.example.emr_server.entity.User;
+import com.example.emr_server.security.encryption.EncryptionService;
+import com.example.emr_server.security.encryption.TestEncryptionKeys;
+import org.hibernate.SessionFactory;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.AvailableSettings;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDate;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Zapis recept z pozycjami (20 recept × 3 pozycje na transakcję) przez Hibernate na H2 w pamięci.
+ * batchSize=1 odpowiada dotychczasowej konfiguracji (bez hibernate.jdbc.batch_size / order_inserts),
+ * 50 – nowej. ids=v4 nadaje losowe UUID ręcznie (zachowywane przez generator), v7 – generator @UuidV7.
+ * Wpływ lokalności indeksu jest na H2 w pamięci niewielki; na PostgreSQL dochodzi mniej zapisów stron B-tree/WAL.
+ * Uruchomienie: mvn -Pbenchmark test-compile exec:exec -Djmh.args="PrescriptionInsertBenchmark"
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class PrescriptionInsertBenchmark {
+
+    private static final int PRESCRIPTIONS = 20;
+    private static final int ITEMS = 3;
+
+    @Param({"1", "50"})
+    public int batchSize;
+
+    @Param({"v4", "v7"})
+    public String ids;
+
+    private SessionFactory sessionFactory;
+    private User doctor;
+    private Patient patient;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        EncryptionService encryption = TestEncryptionKeys.encryptionService();
+
+        StandardServiceRegistry registry = new StandardServiceRegistryBuilder()
+                .applySetting(AvailableSettings.JAKARTA_JDBC_URL, "jdbc:h2:mem:insertbench" + batchSize + ids
+                        + ";MODE=PostgreSQL;DB_CLOSE_DELAY=-1;INIT=CREATE SCHEMA IF NOT EXISTS emr")
+                .applySetting(AvailableSettings.JAKARTA_JDBC_USER, "sa")
+                .applySetting(AvailableSettings.DEFAULT_SCHEMA, "emr")
+                .applySetting(AvailableSettings.STATEMENT_BATCH_SIZE, batchSize)
+                .applySetting(AvailableSettings.ORDER_INSERTS, batchSize > 1)
+                .build();
+        sessionFactory = new MetadataSources(registry)
+                .addAnnotatedClasses(User.class, Patient.class, Medication.class, Prescription.class, PrescriptionMedication.class)
+                .buildMetadata()
+                .buildSessionFactory();
+
+        sessionFactory.inTransaction(s -> {
+            s.doWork(c -> {
+                try (var st = c.createStatement()) {
+                    st.execute("CREATE TABLE emr.users (id UUID PRIMARY KEY, username VARCHAR(50) NOT NULL, "
+                            + "email VARCHAR(100) NOT NULL, password_hash TEXT NOT NULL, role VARCHAR(20) NOT NULL, "
+                            + "created_at TIMESTAMP WITH TIME ZONE, last_password_change TIMESTAMP WITH TIME ZONE, "
+                            + "is_account_locked BOOLEAN, failed_login_attempts INT, mfa_secret VARCHAR(256), "
+                            + "last_login_at TIMESTAMP WITH TIME ZONE, last_login_ip VARCHAR(64), password_algo VARCHAR(30), "
+                            + "mfa_enabled BOOLEAN)");
+                    st.execute("CREATE TABLE emr.patients (id UUID PRIMARY KEY, "
+                            + "first_name VARCHAR(300) NOT NULL, last_name VARCHAR(300) NOT NULL, date_of_birth DATE NOT NULL, "
+                            + "gender VARCHAR(10), pesel VARCHAR(200) NOT NULL, contact_info JSON, address TEXT, "
+                            + "created_by UUID, created_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP)");
+                    st.execute("CREATE TABLE emr.prescriptions (id UUID PRIMARY KEY, patient_id UUID NOT NULL, doctor_id UUID NOT NULL, "
+                            + "dosage_info TEXT, issued_date DATE, expiration_date DATE, is_repeatable BOOLEAN)");
+                    st.execute("CREATE INDEX ON emr.prescriptions (patient_id)");
+                    st.execute("CREATE TABLE emr.prescription_medications (id UUID PRIMARY KEY, prescription_id UUID NOT NULL, "
+                            + "medication_id UUID, dosage_info VARCHAR(10000), quantity INT, unit VARCHAR(50))");
+                    st.execute("CREATE INDEX ON emr.prescription_medications (prescription_id)");
+                }
+            });
+            doctor = new User();
+            doctor.setUsername("lekarz");
+            doctor.setEmail("lekarz@emr.local");
+            doctor.setPasswordHash("x");
+            doctor.setRole("doctor");
+            s.persist(doctor);
+            patient = new Patient();
+            patient.setFirstName("Jan");
+            patient.setLastName("Kowalski");
+            patient.setPesel("90010112345");
+            patient.setDateOfBirth(LocalDate.of(1990, 1, 1));
+            patient.setCreatedBy(doctor);
+            s.persist(patient);
+        });
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        sessionFactory.close();
+    }
+
+    @Benchmark
+    public void insertPrescriptions() {
+        boolean randomIds = "v4".equals(ids);
+        sessionFactory.inTransaction(s -> {
+            Patient p = s.getReference(Patient.class, patient.getId());
+            User d = s.getReference(User.class, doctor.getId());
+            for (int i = 0; i < PRESCRIPTIONS; i++) {
+                Prescription rx = new Prescription();
+                if (randomIds) rx.setId(UUID.randomUUID());
+                rx.setPatient(p);
+                rx.setDoctor(d);
+                rx.setDosageInfo("Stosować zgodnie z zaleceniem lekarza");
+                rx.setIssuedDate(LocalDate.now());
+                for (int j = 0; j < ITEMS; j++) {
+                    PrescriptionMedication item = new PrescriptionMedication();
+                    if (randomIds) item.setId(UUID.randomUUID());
+                    item.setDosageInfo("1 tabletka rano, po posiłku");
+                    item.setQuantity(1);
+                    item.setUnit("op.");
+                    rx.addItem(item);
+                }
+                s.persist(rx);
+            }
+        });
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.emr_server.security;
+
+import com.example.emr_server.controller.dto.request.PrescriptionCreateRequest;
+import com.example.emr_server.controller.dto.request.PrescriptionItemRequest;
+import com.example.emr_server.security.monitoring.SecurityMonitoringProperties;
+import com.example.emr_server.security.monitoring.SuspiciousActivityDetector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.data.domain.PageRequest;
+
+import java.lang.reflect.Field;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Narzut walidacji wejścia na jedno wywołanie kontrolera: "legacy" to dotychczasowa ścieżka (getDeclaredFields +
+ * setAccessible + dwa regexy na każdy String), "plans" to InputValidationAspect z planami per klasa i automatem
+ * Aho–Corasick. Dwa typowe zestawy argumentów: lista z filtrami (Optional, Pageable) i tworzenie recepty z pozycjami.
+ * Uruchomienie: mvn -Pbenchmark test-compile exec:exec -Djmh.args="InputValidationBenchmark"
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class InputValidationBenchmark {
+
+    private static final Pattern SQL_INJECTION_PATTERN = Pattern.compile(
+            "('|--|;|\\||\\*|%|SELECT|INSERT|UPDATE|DELETE|DROP|CREATE|ALTER|EXEC|UNION|SCRIPT)",
+            Pattern.CASE_INSENSITIVE);
+    private static final Pattern XSS_PATTERN = Pattern.compile(
+            "(<script|</script|javascript:|vbscript:|onload=|onerror=|onclick=|onmouseover=)",
+            Pattern.CASE_INSENSITIVE);
+
+    private InputValidationAspect aspect;
+    private Object[] listArgs;
+    private Object[] createArgs;
+
+    @Setup
+    public void setUp() {
+        aspect = new InputValidationAspect(new InputValidationService(),
+                new SecurityMonitoringService(new SuspiciousActivityDetector(new SecurityMonitoringProperties()), Runnable::run));
+        listArgs = new Object[]{
+                Optional.of(UUID.randomUUID()), Optional.of("kontrolna"), Optional.empty(), Optional.of("Nadciśnienie tętnicze"),
+                Optional.of(LocalDate.now()), Optional.empty(), 50, PageRequest.of(0, 50)
+        };
+        List<PrescriptionItemRequest> items = List.of(
+                new PrescriptionItemRequest(UUID.randomUUID(), "1 tabletka rano, po posiłku, przez 14 dni", 2, "op."),
+                new PrescriptionItemRequest(UUID.randomUUID(), "2 razy dziennie po 5 ml", 1, "butelka"),
+                new PrescriptionItemRequest(UUID.randomUUID(), "Doraźnie przy bólu, maks. 3 dawki na dobę", 1, "op."));
+        createArgs = new Object[]{
+                new PrescriptionCreateRequest(UUID.randomUUID(), "Leczenie przewlekłe – kontynuacja terapii z poprzedniej wizyty",
+                        LocalDate.now(), LocalDate.now().plusDays(30), false, items)
+        };
+    }
+
+    @Benchmark
+    public void legacyList(Blackhole bh) {
+        legacy(listArgs, bh);
+    }
+
+    @Benchmark
+    public void legacyCreate(Blackhole bh) {
+        legacy(createArgs, bh);
+    }
+
+    @Benchmark
+    public void plansList() {
+        aspect.validateArguments(listArgs, null); // bezpieczne wejście – join point potrzebny tylko przy odrzuceniu
+    }
+
+    @Benchmark
+    public void plansCreate() {
+        aspect.validateArguments(createArgs, null);
+    }
+
+    // dotychczasowe InputValidationAspect.validateStringFields + InputValidationService.isSafeInput
+    private static void legacy(Object[] args, Blackhole bh) {
+        for (Object arg : args) {
+            if (arg == null) continue;
+            if (arg instanceof String s) {
+                bh.consume(legacySafe(s));
+                continue;
+            }
+            try {
+                for (Field field : arg.getClass().getDeclaredFields()) {
+                    if (field.getType() == String.class) {
+                        field.setAccessible(true);
+                        String value = (String) field.get(arg);
+                        if (value != null) bh.consume(legacySafe(value));
+                    }
+                }
+            } catch (IllegalAccessException | RuntimeException e) {
+                bh.consume(e);
+            }
+        }
+    }
+
+    private static boolean legacySafe(String input) {
+        if (input.trim().isEmpty()) return true;
+        return !SQL_INJECTION_PATTERN.matcher(input).find() && !XSS_PATTERN.matcher(input).find();
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.emr_server.security.encryption;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Przepustowość szyfrowania/deszyfrowania pól dla typowych rozmiarów:
+ * 11 (PESEL), 32 (imię/nazwisko), 256 (adres), 4096 (notatki wizyty).
+ * Uruchomienie: mvn -Pbenchmark test-compile exec:exec -Djmh.args="EncryptionServiceBenchmark"
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+@State(Scope.Thread)
+public class EncryptionServiceBenchmark {
+
+    @Param({"11", "32", "256", "4096"})
+    public int size;
+
+    private EncryptionService service;
+    // kilka różnych wartości – kolejne wywołania nie trafiają w cache ostatniego wyniku deterministycznego
+    private static final int VALUES = 64;
+    private final String[] plaintexts = new String[VALUES];
+    private final String[] deterministic = new String[VALUES];
+    private final String[] random = new String[VALUES];
+    private int i;
+
+    @Setup
+    public void setUp() {
+        service = TestEncryptionKeys.encryptionService();
+        String alphabet = "abcdefghijklmnopqrstuvwxyząćęłńóśźż0123456789 ";
+        for (int v = 0; v < VALUES; v++) {
+            StringBuilder sb = new StringBuilder(size);
+            for (int c = 0; c < size; c++) sb.append(alphabet.charAt((c + v) % alphabet.length()));
+            plaintexts[v] = sb.toString();
+            deterministic[v] = service.encryptDeterministic("bench.det", plaintexts[v]);
+            random[v] = service.encryptRandom("bench.rnd", plaintexts[v]);
+        }
+    }
+
+    private int next() {
+        i = (i + 1) & (VALUES - 1);
+        return i;
+    }
+
+    @Benchmark
+    public String encryptDeterministic() {
+        return service.encryptDeterministic("bench.det", plaintexts[next()]);
+    }
+
+    @Benchmark
+    public String decryptDeterministic() {
+        return service.decryptDeterministic("bench.det", deterministic[next()]);
+    }
+
+    @Benchmark
+    public String encryptRandom() {
+        return service.encryptRandom("bench.rnd", plaintexts[next()]);
+    }
+
+    @Benchmark
+    public String decryptRandom() {
+        return service.decryptRandom("bench.rnd", random[next()]);
+    }
+}
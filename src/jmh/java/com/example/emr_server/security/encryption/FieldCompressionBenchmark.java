@@ -0,0 +1,113 @@
+package com.example.emr_server.security.encryption;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Szyfrowanie długich pól tekstowych (notatki wizyt 1–8 KB) z kompresją i bez. compressMinBytes=512 to
+ * ustawienie domyślne, Integer.MAX_VALUE wyłącza kompresję (rozmiar jak w formacie v1r + 1 bajt).
+ * Korpus jest syntetyczny, ale złożony z fraz typowych dla dokumentacji (powtarzalne sformułowania, liczby, daty).
+ * Po przebiegu wypisywany jest łączny rozmiar zapisanych wartości oraz liczba wartości powyżej ~2 KB,
+ * które PostgreSQL przenosi do TOAST (dodatkowy odczyt stron przy każdym pobraniu wiersza).
+ * Uruchomienie: mvn -Pbenchmark test-compile exec:exec -Djmh.args="FieldCompressionBenchmark"
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class FieldCompressionBenchmark {
+
+    private static final int VALUES = 256;
+    private static final int TOAST_THRESHOLD = 2032;
+    private static final String[] PHRASES = {
+            "Pacjent zgłasza się z powodu bólu w okolicy lędźwiowej od %d dni. ",
+            "Ból o charakterze tępym, nasilający się przy zmianie pozycji, bez promieniowania do kończyn dolnych. ",
+            "W wywiadzie nadciśnienie tętnicze leczone od %d lat, cukrzyca typu 2 na diecie. ",
+            "Neguje gorączkę, duszność, kołatania serca. Alergie: penicylina (wysypka). ",
+            "Badanie przedmiotowe: stan ogólny dobry, pacjent przytomny, zorientowany auto- i allopsychicznie. ",
+            "RR %d/%d mmHg, tętno %d/min, miarowe. SpO2 %d%%. ",
+            "Osłuchowo nad polami płucnymi szmer pęcherzykowy prawidłowy, bez zmian dodatkowych. ",
+            "Brzuch miękki, niebolesny palpacyjnie, objawy otrzewnowe ujemne, objaw Goldflama obustronnie ujemny. ",
+            "Zlecono morfologię, CRP, kreatyninę, badanie ogólne moczu oraz USG jamy brzusznej. ",
+            "Wynik z dnia %d.%02d.2024: HbA1c %d,%d%%, glukoza na czczo %d mg/dl. ",
+            "Zalecenia: ibuprofen 400 mg do 3 razy dziennie po posiłku, ograniczenie wysiłku fizycznego. ",
+            "Kontynuacja dotychczasowego leczenia: ramipryl 5 mg 1x1 rano, metformina 1000 mg 2x1. ",
+            "Kontrola w poradni za %d tygodnie lub wcześniej w razie nasilenia dolegliwości. ",
+            "Pacjent poinformowany o objawach alarmowych wymagających pilnego kontaktu z lekarzem. ",
+            "Skierowanie do poradni neurologicznej w celu dalszej diagnostyki. ",
+    };
+
+    @Param({"512", "2147483647"})
+    public int compressMinBytes;
+
+    private EncryptionService service;
+    private final String[] notes = new String[VALUES];
+    private final String[] stored = new String[VALUES];
+    private int i;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        service = new EncryptionService();
+        ReflectionTestUtils.setField(service, "compressMinBytes", compressMinBytes);
+        TestEncryptionKeys.init(service);
+        Random random = new Random(42);
+        for (int v = 0; v < VALUES; v++) {
+            int target = 1024 + random.nextInt(7 * 1024);
+            StringBuilder sb = new StringBuilder(target + 200);
+            while (sb.toString().getBytes(StandardCharsets.UTF_8).length < target) {
+                String phrase = PHRASES[random.nextInt(PHRASES.length)];
+                sb.append(String.format(phrase, 1 + random.nextInt(150), random.nextInt(100), random.nextInt(100),
+                        40 + random.nextInt(160), random.nextInt(300)));
+            }
+            notes[v] = sb.toString();
+            stored[v] = service.encryptRandom("visit.notes", notes[v]);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void report() {
+        long plain = 0;
+        long encrypted = 0;
+        int toasted = 0;
+        for (int v = 0; v < VALUES; v++) {
+            plain += notes[v].getBytes(StandardCharsets.UTF_8).length;
+            encrypted += stored[v].length();
+            if (stored[v].length() > TOAST_THRESHOLD) toasted++;
+        }
+        System.out.printf("%ncompressMinBytes=%d: tekst %d B, zapis %d B (%.2f×), wartości > %d B: %d/%d%n",
+                compressMinBytes, plain, encrypted, (double) encrypted / plain, TOAST_THRESHOLD, toasted, VALUES);
+    }
+
+    private int next() {
+        i = (i + 1) & (VALUES - 1);
+        return i;
+    }
+
+    @Benchmark
+    public String encryptNote() {
+        return service.encryptRandom("visit.notes", notes[next()]);
+    }
+
+    @Benchmark
+    public String decryptNote() {
+        return service.decryptRandom("visit.notes", stored[next()]);
+    }
+}
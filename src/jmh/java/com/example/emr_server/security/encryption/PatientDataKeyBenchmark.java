@@ -0,0 +1,88 @@
+package com.example.emr_server.security.encryption;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Koszt szyfrowania + odczytu pola RANDOM (256 B) kluczem pola (dotychczas, podklucz HMAC cache'owany per pole)
+ * i kluczem danych pacjenta: hot – 64 pacjentów mieszczących się w cache DEK, cold – 1024 pacjentów przy cache
+ * na 16 kluczy, więc prawie każda operacja to SELECT zawiniętego klucza (H2 w pamięci – bez opóźnienia sieci)
+ * i rozpakowanie AES-GCM.
+ * Uruchomienie: mvn -Pbenchmark test-compile exec:exec -Djmh.args="PatientDataKeyBenchmark"
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class PatientDataKeyBenchmark {
+
+    @Param({"field", "patient-hot", "patient-cold"})
+    public String keys;
+
+    private EmbeddedDatabase db;
+    private EncryptionService service;
+    private UUID[] patients;
+    private String plaintext;
+    private int i;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        service = TestEncryptionKeys.encryptionService();
+        db = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).generateUniqueName(true).build();
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(db);
+        jdbcTemplate.execute("CREATE SCHEMA emr");
+        jdbcTemplate.execute("CREATE TABLE emr.patient_data_keys (patient_id UUID PRIMARY KEY, key_id VARCHAR(50), "
+                + "wrapped_key VARCHAR(200), created_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP, "
+                + "destroyed_at TIMESTAMP WITH TIME ZONE)");
+        boolean cold = "patient-cold".equals(keys);
+        PatientDataKeyService dataKeys = new PatientDataKeyService(jdbcTemplate, service, new SimpleMeterRegistry(),
+                cold ? 16 : 10_000, Duration.ofHours(1));
+        if (!"field".equals(keys)) dataKeys.register();
+        patients = new UUID[cold ? 1024 : 64];
+        for (int p = 0; p < patients.length; p++) {
+            patients[p] = UUID.randomUUID();
+            dataKeys.keyForWrite(patients[p]);
+        }
+        plaintext = "Pacjent w stanie ogólnym dobrym, bez duszności. ".repeat(6).substring(0, 256);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        PatientKeyScope.clear();
+        db.shutdown();
+    }
+
+    @Benchmark
+    public String encryptAndDecrypt() {
+        UUID patientId = patients[i++ % patients.length];
+        PatientKeyScope.enter((PatientScoped) () -> patientId);
+        try {
+            String stored = service.encryptRandom("visit.notes", plaintext);
+            return service.decryptRandom("visit.notes", stored);
+        } finally {
+            PatientKeyScope.clear();
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.emr_server.security.encryption;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wyszukiwanie pacjentów po prefiksie nazwiska: tokenLookup – tokeny prefiksu (wszystkie klucze pierścienia)
+ * i jedno wyszukanie w PK emr.patient_name_tokens; decryptScan – jedyna możliwość bez indeksu przy nazwisku
+ * szyfrowanym: odczyt całej tabeli, deszyfrowanie, normalizacja i porównanie prefiksu w aplikacji.
+ * Syntetyczne nazwiska polskie (rdzeń + przyrostek, ~1/3 ze znakami diakrytycznymi), H2 w pliku tymczasowym
+ * (przy 1M pacjentów ~9M tokenów nie mieści się w pamięci) – bez kosztu sieci, który na PostgreSQL dodatkowo
+ * obciąża skan (cała tabela do aplikacji).
+ * Uruchomienie: mvn -Pbenchmark test-compile exec:exec -Djmh.args="PatientNameIndexBenchmark"
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Thread)
+public class PatientNameIndexBenchmark {
+
+    private static final String[] STEMS = {"Kowal", "Nowa", "Wiśniew", "Wójcik", "Kamiń", "Lewandow", "Zieliń", "Szymań",
+            "Woźniak", "Dąbrow", "Kozłow", "Jankow", "Mazur", "Kwiatkow", "Krawczyk", "Piotrow", "Grabow", "Zając",
+            "Pawłow", "Michal", "Król", "Wieczor", "Jabłoń", "Wróbl", "Nowakow", "Majew", "Olszew", "Stępień",
+            "Malinow", "Jaworsk", "Adamczyk", "Dudek", "Nowic", "Pawlak", "Górski", "Witkow", "Walczak", "Sikor",
+            "Baran", "Rutkow", "Michalak", "Szewczyk", "Ostrow", "Tomaszew", "Pietrzak", "Duda", "Zalew", "Wróblew",
+            "Jasiń", "Marciniak", "Bąk", "Zawadz", "Sadow", "Chmielew", "Włodar", "Borkow", "Czarnec", "Sawick",
+            "Sokołow", "Urbań", "Kubiak", "Maciejew", "Szczepań", "Kucharsk", "Wilczyń", "Kalinow", "Lis", "Mazurek"};
+    private static final String[] SUFFIXES = {"ski", "ska", "cki", "cka", "ak", "ek", "czyk", "owicz", "iak", "", "ńska", "ński"};
+    private static final String QUERY = "kowal";
+    private static final int BATCH = 10_000;
+
+    @Param({"100000", "1000000"})
+    public int patients;
+
+    private Path dir;
+    private SingleConnectionDataSource db;
+    private JdbcTemplate jdbcTemplate;
+    private EncryptionService service;
+    private PatientNameIndex nameIndex;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        service = TestEncryptionKeys.encryptionService();
+
+        dir = Files.createTempDirectory("name-index-bench");
+        db = new SingleConnectionDataSource("jdbc:h2:file:" + dir.resolve("db") + ";CACHE_SIZE=131072", "sa", "", true);
+        jdbcTemplate = new JdbcTemplate(db);
+        nameIndex = new PatientNameIndex(jdbcTemplate, service);
+        jdbcTemplate.execute("CREATE SCHEMA emr");
+        jdbcTemplate.execute("CREATE TABLE emr.patients (id UUID PRIMARY KEY, last_name VARCHAR(300) NOT NULL)");
+        jdbcTemplate.execute("CREATE TABLE emr.patient_name_tokens (token VARCHAR(32) NOT NULL, patient_id UUID NOT NULL, "
+                + "PRIMARY KEY (token, patient_id))");
+
+        // wstawianie w kolejności klucza: B-drzewa rosną sekwencyjnie, więc przygotowanie 1M pacjentów (~9M tokenów)
+        // trwa minuty, a nie godziny losowych zapisów stron
+        Random rnd = new Random(42);
+        UUID[] ids = new UUID[patients];
+        for (int n = 0; n < patients; n++) ids[n] = new UUID(rnd.nextLong(), rnd.nextLong());
+        Arrays.sort(ids, (x, y) -> {
+            int c = Long.compareUnsigned(x.getMostSignificantBits(), y.getMostSignificantBits());
+            return c != 0 ? c : Long.compareUnsigned(x.getLeastSignificantBits(), y.getLeastSignificantBits());
+        });
+        Map<String, List<String>> tokensByName = new HashMap<>();
+        Map<String, List<Integer>> patientsByToken = new TreeMap<>();
+        List<Object[]> rows = new ArrayList<>(BATCH);
+        for (int n = 0; n < patients; n++) {
+            String lastName = STEMS[rnd.nextInt(STEMS.length)] + SUFFIXES[rnd.nextInt(SUFFIXES.length)];
+            if (rnd.nextInt(10) == 0) lastName += "-" + STEMS[rnd.nextInt(STEMS.length)] + "ska";
+            rows.add(new Object[]{ids[n], service.encryptDeterministic(PatientNameIndex.FIELD, lastName)});
+            for (String token : tokensByName.computeIfAbsent(lastName, nameIndex::tokens)) {
+                patientsByToken.computeIfAbsent(token, t -> new ArrayList<>()).add(n);
+            }
+            if (rows.size() == BATCH) insert("INSERT INTO emr.patients VALUES (?, ?)", rows);
+        }
+        insert("INSERT INTO emr.patients VALUES (?, ?)", rows);
+        patientsByToken.forEach((token, members) -> {
+            for (int n : members) {
+                rows.add(new Object[]{token, ids[n]});
+                if (rows.size() == BATCH) insert("INSERT INTO emr.patient_name_tokens VALUES (?, ?)", rows);
+            }
+        });
+        insert("INSERT INTO emr.patient_name_tokens VALUES (?, ?)", rows);
+    }
+
+    private void insert(String sql, List<Object[]> rows) {
+        if (!rows.isEmpty()) jdbcTemplate.batchUpdate(sql, rows);
+        rows.clear();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        db.destroy();
+        FileSystemUtils.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public List<UUID> tokenLookup() {
+        List<String> tokens = nameIndex.queryTokens(QUERY);
+        String in = String.join(", ", Collections.nCopies(tokens.size(), "?"));
+        return jdbcTemplate.queryForList("SELECT patient_id FROM emr.patient_name_tokens WHERE token IN (" + in + ")",
+                UUID.class, tokens.toArray());
+    }
+
+    @Benchmark
+    public List<UUID> decryptScan() {
+        List<UUID> out = new ArrayList<>();
+        jdbcTemplate.query("SELECT id, last_name FROM emr.patients", rs -> {
+            String lastName = service.decryptField(PatientNameIndex.FIELD, rs.getString(2));
+            if (PatientNameIndex.normalize(lastName).replace(" ", "").startsWith(QUERY)) {
+                out.add(rs.getObject(1, UUID.class));
+            }
+        });
+        return out;
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.emr_server.security.ratelimit;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * tryConsume pod współbieżnością 64 wątków: jeden gorący klucz (wszystkie wątki walczą o CAS na tym samym
+ * stanie) oraz wiele adresów IP (typowy ruch). Limit jest wysoki, więc mierzona jest ścieżka "allowed".
+ * Uruchomienie: mvn -Pbenchmark test-compile exec:exec -Djmh.args="RateLimitServiceBenchmark"
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(64)
+public class RateLimitServiceBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Limiter {
+        RateLimitService service;
+        final String[] ips = new String[4096];
+
+        @Setup
+        public void setUp() {
+            service = new RateLimitService(
+                    Map.of("GLOBAL_IP", new RateLimitService.RateLimitSpec(Integer.MAX_VALUE, Duration.ofSeconds(1))),
+                    new InMemoryRateLimitBackend(), new SimpleMeterRegistry());
+            for (int i = 0; i < ips.length; i++) ips[i] = "10." + (i >> 8) + "." + (i & 255) + ".1";
+        }
+    }
+
+    @Benchmark
+    public boolean hotKey(Limiter l) {
+        return l.service.tryConsume("GLOBAL_IP", "10.0.0.1").allowed();
+    }
+
+    @Benchmark
+    public boolean manyKeys(Limiter l) {
+        return l.service.tryConsume("GLOBAL_IP", l.ips[ThreadLocalRandom.current().nextInt(l.ips.length)]).allowed();
+    }
+}
@@ -0,0 +1,175 @@
+package com.example.emr_server.service.dedup;
+
+import com.example.emr_server.security.encryption.EncryptionMigrationJob;
+import com.example.emr_server.security.encryption.EncryptionService;
+import com.example.emr_server.security.encryption.TestEncryptionKeys;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Timeout;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Czas jednego przebiegu wykrywania duplikatów (pojedynczy pomiar): full – wszyscy pacjenci (deszyfrowanie,
+ * klucze blokujące, grupowanie w bazie, ocena par), incremental – 1000 nowych rejestracji po przebiegu pełnym.
+ * Syntetyczni pacjenci z polskimi imionami i nazwiskami, ~2% to ponowne rejestracje z literówką w nazwisku,
+ * imieniu albo PESEL-u. H2 w pliku tymczasowym z cache na cały indeks (bez sieci – na PostgreSQL zapis kluczy
+ * blokujących i zapytanie grupujące są po stronie bazy).
+ * Uruchomienie: mvn -Pbenchmark test-compile exec:exec -Djmh.args="PatientDedupBenchmark"
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+@Timeout(time = 1, timeUnit = TimeUnit.HOURS)
+@State(Scope.Thread)
+public class PatientDedupBenchmark {
+
+    private static final String[] FIRST = {"Jan", "Anna", "Piotr", "Maria", "Krzysztof", "Katarzyna", "Andrzej", "Małgorzata",
+            "Tomasz", "Agnieszka", "Paweł", "Barbara", "Michał", "Ewa", "Marcin", "Krystyna", "Grzegorz", "Elżbieta",
+            "Józef", "Zofia", "Łukasz", "Joanna", "Adam", "Magdalena", "Marek", "Monika", "Stanisław", "Aleksandra",
+            "Rafał", "Dorota", "Jacek", "Teresa", "Mateusz", "Danuta", "Dariusz", "Jadwiga", "Wojciech", "Beata"};
+    private static final String[] STEMS = {"Kowal", "Nowa", "Wiśniew", "Wójcik", "Kamiń", "Lewandow", "Zieliń", "Szymań",
+            "Woźniak", "Dąbrow", "Kozłow", "Jankow", "Mazur", "Kwiatkow", "Krawczyk", "Piotrow", "Grabow", "Zając",
+            "Pawłow", "Michal", "Król", "Wieczor", "Jabłoń", "Wróbl", "Nowakow", "Majew", "Olszew", "Stępień",
+            "Malinow", "Jaworsk", "Adamczyk", "Dudek", "Nowic", "Pawlak", "Górski", "Witkow", "Walczak", "Sikor",
+            "Baran", "Rutkow", "Michalak", "Szewczyk", "Ostrow", "Tomaszew", "Pietrzak", "Duda", "Zalew", "Wróblew"};
+    private static final String[] SUFFIXES = {"ski", "ska", "cki", "cka", "ak", "ek", "czyk", "owicz", "iak", "", "ńska", "ński"};
+    private static final int NEW_PATIENTS = 1_000;
+    private static final int BATCH = 10_000;
+
+    @Param({"100000", "1000000"})
+    public int patients;
+
+    @Param({"full", "incremental"})
+    public String mode;
+
+    private Path dir;
+    private SingleConnectionDataSource db;
+    private JdbcTemplate jdbcTemplate;
+    private EncryptionService service;
+    private PatientDedupJob job;
+    private final Random rnd = new Random(42);
+    private long seq;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        service = TestEncryptionKeys.encryptionService();
+
+        dir = Files.createTempDirectory("dedup-bench");
+        db = new SingleConnectionDataSource("jdbc:h2:file:" + dir.resolve("db") + ";CACHE_SIZE=1048576", "sa", "", true);
+        jdbcTemplate = new JdbcTemplate(db);
+        jdbcTemplate.execute("CREATE SCHEMA emr");
+        jdbcTemplate.execute("CREATE TABLE emr.patients (id UUID PRIMARY KEY, first_name VARCHAR(300) NOT NULL, "
+                + "last_name VARCHAR(300) NOT NULL, pesel VARCHAR(200) NOT NULL, date_of_birth DATE NOT NULL, "
+                + "created_at TIMESTAMP WITH TIME ZONE NOT NULL)");
+        jdbcTemplate.execute("CREATE INDEX patients_created_at_id_idx ON emr.patients (created_at, id)");
+        jdbcTemplate.execute("CREATE TABLE emr.patient_data_keys (patient_id UUID PRIMARY KEY, key_id VARCHAR(50), "
+                + "wrapped_key VARCHAR(200), created_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP, "
+                + "destroyed_at TIMESTAMP WITH TIME ZONE)");
+        jdbcTemplate.execute("CREATE TABLE emr.patient_blocking_keys (block_key VARCHAR(32) NOT NULL, patient_id UUID NOT NULL, "
+                + "PRIMARY KEY (block_key, patient_id))");
+        jdbcTemplate.execute("CREATE INDEX idx_patient_blocking_keys_patient ON emr.patient_blocking_keys (patient_id)");
+        jdbcTemplate.execute("CREATE TABLE emr.patient_duplicate_candidates (patient_a UUID NOT NULL, patient_b UUID NOT NULL, "
+                + "score DOUBLE PRECISION NOT NULL, reasons VARCHAR(200), status VARCHAR(20) NOT NULL DEFAULT 'OPEN', "
+                + "found_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP, reviewed_by UUID, "
+                + "reviewed_at TIMESTAMP WITH TIME ZONE, PRIMARY KEY (patient_a, patient_b))");
+        jdbcTemplate.execute("CREATE TABLE emr.patient_dedup_runs (id UUID PRIMARY KEY, mode VARCHAR(20) NOT NULL, "
+                + "state VARCHAR(20) NOT NULL, key_id VARCHAR(50) NOT NULL, watermark TIMESTAMP WITH TIME ZONE NOT NULL, "
+                + "patients BIGINT NOT NULL DEFAULT 0, pairs BIGINT NOT NULL DEFAULT 0, candidates BIGINT NOT NULL DEFAULT 0, "
+                + "started_at TIMESTAMP WITH TIME ZONE NOT NULL, finished_at TIMESTAMP WITH TIME ZONE)");
+
+        insertPatients(patients, Instant.now().minus(1, ChronoUnit.DAYS));
+        job = new PatientDedupJob(jdbcTemplate, service, new PatientDedupProperties());
+        if ("incremental".equals(mode)) {
+            run(true);
+            insertPatients(NEW_PATIENTS, Instant.now());
+        }
+    }
+
+    private void insertPatients(int count, Instant createdAt) {
+        List<Object[]> rows = new ArrayList<>(BATCH);
+        Object[] previous = null;
+        for (int n = 0; n < count; n++) {
+            String first = FIRST[rnd.nextInt(FIRST.length)];
+            String last = STEMS[rnd.nextInt(STEMS.length)] + SUFFIXES[rnd.nextInt(SUFFIXES.length)];
+            LocalDate dob = LocalDate.of(1940, 1, 1).plusDays(rnd.nextInt(365 * 80));
+            String pesel = String.format("%011d", Math.floorMod(rnd.nextLong(), 100_000_000_000L));
+            if (previous != null && rnd.nextInt(50) == 0) {
+                // ponowna rejestracja poprzedniego pacjenta z jedną literówką
+                first = (String) previous[0];
+                last = (String) previous[1];
+                dob = (LocalDate) previous[2];
+                pesel = (String) previous[3];
+                switch (rnd.nextInt(3)) {
+                    case 0 -> last = last.replace('ś', 's').replace('ł', 'l').replace("w", "v");
+                    case 1 -> first = first.substring(0, first.length() - 1);
+                    default -> pesel = pesel.substring(0, 9) + pesel.charAt(10) + pesel.charAt(9);
+                }
+            }
+            previous = new Object[]{first, last, dob, pesel};
+            // rosnące id jak UUIDv7 – wstawianie na koniec indeksu PK
+            rows.add(new Object[]{new UUID(++seq << 16, rnd.nextLong()),
+                    service.encryptDeterministic("patient.first_name", first),
+                    service.encryptDeterministic("patient.last_name", last),
+                    service.encryptDeterministic("patient.pesel", pesel), dob, Timestamp.from(createdAt)});
+            if (rows.size() == BATCH) insert(rows);
+        }
+        insert(rows);
+    }
+
+    private void insert(List<Object[]> rows) {
+        if (!rows.isEmpty()) jdbcTemplate.batchUpdate("INSERT INTO emr.patients VALUES (?, ?, ?, ?, ?, ?)", rows);
+        rows.clear();
+    }
+
+    private PatientDedupJob.Progress run(boolean full) throws InterruptedException {
+        if (!job.start(full) || !job.await(Duration.ofHours(1))) throw new IllegalStateException("Przebieg nie zakończył się");
+        PatientDedupJob.Progress progress = job.progress();
+        if (progress.state() != EncryptionMigrationJob.State.COMPLETED) {
+            throw new IllegalStateException("Przebieg zakończony stanem " + progress.state());
+        }
+        return progress;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        PatientDedupJob.Progress p = job.progress();
+        System.out.printf("%n[dedup] mode=%s patients=%d blocks=%d oversized=%d pairs=%d newCandidates=%d%n",
+                p.mode(), p.patients(), p.blocks(), p.oversizedBlocks(), p.pairs(), p.candidates());
+        db.destroy();
+        FileSystemUtils.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public PatientDedupJob.Progress dedupRun() throws InterruptedException {
+        return run("full".equals(mode));
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.emr_server.config;
+
+import com.example.emr_server.security.RlsContextBinder;
+import com.example.emr_server.security.RlsTransactionManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.transaction.TransactionManagerCustomizers;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.transaction.PlatformTransactionManager;
+
+@Configuration
+public class TransactionConfig {
+
+    // Zastępuje domyślny JpaTransactionManager ze Spring Boot – kontekst RLS raz na transakcję
+    @Bean
+    public PlatformTransactionManager transactionManager(EntityManagerFactory entityManagerFactory,
+                                                         RlsContextBinder rlsContextBinder,
+                                                         ObjectProvider<TransactionManagerCustomizers> customizers) {
+        RlsTransactionManager tm = new RlsTransactionManager(entityManagerFactory, rlsContextBinder);
+        customizers.ifAvailable(c -> c.customize(tm));
+        return tm;
+    }
+}
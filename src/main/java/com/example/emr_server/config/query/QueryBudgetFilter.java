@@ -0,0 +1,95 @@
+package com.example.emr_server.config.query;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+
+/**
+ * Liczy zapytania SQL Hibernate na żądanie HTTP i ostrzega o przekroczeniu budżetu (łącznie albo powtórzenia
+ * jednego kształtu zapytania – N+1). Metryki tagowane wzorcem ścieżki (np. /api/visits/{id}), nie samym URI.
+ * Ciało odpowiedzi strumieniowej (eksport) wykonuje się w innym wątku i nie jest tu liczone.
+ */
+@Slf4j
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 10)
+public class QueryBudgetFilter extends OncePerRequestFilter {
+
+    private static final int MAX_LOGGED_SQL = 300;
+
+    private final QueryBudgetProperties properties;
+    private final MeterRegistry meterRegistry;
+
+    public QueryBudgetFilter(QueryBudgetProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !properties.isEnabled() || request.getRequestURI().startsWith("/actuator");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+        QueryCounter.Scope scope = QueryCounter.open();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            scope.close();
+            report(request, response, scope);
+        }
+    }
+
+    private void report(HttpServletRequest request, HttpServletResponse response, QueryCounter.Scope scope) {
+        int statements = scope.statements();
+        if (statements == 0) return;
+        String uri = uriPattern(request);
+        DistributionSummary.builder("hibernate.request.statements")
+                .description("Liczba instrukcji SQL Hibernate na żądanie HTTP")
+                .tag("uri", uri)
+                .register(meterRegistry)
+                .record(statements);
+
+        QueryCounter.Repeated top = scope.mostRepeated().orElse(null);
+        boolean overTotal = statements > properties.getMaxStatements();
+        boolean overRepeats = top != null && top.count() > properties.getMaxRepeats();
+        if (!overTotal && !overRepeats) return;
+
+        if (overTotal) exceeded(uri, "total");
+        if (overRepeats) exceeded(uri, "repeated");
+        // ID żądania z nagłówka – MDC jest już wyczyszczone przez LoggingMdcFilter
+        log.warn("Przekroczony budżet zapytań: {} {} reqId={} – {} instrukcji (limit {}), najczęstsze {}x (limit {}): {}",
+                request.getMethod(), uri, response.getHeader("X-Request-Id"), statements, properties.getMaxStatements(),
+                top.count(), properties.getMaxRepeats(), abbreviate(top.shape()));
+    }
+
+    private void exceeded(String uri, String kind) {
+        Counter.builder("hibernate.request.budget.exceeded")
+                .description("Żądania HTTP przekraczające budżet zapytań SQL")
+                .tag("uri", uri)
+                .tag("kind", kind)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    private static String uriPattern(HttpServletRequest request) {
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        return pattern != null ? pattern.toString() : "UNKNOWN";
+    }
+
+    private static String abbreviate(String sql) {
+        return sql.length() > MAX_LOGGED_SQL ? sql.substring(0, MAX_LOGGED_SQL) + "…" : sql;
+    }
+}
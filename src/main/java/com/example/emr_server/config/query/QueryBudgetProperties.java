@@ -0,0 +1,23 @@
+package com.example.emr_server.config.query;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Budżet zapytań SQL na jedno żądanie HTTP (app.query-budget.*). Przekroczenie nie przerywa żądania –
+ * kończy się ostrzeżeniem w logu i licznikiem hibernate.request.budget.exceeded.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "app.query-budget")
+public class QueryBudgetProperties {
+    private boolean enabled = true;
+    private int maxStatements = 20;
+    private int maxRepeats = 5;
+
+    public boolean isEnabled() { return enabled; }
+    public void setEnabled(boolean enabled) { this.enabled = enabled; }
+    public int getMaxStatements() { return maxStatements; }
+    public void setMaxStatements(int maxStatements) { this.maxStatements = maxStatements; }
+    public int getMaxRepeats() { return maxRepeats; }
+    public void setMaxRepeats(int maxRepeats) { this.maxRepeats = maxRepeats; }
+}
@@ -0,0 +1,17 @@
+package com.example.emr_server.config.query;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/**
+ * Rejestruje każdą instrukcję przygotowywaną przez Hibernate w {@link QueryCounter}; SQL przechodzi bez zmian.
+ * Podpinany przez hibernate.session_factory.statement_inspector (application.properties), więc działa też
+ * w testach @DataJpaTest. Zapytania wykonywane bezpośrednio przez JdbcTemplate nie są liczone.
+ */
+public class QueryCountInspector implements StatementInspector {
+
+    @Override
+    public String inspect(String sql) {
+        QueryCounter.record(sql);
+        return sql;
+    }
+}
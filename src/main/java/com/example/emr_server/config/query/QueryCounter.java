@@ -0,0 +1,96 @@
+package com.example.emr_server.config.query;
+
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+/**
+ * Licznik instrukcji SQL wykonanych przez Hibernate w bieżącym wątku. Zakres (żądanie HTTP, test) otwiera
+ * {@link #open()} i zamyka {@link Scope#close()}; zakresy mogą być zagnieżdżone – instrukcja liczy się we
+ * wszystkich otwartych. Poza zakresem {@link #record(String)} nic nie robi (zadania w tle, migracje).
+ * Oprócz sumy liczone są powtórzenia tego samego "kształtu" zapytania – typowy objaw N+1.
+ */
+public final class QueryCounter {
+
+    private static final ThreadLocal<ArrayDeque<Scope>> SCOPES = new ThreadLocal<>();
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    // IN (?, ?, ?) przy batch fetch ma zmienną długość – to wciąż ten sam kształt
+    private static final Pattern PARAMETER_LIST = Pattern.compile("\\(\\s*\\?(\\s*,\\s*\\?)*\\s*\\)");
+
+    private QueryCounter() {}
+
+    public static Scope open() {
+        ArrayDeque<Scope> scopes = SCOPES.get();
+        if (scopes == null) {
+            scopes = new ArrayDeque<>();
+            SCOPES.set(scopes);
+        }
+        Scope scope = new Scope();
+        scopes.push(scope);
+        return scope;
+    }
+
+    static void record(String sql) {
+        ArrayDeque<Scope> scopes = SCOPES.get();
+        if (scopes == null || scopes.isEmpty() || sql == null) return;
+        String shape = shape(sql);
+        for (Scope scope : scopes) {
+            scope.add(shape);
+        }
+    }
+
+    static String shape(String sql) {
+        String collapsed = WHITESPACE.matcher(sql.trim()).replaceAll(" ");
+        return PARAMETER_LIST.matcher(collapsed).replaceAll("(?)");
+    }
+
+    public record Repeated(String shape, int count) {}
+
+    public static final class Scope implements AutoCloseable {
+        private final Map<String, Integer> shapes = new HashMap<>();
+        private int statements;
+        private boolean closed;
+
+        private Scope() {}
+
+        private void add(String shape) {
+            statements++;
+            shapes.merge(shape, 1, Integer::sum);
+        }
+
+        public int statements() {
+            return statements;
+        }
+
+        /** Najczęściej powtarzany kształt zapytania w zakresie. */
+        public Optional<Repeated> mostRepeated() {
+            return shapes.entrySet().stream()
+                    .max(Map.Entry.comparingByValue())
+                    .map(e -> new Repeated(e.getKey(), e.getValue()));
+        }
+
+        /** Kształty wykonane więcej niż {@code threshold} razy, od najczęstszego. */
+        public List<Repeated> repeatedMoreThan(int threshold) {
+            return shapes.entrySet().stream()
+                    .filter(e -> e.getValue() > threshold)
+                    .map(e -> new Repeated(e.getKey(), e.getValue()))
+                    .sorted(Comparator.comparingInt(Repeated::count).reversed())
+                    .toList();
+        }
+
+        @Override
+        public void close() {
+            if (closed) return;
+            closed = true;
+            ArrayDeque<Scope> scopes = SCOPES.get();
+            if (scopes == null) return;
+            scopes.remove(this);
+            if (scopes.isEmpty()) SCOPES.remove();
+        }
+    }
+}
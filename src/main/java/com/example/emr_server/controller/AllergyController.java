@@ -3,6 +3,7 @@ package com.example.emr_server.controller;
 import com.example.emr_server.controller.dto.AllergyDto;
 import com.example.emr_server.controller.dto.request.AllergyCreateRequest;
 import com.example.emr_server.controller.dto.request.AllergyUpdateRequest;
+import com.example.emr_server.controller.dto.CursorPage;
 import com.example.emr_server.entity.Allergy;
 import com.example.emr_server.entity.Patient;
 import com.example.emr_server.service.AllergyService;
@@ -44,6 +45,19 @@ public class AllergyController {
         return ResponseEntity.ok(page);
     }
 
+    // Tryb kursorowy (keyset): ?after=&size= – bez COUNT, kolejna strona przez kursor next
+    @GetMapping(params = "after")
+    public ResponseEntity<CursorPage<AllergyDto>> listAfter(
+            @RequestParam Optional<UUID> patientId,
+            @RequestParam Optional<String> allergen,
+            @RequestParam Optional<String> severity,
+            @RequestParam Optional<UUID> notedById,
+            @RequestParam String after,
+            @RequestParam(defaultValue = "20") int size
+    ) {
+        return ResponseEntity.ok(allergyService.scrollVisible(patientId, allergen, severity, notedById, after, size));
+    }
+
     @GetMapping("/{id}")
     public ResponseEntity<AllergyDto> get(@PathVariable UUID id) {
         return allergyService.getVisibleById(id)
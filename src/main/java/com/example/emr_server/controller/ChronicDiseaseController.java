@@ -3,6 +3,7 @@ package com.example.emr_server.controller;
 import com.example.emr_server.controller.dto.ChronicDiseaseDto;
 import com.example.emr_server.controller.dto.request.ChronicDiseaseCreateRequest;
 import com.example.emr_server.controller.dto.request.ChronicDiseaseUpdateRequest;
+import com.example.emr_server.controller.dto.CursorPage;
 import com.example.emr_server.entity.ChronicDisease;
 import com.example.emr_server.entity.Patient;
 import com.example.emr_server.service.ChronicDiseaseService;
@@ -45,6 +46,20 @@ public class ChronicDiseaseController {
         return ResponseEntity.ok(page);
     }
 
+    // Tryb kursorowy (keyset): ?after=&size= – bez COUNT, kolejna strona przez kursor next
+    @GetMapping(params = "after")
+    public ResponseEntity<CursorPage<ChronicDiseaseDto>> listAfter(
+            @RequestParam Optional<UUID> patientId,
+            @RequestParam Optional<String> name,
+            @RequestParam Optional<LocalDate> start,
+            @RequestParam Optional<LocalDate> end,
+            @RequestParam Optional<String> notesFragment,
+            @RequestParam String after,
+            @RequestParam(defaultValue = "20") int size
+    ) {
+        return ResponseEntity.ok(chronicDiseaseService.scrollVisible(patientId, name, start, end, notesFragment, after, size));
+    }
+
     @GetMapping("/{id}")
     public ResponseEntity<ChronicDiseaseDto> get(@PathVariable UUID id) {
         return chronicDiseaseService.getVisibleById(id)
@@ -0,0 +1,73 @@
+package com.example.emr_server.controller;
+
+import com.example.emr_server.security.encryption.EncryptionMigrationJob;
+import com.example.emr_server.security.encryption.EncryptionService;
+import com.example.emr_server.security.encryption.PatientKeyShredder;
+import com.example.emr_server.security.encryption.PatientNameIndexJob;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.UUID;
+
+@RestController
+@RequestMapping("/api/admin/encryption/keys")
+@Tag(name = "Klucze szyfrowania", description = "Pierścień kluczy: podgląd identyfikatorów i aktywacja klucza przy rotacji")
+public class EncryptionKeyController {
+
+    public record KeyRingStatus(String activeKeyId, List<String> keyIds, EncryptionMigrationJob.Progress migration) {}
+
+    private final EncryptionService encryptionService;
+    private final EncryptionMigrationJob migrationJob;
+    private final PatientKeyShredder shredder;
+    private final PatientNameIndexJob nameIndexJob;
+
+    public EncryptionKeyController(EncryptionService encryptionService, EncryptionMigrationJob migrationJob,
+                                   PatientKeyShredder shredder, PatientNameIndexJob nameIndexJob) {
+        this.encryptionService = encryptionService;
+        this.migrationJob = migrationJob;
+        this.shredder = shredder;
+        this.nameIndexJob = nameIndexJob;
+    }
+
+    @GetMapping
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(summary = "Pierścień kluczy", description = "Identyfikatory kluczy (bez materiału) i klucz aktywny")
+    public ResponseEntity<KeyRingStatus> status() {
+        return ResponseEntity.ok(status(encryptionService, migrationJob));
+    }
+
+    // POST /api/admin/encryption/keys/active?keyId=k2&reencrypt=true
+    @PostMapping("/active")
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(summary = "Aktywuj klucz", description = "Nowe zapisy szyfrowane wskazanym kluczem (keystore wczytywany ponownie); "
+            + "reencrypt=true uruchamia w tle przeszyfrowanie istniejących danych i przebudowę indeksu nazwisk. "
+            + "Na wielu węzłach: najpierw dodać klucz wszędzie.")
+    public ResponseEntity<KeyRingStatus> activate(@RequestParam String keyId,
+                                                  @RequestParam(defaultValue = "false") boolean reencrypt) {
+        encryptionService.activateKey(keyId);
+        if (reencrypt) {
+            migrationJob.start(EncryptionMigrationJob.Mode.MIGRATE, false);
+            nameIndexJob.start();
+        }
+        return ResponseEntity.ok(status(encryptionService, migrationJob));
+    }
+
+    // DELETE /api/admin/encryption/keys/patients/{patientId}
+    @DeleteMapping("/patients/{patientId}")
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(summary = "Zniszcz klucz danych pacjenta", description = "Crypto-shredding: starsze pola RANDOM pacjenta "
+            + "są najpierw przeszyfrowywane jego kluczem, po czym klucz jest niszczony – notatki, wyniki, adres stają się "
+            + "nieodczytywalne, także w kopiach zapasowych wykonanych później. Raport wymienia pola nadal odczytywalne "
+            + "kluczem głównym (m.in. imię, nazwisko, PESEL – szyfrowanie deterministyczne). Nieodwracalne.")
+    public ResponseEntity<PatientKeyShredder.Report> shredPatientKey(@PathVariable UUID patientId) {
+        return ResponseEntity.ok(shredder.shred(patientId));
+    }
+
+    private static KeyRingStatus status(EncryptionService encryptionService, EncryptionMigrationJob migrationJob) {
+        return new KeyRingStatus(encryptionService.activeKeyId(), encryptionService.keyIds(), migrationJob.progress());
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.emr_server.controller;
+
+import com.example.emr_server.security.encryption.EncryptionMigrationJob;
+import com.example.emr_server.security.encryption.PatientNameIndexJob;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping("/api/admin/encryption/migration")
+@Tag(name = "Migracja szyfrowania", description = "Online szyfrowanie istniejących danych: uruchomienie, postęp, zatrzymanie")
+public class EncryptionMigrationController {
+
+    private final EncryptionMigrationJob job;
+    private final PatientNameIndexJob nameIndexJob;
+
+    public EncryptionMigrationController(EncryptionMigrationJob job, PatientNameIndexJob nameIndexJob) {
+        this.job = job;
+        this.nameIndexJob = nameIndexJob;
+    }
+
+    @GetMapping
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(summary = "Postęp migracji", description = "Stan bieżącego / ostatniego przebiegu, przepustowość i szacowany czas")
+    public ResponseEntity<EncryptionMigrationJob.Progress> progress() {
+        return ResponseEntity.ok(job.progress());
+    }
+
+    // POST /api/admin/encryption/migration?mode=VALIDATE&restart=false
+    @PostMapping
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(summary = "Uruchom migrację", description = "Przebieg w tle, wznawiany od checkpointu; restart=true zaczyna od początku")
+    public ResponseEntity<EncryptionMigrationJob.Progress> start(
+            @RequestParam(defaultValue = "MIGRATE") EncryptionMigrationJob.Mode mode,
+            @RequestParam(defaultValue = "false") boolean restart
+    ) {
+        boolean started = job.start(mode, restart);
+        return ResponseEntity.status(started ? HttpStatus.ACCEPTED : HttpStatus.CONFLICT).body(job.progress());
+    }
+
+    @DeleteMapping
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(summary = "Zatrzymaj migrację", description = "Kończy bieżące strony; kolejny przebieg wznowi od checkpointu")
+    public ResponseEntity<EncryptionMigrationJob.Progress> stop() {
+        job.stop();
+        return ResponseEntity.ok(job.progress());
+    }
+
+    @GetMapping("/name-index")
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(summary = "Postęp budowy indeksu nazwisk", description = "Stan bieżącej / ostatniej przebudowy tokenów wyszukiwania po prefiksie nazwiska")
+    public ResponseEntity<PatientNameIndexJob.Progress> nameIndexProgress() {
+        return ResponseEntity.ok(nameIndexJob.progress());
+    }
+
+    @PostMapping("/name-index")
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(summary = "Przebuduj indeks nazwisk", description = "Tokeny aktywnym kluczem dla wszystkich pacjentów – po wdrożeniu i po rotacji klucza")
+    public ResponseEntity<PatientNameIndexJob.Progress> startNameIndex() {
+        boolean started = nameIndexJob.start();
+        return ResponseEntity.status(started ? HttpStatus.ACCEPTED : HttpStatus.CONFLICT).body(nameIndexJob.progress());
+    }
+
+    @DeleteMapping("/name-index")
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(summary = "Zatrzymaj budowę indeksu nazwisk", description = "Kończy bieżącą stronę")
+    public ResponseEntity<PatientNameIndexJob.Progress> stopNameIndex() {
+        nameIndexJob.stop();
+        return ResponseEntity.ok(nameIndexJob.progress());
+    }
+}
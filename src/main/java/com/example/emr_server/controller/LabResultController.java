@@ -3,10 +3,12 @@ package com.example.emr_server.controller;
 import com.example.emr_server.controller.dto.LabResultDto;
 import com.example.emr_server.controller.dto.request.LabResultCreateRequest;
 import com.example.emr_server.controller.dto.request.LabResultUpdateRequest;
+import com.example.emr_server.controller.dto.CursorPage;
 import com.example.emr_server.entity.LabResult;
 import com.example.emr_server.entity.Patient;
 import com.example.emr_server.service.LabResultService;
 import com.example.emr_server.util.PageUtils;
+import com.example.emr_server.service.export.ExportFormat;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
@@ -14,7 +16,9 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.HttpHeaders;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.time.LocalDate;
 import java.util.List;
@@ -50,6 +54,43 @@ public class LabResultController {
         return ResponseEntity.ok(page);
     }
 
+    // Tryb kursorowy (keyset): ?after=&size= – bez COUNT, kolejna strona przez kursor next
+    @GetMapping(params = "after")
+    public ResponseEntity<CursorPage<LabResultDto>> listAfter(
+            @RequestParam Optional<UUID> patientId,
+            @RequestParam Optional<UUID> orderedById,
+            @RequestParam Optional<String> status,
+            @RequestParam Optional<LocalDate> start,
+            @RequestParam Optional<LocalDate> end,
+            @RequestParam Optional<String> testName,
+            @RequestParam Optional<String> resultFragment,
+            @RequestParam String after,
+            @RequestParam(defaultValue = "20") int size
+    ) {
+        return ResponseEntity.ok(labResultService.scrollVisible(patientId, orderedById, status, start, end, testName, resultFragment, after, size));
+    }
+
+    // Eksport strumieniowy (NDJSON/CSV) – te same filtry co lista, bez limitu wierszy
+    @GetMapping("/export")
+    @Operation(summary = "Eksport wyników badań", description = "Strumieniowy eksport widocznych wyników badań (format=ndjson|csv)")
+    public ResponseEntity<StreamingResponseBody> export(
+            @RequestParam Optional<UUID> patientId,
+            @RequestParam Optional<UUID> orderedById,
+            @RequestParam Optional<String> status,
+            @RequestParam Optional<LocalDate> start,
+            @RequestParam Optional<LocalDate> end,
+            @RequestParam Optional<String> testName,
+            @RequestParam Optional<String> resultFragment,
+            @RequestParam(defaultValue = "ndjson") String format
+    ) {
+        ExportFormat fmt = ExportFormat.parse(format);
+        StreamingResponseBody body = out -> labResultService.exportVisible(patientId, orderedById, status, start, end, testName, resultFragment, fmt, out);
+        return ResponseEntity.ok()
+                .contentType(fmt.mediaType())
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + fmt.fileName("lab-results"))
+                .body(body);
+    }
+
     @GetMapping("/{id}")
     public ResponseEntity<LabResultDto> get(@PathVariable UUID id) {
         return labResultService.getVisibleById(id)
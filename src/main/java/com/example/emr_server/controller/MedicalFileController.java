@@ -3,6 +3,7 @@ package com.example.emr_server.controller;
 import com.example.emr_server.controller.dto.MedicalFileDto;
 import com.example.emr_server.controller.dto.request.MedicalFileCreateRequest;
 import com.example.emr_server.controller.dto.request.MedicalFileUpdateRequest;
+import com.example.emr_server.controller.dto.CursorPage;
 import com.example.emr_server.entity.MedicalFile;
 import com.example.emr_server.entity.Patient;
 import com.example.emr_server.service.MedicalFileService;
@@ -47,6 +48,21 @@ public class MedicalFileController {
         return ResponseEntity.ok(page);
     }
 
+    // Tryb kursorowy (keyset): ?after=&size= – bez COUNT, kolejna strona przez kursor next
+    @GetMapping(params = "after")
+    public ResponseEntity<CursorPage<MedicalFileDto>> listAfter(
+            @RequestParam Optional<UUID> patientId,
+            @RequestParam Optional<UUID> uploadedById,
+            @RequestParam Optional<String> mimeType,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Optional<Instant> start,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Optional<Instant> end,
+            @RequestParam Optional<String> fileNameFragment,
+            @RequestParam String after,
+            @RequestParam(defaultValue = "20") int size
+    ) {
+        return ResponseEntity.ok(medicalFileService.scrollVisible(patientId, uploadedById, mimeType, start, end, fileNameFragment, after, size));
+    }
+
     @GetMapping("/{id}")
     public ResponseEntity<MedicalFileDto> get(@PathVariable UUID id) {
         return medicalFileService.getVisibleById(id)
@@ -3,6 +3,7 @@ package com.example.emr_server.controller;
 import com.example.emr_server.controller.dto.MedicalRecordDto;
 import com.example.emr_server.controller.dto.request.MedicalRecordCreateRequest;
 import com.example.emr_server.controller.dto.request.MedicalRecordUpdateRequest;
+import com.example.emr_server.controller.dto.CursorPage;
 import com.example.emr_server.entity.MedicalRecord;
 import com.example.emr_server.entity.Patient;
 import com.example.emr_server.service.MedicalRecordService;
@@ -47,6 +48,20 @@ public class MedicalRecordController {
         return ResponseEntity.ok(page);
     }
 
+    // Tryb kursorowy (keyset): ?after=&size= – bez COUNT, kolejna strona przez kursor next
+    @GetMapping(params = "after")
+    public ResponseEntity<CursorPage<MedicalRecordDto>> listAfter(
+            @RequestParam Optional<UUID> patientId,
+            @RequestParam Optional<UUID> createdById,
+            @RequestParam Optional<String> type,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Optional<Instant> start,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Optional<Instant> end,
+            @RequestParam String after,
+            @RequestParam(defaultValue = "20") int size
+    ) {
+        return ResponseEntity.ok(medicalRecordService.scrollVisible(patientId, createdById, type, start, end, after, size));
+    }
+
     @GetMapping("/{id}")
     public ResponseEntity<MedicalRecordDto> get(@PathVariable UUID id) {
         return medicalRecordService.getVisibleById(id)
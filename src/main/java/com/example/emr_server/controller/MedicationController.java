@@ -1,5 +1,6 @@
 package com.example.emr_server.controller;
 
+import com.example.emr_server.controller.dto.CursorPage;
 import com.example.emr_server.controller.dto.MedicationDto;
 import com.example.emr_server.controller.dto.MedicationPackageDto;
 import com.example.emr_server.service.MedicationService;
@@ -39,6 +40,15 @@ public class MedicationController {
 
     }
 
+    @GetMapping(params = "after")
+    @Operation(summary = "Szukaj leków (kursor)", description = "Tryb kursorowy: ?after=&size=, sortowanie po nazwie, bez COUNT")
+    public ResponseEntity<CursorPage<MedicationDto>> searchAfter(@RequestParam Optional<String> q,
+                                                                 @RequestParam Optional<String> atc,
+                                                                 @RequestParam String after,
+                                                                 @RequestParam(defaultValue = "20") int size) {
+        return ResponseEntity.ok(medicationService.scroll(q.orElse(null), atc.orElse(null), after, size));
+    }
+
     @GetMapping("/opakowania")
     @Operation(summary = "Szukaj opakowania po GTIN", description = "Zwraca opakowanie na podstawie numeru GTIN")
     public ResponseEntity<MedicationPackageDto> findByGtin(@RequestParam String gtin) {
@@ -3,6 +3,7 @@ package com.example.emr_server.controller;
 import com.example.emr_server.controller.dto.PatientDto;
 import com.example.emr_server.controller.dto.request.PatientCreateRequest;
 import com.example.emr_server.controller.dto.request.PatientUpdateRequest;
+import com.example.emr_server.controller.dto.CursorPage;
 import com.example.emr_server.entity.Patient;
 import com.example.emr_server.service.PatientService;
 import com.example.emr_server.util.PageUtils;
@@ -35,6 +36,7 @@ public class PatientController {
     public ResponseEntity<Page<PatientDto>> getAllPacjenci(
             @RequestParam Optional<String> firstName,
             @RequestParam Optional<String> lastName,
+            @RequestParam Optional<String> lastNamePrefix,
             @RequestParam Optional<String> pesel,
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) Optional<java.time.LocalDate> dobStart,
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) Optional<java.time.LocalDate> dobEnd,
@@ -44,11 +46,29 @@ public class PatientController {
             Pageable pageable
     ) {
         Page<PatientDto> page = patientService.searchVisible(
-                firstName, lastName, pesel, dobStart, dobEnd, gender, addressFragment, createdById, pageable
+                firstName, lastName, lastNamePrefix, pesel, dobStart, dobEnd, gender, addressFragment, createdById, pageable
         );
         return ResponseEntity.ok(page);
     }
 
+    // Tryb kursorowy (keyset): ?after=&size= – bez COUNT, kolejna strona przez kursor next
+    @GetMapping(params = "after")
+    public ResponseEntity<CursorPage<PatientDto>> getAllPacjenciAfter(
+            @RequestParam Optional<String> firstName,
+            @RequestParam Optional<String> lastName,
+            @RequestParam Optional<String> lastNamePrefix,
+            @RequestParam Optional<String> pesel,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) Optional<java.time.LocalDate> dobStart,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) Optional<java.time.LocalDate> dobEnd,
+            @RequestParam Optional<String> gender,
+            @RequestParam Optional<String> addressFragment,
+            @RequestParam Optional<java.util.UUID> createdById,
+            @RequestParam String after,
+            @RequestParam(defaultValue = "20") int size
+    ) {
+        return ResponseEntity.ok(patientService.scrollVisible(firstName, lastName, lastNamePrefix, pesel, dobStart, dobEnd, gender, addressFragment, createdById, after, size));
+    }
+
     // Pobierz pacjenta po ID (DTO, bez wycieku lazy asocjacji)
     @GetMapping("/{id}")
     public ResponseEntity<PatientDto> getPacjentById(@PathVariable UUID id) {
@@ -0,0 +1,73 @@
+package com.example.emr_server.controller;
+
+import com.example.emr_server.controller.dto.DuplicateCandidateDto;
+import com.example.emr_server.service.dedup.PatientDedupJob;
+import com.example.emr_server.service.dedup.PatientDuplicateService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.UUID;
+
+@RestController
+@RequestMapping("/api/admin/patients/duplicates")
+@Tag(name = "Duplikaty pacjentów", description = "Wykrywanie zduplikowanych rejestracji i przegląd kandydatów")
+public class PatientDuplicateController {
+
+    private final PatientDedupJob job;
+    private final PatientDuplicateService duplicateService;
+
+    public PatientDuplicateController(PatientDedupJob job, PatientDuplicateService duplicateService) {
+        this.job = job;
+        this.duplicateService = duplicateService;
+    }
+
+    // GET /api/admin/patients/duplicates?status=OPEN&limit=100
+    @GetMapping
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(summary = "Kandydaci na duplikaty", description = "Pary pacjentów od najwyższej oceny podobieństwa, z uzasadnieniem")
+    public ResponseEntity<List<DuplicateCandidateDto>> list(
+            @RequestParam(defaultValue = "OPEN") PatientDuplicateService.Status status,
+            @RequestParam(defaultValue = "100") int limit
+    ) {
+        return ResponseEntity.ok(duplicateService.list(status, limit));
+    }
+
+    // POST /api/admin/patients/duplicates/{patientA}/{patientB}?decision=REJECTED
+    @PostMapping("/{patientA}/{patientB}")
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(summary = "Oceń parę", description = "CONFIRMED – duplikat do scalenia, REJECTED – różne osoby; kolejne przebiegi nie zmieniają decyzji")
+    public ResponseEntity<DuplicateCandidateDto> review(@PathVariable UUID patientA, @PathVariable UUID patientB,
+                                                        @RequestParam PatientDuplicateService.Decision decision) {
+        return ResponseEntity.ok(duplicateService.review(patientA, patientB, decision));
+    }
+
+    @GetMapping("/run")
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(summary = "Postęp wykrywania", description = "Stan bieżącego / ostatniego przebiegu")
+    public ResponseEntity<PatientDedupJob.Progress> progress() {
+        return ResponseEntity.ok(job.progress());
+    }
+
+    // POST /api/admin/patients/duplicates/run?full=false
+    @PostMapping("/run")
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(summary = "Uruchom wykrywanie", description = "Przebieg w tle: przyrostowy (nowi pacjenci od ostatniego przebiegu), "
+            + "full=true – wszyscy pacjenci")
+    public ResponseEntity<PatientDedupJob.Progress> start(@RequestParam(defaultValue = "false") boolean full) {
+        boolean started = job.start(full);
+        return ResponseEntity.status(started ? HttpStatus.ACCEPTED : HttpStatus.CONFLICT).body(job.progress());
+    }
+
+    @DeleteMapping("/run")
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(summary = "Zatrzymaj wykrywanie", description = "Kończy bieżącą stronę; kolejny przebieg zaczyna od ostatniego ukończonego")
+    public ResponseEntity<PatientDedupJob.Progress> stop() {
+        job.stop();
+        return ResponseEntity.ok(job.progress());
+    }
+}
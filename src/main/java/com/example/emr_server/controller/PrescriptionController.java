@@ -4,12 +4,14 @@ import com.example.emr_server.controller.dto.PrescriptionDto;
 import com.example.emr_server.controller.dto.request.PrescriptionCreateRequest;
 import com.example.emr_server.controller.dto.request.PrescriptionUpdateRequest;
 import com.example.emr_server.controller.dto.request.PrescriptionItemRequest;
+import com.example.emr_server.controller.dto.CursorPage;
 import com.example.emr_server.entity.Patient;
 import com.example.emr_server.entity.Prescription;
 import com.example.emr_server.entity.PrescriptionMedication;
 import com.example.emr_server.entity.Medication;
 import com.example.emr_server.service.PrescriptionService;
 import com.example.emr_server.service.PrescriptionPdfService;
+import com.example.emr_server.service.export.ExportFormat;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
@@ -21,6 +23,7 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.time.LocalDate;
 import java.util.Optional;
@@ -53,6 +56,39 @@ public class PrescriptionController {
         return ResponseEntity.ok(page);
     }
 
+    // Tryb kursorowy (keyset): ?after=&size= – bez COUNT, kolejna strona przez kursor next
+    @GetMapping(params = "after")
+    public ResponseEntity<CursorPage<PrescriptionDto>> listAfter(
+            @RequestParam Optional<UUID> patientId,
+            @RequestParam Optional<UUID> doctorId,
+            @RequestParam Optional<Boolean> active,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) Optional<LocalDate> start,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) Optional<LocalDate> end,
+            @RequestParam String after,
+            @RequestParam(defaultValue = "20") int size
+    ) {
+        return ResponseEntity.ok(prescriptionService.scrollVisible(patientId, doctorId, active, start, end, after, size));
+    }
+
+    // Eksport strumieniowy (NDJSON/CSV) – te same filtry co lista, bez limitu wierszy
+    @GetMapping("/export")
+    @Operation(summary = "Eksport recept", description = "Strumieniowy eksport widocznych recept (format=ndjson|csv)")
+    public ResponseEntity<StreamingResponseBody> export(
+            @RequestParam Optional<UUID> patientId,
+            @RequestParam Optional<UUID> doctorId,
+            @RequestParam Optional<Boolean> active,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) Optional<LocalDate> start,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) Optional<LocalDate> end,
+            @RequestParam(defaultValue = "ndjson") String format
+    ) {
+        ExportFormat fmt = ExportFormat.parse(format);
+        StreamingResponseBody body = out -> prescriptionService.exportVisible(patientId, doctorId, active, start, end, fmt, out);
+        return ResponseEntity.ok()
+                .contentType(fmt.mediaType())
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + fmt.fileName("prescriptions"))
+                .body(body);
+    }
+
     // GET /api/recepty/{id}
     @GetMapping("/{id}")
     public ResponseEntity<PrescriptionDto> get(@PathVariable UUID id) {
@@ -0,0 +1,47 @@
+package com.example.emr_server.controller;
+
+import com.example.emr_server.security.SecurityMonitoringService.SecurityEventType;
+import com.example.emr_server.security.monitoring.SuspiciousActivityDetector;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+@RestController
+@RequestMapping("/api/admin/security")
+@Tag(name = "Monitoring bezpieczeństwa", description = "Podgląd wykrywania podejrzanej aktywności")
+public class SecurityMonitoringController {
+
+    private final SuspiciousActivityDetector detector;
+
+    public SecurityMonitoringController(SuspiciousActivityDetector detector) {
+        this.detector = detector;
+    }
+
+    // GET /api/admin/security/offenders?type=AUTHENTICATION_FAILURE&limit=10
+    @GetMapping("/offenders")
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(summary = "Najaktywniejsze źródła", description = "Top identyfikatorów (IP) per typ zdarzenia, liczniki ważone wiekiem")
+    public ResponseEntity<Map<SecurityEventType, List<SuspiciousActivityDetector.Offender>>> offenders(
+            @RequestParam Optional<SecurityEventType> type,
+            @RequestParam(defaultValue = "10") int limit
+    ) {
+        int n = Math.max(1, Math.min(limit, 100));
+        Map<SecurityEventType, List<SuspiciousActivityDetector.Offender>> out = new EnumMap<>(SecurityEventType.class);
+        if (type.isPresent()) {
+            out.put(type.get(), detector.topOffenders(type.get(), n));
+        } else {
+            for (SecurityEventType t : SecurityEventType.values()) {
+                List<SuspiciousActivityDetector.Offender> top = detector.topOffenders(t, n);
+                if (!top.isEmpty()) out.put(t, top);
+            }
+        }
+        return ResponseEntity.ok(out);
+    }
+}
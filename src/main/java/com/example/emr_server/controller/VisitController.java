@@ -3,8 +3,10 @@ package com.example.emr_server.controller;
 import com.example.emr_server.controller.dto.VisitDto;
 import com.example.emr_server.controller.dto.request.VisitCreateRequest;
 import com.example.emr_server.controller.dto.request.VisitUpdateRequest;
+import com.example.emr_server.controller.dto.CursorPage;
 import com.example.emr_server.entity.Visit;
 import com.example.emr_server.service.VisitService;
+import com.example.emr_server.service.export.ExportFormat;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
@@ -16,6 +18,7 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.nio.charset.StandardCharsets;
 import java.util.Optional;
@@ -52,6 +55,47 @@ public class VisitController {
         return ResponseEntity.ok(page);
     }
 
+    // Tryb kursorowy (keyset): ?after=&size= – bez COUNT, kolejna strona przez kursor next
+    @GetMapping(params = "after")
+    public ResponseEntity<CursorPage<VisitDto>> getAllVisitsAfter(
+            @RequestParam Optional<java.util.UUID> patientId,
+            @RequestParam Optional<java.util.UUID> doctorId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Optional<java.time.Instant> start,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Optional<java.time.Instant> end,
+            @RequestParam Optional<String> type,
+            @RequestParam Optional<String> diagnosis,
+            @RequestParam Optional<String> reason,
+            @RequestParam Optional<Boolean> confidential,
+            @RequestParam Optional<String> status,
+            @RequestParam String after,
+            @RequestParam(defaultValue = "20") int size
+    ) {
+        return ResponseEntity.ok(visitService.scrollVisible(patientId, doctorId, start, end, type, diagnosis, reason, confidential, status, after, size));
+    }
+
+    // Eksport strumieniowy (NDJSON/CSV) – te same filtry co lista, bez limitu wierszy
+    @GetMapping("/export")
+    @Operation(summary = "Eksport wizyt", description = "Strumieniowy eksport widocznych wizyt (format=ndjson|csv)")
+    public ResponseEntity<StreamingResponseBody> export(
+            @RequestParam Optional<java.util.UUID> patientId,
+            @RequestParam Optional<java.util.UUID> doctorId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Optional<java.time.Instant> start,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Optional<java.time.Instant> end,
+            @RequestParam Optional<String> type,
+            @RequestParam Optional<String> diagnosis,
+            @RequestParam Optional<String> reason,
+            @RequestParam Optional<Boolean> confidential,
+            @RequestParam Optional<String> status,
+            @RequestParam(defaultValue = "ndjson") String format
+    ) {
+        ExportFormat fmt = ExportFormat.parse(format);
+        StreamingResponseBody body = out -> visitService.exportVisible(patientId, doctorId, start, end, type, diagnosis, reason, confidential, status, fmt, out);
+        return ResponseEntity.ok()
+                .contentType(fmt.mediaType())
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + fmt.fileName("visits"))
+                .body(body);
+    }
+
     // Pobierz wizytę po ID (DTO)
     @GetMapping("/{id}")
     public ResponseEntity<VisitDto> getVisitById(@PathVariable UUID id) {
@@ -0,0 +1,13 @@
+package com.example.emr_server.controller.dto;
+
+import java.util.List;
+
+/**
+ * Strona w trybie kursorowym (keyset): next = kursor kolejnej strony lub null, gdy to ostatnia.
+ * Brak totalElements – tryb kursorowy nie wykonuje zapytania COUNT.
+ */
+public record CursorPage<T>(
+        List<T> content,
+        int size,
+        String next
+) {}
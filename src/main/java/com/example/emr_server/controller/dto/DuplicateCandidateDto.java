@@ -0,0 +1,15 @@
+package com.example.emr_server.controller.dto;
+
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+public record DuplicateCandidateDto(
+        UUID patientA,
+        UUID patientB,
+        double score,
+        String reasons,
+        String status,
+        OffsetDateTime foundAt,
+        UUID reviewedById,
+        OffsetDateTime reviewedAt
+) {}
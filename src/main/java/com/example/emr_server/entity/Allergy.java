@@ -1,7 +1,8 @@
 package com.example.emr_server.entity;
 
+import com.example.emr_server.entity.id.UuidV7;
 import com.example.emr_server.security.encryption.Encrypted;
-import com.example.emr_server.security.encryption.EncryptionEntityListener;
+import com.example.emr_server.security.encryption.PatientScoped;
 import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.Setter;
@@ -11,10 +12,10 @@ import java.util.UUID;
 @Getter
 @Setter
 @Entity
-@EntityListeners(EncryptionEntityListener.class)
 @Table(name = "allergies", schema = "emr")
-public class Allergy {
+public class Allergy implements PatientScoped {
     @Id
+    @UuidV7
     @Column(name = "id", nullable = false)
     private UUID id;
 
@@ -37,4 +38,8 @@ public class Allergy {
     @JoinColumn(name = "noted_by")
     private User notedBy;
 
+    @Override
+    public UUID patientScopeId() {
+        return patient != null ? patient.getId() : null;
+    }
 }
\ No newline at end of file
@@ -1,7 +1,8 @@
 package com.example.emr_server.entity;
 
+import com.example.emr_server.entity.id.UuidV7;
 import com.example.emr_server.security.encryption.Encrypted;
-import com.example.emr_server.security.encryption.EncryptionEntityListener;
+import com.example.emr_server.security.encryption.PatientScoped;
 import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.Setter;
@@ -13,10 +14,10 @@ import java.util.UUID;
 @Getter
 @Setter
 @Entity
-@EntityListeners(EncryptionEntityListener.class)
 @Table(name = "chronic_diseases", schema = "emr")
-public class ChronicDisease {
+public class ChronicDisease implements PatientScoped {
     @Id
+    @UuidV7
     @ColumnDefault("gen_random_uuid()")
     @Column(name = "id", nullable = false)
     private UUID id;
@@ -36,4 +37,8 @@ public class ChronicDisease {
     @Column(name = "notes", length = Integer.MAX_VALUE)
     private String notes;
 
+    @Override
+    public UUID patientScopeId() {
+        return patient != null ? patient.getId() : null;
+    }
 }
\ No newline at end of file
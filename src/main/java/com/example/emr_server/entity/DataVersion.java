@@ -1,5 +1,6 @@
 package com.example.emr_server.entity;
 
+import com.example.emr_server.entity.id.UuidV7;
 import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.Setter;
@@ -17,6 +18,7 @@ import java.util.UUID;
 @Table(name = "data_versions", schema = "emr")
 public class DataVersion {
     @Id
+    @UuidV7
     @ColumnDefault("gen_random_uuid()")
     @Column(name = "id", nullable = false)
     private UUID id;
@@ -1,7 +1,8 @@
 package com.example.emr_server.entity;
 
+import com.example.emr_server.entity.id.UuidV7;
 import com.example.emr_server.security.encryption.Encrypted;
-import com.example.emr_server.security.encryption.EncryptionEntityListener;
+import com.example.emr_server.security.encryption.PatientScoped;
 import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.Setter;
@@ -13,10 +14,10 @@ import java.util.UUID;
 @Getter
 @Setter
 @Entity
-@EntityListeners(EncryptionEntityListener.class)
 @Table(name = "lab_results", schema = "emr")
-public class LabResult {
+public class LabResult implements PatientScoped {
     @Id
+    @UuidV7
     @ColumnDefault("gen_random_uuid()")
     @Column(name = "id", nullable = false)
     private UUID id;
@@ -51,4 +52,8 @@ public class LabResult {
     @Column(name = "status", length = 20)
     private String status;
 
+    @Override
+    public UUID patientScopeId() {
+        return patient != null ? patient.getId() : null;
+    }
 }
\ No newline at end of file
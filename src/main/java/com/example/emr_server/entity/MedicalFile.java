@@ -1,9 +1,11 @@
 package com.example.emr_server.entity;
 
+import com.example.emr_server.entity.id.UuidV7;
 import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.Setter;
 import org.hibernate.annotations.ColumnDefault;
+import org.hibernate.annotations.CreationTimestamp;
 
 import java.time.Instant;
 import java.util.UUID;
@@ -14,6 +16,7 @@ import java.util.UUID;
 @Table(name = "medical_files", schema = "emr")
 public class MedicalFile {
     @Id
+    @UuidV7
     @ColumnDefault("gen_random_uuid()")
     @Column(name = "id", nullable = false)
     private UUID id;
@@ -36,7 +39,8 @@ public class MedicalFile {
     private String mimeType;
 
     @ColumnDefault("CURRENT_TIMESTAMP")
-    @Column(name = "uploaded_at")
+    @CreationTimestamp
+    @Column(name = "uploaded_at", nullable = false, updatable = false)
     private Instant uploadedAt;
 
 }
\ No newline at end of file
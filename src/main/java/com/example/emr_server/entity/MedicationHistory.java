@@ -1,12 +1,12 @@
 package com.example.emr_server.entity;
 
+import com.example.emr_server.entity.id.UuidV7;
 import com.example.emr_server.security.encryption.Encrypted;
-import com.example.emr_server.security.encryption.EncryptionEntityListener;
+import com.example.emr_server.security.encryption.PatientScoped;
 import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.Setter;
 import org.hibernate.annotations.ColumnDefault;
-import org.hibernate.annotations.UuidGenerator;
 
 import java.time.LocalDate;
 import java.util.UUID;
@@ -14,12 +14,10 @@ import java.util.UUID;
 @Getter
 @Setter
 @Entity
-@EntityListeners(EncryptionEntityListener.class)
 @Table(name = "medication_history", schema = "emr")
-public class MedicationHistory {
+public class MedicationHistory implements PatientScoped {
     @Id
-    @GeneratedValue
-    @UuidGenerator
+    @UuidV7
     @ColumnDefault("gen_random_uuid()")
     @Column(name = "id", nullable = false)
     private UUID id;
@@ -44,4 +42,8 @@ public class MedicationHistory {
     @Column(name = "reason", length = Integer.MAX_VALUE)
     private String reason;
 
+    @Override
+    public UUID patientScopeId() {
+        return patient != null ? patient.getId() : null;
+    }
 }
\ No newline at end of file
@@ -1,10 +1,10 @@
 package com.example.emr_server.entity;
 
+import com.example.emr_server.entity.id.UuidV7;
 import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.Setter;
 import org.hibernate.annotations.ColumnDefault;
-import org.hibernate.annotations.UuidGenerator;
 
 import java.time.Instant;
 import java.time.LocalDate;
@@ -16,8 +16,7 @@ import java.util.UUID;
 @Table(name = "medication_packages", schema = "emr")
 public class MedicationPackage {
     @Id
-    @GeneratedValue
-    @UuidGenerator
+    @UuidV7
     @ColumnDefault("gen_random_uuid()")
     @Column(name = "id", nullable = false)
     private UUID id;
@@ -1,5 +1,6 @@
 package com.example.emr_server.entity;
 
+import com.example.emr_server.entity.id.UuidV7;
 import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.Setter;
@@ -15,6 +16,7 @@ import java.util.UUID;
 @Setter
 public class PasswordResetToken {
     @Id
+    @UuidV7
     private UUID id;
 
     @ManyToOne(fetch = FetchType.LAZY)
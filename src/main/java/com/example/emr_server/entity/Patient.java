@@ -1,10 +1,12 @@
 package com.example.emr_server.entity;
 
+import com.example.emr_server.entity.id.UuidV7;
 import com.example.emr_server.security.encryption.Encrypted;
-import com.example.emr_server.security.encryption.EncryptionEntityListener;
+import com.example.emr_server.security.encryption.PatientScoped;
 import jakarta.persistence.*;
 import lombok.Getter;
 import org.hibernate.annotations.ColumnDefault;
+import org.hibernate.annotations.CreationTimestamp;
 import org.hibernate.annotations.JdbcTypeCode;
 import org.hibernate.type.SqlTypes;
 
@@ -16,11 +18,10 @@ import java.util.UUID;
 
 @Getter
 @Entity
-@EntityListeners(EncryptionEntityListener.class)
 @Table(name = "patients", schema = "emr")
-public class Patient {
+public class Patient implements PatientScoped {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @UuidV7
     @ColumnDefault("gen_random_uuid()")
     @Column(name = "id", nullable = false)
     private UUID id;
@@ -56,7 +57,8 @@ public class Patient {
     private User createdBy;
 
     @ColumnDefault("CURRENT_TIMESTAMP")
-    @Column(name = "created_at")
+    @CreationTimestamp
+    @Column(name = "created_at", nullable = false, updatable = false)
     private Instant createdAt;
 
     public void setId(UUID id) {
@@ -98,4 +100,9 @@ public class Patient {
     public void setCreatedAt(Instant createdAt) {
         this.createdAt = createdAt;
     }
+
+    @Override
+    public UUID patientScopeId() {
+        return id;
+    }
 }
\ No newline at end of file
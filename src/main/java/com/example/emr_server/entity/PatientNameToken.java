@@ -0,0 +1,29 @@
+package com.example.emr_server.entity;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import org.hibernate.annotations.Immutable;
+
+import java.io.Serializable;
+import java.util.UUID;
+
+/**
+ * Token indeksu ślepego nazwiska – mapowany tylko do podzapytań w kryteriach wyszukiwania pacjentów;
+ * zapisy wyłącznie przez PatientNameIndex.
+ */
+@Getter
+@Entity
+@Immutable
+@IdClass(PatientNameToken.Key.class)
+@Table(name = "patient_name_tokens", schema = "emr")
+public class PatientNameToken {
+    @Id
+    @Column(name = "token", nullable = false, length = 32)
+    private String token;
+
+    @Id
+    @Column(name = "patient_id", nullable = false)
+    private UUID patientId;
+
+    public record Key(String token, UUID patientId) implements Serializable {}
+}
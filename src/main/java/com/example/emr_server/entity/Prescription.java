@@ -1,12 +1,12 @@
 package com.example.emr_server.entity;
 
+import com.example.emr_server.entity.id.UuidV7;
 import com.example.emr_server.security.encryption.Encrypted;
-import com.example.emr_server.security.encryption.EncryptionEntityListener;
+import com.example.emr_server.security.encryption.PatientScoped;
 import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.Setter;
 import org.hibernate.annotations.ColumnDefault;
-import org.hibernate.annotations.UuidGenerator;
 
 import java.time.LocalDate;
 import java.util.ArrayList;
@@ -16,12 +16,10 @@ import java.util.UUID;
 @Getter
 @Setter
 @Entity
-@EntityListeners(EncryptionEntityListener.class)
 @Table(name = "prescriptions", schema = "emr")
-public class Prescription {
+public class Prescription implements PatientScoped {
     @Id
-    @GeneratedValue
-    @UuidGenerator
+    @UuidV7
     @ColumnDefault("gen_random_uuid()")
     @Column(name = "id", nullable = false)
     private UUID id;
@@ -70,4 +68,8 @@ public class Prescription {
     @Column(name = "is_repeatable")
     private Boolean isRepeatable;
 
+    @Override
+    public UUID patientScopeId() {
+        return patient != null ? patient.getId() : null;
+    }
 }
\ No newline at end of file
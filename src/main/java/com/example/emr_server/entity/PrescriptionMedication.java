@@ -1,25 +1,23 @@
 package com.example.emr_server.entity;
 
+import com.example.emr_server.entity.id.UuidV7;
 import com.example.emr_server.security.encryption.Encrypted;
-import com.example.emr_server.security.encryption.EncryptionEntityListener;
+import com.example.emr_server.security.encryption.PatientScoped;
 import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.Setter;
 import org.hibernate.annotations.ColumnDefault;
-import org.hibernate.annotations.UuidGenerator;
 
 import java.util.UUID;
 
 @Getter
 @Setter
 @Entity
-@EntityListeners(EncryptionEntityListener.class)
 @Table(name = "prescription_medications", schema = "emr")
-public class PrescriptionMedication {
+public class PrescriptionMedication implements PatientScoped {
 
     @Id
-    @GeneratedValue
-    @UuidGenerator
+    @UuidV7
     @ColumnDefault("gen_random_uuid()")
     @Column(name = "id", nullable = false)
     private UUID id;
@@ -41,4 +39,9 @@ public class PrescriptionMedication {
 
     @Column(name = "unit", length = 50)
     private String unit;
+
+    @Override
+    public UUID patientScopeId() {
+        return prescription != null ? prescription.patientScopeId() : null;
+    }
 }
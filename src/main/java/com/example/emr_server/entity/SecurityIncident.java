@@ -1,5 +1,6 @@
 package com.example.emr_server.entity;
 
+import com.example.emr_server.entity.id.UuidV7;
 import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.Setter;
@@ -14,6 +15,7 @@ import java.util.UUID;
 @Table(name = "security_incidents", schema = "emr")
 public class SecurityIncident {
     @Id
+    @UuidV7
     @ColumnDefault("gen_random_uuid()")
     @Column(name = "id", nullable = false)
     private UUID id;
@@ -37,5 +39,18 @@ public class SecurityIncident {
 
     @Column(name = "status", length = 20)
     private String status;
+
+    @ColumnDefault("1")
+    @Column(name = "occurrences", nullable = false)
+    private Integer occurrences = 1;
+
+    @Column(name = "first_seen_at")
+    private Instant firstSeenAt;
+
+    @Column(name = "last_seen_at")
+    private Instant lastSeenAt;
+
+    @Column(name = "source_ip", length = 45)
+    private String sourceIp;
 }
 
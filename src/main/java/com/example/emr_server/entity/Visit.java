@@ -1,7 +1,8 @@
 package com.example.emr_server.entity;
 
+import com.example.emr_server.entity.id.UuidV7;
 import com.example.emr_server.security.encryption.Encrypted;
-import com.example.emr_server.security.encryption.EncryptionEntityListener;
+import com.example.emr_server.security.encryption.PatientScoped;
 import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.Setter;
@@ -13,12 +14,12 @@ import java.time.Instant;
 import java.util.UUID;
 
 @Entity
-@EntityListeners(EncryptionEntityListener.class)
 @Getter
 @Setter
 @Table(name = "visits", schema = "emr")
-public class Visit {
+public class Visit implements PatientScoped {
     @Id
+    @UuidV7
     @ColumnDefault("gen_random_uuid()")
     @Column(name = "id", nullable = false)
     private UUID id;
@@ -71,4 +72,9 @@ public class Visit {
     public void setConfidential(Boolean confidential) {
         isConfidential = confidential;
     }
+
+    @Override
+    public UUID patientScopeId() {
+        return patient != null ? patient.getId() : null;
+    }
 }
\ No newline at end of file
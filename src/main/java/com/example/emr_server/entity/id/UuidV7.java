@@ -0,0 +1,19 @@
+package com.example.emr_server.entity.id;
+
+import org.hibernate.annotations.IdGeneratorType;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Identyfikator encji generowany w JVM jako UUIDv7 (RFC 9562): znacznik czasu w najstarszych bitach, więc
+ * kolejne wiersze trafiają na koniec indeksu B-tree, a Hibernate zna id przed INSERT i może batchować zapisy
+ * (w przeciwieństwie do IDENTITY / gen_random_uuid() po stronie bazy). Ręcznie ustawione id jest zachowywane.
+ */
+@IdGeneratorType(UuidV7Generator.class)
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.FIELD, ElementType.METHOD})
+public @interface UuidV7 {
+}
@@ -0,0 +1,51 @@
+package com.example.emr_server.entity.id;
+
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.generator.BeforeExecutionGenerator;
+import org.hibernate.generator.EventType;
+import org.hibernate.generator.EventTypeSets;
+
+import java.security.SecureRandom;
+import java.util.EnumSet;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generator dla {@link UuidV7}. Układ bitów: 48 bitów czasu unix w ms | wersja 7 | 12 bitów licznika |
+ * wariant | 62 bity losowe (SecureRandom – id pojawiają się w URL-ach, nie mogą być przewidywalne).
+ * Licznik zapewnia monotoniczność w obrębie JVM: kilka id w tej samej milisekundzie rośnie, a przepełnienie
+ * licznika przesuwa znacznik czasu o 1 ms do przodu zamiast cofać kolejność.
+ */
+public class UuidV7Generator implements BeforeExecutionGenerator {
+
+    private static final SecureRandom RNG = new SecureRandom();
+    // ostatnio wydane (ms << 12 | licznik)
+    private static final AtomicLong LAST = new AtomicLong();
+
+    @Override
+    public Object generate(SharedSessionContractImplementor session, Object owner, Object currentValue, EventType eventType) {
+        return currentValue != null ? currentValue : next();
+    }
+
+    @Override
+    public EnumSet<EventType> getEventTypes() {
+        return EventTypeSets.INSERT_ONLY;
+    }
+
+    @Override
+    public boolean allowAssignedIdentifiers() {
+        return true;
+    }
+
+    public static UUID next() {
+        return next(System.currentTimeMillis(), LAST);
+    }
+
+    static UUID next(long nowMillis, AtomicLong last) {
+        long candidate = nowMillis << 12;
+        long stamp = last.accumulateAndGet(candidate, (prev, now) -> now > prev ? now : prev + 1);
+        long msb = (stamp >>> 12) << 16 | 0x7000L | (stamp & 0xFFFL);
+        long lsb = RNG.nextLong() & 0x3FFFFFFFFFFFFFFFL | 0x8000000000000000L;
+        return new UUID(msb, lsb);
+    }
+}
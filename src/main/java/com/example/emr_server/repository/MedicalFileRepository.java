@@ -1,8 +1,11 @@
 package com.example.emr_server.repository;
 
 import com.example.emr_server.entity.MedicalFile;
+import com.example.emr_server.repository.projection.MedicalFileListRow;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.Instant;
@@ -20,6 +23,18 @@ public interface MedicalFileRepository extends JpaRepository<MedicalFile, UUID>,
      */
     List<MedicalFile> findByPatient_Id(UUID patientId);
 
+    /**
+     * Pobiera pliki pacjenta jako wiersze listy (projekcja kolumn DTO + twórca pacjenta do autoryzacji),
+     * bez ładowania encji MedicalFile/Patient.
+     *
+     * @param patientId UUID pacjenta
+     * @return wiersze listy plików pacjenta
+     */
+    @Query("select new com.example.emr_server.repository.projection.MedicalFileListRow("
+            + "f.id, p.id, f.uploadedBy.id, f.fileName, f.mimeType, f.uploadedAt, p.createdBy.id) "
+            + "from MedicalFile f join f.patient p where p.id = :patientId")
+    List<MedicalFileListRow> findListRowsByPatientId(@Param("patientId") UUID patientId);
+
     /**
      * Pobiera listę plików medycznych przesłanych przez określonego użytkownika.
      *
@@ -6,6 +6,7 @@ import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -16,35 +17,52 @@ public interface PatientRepository extends JpaRepository<Patient, UUID>, JpaSpec
     /**
      * Pobiera listę pacjentów z podanym imieniem.
      *
-     * @param firstName imię pacjenta
+     * @param firstNames szyfrogramy imienia we wszystkich kluczach (EncryptionService#deterministicCandidates)
      * @return lista pacjentów o wskazanym imieniu
      */
-    List<Patient> findByFirstName(String firstName);
+    List<Patient> findByFirstNameIn(Collection<String> firstNames);
 
     /**
      * Pobiera listę pacjentów z podanym nazwiskiem.
      *
-     * @param lastName nazwisko pacjenta
+     * @param lastNames szyfrogramy nazwiska we wszystkich kluczach
      * @return lista pacjentów o wskazanym nazwisku
      */
-    List<Patient> findByLastName(String lastName);
+    List<Patient> findByLastNameIn(Collection<String> lastNames);
 
     /**
      * Pobiera listę pacjentów na podstawie imienia i nazwiska.
      *
-     * @param firstName imię pacjenta
-     * @param lastName  nazwisko pacjenta
+     * @param firstNames szyfrogramy imienia we wszystkich kluczach
+     * @param lastNames  szyfrogramy nazwiska we wszystkich kluczach
      * @return lista pacjentów o podanym imieniu i nazwisku
      */
-    List<Patient> findByFirstNameAndLastName(String firstName, String lastName);
+    List<Patient> findByFirstNameInAndLastNameIn(Collection<String> firstNames, Collection<String> lastNames);
 
     /**
      * Pobiera pacjenta na podstawie numeru PESEL.
      *
-     * @param pesel numer PESEL pacjenta
+     * @param pesels szyfrogramy numeru PESEL we wszystkich kluczach
      * @return pacjent z danym numerem PESEL, jeśli istnieje
      */
-    Optional<Patient> findByPesel(String pesel);
+    Optional<Patient> findFirstByPeselIn(Collection<String> pesels);
+
+    /**
+     * Sprawdza, czy istnieje pacjent z danym numerem PESEL.
+     *
+     * @param pesels szyfrogramy numeru PESEL we wszystkich kluczach
+     * @return true, jeśli numer jest już zapisany
+     */
+    boolean existsByPeselIn(Collection<String> pesels);
+
+    /**
+     * Sprawdza, czy numer PESEL ma inny pacjent niż wskazany.
+     *
+     * @param pesels szyfrogramy numeru PESEL we wszystkich kluczach
+     * @param id     identyfikator pacjenta pomijanego w sprawdzeniu
+     * @return true, jeśli numer jest zapisany u innego pacjenta
+     */
+    boolean existsByPeselInAndIdNot(Collection<String> pesels, UUID id);
 
     /**
      * Pobiera listę pacjentów urodzonych w określonym przedziale dat.
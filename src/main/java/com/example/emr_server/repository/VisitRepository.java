@@ -11,7 +11,7 @@ import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
-public interface VisitRepository extends JpaRepository<Visit, UUID>, JpaSpecificationExecutor<Visit> {
+public interface VisitRepository extends JpaRepository<Visit, UUID>, JpaSpecificationExecutor<Visit>, VisitRepositoryCustom {
 
     // Wyszukiwanie wizyt po ID pacjenta
     List<Visit> findByPatient_Id(UUID patientId);
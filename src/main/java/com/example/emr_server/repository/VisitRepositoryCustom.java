@@ -0,0 +1,13 @@
+package com.example.emr_server.repository;
+
+import com.example.emr_server.controller.dto.VisitDto;
+import com.example.emr_server.entity.Visit;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.domain.Specification;
+
+public interface VisitRepositoryCustom {
+
+    // Strona wizyt jako VisitDto (projekcja kolumn, bez encji) – listy tylko do odczytu
+    Page<VisitDto> findDtos(Specification<Visit> spec, Pageable pageable);
+}
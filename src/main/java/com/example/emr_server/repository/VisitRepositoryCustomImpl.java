@@ -0,0 +1,40 @@
+package com.example.emr_server.repository;
+
+import com.example.emr_server.controller.dto.VisitDto;
+import com.example.emr_server.entity.Visit;
+import com.example.emr_server.repository.projection.SpecificationProjections;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.hibernate.query.criteria.JpaExpression;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+@Transactional(readOnly = true)
+public class VisitRepositoryCustomImpl implements VisitRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager em;
+
+    @Override
+    public Page<VisitDto> findDtos(Specification<Visit> spec, Pageable pageable) {
+        // kolejność jak w konstruktorze VisitDto; patient.id/doctor.id to klucze obce – bez złączeń
+        return SpecificationProjections.page(em, Visit.class, spec, pageable, VisitDto.class, v -> List.of(
+                v.get("id"),
+                v.get("patient").get("id"),
+                v.get("doctor").get("id"),
+                v.get("visitDate"),
+                v.get("endDate"),
+                v.get("visitType"),
+                v.get("reason"),
+                v.get("diagnosis"),
+                v.get("notes"),
+                v.get("isConfidential"),
+                // as(String.class) nie rzutuje w SQL – cast() daje nazwę enuma zapisaną w kolumnie (EnumType.STRING)
+                ((JpaExpression<?>) v.get("status")).cast(String.class)
+        ));
+    }
+}
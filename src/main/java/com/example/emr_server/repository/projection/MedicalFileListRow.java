@@ -0,0 +1,24 @@
+package com.example.emr_server.repository.projection;
+
+import com.example.emr_server.controller.dto.MedicalFileDto;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Wiersz listy plików medycznych: kolumny MedicalFileDto oraz twórca pacjenta (created_by) potrzebny
+ * do AuthorizationService.canReadPatient bez ładowania encji Patient i deszyfrowania jej pól.
+ */
+public record MedicalFileListRow(
+        UUID id,
+        UUID patientId,
+        UUID uploadedById,
+        String fileName,
+        String mimeType,
+        Instant uploadedAt,
+        UUID patientCreatedById
+) {
+    public MedicalFileDto toDto() {
+        return new MedicalFileDto(id, patientId, uploadedById, fileName, mimeType, uploadedAt);
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.emr_server.repository.projection;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.TypedQuery;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Selection;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+import org.springframework.data.support.PageableExecutionUtils;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Stronicowanie z tą samą Specification co findAll(spec, pageable), ale z wyrażeniem konstruktora DTO zamiast
+ * encji: baza zwraca tylko kolumny DTO, Hibernate nie tworzy encji, proxy asocjacji ani snapshotów do
+ * dirty-checkingu, a deszyfrowane są wyłącznie wybrane kolumny @Encrypted.
+ */
+public final class SpecificationProjections {
+    private SpecificationProjections() {}
+
+    public static <E, D> Page<D> page(EntityManager em,
+                                      Class<E> entityType,
+                                      Specification<E> spec,
+                                      Pageable pageable,
+                                      Class<D> dtoType,
+                                      Function<Root<E>, List<Selection<?>>> columns) {
+        CriteriaBuilder cb = em.getCriteriaBuilder();
+        CriteriaQuery<D> query = cb.createQuery(dtoType);
+        Root<E> root = query.from(entityType);
+        query.select(cb.construct(dtoType, columns.apply(root).toArray(Selection[]::new)));
+        Predicate where = spec.toPredicate(root, query, cb);
+        if (where != null) query.where(where);
+        if (pageable.getSort().isSorted()) query.orderBy(QueryUtils.toOrders(pageable.getSort(), root, cb));
+
+        TypedQuery<D> typed = em.createQuery(query);
+        if (pageable.isPaged()) {
+            typed.setFirstResult(Math.toIntExact(pageable.getOffset()));
+            typed.setMaxResults(pageable.getPageSize());
+        }
+        // COUNT tylko gdy z treści strony nie da się wyznaczyć sumy (jak w SimpleJpaRepository)
+        return PageableExecutionUtils.getPage(typed.getResultList(), pageable, () -> count(em, entityType, spec));
+    }
+
+    private static <E> long count(EntityManager em, Class<E> entityType, Specification<E> spec) {
+        CriteriaBuilder cb = em.getCriteriaBuilder();
+        CriteriaQuery<Long> query = cb.createQuery(Long.class);
+        Root<E> root = query.from(entityType);
+        Predicate where = spec.toPredicate(root, query, cb);
+        if (where != null) query.where(where);
+        query.select(query.isDistinct() ? cb.countDistinct(root) : cb.count(root));
+        return em.createQuery(query).getSingleResult();
+    }
+}
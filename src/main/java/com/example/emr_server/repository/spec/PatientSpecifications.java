@@ -1,19 +1,24 @@
 package com.example.emr_server.repository.spec;
 
 import com.example.emr_server.entity.Patient;
+import com.example.emr_server.entity.PatientNameToken;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Subquery;
 import org.springframework.data.jpa.domain.Specification;
 
 import java.time.LocalDate;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
 public final class PatientSpecifications {
     private PatientSpecifications() {}
 
+    /** encFirstName / encLastName / encPesel – szyfrogramy wartości we wszystkich kluczach pierścienia. */
     public static Specification<Patient> withFilters(
-            Optional<String> encFirstName,
-            Optional<String> encLastName,
-            Optional<String> encPesel,
+            Optional<List<String>> encFirstName,
+            Optional<List<String>> encLastName,
+            Optional<List<String>> encPesel,
             Optional<LocalDate> dobStart,
             Optional<LocalDate> dobEnd,
             Optional<String> gender,
@@ -22,13 +27,13 @@ public final class PatientSpecifications {
     ) {
         Specification<Patient> spec = Specification.where(null);
         if (encFirstName != null && encFirstName.isPresent()) {
-            spec = spec.and((root, q, cb) -> cb.equal(root.get("firstName"), encFirstName.get()));
+            spec = spec.and((root, q, cb) -> root.get("firstName").in(encFirstName.get()));
         }
         if (encLastName != null && encLastName.isPresent()) {
-            spec = spec.and((root, q, cb) -> cb.equal(root.get("lastName"), encLastName.get()));
+            spec = spec.and((root, q, cb) -> root.get("lastName").in(encLastName.get()));
         }
         if (encPesel != null && encPesel.isPresent()) {
-            spec = spec.and((root, q, cb) -> cb.equal(root.get("pesel"), encPesel.get()));
+            spec = spec.and((root, q, cb) -> root.get("pesel").in(encPesel.get()));
         }
         if (dobStart != null && dobStart.isPresent() && dobEnd != null && dobEnd.isPresent()) {
             spec = spec.and((root, q, cb) -> cb.between(root.get("dateOfBirth"), dobStart.get(), dobEnd.get()));
@@ -49,5 +54,14 @@ public final class PatientSpecifications {
         }
         return spec;
     }
-}
 
+    /** Pacjenci, których nazwisko ma wyszukiwany prefiks – tokeny z PatientNameIndex.queryTokens, jedno podzapytanie po PK indeksu. */
+    public static Specification<Patient> lastNameTokens(List<String> tokens) {
+        return (root, q, cb) -> {
+            Subquery<UUID> matching = q.subquery(UUID.class);
+            Root<PatientNameToken> t = matching.from(PatientNameToken.class);
+            matching.select(t.get("patientId")).where(t.get("token").in(tokens));
+            return root.get("id").in(matching);
+        };
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.emr_server.repository.spec;
+
+import com.example.emr_server.entity.Patient;
+import com.example.emr_server.entity.PatientConsent;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Subquery;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Predykaty widoczności pacjenta wykonywane w bazie (odpowiednik AuthorizationService.canReadPatient):
+ * twórca pacjenta LUB aktywna (nieodwołana, nieprzedawniona) zgoda w patient_consents dla użytkownika.
+ * Decyzja o roli (admin / rola kliniczna) należy do AuthorizationService.
+ */
+public final class VisibilitySpecifications {
+    private VisibilitySpecifications() {}
+
+    public static Specification<Patient> patientCreatedByOrConsented(UUID userId, String scope) {
+        return (root, q, cb) -> createdByOrConsented(root, q, cb, userId, scope);
+    }
+
+    /** Dla encji powiązanych z pacjentem przez atrybut "patient" (wizyty, recepty, wyniki, pliki...). */
+    public static <T> Specification<T> viaPatientCreatedByOrConsented(UUID userId, String scope) {
+        return (root, q, cb) -> createdByOrConsented(root.get("patient"), q, cb, userId, scope);
+    }
+
+    public static <T> Specification<T> none() {
+        return (root, q, cb) -> cb.disjunction();
+    }
+
+    private static Predicate createdByOrConsented(Path<?> patient, CriteriaQuery<?> q, CriteriaBuilder cb,
+                                                  UUID userId, String scope) {
+        Subquery<Integer> consent = q.subquery(Integer.class);
+        Root<PatientConsent> c = consent.from(PatientConsent.class);
+        consent.select(cb.literal(1)).where(
+                cb.equal(c.get("patient"), patient),
+                cb.equal(c.get("grantedTo").get("id"), userId),
+                cb.equal(c.get("scope"), scope),
+                cb.isNull(c.get("revokedAt")),
+                cb.or(cb.isNull(c.get("expiresAt")), cb.greaterThan(c.<Instant>get("expiresAt"), Instant.now()))
+        );
+        return cb.or(
+                cb.equal(patient.get("createdBy").get("id"), userId),
+                cb.exists(consent)
+        );
+    }
+}
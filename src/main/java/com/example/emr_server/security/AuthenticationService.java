@@ -51,6 +51,7 @@ public class AuthenticationService {
     private final PasswordPolicyService passwordPolicyService;
     private final MfaService mfaService;
     private final PasswordResetTokenRepository passwordResetTokenRepository; // nowe
+    private final PrincipalCache principalCache;
 
     @Value("${security.jwt.refresh-ttl-days}")
     private long refreshTtlDays;
@@ -203,6 +204,7 @@ public class AuthenticationService {
         sessionRepository.findByRefreshTokenHash(hash).ifPresent(s -> {
             s.setRevokedAt(Instant.now());
             sessionRepository.save(s);
+            principalCache.invalidate(s.getUser().getId());
             createAudit(s.getUser(), "LOGOUT", "Wylogowanie / unieważnienie refresh");
         });
     }
@@ -236,6 +238,7 @@ public class AuthenticationService {
         if (session.getRevokedAt() == null) {
             session.setRevokedAt(Instant.now());
             sessionRepository.save(session);
+            principalCache.invalidate(current.getId());
             createAudit(current, "SESSION_REVOKE", "Revokacja sesji " + sessionId);
         }
     }
@@ -260,7 +263,6 @@ public class AuthenticationService {
         // Zapis starego hasła do historii (jeśli istnieje)
         if (user.getPasswordHash() != null) {
             PasswordHistory ph = new PasswordHistory();
-            ph.setId(UUID.randomUUID());
             ph.setUser(user);
             ph.setPasswordHash(user.getPasswordHash());
             ph.setPasswordAlgo(user.getPasswordAlgo() == null ? "bcrypt" : user.getPasswordAlgo());
@@ -274,6 +276,7 @@ public class AuthenticationService {
         user.setLastPasswordChange(Instant.now());
         user.setFailedLoginAttempts(0);
         userRepository.save(user);
+        principalCache.invalidate(user.getId());
         createAudit(user, "PASSWORD_CHANGE", "Zmiana hasła");
     }
 
@@ -302,7 +305,6 @@ public class AuthenticationService {
         String tokenRaw = java.util.Base64.getUrlEncoder().withoutPadding().encodeToString(raw);
         String tokenHash = HashUtil.sha256Base64(tokenRaw);
         com.example.emr_server.entity.PasswordResetToken prt = new com.example.emr_server.entity.PasswordResetToken();
-        prt.setId(java.util.UUID.randomUUID());
         prt.setUser(user);
         prt.setTokenHash(tokenHash);
         prt.setExpiresAt(Instant.now().plus(15, ChronoUnit.MINUTES));
@@ -337,7 +339,6 @@ public class AuthenticationService {
         // Historia
         if (user.getPasswordHash() != null) {
             PasswordHistory ph = new PasswordHistory();
-            ph.setId(UUID.randomUUID());
             ph.setUser(user);
             ph.setPasswordHash(user.getPasswordHash());
             ph.setPasswordAlgo(user.getPasswordAlgo() == null ? "bcrypt" : user.getPasswordAlgo());
@@ -356,6 +357,7 @@ public class AuthenticationService {
         // Revoke wszystkie sesje
         var sessions = sessionRepository.findByUserAndRevokedAtIsNullAndExpiresAtAfterOrderByExpiresAtDesc(user, Instant.now());
         sessions.forEach(s -> { s.setRevokedAt(Instant.now()); sessionRepository.save(s); });
+        principalCache.invalidate(user.getId());
         createAudit(user, "PASSWORD_RESET_SUCCESS", "Reset hasła zakończony sukcesem (IP=" + ip + ")");
         log.info("PASSWORD_RESET_SUCCESS user={} ip={}", user.getUsername(), ip);
     }
@@ -372,7 +374,6 @@ public class AuthenticationService {
 
     private void recordAttempt(User user, boolean success, String ip, String userNameOrEmail) {
         UserLoginAttempt attempt = new UserLoginAttempt();
-        attempt.setId(UUID.randomUUID());
         attempt.setUser(user);
         attempt.setSuccess(success);
         attempt.setIp(ip);
@@ -392,6 +393,7 @@ public class AuthenticationService {
         if (recentFails >= authProps.getMaxFailed()) {
             user.setAccountLocked(true);
             userRepository.save(user);
+            principalCache.invalidate(user.getId());
             createIncident(user, "high", "ACCOUNT_LOCK", "Zablokowano po " + recentFails + " nieudanych próbach w oknie");
             createAudit(user, "ACCOUNT_LOCK", "Konto zablokowane po nieudanych logowaniach");
         }
@@ -399,7 +401,6 @@ public class AuthenticationService {
 
     private void createIncident(User user, String severity, String category, String description) {
         SecurityIncident si = new SecurityIncident();
-        si.setId(UUID.randomUUID());
         si.setDetectedAt(Instant.now());
         si.setSeverity(severity);
         si.setCategory(category);
@@ -431,7 +432,6 @@ public class AuthenticationService {
         String refreshHash = HashUtil.sha256Base64(refreshRaw);
         Instant now = Instant.now();
         UserSession session = new UserSession();
-        session.setId(UUID.randomUUID());
         session.setUser(user);
         session.setIssuedAt(now);
         session.setExpiresAt(now.plus(refreshTtlDays, ChronoUnit.DAYS));
@@ -463,6 +463,7 @@ public class AuthenticationService {
         User user = currentUser();
         try {
             var start = mfaService.startSetup(user);
+            principalCache.invalidate(user.getId());
             createAudit(user, "MFA_SETUP_START", "Rozpoczęcie konfiguracji MFA");
             return MfaSetupResponse.builder()
                     .secret(start.secret())
@@ -481,6 +482,7 @@ public class AuthenticationService {
         User user = currentUser();
         try {
             var result = mfaService.confirmSetup(user, req.getCode());
+            principalCache.invalidate(user.getId());
             createAudit(user, "MFA_SETUP_CONFIRM", "Potwierdzenie konfiguracji MFA");
             return MfaConfirmResponse.builder()
                     .enabled(result.enabled())
@@ -498,6 +500,7 @@ public class AuthenticationService {
             throw new org.springframework.web.server.ResponseStatusException(org.springframework.http.HttpStatus.BAD_REQUEST, "MFA nieaktywne");
         }
         mfaService.disable(user);
+        principalCache.invalidate(user.getId());
         createAudit(user, "MFA_DISABLE", "Wyłączenie MFA");
     }
     // ================= END MFA API =============
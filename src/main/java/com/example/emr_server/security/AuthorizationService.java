@@ -1,74 +1,126 @@
 package com.example.emr_server.security;
 
 import com.example.emr_server.entity.Patient;
-import com.example.emr_server.entity.PatientConsent;
 import com.example.emr_server.entity.User;
-import com.example.emr_server.repository.PatientConsentRepository;
+import com.example.emr_server.repository.spec.VisibilitySpecifications;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 
-import java.time.Instant;
 import java.util.Locale;
 import java.util.Set;
+import java.util.UUID;
 
 @Service
 public class AuthorizationService {
 
-    private final PatientConsentRepository consentRepository;
+    private final ConsentCache consentCache;
 
     private static final Set<String> ADMIN_OR_SYSTEM = Set.of("admin");
     private static final Set<String> CLINICAL_ROLES = Set.of("doctor","nurse","lab_tech");
 
-    public AuthorizationService(PatientConsentRepository consentRepository) {
-        this.consentRepository = consentRepository;
+    /** Podstawa decyzji – tag "reason" w authz.decisions (bez identyfikatorów użytkownika/pacjenta). */
+    private enum Reason { ADMIN, CREATOR, CONSENT, DENIED }
+    private enum Action { READ, WRITE, DELETE }
+
+    private final Counter[][] decisions = new Counter[Action.values().length][Reason.values().length];
+
+    public AuthorizationService(ConsentCache consentCache, MeterRegistry meterRegistry) {
+        this.consentCache = consentCache;
+        for (Action action : Action.values()) {
+            for (Reason reason : Reason.values()) {
+                decisions[action.ordinal()][reason.ordinal()] = Counter.builder("authz.decisions")
+                        .tag("action", action.name().toLowerCase(Locale.ROOT))
+                        .tag("outcome", reason == Reason.DENIED ? "denied" : "allowed")
+                        .tag("reason", reason.name().toLowerCase(Locale.ROOT))
+                        .register(meterRegistry);
+            }
+        }
     }
 
     public boolean canReadPatient(User user, Patient patient) {
-        if (user == null) return false;
-        String role = user.getRole();
-        if (role != null) role = role.toLowerCase(Locale.ROOT);
-        if (ADMIN_OR_SYSTEM.contains(role)) return true;
-        if (CLINICAL_ROLES.contains(role)) {
-            if (isCreator(user, patient)) return true;
-            if (hasActiveConsent(user, patient, "read")) return true;
-        }
-        return false;
+        return record(Action.READ, decide(user, patient, "read"));
+    }
+
+    /**
+     * Jak canReadPatient, dla list z projekcji DTO: identyfikator pacjenta i jego twórcy pochodzą z zapytania,
+     * więc encja Patient nie jest ładowana (ani deszyfrowana).
+     */
+    public boolean canReadPatient(User user, UUID patientId, UUID patientCreatedById) {
+        Reason byRole = byRole(user);
+        return record(Action.READ, byRole != null ? byRole : byRelation(user, patientId, patientCreatedById, "read"));
+    }
+
+    /**
+     * Specyfikacja pacjentów widocznych dla użytkownika – ta sama reguła co canReadPatient,
+     * ale wykonywana w zapytaniu (paginacja, sortowanie i count po stronie bazy).
+     */
+    public Specification<Patient> readablePatients(User user) {
+        String role = roleOf(user);
+        if (role == null) return VisibilitySpecifications.none();
+        if (ADMIN_OR_SYSTEM.contains(role)) return Specification.where(null);
+        if (CLINICAL_ROLES.contains(role)) return VisibilitySpecifications.patientCreatedByOrConsented(user.getId(), "read");
+        return VisibilitySpecifications.none();
+    }
+
+    /** Jak readablePatients, dla encji wskazujących pacjenta atrybutem "patient". */
+    public <T> Specification<T> readableViaPatient(User user) {
+        String role = roleOf(user);
+        if (role == null) return VisibilitySpecifications.none();
+        if (ADMIN_OR_SYSTEM.contains(role)) return Specification.where(null);
+        if (CLINICAL_ROLES.contains(role)) return VisibilitySpecifications.viaPatientCreatedByOrConsented(user.getId(), "read");
+        return VisibilitySpecifications.none();
     }
 
     public boolean canWritePatient(User user, Patient patient) {
-        if (user == null) return false;
-        String role = user.getRole();
-        if (role != null) role = role.toLowerCase(Locale.ROOT);
-        if (ADMIN_OR_SYSTEM.contains(role)) return true;
-        if (CLINICAL_ROLES.contains(role)) {
-            if (isCreator(user, patient)) return true;
-            if (hasActiveConsent(user, patient, "write")) return true;
-        }
-        return false;
+        return record(Action.WRITE, decide(user, patient, "write"));
     }
 
     public boolean canDeletePatient(User user, Patient patient) {
-        if (user == null) return false;
-        String role = user.getRole();
-        if (role != null) role = role.toLowerCase(Locale.ROOT);
-        if (ADMIN_OR_SYSTEM.contains(role)) return true;
         // bardziej restrykcyjne: tylko admin; ewentualnie lekarz-twórca + consent typu admin_delete
-        return false;
+        String role = roleOf(user);
+        return record(Action.DELETE, role != null && ADMIN_OR_SYSTEM.contains(role) ? Reason.ADMIN : Reason.DENIED);
     }
 
-    private boolean isCreator(User user, Patient patient) {
+    private Reason decide(User user, Patient patient, String scope) {
+        Reason byRole = byRole(user);
+        if (byRole != null) return byRole;
+        return byRelation(user, patient != null ? patient.getId() : null, createdById(patient), scope);
+    }
+
+    /** Decyzja wynikająca z samej roli; null = rola kliniczna, decyduje relacja z pacjentem. */
+    private Reason byRole(User user) {
+        String role = roleOf(user);
+        if (role == null) return Reason.DENIED;
+        if (ADMIN_OR_SYSTEM.contains(role)) return Reason.ADMIN;
+        return CLINICAL_ROLES.contains(role) ? null : Reason.DENIED;
+    }
+
+    private Reason byRelation(User user, UUID patientId, UUID createdById, String scope) {
+        if (createdById != null && createdById.equals(user.getId())) return Reason.CREATOR;
+        if (patientId != null && consentCache.hasActiveConsent(user, patientId, scope)) return Reason.CONSENT;
+        return Reason.DENIED;
+    }
+
+    private boolean record(Action action, Reason reason) {
+        decisions[action.ordinal()][reason.ordinal()].increment();
+        return reason != Reason.DENIED;
+    }
+
+    private String roleOf(User user) {
+        if (user == null || user.getRole() == null) return null;
+        return user.getRole().toLowerCase(Locale.ROOT);
+    }
+
+    private static UUID createdById(Patient patient) {
         try {
-            return patient.getCreatedBy() != null && patient.getCreatedBy().getId().equals(user.getId());
+            return patient != null && patient.getCreatedBy() != null ? patient.getCreatedBy().getId() : null;
         } catch (Exception e) {
-            return false;
+            return null;
         }
     }
 
-    private boolean hasActiveConsent(User user, Patient patient, String scope) {
-        return consentRepository.findByPatientAndGrantedToAndScopeAndRevokedAtIsNull(patient, user, scope)
-                .filter(c -> c.getRevokedAt() == null || c.getRevokedAt().isAfter(Instant.now()))
-                .isPresent();
-    }
-
     public void assertCanRead(User user, Patient patient) {
         if (!canReadPatient(user, patient)) throw new SecurityException("Brak uprawnień do odczytu pacjenta");
     }
@@ -0,0 +1,115 @@
+package com.example.emr_server.security;
+
+import com.example.emr_server.entity.PatientConsent;
+import com.example.emr_server.entity.User;
+import com.example.emr_server.repository.PatientConsentRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Cache aktywnych zgód (patient_consents) per użytkownik: scope -> (patientId -> expiresAt).
+ * Jedno zapytanie na użytkownika zamiast jednego na każdy sprawdzany wiersz.
+ * Wpis wygasa najpóźniej przy najbliższym expiresAt (oraz po TTL), a przy odczycie
+ * expiresAt jest i tak porównywany z bieżącym czasem – wygaśnięcie BTG działa co do sekundy.
+ * Zapisy zgód muszą wołać {@link #invalidate(UUID)}.
+ */
+@Component
+public class ConsentCache {
+
+    private record ActiveConsents(Map<String, Map<UUID, Instant>> byScope, Instant nextExpiry) {
+        boolean has(UUID patientId, String scope, Instant now) {
+            Map<UUID, Instant> patients = byScope.get(scope);
+            if (patients == null || !patients.containsKey(patientId)) return false;
+            return patients.get(patientId).isAfter(now);
+        }
+    }
+
+    private final PatientConsentRepository consentRepository;
+    private final Cache<UUID, ActiveConsents> cache;
+    private final Timer loadLatency;
+
+    public ConsentCache(PatientConsentRepository consentRepository,
+                        MeterRegistry meterRegistry,
+                        @Value("${security.authz.consent-cache.ttl:PT5M}") Duration ttl,
+                        @Value("${security.authz.consent-cache.max-size:10000}") long maxSize) {
+        this.consentRepository = consentRepository;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new Expiry<UUID, ActiveConsents>() {
+                    @Override
+                    public long expireAfterCreate(UUID key, ActiveConsents value, long currentTime) {
+                        Duration untilNext = Duration.between(Instant.now(), value.nextExpiry());
+                        return Math.max(0, (untilNext.compareTo(ttl) < 0 ? untilNext : ttl).toNanos());
+                    }
+                    @Override
+                    public long expireAfterUpdate(UUID key, ActiveConsents value, long currentTime, long currentDuration) {
+                        return expireAfterCreate(key, value, currentTime);
+                    }
+                    @Override
+                    public long expireAfterRead(UUID key, ActiveConsents value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "authz.consents");
+        this.loadLatency = Timer.builder("authz.consents.load").register(meterRegistry);
+    }
+
+    public boolean hasActiveConsent(User user, UUID patientId, String scope) {
+        if (user == null || user.getId() == null || patientId == null) return false;
+        return cache.get(user.getId(), id -> load(user)).has(patientId, scope, Instant.now());
+    }
+
+    /** Unieważnienie zgód użytkownika – po commicie bieżącej transakcji (lub od razu, gdy jej brak). */
+    public void invalidate(UUID userId) {
+        if (userId == null) return;
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    cache.invalidate(userId);
+                }
+            });
+        } else {
+            cache.invalidate(userId);
+        }
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    private ActiveConsents load(User user) {
+        return loadLatency.record(() -> query(user));
+    }
+
+    private ActiveConsents query(User user) {
+        Instant now = Instant.now();
+        Instant nextExpiry = Instant.MAX;
+        Map<String, Map<UUID, Instant>> byScope = new HashMap<>();
+        for (PatientConsent c : consentRepository.findByGrantedToAndRevokedAtIsNull(user)) {
+            if (c.getPatient() == null || c.getScope() == null) continue;
+            Instant exp = c.getExpiresAt() == null ? Instant.MAX : c.getExpiresAt();
+            if (!exp.isAfter(now)) continue;
+            byScope.computeIfAbsent(c.getScope(), s -> new HashMap<>()).merge(c.getPatient().getId(), exp,
+                    (a, b) -> a.isAfter(b) ? a : b);
+            if (exp.isBefore(nextExpiry)) nextExpiry = exp;
+        }
+        return new ActiveConsents(byScope, nextExpiry);
+    }
+}
@@ -1,12 +1,14 @@
 package com.example.emr_server.security;
 
+import com.example.emr_server.security.validation.InputValidationPlans;
 import lombok.RequiredArgsConstructor;
+import org.aspectj.lang.JoinPoint;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
 import org.springframework.stereotype.Component;
 
-import java.lang.reflect.Field;
+import java.util.function.Predicate;
 
 /**
  * Aspect for automatic input validation on controller methods
@@ -19,64 +21,46 @@ public class InputValidationAspect {
 
     private final InputValidationService inputValidationService;
     private final SecurityMonitoringService securityMonitoringService;
+    private final Predicate<String> unsafe = this::isUnsafe;
 
     @Around("@within(org.springframework.web.bind.annotation.RestController)")
     public Object validateControllerInputs(ProceedingJoinPoint joinPoint) throws Throwable {
-
-        Object[] args = joinPoint.getArgs();
-        String methodName = joinPoint.getSignature().getName();
-        String className = joinPoint.getTarget().getClass().getSimpleName();
-
-        // Validate all string arguments
-        for (Object arg : args) {
-            if (arg != null) {
-                validateObject(arg, className + "." + methodName);
-            }
-        }
-
+        validateArguments(joinPoint.getArgs(), joinPoint);
         return joinPoint.proceed();
     }
 
-    private void validateObject(Object obj, String context) {
-        if (obj instanceof String str) {
-            if (!inputValidationService.isSafeInput(str)) {
-                securityMonitoringService.logSecurityEvent(
-                    SecurityMonitoringService.SecurityEventType.SUSPICIOUS_QUERY_PATTERN,
-                    getCurrentUserId(),
-                    "Malicious input detected in " + context,
-                    getCurrentUserIp()
-                );
-                throw new SecurityException("Invalid input detected");
+    /**
+     * Validates string arguments and the text reachable from DTO arguments (record components, fields,
+     * nested DTOs, collections, maps). Per-class plans are cached in {@link InputValidationPlans}, so the
+     * hot path does no reflection; the context string is only built when something is rejected.
+     */
+    void validateArguments(Object[] args, JoinPoint joinPoint) {
+        for (Object arg : args) {
+            if (arg == null) continue;
+            String path = InputValidationPlans.findUnsafe(arg, unsafe);
+            if (path == null) continue;
+
+            String context = joinPoint.getTarget().getClass().getSimpleName() + "." + joinPoint.getSignature().getName();
+            if (path.isEmpty()) {
+                reject("Malicious input detected in " + context, "Invalid input detected");
+            } else {
+                reject(String.format("Malicious input in field %s.%s", context, path), "Invalid input detected in field: " + path);
             }
-        } else {
-            // Validate string fields in DTOs
-            validateStringFields(obj, context);
         }
     }
 
-    private void validateStringFields(Object obj, String context) {
-        if (obj == null) return;
+    private boolean isUnsafe(String input) {
+        return !inputValidationService.isSafeInput(input);
+    }
 
-        try {
-            Field[] fields = obj.getClass().getDeclaredFields();
-            for (Field field : fields) {
-                if (field.getType() == String.class) {
-                    field.setAccessible(true);
-                    String value = (String) field.get(obj);
-                    if (value != null && !inputValidationService.isSafeInput(value)) {
-                        securityMonitoringService.logSecurityEvent(
-                            SecurityMonitoringService.SecurityEventType.SUSPICIOUS_QUERY_PATTERN,
-                            getCurrentUserId(),
-                            String.format("Malicious input in field %s.%s", context, field.getName()),
-                            getCurrentUserIp()
-                        );
-                        throw new SecurityException("Invalid input detected in field: " + field.getName());
-                    }
-                }
-            }
-        } catch (IllegalAccessException e) {
-            // Log but don't block - validation best effort
-        }
+    private void reject(String details, String message) {
+        securityMonitoringService.logSecurityEvent(
+            SecurityMonitoringService.SecurityEventType.SUSPICIOUS_QUERY_PATTERN,
+            getCurrentUserId(),
+            details,
+            getCurrentUserIp()
+        );
+        throw new SecurityException(message);
     }
 
     private String getCurrentUserId() {
@@ -1,5 +1,6 @@
 package com.example.emr_server.security;
 
+import com.example.emr_server.security.validation.MultiPatternMatcher;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import java.util.regex.Pattern;
@@ -12,17 +13,15 @@ import java.util.regex.Pattern;
 @Slf4j
 public class InputValidationService {
 
-    // Patterns for detecting potential SQL injection
-    private static final Pattern SQL_INJECTION_PATTERN = Pattern.compile(
-        "('|--|;|\\||\\*|%|SELECT|INSERT|UPDATE|DELETE|DROP|CREATE|ALTER|EXEC|UNION|SCRIPT)",
-        Pattern.CASE_INSENSITIVE
-    );
+    private static final int SQL_INJECTION = 1;
+    private static final int XSS = 1 << 1;
 
-    // Patterns for detecting XSS attempts
-    private static final Pattern XSS_PATTERN = Pattern.compile(
-        "(<script|</script|javascript:|vbscript:|onload=|onerror=|onclick=|onmouseover=)",
-        Pattern.CASE_INSENSITIVE
-    );
+    // SQL injection and XSS markers matched case-insensitively in a single pass over the input
+    private static final MultiPatternMatcher INJECTION_MATCHER = MultiPatternMatcher.builder()
+        .add(SQL_INJECTION, "'", "--", ";", "|", "*", "%",
+            "SELECT", "INSERT", "UPDATE", "DELETE", "DROP", "CREATE", "ALTER", "EXEC", "UNION", "SCRIPT")
+        .add(XSS, "<script", "</script", "javascript:", "vbscript:", "onload=", "onerror=", "onclick=", "onmouseover=")
+        .build();
 
     // PESEL validation pattern
     private static final Pattern PESEL_PATTERN = Pattern.compile("^\\d{11}$");
@@ -31,21 +30,21 @@ public class InputValidationService {
     private static final Pattern SAFE_MEDICAL_TEXT = Pattern.compile("^[a-zA-Z0-9\\s.,;:()\\-+/]*$");
 
     public boolean isSafeInput(String input) {
-        if (input == null || input.trim().isEmpty()) {
+        if (input == null || input.isBlank()) {
             return true; // Empty input is safe
         }
 
-        return !containsSqlInjection(input) && !containsXss(input);
+        return INJECTION_MATCHER.find(input, SQL_INJECTION | XSS) == 0;
     }
 
     public boolean containsSqlInjection(String input) {
         if (input == null) return false;
-        return SQL_INJECTION_PATTERN.matcher(input).find();
+        return INJECTION_MATCHER.find(input, SQL_INJECTION) != 0;
     }
 
     public boolean containsXss(String input) {
         if (input == null) return false;
-        return XSS_PATTERN.matcher(input).find();
+        return INJECTION_MATCHER.find(input, XSS) != 0;
     }
 
     public boolean isValidPesel(String pesel) {
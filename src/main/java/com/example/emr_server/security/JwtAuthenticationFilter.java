@@ -1,7 +1,5 @@
 package com.example.emr_server.security;
 
-import com.example.emr_server.entity.User;
-import com.example.emr_server.repository.UserRepository;
 import io.jsonwebtoken.Claims;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
@@ -24,7 +22,7 @@ import java.util.UUID;
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
     private final JwtService jwtService;
-    private final UserRepository userRepository;
+    private final PrincipalCache principalCache;
 
     private static final Set<String> PUBLIC_AUTH_ENDPOINTS = Set.of(
             "/auth/login", "/auth/refresh", "/auth/logout"
@@ -47,9 +45,10 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         try {
             Claims claims = jwtService.parse(token);
             UUID userId = UUID.fromString(claims.getSubject());
+            long issuedAt = claims.getIssuedAt() == null ? 0L : claims.getIssuedAt().getTime();
             if (SecurityContextHolder.getContext().getAuthentication() == null) {
-                userRepository.findById(userId).ifPresent(user -> {
-                    if (Boolean.TRUE.equals(user.getAccountLocked())) return; // konto zablokowane – ignorujemy
+                // konto zablokowane – brak użytkownika (ignorujemy)
+                principalCache.getActiveUser(userId, issuedAt).ifPresent(user -> {
                     CustomUserDetails cud = new CustomUserDetails(user);
                     UsernamePasswordAuthenticationToken auth = new UsernamePasswordAuthenticationToken(cud, null, cud.getAuthorities());
                     auth.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
@@ -1,9 +1,13 @@
 package com.example.emr_server.security;
 
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
@@ -13,19 +17,33 @@ import java.time.temporal.ChronoUnit;
 import java.util.Date;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 @Service
 public class JwtService {
 
     private final Key key;
+    private final JwtParser parser; // niemutowalny i thread-safe – budowany raz
     private final long accessTtlMinutes;
+    private final Timer parseValid;
+    private final Timer parseExpired;
+    private final Timer parseInvalid;
     @Value("${security.mfa.challenge-ttl-minutes:5}")
     private long mfaChallengeTtl;
 
     public JwtService(@Value("${security.jwt.secret}") String secret,
-                      @Value("${security.jwt.access-ttl-minutes}") long accessTtlMinutes) {
+                      @Value("${security.jwt.access-ttl-minutes}") long accessTtlMinutes,
+                      MeterRegistry meterRegistry) {
         this.key = Keys.hmacShaKeyFor(secret.getBytes());
+        this.parser = Jwts.parserBuilder().setSigningKey(key).build();
         this.accessTtlMinutes = accessTtlMinutes;
+        this.parseValid = parseTimer(meterRegistry, "valid");
+        this.parseExpired = parseTimer(meterRegistry, "expired");
+        this.parseInvalid = parseTimer(meterRegistry, "invalid");
+    }
+
+    private static Timer parseTimer(MeterRegistry registry, String outcome) {
+        return Timer.builder("jwt.parse").tag("outcome", outcome).register(registry);
     }
 
     public String generateAccessToken(UUID userId, String username, String role) {
@@ -54,7 +72,18 @@ public class JwtService {
     }
 
     public Claims parse(String token) {
-        return Jwts.parserBuilder().setSigningKey(key).build().parseClaimsJws(token).getBody();
+        long start = System.nanoTime();
+        Timer outcome = parseInvalid;
+        try {
+            Claims claims = parser.parseClaimsJws(token).getBody();
+            outcome = parseValid;
+            return claims;
+        } catch (ExpiredJwtException e) {
+            outcome = parseExpired;
+            throw e;
+        } finally {
+            outcome.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
     }
 
     public Instant getExpiration(String token) {
@@ -0,0 +1,96 @@
+package com.example.emr_server.security;
+
+import com.example.emr_server.entity.User;
+import com.example.emr_server.repository.UserRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Krótkotrwały cache użytkowników uwierzytelnionych tokenem JWT (klucz: userId + iat tokenu),
+ * aby JwtAuthenticationFilter nie odpytywał bazy przy każdym żądaniu.
+ * Konta zablokowane nie są cache'owane; zmiany bezpieczeństwa konta (blokada, hasło, rola,
+ * revokacja sesji, MFA) muszą wołać {@link #invalidate(UUID)}. Cache trzyma własną kopię encji, a każde
+ * żądanie dostaje osobną – zmiany jednego żądania (np. hasło, MFA) nie są widoczne w równoległych.
+ */
+@Component
+public class PrincipalCache {
+
+    private record Key(UUID userId, long issuedAt) {}
+
+    private final UserRepository userRepository;
+    private final Cache<Key, User> cache;
+
+    public PrincipalCache(UserRepository userRepository,
+                          MeterRegistry meterRegistry,
+                          @Value("${security.jwt.principal-cache-ttl:PT30S}") Duration ttl,
+                          @Value("${security.jwt.principal-cache-max-size:10000}") long maxSize) {
+        this.userRepository = userRepository;
+        this.cache = Caffeine.newBuilder()
+                .expireAfterWrite(ttl)
+                .maximumSize(maxSize)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "auth.principals");
+    }
+
+    /** Aktywny (niezablokowany) użytkownik dla tokenu lub empty. */
+    public Optional<User> getActiveUser(UUID userId, long issuedAt) {
+        Key key = new Key(userId, issuedAt);
+        User cached = cache.getIfPresent(key);
+        if (cached != null) return Optional.of(copy(cached));
+        Optional<User> loaded = userRepository.findById(userId)
+                .filter(u -> !Boolean.TRUE.equals(u.getAccountLocked()));
+        loaded.ifPresent(u -> cache.put(key, copy(u)));
+        return loaded;
+    }
+
+    private static User copy(User source) {
+        User u = new User();
+        u.setId(source.getId());
+        u.setUsername(source.getUsername());
+        u.setEmail(source.getEmail());
+        u.setPasswordHash(source.getPasswordHash());
+        u.setRole(source.getRole());
+        u.setCreatedAt(source.getCreatedAt());
+        u.setLastPasswordChange(source.getLastPasswordChange());
+        u.setAccountLocked(source.getAccountLocked());
+        u.setFailedLoginAttempts(source.getFailedLoginAttempts());
+        u.setMfaSecret(source.getMfaSecret());
+        u.setLastLoginAt(source.getLastLoginAt());
+        u.setLastLoginIp(source.getLastLoginIp());
+        u.setPasswordAlgo(source.getPasswordAlgo());
+        u.setMfaEnabled(source.getMfaEnabled());
+        return u;
+    }
+
+    /**
+     * Usuwa wpisy użytkownika (wszystkie tokeny) natychmiast oraz ponownie po commicie transakcji,
+     * żeby równoległe żądanie nie zapisało w cache stanu sprzed zmiany.
+     */
+    public void invalidate(UUID userId) {
+        if (userId == null) return;
+        evict(userId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evict(userId);
+                }
+            });
+        }
+    }
+
+    private void evict(UUID userId) {
+        cache.asMap().keySet().removeIf(k -> k.userId().equals(userId));
+    }
+}
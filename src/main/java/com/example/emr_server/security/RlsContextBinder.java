@@ -0,0 +1,101 @@
+package com.example.emr_server.security;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManager;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Session;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.PreparedStatement;
+
+/**
+ * Ustawia kontekst RLS (emr.current_user_id / emr.current_user_role) w bieżącej transakcji
+ * jednym zapytaniem set_config. Wartości ustawione w transakcji są trzymane jako zasób transakcji,
+ * więc kolejne wywołania @Transactional w tej samej transakcji (i tym samym połączeniu) nie
+ * powtarzają set_config. Liczniki: rls.set_config.executed / rls.set_config.avoided.
+ */
+@Slf4j
+@Component
+public class RlsContextBinder {
+
+    record RlsValues(String userId, String role) {}
+
+    private static final Object RESOURCE_KEY = RlsContextBinder.class.getName() + ".values";
+    private static final String SET_CONFIG_SQL =
+            "SELECT set_config('emr.current_user_id', ?, true), set_config('emr.current_user_role', ?, true)";
+
+    private final Counter executed;
+    private final Counter avoided;
+    private volatile Boolean postgres; // set_config dostępne tylko w PostgreSQL (testy na H2)
+
+    public RlsContextBinder(MeterRegistry meterRegistry) {
+        this.executed = meterRegistry.counter("rls.set_config.executed");
+        this.avoided = meterRegistry.counter("rls.set_config.avoided");
+    }
+
+    /** Wołane przez RlsTransactionManager zaraz po rozpoczęciu fizycznej transakcji. */
+    void bindNewTransaction(EntityManager em) {
+        RlsValues desired = currentValues();
+        if (desired != null && apply(em, desired)) {
+            TransactionSynchronizationManager.bindResource(RESOURCE_KEY, desired);
+        }
+    }
+
+    /** Wołane dla każdej metody @Transactional w aktywnej transakcji – set_config tylko gdy wartości się zmieniły. */
+    void ensureBound(EntityManager em) {
+        RlsValues desired = currentValues();
+        if (desired == null) return;
+        RlsValues bound = (RlsValues) TransactionSynchronizationManager.getResource(RESOURCE_KEY);
+        if (desired.equals(bound)) {
+            avoided.increment();
+            return;
+        }
+        if (apply(em, desired)) {
+            unbind();
+            TransactionSynchronizationManager.bindResource(RESOURCE_KEY, desired);
+        }
+    }
+
+    RlsValues unbind() {
+        return (RlsValues) TransactionSynchronizationManager.unbindResourceIfPossible(RESOURCE_KEY);
+    }
+
+    void rebind(RlsValues values) {
+        if (values != null) TransactionSynchronizationManager.bindResource(RESOURCE_KEY, values);
+    }
+
+    private RlsValues currentValues() {
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        if (auth != null && auth.isAuthenticated() && auth.getPrincipal() instanceof CustomUserDetails cud) {
+            var user = cud.getDomainUser();
+            if (user != null && user.getId() != null) return new RlsValues(user.getId().toString(), user.getRole());
+        }
+        return null;
+    }
+
+    private boolean apply(EntityManager em, RlsValues values) {
+        try {
+            return em.unwrap(Session.class).doReturningWork(conn -> {
+                if (postgres == null) {
+                    postgres = conn.getMetaData().getDatabaseProductName().startsWith("PostgreSQL");
+                }
+                if (!postgres) return false;
+                try (PreparedStatement ps = conn.prepareStatement(SET_CONFIG_SQL)) {
+                    ps.setString(1, values.userId());
+                    ps.setString(2, values.role());
+                    ps.execute();
+                }
+                executed.increment();
+                return true;
+            });
+        } catch (Exception e) {
+            // brak przerwania logiki w razie niedostępności kontekstu
+            log.debug("Nie udało się ustawić kontekstu RLS: {}", e.getMessage());
+            return false;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.emr_server.security;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.springframework.orm.jpa.EntityManagerHolder;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * JpaTransactionManager ustawiający kontekst RLS raz na fizyczną transakcję (po doBegin).
+ * Przy zawieszeniu transakcji (REQUIRES_NEW) zapamiętane wartości RLS są zawieszane razem z nią.
+ */
+public class RlsTransactionManager extends JpaTransactionManager {
+
+    private final transient RlsContextBinder binder;
+
+    private record Suspended(Object delegate, RlsContextBinder.RlsValues values) {}
+
+    public RlsTransactionManager(EntityManagerFactory emf, RlsContextBinder binder) {
+        super(emf);
+        this.binder = binder;
+    }
+
+    @Override
+    protected void doBegin(Object transaction, TransactionDefinition definition) {
+        super.doBegin(transaction, definition);
+        if (TransactionSynchronizationManager.getResource(obtainEntityManagerFactory()) instanceof EntityManagerHolder holder) {
+            binder.bindNewTransaction(holder.getEntityManager());
+        }
+    }
+
+    @Override
+    protected Object doSuspend(Object transaction) {
+        RlsContextBinder.RlsValues values = binder.unbind();
+        return new Suspended(super.doSuspend(transaction), values);
+    }
+
+    @Override
+    protected void doResume(Object transaction, Object suspendedResources) {
+        Suspended s = (Suspended) suspendedResources;
+        super.doResume(transaction, s.delegate());
+        binder.rebind(s.values());
+    }
+
+    @Override
+    protected void doCleanupAfterCompletion(Object transaction) {
+        binder.unbind();
+        super.doCleanupAfterCompletion(transaction);
+    }
+}
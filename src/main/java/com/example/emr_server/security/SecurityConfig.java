@@ -1,10 +1,15 @@
 package com.example.emr_server.security;
 
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletRequestWrapper;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.security.authorization.AuthorizationDecision;
+import org.springframework.security.authorization.AuthorizationManager;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
 import org.springframework.security.config.annotation.authentication.configuration.AuthenticationConfiguration;
@@ -16,19 +21,23 @@ import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.access.intercept.AuthorizationFilter;
+import org.springframework.security.web.access.intercept.RequestAuthorizationContext;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 import org.springframework.security.web.header.writers.ReferrerPolicyHeaderWriter;
+import org.springframework.security.web.util.matcher.IpAddressMatcher;
 import com.example.emr_server.security.ratelimit.RateLimitFilter;
 import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.CorsConfigurationSource;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
 
 import java.util.List;
+import java.util.regex.Pattern;
 
 @Configuration
 @EnableMethodSecurity
 @RequiredArgsConstructor
 public class SecurityConfig {
+    private static final Pattern IPV4 = Pattern.compile("\\d{1,3}(\\.\\d{1,3}){3}");
     @Autowired
     private JwtAuthenticationFilter jwtAuthenticationFilter;
     private final UserDetailsService userDetailsService;
@@ -38,6 +47,14 @@ public class SecurityConfig {
     @Value("${app.security.cors.allowed-origins:http://localhost:3000}")
     private List<String> allowedOrigins;
 
+    // Scraper Prometheusa – bez JWT, tylko z adresów z allowlisty (domyślnie localhost)
+    @Value("${app.security.metrics.allowed-ips:127.0.0.1/32,::1/128}")
+    private List<String> metricsAllowedIps;
+
+    // Proxy, którym wolno podać adres scrapera w X-Forwarded-For (domyślnie żadne – liczy się adres gniazda)
+    @Value("${app.security.metrics.trusted-proxies:}")
+    private List<String> metricsTrustedProxies;
+
     @Bean
     public PasswordEncoder passwordEncoder() {
         return new BCryptPasswordEncoder(12);
@@ -66,6 +83,7 @@ public class SecurityConfig {
                     "/auth/password-reset/request", "/auth/password-reset/confirm",
                     "/v3/api-docs/**", "/swagger-ui.html", "/swagger-ui/**"
                 ).permitAll()
+                .requestMatchers("/actuator/prometheus").access(metricsScrapers())
                 .anyRequest().authenticated()
             )
             .authenticationProvider(daoAuthProvider(userDetailsService, passwordEncoder()))
@@ -134,6 +152,57 @@ public class SecurityConfig {
         return http.build();
     }
 
+    private AuthorizationManager<RequestAuthorizationContext> metricsScrapers() {
+        List<IpAddressMatcher> allowed = ipMatchers(metricsAllowedIps);
+        List<IpAddressMatcher> proxies = ipMatchers(metricsTrustedProxies);
+        return (authentication, context) -> {
+            String scraper = scraperAddress(context.getRequest(), proxies);
+            return new AuthorizationDecision(scraper != null && matchesAny(allowed, scraper));
+        };
+    }
+
+    private static List<IpAddressMatcher> ipMatchers(List<String> ranges) {
+        return ranges == null ? List.of()
+                : ranges.stream().map(String::trim).filter(r -> !r.isEmpty()).map(IpAddressMatcher::new).toList();
+    }
+
+    /**
+     * Adres scrapera metryk. getRemoteAddr() żądania pochodzi przy server.forward-headers-strategy=framework
+     * z X-Forwarded-For, który ustawia klient – liczy się więc adres gniazda (żądanie kontenera pod wrapperami).
+     * Tylko gdy gniazdo należy do zaufanego proxy, X-Forwarded-For jest czytany od prawej (wpisy dopisane przez
+     * nasze proxy) do pierwszego adresu spoza nich; null – adres niepoprawny, odmowa.
+     */
+    static String scraperAddress(HttpServletRequest request, List<IpAddressMatcher> trustedProxies) {
+        ServletRequest socket = request;
+        while (socket instanceof ServletRequestWrapper wrapper) socket = wrapper.getRequest();
+        String address = socket.getRemoteAddr();
+        if (!matchesAny(trustedProxies, address)) return address;
+        String forwarded = socket instanceof HttpServletRequest http ? http.getHeader("X-Forwarded-For") : null;
+        if (forwarded == null || forwarded.isBlank()) return address;
+        String[] hops = forwarded.split(",");
+        for (int i = hops.length - 1; i >= 0; i--) {
+            address = hops[i].trim();
+            if (!matchesAny(trustedProxies, address)) return isIpAddress(address) ? address : null;
+        }
+        return address;
+    }
+
+    private static boolean matchesAny(List<IpAddressMatcher> matchers, String address) {
+        if (!isIpAddress(address)) return false;
+        for (IpAddressMatcher m : matchers) {
+            if (m.matches(address)) return true;
+        }
+        return false;
+    }
+
+    // tylko literały IPv4/IPv6 – IpAddressMatcher nie może rozwiązywać nazw z nagłówka przez DNS
+    private static boolean isIpAddress(String address) {
+        if (address == null || address.isEmpty() || address.length() > 45) return false;
+        return address.indexOf(':') >= 0
+                ? address.chars().allMatch(c -> Character.digit(c, 16) >= 0 || c == '.' || c == ':')
+                : IPV4.matcher(address).matches();
+    }
+
     @Bean
     public AuthenticationManager authenticationManager(AuthenticationConfiguration configuration) throws Exception {
         return configuration.getAuthenticationManager();
@@ -1,46 +1,56 @@
 package com.example.emr_server.security;
 
-import lombok.RequiredArgsConstructor;
+import com.example.emr_server.security.monitoring.SecurityMonitoringConfig;
+import com.example.emr_server.security.monitoring.SuspiciousActivityDetector;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
-import org.springframework.scheduling.annotation.Async;
 
 import java.time.LocalDateTime;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.Executor;
 
 /**
  * Security monitoring service for threat detection
  * Addresses OWASP A09:2021 – Security Logging and Monitoring Failures
+ * Events are processed on a bounded dedicated executor; repeated activity is detected
+ * with fixed memory by {@link SuspiciousActivityDetector}.
  */
 @Service
-@RequiredArgsConstructor
 @Slf4j
 public class SecurityMonitoringService {
 
-    private final Map<String, AtomicInteger> suspiciousActivityCounters = new ConcurrentHashMap<>();
-    private final Map<String, LocalDateTime> lastSuspiciousActivity = new ConcurrentHashMap<>();
+    private final SuspiciousActivityDetector detector;
+    private final Executor executor;
+
+    public SecurityMonitoringService(SuspiciousActivityDetector detector,
+                                     @Qualifier(SecurityMonitoringConfig.EXECUTOR) Executor executor) {
+        this.detector = detector;
+        this.executor = executor;
+    }
 
-    @Async
     public void logSecurityEvent(SecurityEventType eventType, String userId, String details, String ipAddress) {
+        LocalDateTime timestamp = LocalDateTime.now();
+        executor.execute(() -> process(eventType, userId, details, ipAddress, timestamp));
+    }
+
+    private void process(SecurityEventType eventType, String userId, String details, String ipAddress, LocalDateTime timestamp) {
         String logEntry = String.format(
             "SECURITY_EVENT | Type: %s | User: %s | IP: %s | Details: %s | Timestamp: %s",
             eventType,
             sanitizeUserId(userId),
             sanitizeIpAddress(ipAddress),
             sanitizeDetails(details),
-            LocalDateTime.now()
+            timestamp
         );
 
         switch (eventType) {
             case AUTHENTICATION_FAILURE:
                 log.warn("AUTH_FAILURE: {}", logEntry);
-                trackSuspiciousActivity(ipAddress);
+                trackSuspiciousActivity(eventType, ipAddress);
                 break;
             case UNAUTHORIZED_ACCESS_ATTEMPT:
                 log.error("UNAUTHORIZED_ACCESS: {}", logEntry);
-                trackSuspiciousActivity(ipAddress);
+                trackSuspiciousActivity(eventType, ipAddress);
                 break;
             case BTG_ACCESS_GRANTED:
                 log.warn("BTG_ACCESS: {}", logEntry);
@@ -55,26 +65,19 @@ public class SecurityMonitoringService {
                 break;
             case SUSPICIOUS_QUERY_PATTERN:
                 log.warn("SUSPICIOUS_QUERY: {}", logEntry);
-                trackSuspiciousActivity(ipAddress);
+                trackSuspiciousActivity(eventType, ipAddress);
                 break;
             default:
                 log.info("SECURITY_INFO: {}", logEntry);
         }
     }
 
-    private void trackSuspiciousActivity(String identifier) {
-        // Handle null identifier gracefully
-        if (identifier == null) {
-            identifier = "unknown";
-        }
-
-        AtomicInteger counter = suspiciousActivityCounters.computeIfAbsent(identifier, k -> new AtomicInteger(0));
-        int count = counter.incrementAndGet();
-        lastSuspiciousActivity.put(identifier, LocalDateTime.now());
-
-        if (count >= 10) { // Threshold for alerting
-            alertSecurityTeam(SecurityEventType.REPEATED_SUSPICIOUS_ACTIVITY, identifier,
-                "Multiple suspicious activities detected: " + count);
+    private void trackSuspiciousActivity(SecurityEventType eventType, String ipAddress) {
+        // sfałszowane/niepoprawne adresy trafiają pod jeden identyfikator "invalid_ip"
+        SuspiciousActivityDetector.Alert alert = detector.record(eventType, sanitizeIpAddress(ipAddress));
+        if (alert != null) {
+            alertSecurityTeam(SecurityEventType.REPEATED_SUSPICIOUS_ACTIVITY, alert.identifier(),
+                "Multiple suspicious activities detected: " + alert.estimate() + " x " + eventType);
         }
     }
 
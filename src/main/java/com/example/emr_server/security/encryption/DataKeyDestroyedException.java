@@ -0,0 +1,11 @@
+package com.example.emr_server.security.encryption;
+
+import java.util.UUID;
+
+/** Klucz danych pacjenta został zniszczony (crypto-shredding) – jego dane nie są już odczytywalne ani zapisywalne. */
+public class DataKeyDestroyedException extends IllegalStateException {
+
+    public DataKeyDestroyedException(UUID patientId) {
+        super("Klucz danych pacjenta " + patientId + " został zniszczony");
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.emr_server.security.encryption;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Opcjonalny cache ciphertext <-> plaintext dla pól szyfrowanych DETERMINISTYCZNIE
+ * (niska kardynalność: alergeny, nazwy badań, diagnozy, nazwiska).
+ * Włączany per pole (security.enc.value-cache.fields), ograniczony rozmiarem (LRU/W-TinyLFU).
+ * Przechowuje plaintext w pamięci – nie włączać dla pól, które nie muszą być wyszukiwane/grupowane.
+ * Czyszczony przy każdej zmianie materiału klucza ({@link EncryptionService#reloadKeys}).
+ * Metryki: enc.det.decrypt / enc.det.encrypt (cache_gets hit/miss, cache_size).
+ */
+@Component
+public class DeterministicValueCache {
+
+    private record Key(String field, String value) {}
+
+    private final Set<String> fields;
+    private final Cache<Key, String> decrypted;
+    private final Cache<Key, String> encrypted;
+
+    public DeterministicValueCache(MeterRegistry meterRegistry,
+                                   @Value("${security.enc.value-cache.fields:}") String fields,
+                                   @Value("${security.enc.value-cache.max-size:50000}") long maxSize) {
+        this.fields = Arrays.stream(fields.split(","))
+                .map(String::trim)
+                .filter(f -> !f.isEmpty())
+                .collect(Collectors.toUnmodifiableSet());
+        this.decrypted = Caffeine.newBuilder().maximumSize(maxSize).recordStats().build();
+        this.encrypted = Caffeine.newBuilder().maximumSize(maxSize).recordStats().build();
+        if (meterRegistry != null) {
+            CaffeineCacheMetrics.monitor(meterRegistry, decrypted, "enc.det.decrypt");
+            CaffeineCacheMetrics.monitor(meterRegistry, encrypted, "enc.det.encrypt");
+        }
+    }
+
+    /** Cache bez żadnego włączonego pola – dla EncryptionService tworzonego poza kontekstem Springa. */
+    static DeterministicValueCache disabled() {
+        return new DeterministicValueCache(null, "", 0);
+    }
+
+    public boolean isEnabled(String field) {
+        return fields.contains(field);
+    }
+
+    /**
+     * @param reusableForEncrypt ciphertext zaszyfrowany aktywnym kluczem – ten sam powstałby przy szyfrowaniu
+     *                           odczytanej wartości, więc od razu zasila też kierunek plaintext -> ciphertext
+     */
+    String decrypt(String field, String ciphertext, boolean reusableForEncrypt, Function<String, String> decryptor) {
+        if (!isEnabled(field)) return decryptor.apply(ciphertext);
+        return decrypted.get(new Key(field, ciphertext), k -> {
+            String plaintext = decryptor.apply(k.value());
+            if (reusableForEncrypt) encrypted.put(new Key(field, plaintext), ciphertext);
+            return plaintext;
+        });
+    }
+
+    String encrypt(String field, String plaintext, Function<String, String> encryptor) {
+        if (!isEnabled(field)) return encryptor.apply(plaintext);
+        return encrypted.get(new Key(field, plaintext), k -> encryptor.apply(k.value()));
+    }
+
+    public void invalidateAll() {
+        decrypted.invalidateAll();
+        encrypted.invalidateAll();
+    }
+
+    long size() {
+        decrypted.cleanUp();
+        encrypted.cleanUp();
+        return decrypted.estimatedSize() + encrypted.estimatedSize();
+    }
+}
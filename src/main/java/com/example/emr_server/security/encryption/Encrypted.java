@@ -1,13 +1,18 @@
 package com.example.emr_server.security.encryption;
 
+import org.hibernate.annotations.Type;
+
 import java.lang.annotation.*;
 
+/**
+ * Pole szyfrowane w bazie – mapowane przez EncryptedStringType (szyfrowanie przy zapisie, deszyfrowanie przy odczycie).
+ */
 @Target(ElementType.FIELD)
 @Retention(RetentionPolicy.RUNTIME)
 @Documented
+@Type(EncryptedStringType.class)
 public @interface Encrypted {
     Mode mode() default Mode.RANDOM; // domyślnie losowe
     String value() default "";      // nazwa logiczna (jeśli pusta -> entityName.field)
     enum Mode { DETERMINISTIC, RANDOM }
 }
-
@@ -0,0 +1,112 @@
+package com.example.emr_server.security.encryption;
+
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.usertype.DynamicParameterizedType;
+import org.hibernate.usertype.UserType;
+
+import java.io.Serializable;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Field;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Properties;
+
+/**
+ * Typ Hibernate dla pól @Encrypted: szyfruje przy bindowaniu parametru, deszyfruje przy odczycie.
+ * Encja i snapshot Hibernate trzymają plaintext, więc dirty-checking porównuje plaintext –
+ * odczyt encji nie powoduje ponownego zaszyfrowania ani UPDATE przy flush.
+ */
+@Slf4j
+public class EncryptedStringType implements UserType<String>, DynamicParameterizedType {
+
+    private String logicalField;
+    private Encrypted.Mode mode = Encrypted.Mode.RANDOM;
+
+    @Override
+    public void setParameterValues(Properties parameters) {
+        String entity = parameters.getProperty(ENTITY);
+        String property = parameters.getProperty(PROPERTY);
+        Encrypted enc = null;
+        if (parameters.get(PARAMETER_TYPE) instanceof ParameterType pt && pt.getAnnotationsMethod() != null) {
+            for (Annotation a : pt.getAnnotationsMethod()) {
+                if (a instanceof Encrypted e) enc = e;
+            }
+        }
+        if (enc == null) enc = findOnField(entity, property);
+        String simpleName = entity == null ? "unknown" : entity.substring(entity.lastIndexOf('.') + 1);
+        if (enc != null) mode = enc.mode();
+        logicalField = (enc == null || enc.value().isBlank())
+                ? simpleName.toLowerCase(Locale.ROOT) + "." + property
+                : enc.value();
+    }
+
+    private static Encrypted findOnField(String entity, String property) {
+        if (entity == null || property == null) return null;
+        try {
+            Field f = Class.forName(entity).getDeclaredField(property);
+            return f.getAnnotation(Encrypted.class);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    public String getLogicalField() { return logicalField; }
+
+    public Encrypted.Mode getMode() { return mode; }
+
+    @Override
+    public int getSqlType() { return Types.VARCHAR; }
+
+    @Override
+    public Class<String> returnedClass() { return String.class; }
+
+    @Override
+    public boolean equals(String x, String y) { return Objects.equals(x, y); }
+
+    @Override
+    public int hashCode(String x) { return Objects.hashCode(x); }
+
+    @Override
+    public String nullSafeGet(ResultSet rs, int position, SharedSessionContractImplementor session, Object owner) throws SQLException {
+        String stored = rs.getString(position);
+        EncryptionService svc = EncryptionService.get();
+        if (stored == null || svc == null) return stored;
+        try {
+            return svc.decryptField(logicalField, stored);
+        } catch (DataKeyDestroyedException e) {
+            // dane pacjenta usunięte przez zniszczenie klucza – pole jak puste
+            log.debug("Pole {} nieodczytywalne: {}", logicalField, e.getMessage());
+            return null;
+        } catch (Exception e) {
+            log.error("Błąd deszyfrowania pola {}: {}", logicalField, e.getMessage());
+            return stored;
+        }
+    }
+
+    @Override
+    public void nullSafeSet(PreparedStatement st, String value, int index, SharedSessionContractImplementor session) throws SQLException {
+        if (value == null) {
+            st.setNull(index, Types.VARCHAR);
+            return;
+        }
+        EncryptionService svc = EncryptionService.get();
+        st.setString(index, svc == null ? value : svc.encryptField(logicalField, mode, value));
+    }
+
+    @Override
+    public String deepCopy(String value) { return value; }
+
+    @Override
+    public boolean isMutable() { return false; }
+
+    @Override
+    public Serializable disassemble(String value) { return value; }
+
+    @Override
+    public String assemble(Serializable cached, Object owner) { return (String) cached; }
+}
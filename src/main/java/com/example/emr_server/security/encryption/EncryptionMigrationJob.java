@@ -0,0 +1,639 @@
+package com.example.emr_server.security.encryption;
+
+import com.example.emr_server.entity.Allergy;
+import com.example.emr_server.entity.ChronicDisease;
+import com.example.emr_server.entity.LabResult;
+import com.example.emr_server.entity.MedicationHistory;
+import com.example.emr_server.entity.Patient;
+import com.example.emr_server.entity.Prescription;
+import com.example.emr_server.entity.User;
+import com.example.emr_server.entity.Visit;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.Column;
+import jakarta.persistence.Table;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.reflect.Field;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntSupplier;
+import java.util.stream.Collectors;
+
+/**
+ * Online migracja pól @Encrypted do postaci docelowej w tle, poza startem aplikacji: plaintext jest szyfrowany,
+ * a szyfrogramy starszych kluczy (po rotacji) przeszyfrowywane aktywnym kluczem.
+ * Tabela jest dzielona na zakresy id po chunk-size wierszy (granice wyznaczane po indeksie PK), które przetwarza
+ * pula threads wątków; w zakresie stronicowanie keyset (id &gt; ? ORDER BY id LIMIT page-size) i batch UPDATE
+ * wyłącznie kolumn szyfrowanych. UPDATE jest warunkowy (stare wartości kolumn), więc wiersz zmieniony w międzyczasie
+ * przez aplikację – która i tak zapisuje szyfrogram – nie zostanie nadpisany. Naruszenie unikalności (ten sam PESEL
+ * zapisany starym i aktywnym kluczem) nie przerywa przebiegu: wiersz zostaje przy starym kluczu i liczy się do
+ * conflicts oraz remainingStale.
+ * Postęp trafia do emr.encryption_migration_checkpoints jako ciągły prefiks ukończonych zakresów; przerwany
+ * przebieg wznawia się od niego (ponowne przejście zakresu jest bezpieczne – zaszyfrowane wartości są pomijane).
+ * Checkpoint jest związany z aktywnym kluczem – po rotacji kolejny przebieg zaczyna od początku tabel.
+ * Wartości v3p nie zależą od KEK, więc po tabelach przebieg przepakowuje klucze danych pacjentów zawinięte
+ * starszym kluczem (emr.patient_data_keys, bez checkpointu – warunek key_id &lt;&gt; aktywny jest wznawialny);
+ * pozostawione liczą się do remainingStale, a przebieg nie raportuje wtedy pełnego przejścia na aktywny klucz.
+ * Żeby nie konkurować z ruchem użytkowników: limit max-rows-per-second, wątki o najniższym priorytecie i przerwa,
+ * gdy w puli Hikari czekają wątki na połączenie.
+ * Tryb VALIDATE tylko liczy wartości do zmiany, bez zapisu i bez checkpointów. Przebieg jest lokalny dla węzła.
+ * Metryki: encryption.migration.rows{table,result}, encryption.migration.throughput (wiersze/s),
+ * encryption.migration.eta (s), encryption.migration.remaining, encryption.migration.backoffs.
+ */
+@Slf4j
+@Component
+public class EncryptionMigrationJob {
+
+    public enum Mode { MIGRATE, VALIDATE }
+
+    public enum State { IDLE, RUNNING, STOPPING, STOPPED, COMPLETED, FAILED }
+
+    /** remainingPlain / remainingStale – wartości pozostawione jako plaintext / szyfrogram innego klucza. */
+    public record Progress(State state, Mode mode, String keyId, String table, long scanned, long migrated, long conflicts,
+                           long remainingPlain, long remainingStale, long estimatedTotal, double rowsPerSecond,
+                           Long etaSeconds, Instant startedAt) {}
+
+    // encje z polami @Encrypted – kolejność nie krytyczna
+    static final List<Class<?>> ENTITIES = List.of(Patient.class, Allergy.class, ChronicDisease.class, LabResult.class,
+            MedicationHistory.class, Prescription.class, Visit.class, User.class);
+
+    private static final String CHECKPOINTS = "emr.encryption_migration_checkpoints";
+    private static final long BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final EncryptionService encryptionService;
+    private final EncryptionMigrationProperties properties;
+    private final List<TablePlan> plans;
+    private final IntSupplier waitingForConnection;
+    private final TransactionTemplate batchTx;
+    private final Counter backoffs;
+
+    private volatile Run run;
+
+    @Autowired
+    public EncryptionMigrationJob(JdbcTemplate jdbcTemplate, EncryptionService encryptionService,
+                                  EncryptionMigrationProperties properties, MeterRegistry meterRegistry) {
+        this(jdbcTemplate, encryptionService, properties, meterRegistry, ENTITIES);
+    }
+
+    EncryptionMigrationJob(JdbcTemplate jdbcTemplate, EncryptionService encryptionService,
+                           EncryptionMigrationProperties properties, MeterRegistry meterRegistry, List<Class<?>> entities) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.encryptionService = encryptionService;
+        this.properties = properties;
+        this.plans = entities.stream().map(type -> TablePlan.of(type, meterRegistry)).filter(p -> !p.fields.isEmpty()).toList();
+        this.waitingForConnection = waitingForConnection(jdbcTemplate);
+        this.batchTx = new TransactionTemplate(new DataSourceTransactionManager(jdbcTemplate.getDataSource()));
+        this.backoffs = Counter.builder("encryption.migration.backoffs")
+                .description("Przerwy migracji szyfrowania, gdy żądania czekały na połączenie z puli")
+                .register(meterRegistry);
+        Gauge.builder("encryption.migration.throughput", this, j -> j.progress().rowsPerSecond())
+                .description("Wiersze na sekundę w bieżącym przebiegu migracji szyfrowania")
+                .register(meterRegistry);
+        Gauge.builder("encryption.migration.eta", this, j -> {
+                    Long eta = j.progress().etaSeconds();
+                    return eta != null ? eta : Double.NaN;
+                })
+                .description("Szacowany czas do końca migracji szyfrowania (s)")
+                .register(meterRegistry);
+        Gauge.builder("encryption.migration.remaining", this, j -> {
+                    Progress p = j.progress();
+                    return Math.max(0, p.estimatedTotal() - p.scanned());
+                })
+                .description("Szacowana liczba wierszy do przejrzenia w bieżącym przebiegu")
+                .register(meterRegistry);
+    }
+
+    /** Uruchamia przebieg w tle; false, gdy poprzedni jeszcze trwa. restart=true zaczyna od początku tabel. */
+    public synchronized boolean start(Mode mode, boolean restart) {
+        Run current = run;
+        if (current != null && (current.state == State.RUNNING || current.state == State.STOPPING)) {
+            return false;
+        }
+        if (restart && mode == Mode.MIGRATE) {
+            jdbcTemplate.update("DELETE FROM " + CHECKPOINTS);
+        }
+        Run next = new Run(mode, encryptionService.activeKeyId());
+        next.coordinator = Thread.ofPlatform().name("enc-migration").daemon().unstarted(() -> execute(next));
+        run = next;
+        next.coordinator.start();
+        return true;
+    }
+
+    /** Zatrzymuje przebieg po dokończeniu bieżących stron; checkpoint obejmuje tylko ukończone zakresy. */
+    public synchronized boolean stop() {
+        Run current = run;
+        if (current == null || current.state != State.RUNNING) return false;
+        current.state = State.STOPPING;
+        return true;
+    }
+
+    public Progress progress() {
+        Run current = run;
+        return current != null ? current.progress()
+                : new Progress(State.IDLE, null, null, null, 0, 0, 0, 0, 0, 0, 0, null, null);
+    }
+
+    /** Czeka na zakończenie bieżącego przebiegu; true, gdy zakończył się przed upływem czasu. */
+    public boolean await(Duration timeout) throws InterruptedException {
+        Run current = run;
+        return current == null || current.coordinator.join(timeout);
+    }
+
+    @PreDestroy
+    void shutdown() throws InterruptedException {
+        if (stop()) await(Duration.ofSeconds(30));
+    }
+
+    private void execute(Run run) {
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, properties.getThreads()),
+                Thread.ofPlatform().name("enc-migration-", 1).daemon().priority(Thread.MIN_PRIORITY).factory());
+        try {
+            List<TablePlan> pending = new ArrayList<>();
+            for (TablePlan plan : plans) {
+                Checkpoint cp = run.mode == Mode.MIGRATE ? loadCheckpoint(plan, run.keyId) : Checkpoint.START;
+                if (cp.completed) continue;
+                pending.add(plan);
+                run.estimatedTotal.addAndGet(count(plan, cp.lastId));
+            }
+            PatientDataKeyService dataKeys = encryptionService.patientDataKeys();
+            long staleDataKeys = dataKeys != null ? dataKeys.staleKeys() : 0;
+            run.estimatedTotal.addAndGet(staleDataKeys);
+            log.info("[ENC-MIGRATION] Start (mode={}, keyId={}, tables={}, rows≈{}, dataKeys={}, threads={}, maxRowsPerSecond={})",
+                    run.mode, run.keyId, pending.size(), run.estimatedTotal.get(), staleDataKeys, properties.getThreads(),
+                    properties.getMaxRowsPerSecond());
+            for (TablePlan plan : pending) {
+                if (run.state != State.RUNNING) break;
+                processTable(run, plan, pool);
+            }
+            if (dataKeys != null && run.state == State.RUNNING) processDataKeys(run, dataKeys);
+        } catch (Exception e) {
+            run.fail(e);
+        } finally {
+            pool.shutdown();
+            try {
+                pool.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            finish(run);
+        }
+    }
+
+    private void processTable(Run run, TablePlan plan, ExecutorService pool) throws InterruptedException {
+        Checkpoint cp = run.mode == Mode.MIGRATE ? loadCheckpoint(plan, run.keyId) : Checkpoint.START;
+        run.table = plan.table;
+        Watermark watermark = new Watermark(run, plan);
+        int permits = Math.max(1, properties.getThreads()) * 2; // ograniczenie zakresów w locie
+        Semaphore inFlight = new Semaphore(permits);
+        Object lo = cp.lastId;
+        boolean last = false;
+        while (!last && run.state == State.RUNNING) {
+            Object hi = boundary(plan, lo);
+            last = hi == null;
+            Chunk chunk = watermark.open(lo, hi);
+            inFlight.acquire();
+            pool.execute(() -> {
+                try {
+                    if (processChunk(run, plan, chunk)) watermark.done(chunk);
+                } catch (Exception e) {
+                    run.fail(e);
+                } finally {
+                    inFlight.release();
+                }
+            });
+            lo = hi;
+        }
+        inFlight.acquire(permits);
+        inFlight.release(permits);
+        log.info("[ENC-MIGRATION] {}: scanned={}, migrated={}, conflicts={}, stillPlain={}, staleKey={}{}", plan.table,
+                watermark.scanned.get(), watermark.migrated.get(), watermark.conflicts.get(), watermark.remainingPlain.get(),
+                watermark.remainingStale.get(), watermark.completed ? "" : " (przerwano)");
+    }
+
+    /**
+     * Przepakowanie kluczy danych pacjentów aktywnym KEK (MIGRATE) albo samo ich policzenie (VALIDATE).
+     * Klucze, których nie udało się przepakować, zostają w remainingStale – starego klucza nie wolno wycofać.
+     */
+    private void processDataKeys(Run run, PatientDataKeyService dataKeys) {
+        run.table = "emr.patient_data_keys";
+        if (run.mode == Mode.MIGRATE) {
+            int pageSize = Math.max(1, properties.getPageSize());
+            long rewrapped = 0, conflicts = 0;
+            UUID after = null;
+            do {
+                yieldToForeground(run);
+                run.throttle(pageSize, properties.getMaxRowsPerSecond());
+                PatientDataKeyService.RewrapPage page = dataKeys.rewrap(after, pageSize);
+                run.scanned.addAndGet(page.scanned());
+                run.migrated.addAndGet(page.rewrapped());
+                run.conflicts.addAndGet(page.conflicts());
+                rewrapped += page.rewrapped();
+                conflicts += page.conflicts();
+                after = page.last();
+            } while (after != null && run.state == State.RUNNING);
+            log.info("[ENC-MIGRATION] emr.patient_data_keys: rewrapped={}, conflicts={}", rewrapped, conflicts);
+        }
+        long stale = dataKeys.staleKeys();
+        run.remainingStale.addAndGet(stale);
+        if (stale > 0) {
+            log.warn("[ENC-MIGRATION] {} kluczy danych pacjentów zawiniętych innym kluczem niż {} – nie wycofuj starego klucza.",
+                    stale, run.keyId);
+        }
+    }
+
+    /** Przetwarza zakres (lo, hi]; false, gdy przerwany przed końcem. */
+    private boolean processChunk(Run run, TablePlan plan, Chunk chunk) {
+        int pageSize = Math.max(1, properties.getPageSize());
+        Object after = chunk.lo;
+        while (run.state == State.RUNNING) {
+            yieldToForeground(run);
+            run.throttle(pageSize, properties.getMaxRowsPerSecond());
+            List<Object[]> rows = page(plan, after, chunk.hi, pageSize);
+            if (!rows.isEmpty()) {
+                handlePage(run, plan, rows, chunk);
+                after = rows.get(rows.size() - 1)[0];
+                chunk.lastSeen = after;
+            }
+            if (rows.size() < pageSize) return true;
+        }
+        return false;
+    }
+
+    /** Wstrzymuje wątek, dopóki żądania czekają na połączenie z puli – migracja nie zabiera im połączeń. */
+    private void yieldToForeground(Run run) {
+        while (run.state == State.RUNNING && waitingForConnection.getAsInt() > 0) {
+            backoffs.increment();
+            LockSupport.parkNanos(BACKOFF_NANOS);
+        }
+    }
+
+    private static IntSupplier waitingForConnection(JdbcTemplate jdbcTemplate) {
+        try {
+            var ds = jdbcTemplate.getDataSource();
+            if (ds != null && ds.isWrapperFor(HikariDataSource.class)) {
+                HikariDataSource hikari = ds.unwrap(HikariDataSource.class);
+                return () -> {
+                    HikariPoolMXBean pool = hikari.getHikariPoolMXBean();
+                    return pool != null ? pool.getThreadsAwaitingConnection() : 0;
+                };
+            }
+        } catch (java.sql.SQLException e) {
+            log.debug("[ENC-MIGRATION] Brak dostępu do puli połączeń: {}", e.getMessage());
+        }
+        return () -> 0;
+    }
+
+    private void handlePage(Run run, TablePlan plan, List<Object[]> rows, Chunk chunk) {
+        int n = plan.fields.size();
+        List<Object[]> updates = new ArrayList<>();
+        for (Object[] row : rows) {
+            boolean changed = false;
+            boolean foundPlain = false;
+            boolean foundStale = false;
+            // SET c1..cn = nowe wartości, WHERE id = ? AND ci IS NOT DISTINCT FROM stara wartość
+            Object[] params = new Object[2 * n + 1];
+            for (int i = 0; i < n; i++) {
+                FieldPlan f = plan.fields.get(i);
+                Object v = row[i + 1];
+                params[i] = v;
+                params[n + 1 + i] = v;
+                if (v instanceof String s && !s.isBlank() && !encryptionService.isCurrent(s, f.mode)) {
+                    boolean plain = !encryptionService.looksEncrypted(s);
+                    String target = s;
+                    if (run.mode == Mode.MIGRATE) {
+                        try {
+                            target = encryptionService.reencryptField(f.logical, f.mode, s);
+                        } catch (Exception e) {
+                            log.error("[ENC-MIGRATION] Błąd szyfrowania {}.{}: {}", plan.table, f.column, e.getMessage());
+                        }
+                    }
+                    if (!target.equals(s)) {
+                        params[i] = target;
+                        changed = true;
+                    } else if (plain) {
+                        foundPlain = true;
+                    } else {
+                        foundStale = true;
+                    }
+                }
+            }
+            params[n] = row[0];
+            if (changed) updates.add(params);
+            if (foundPlain) chunk.remainingPlain++;
+            if (foundStale) chunk.remainingStale++;
+        }
+        if (!updates.isEmpty()) {
+            try {
+                // transakcja – sterownik może wykonać resztę batcha mimo błędu; po wycofaniu liczniki są dokładne
+                int[][] counts = batchTx.execute(status -> jdbcTemplate.batchUpdate(plan.update, updates, updates.size(),
+                        (ps, params) -> {
+                            for (int i = 0; i < params.length; i++) ps.setObject(i + 1, params[i]);
+                        }));
+                for (int[] batch : counts) {
+                    for (int c : batch) count(chunk, c);
+                }
+            } catch (DuplicateKeyException e) {
+                // wartość deterministyczna z ograniczeniem UNIQUE (PESEL) zapisana przed rotacją starym kluczem
+                // i ponownie aktywnym – po przeszyfrowaniu szyfrogramy się zrównują; strona wiersz po wierszu,
+                // a duplikaty zostają przy starym kluczu jako konflikty do wyjaśnienia
+                for (Object[] params : updates) {
+                    try {
+                        count(chunk, jdbcTemplate.update(plan.update, params));
+                    } catch (DuplicateKeyException dup) {
+                        chunk.conflicts++;
+                        if (hasPlain(params, n)) chunk.remainingPlain++;
+                        else chunk.remainingStale++;
+                        log.warn("[ENC-MIGRATION] {} id={}: wartość unikalna istnieje już pod aktywnym kluczem – duplikat "
+                                + "do scalenia, wiersz pozostaje przy starym kluczu", plan.table, params[n]);
+                    }
+                }
+            }
+        }
+        chunk.scanned += rows.size();
+        run.scanned.addAndGet(rows.size());
+        plan.scannedRows.increment(rows.size());
+    }
+
+    /** 0 = wiersz zmieniony w międzyczasie; ujemne (SUCCESS_NO_INFO) traktujemy jak zapis. */
+    private static void count(Chunk chunk, int updated) {
+        if (updated == 0) chunk.conflicts++;
+        else chunk.migrated++;
+    }
+
+    /** Czy wśród starych wartości (params[n + 1..2n]) jest niezaszyfrowany tekst. */
+    private boolean hasPlain(Object[] params, int n) {
+        for (int i = n + 1; i <= 2 * n; i++) {
+            if (params[i] instanceof String s && !s.isBlank() && !encryptionService.looksEncrypted(s)) return true;
+        }
+        return false;
+    }
+
+    private List<Object[]> page(TablePlan plan, Object after, Object upTo, int limit) {
+        List<Object> args = new ArrayList<>(3);
+        StringBuilder sql = new StringBuilder(plan.select);
+        if (after != null) args.add(after);
+        if (upTo != null) args.add(upTo);
+        if (after != null || upTo != null) {
+            sql.append(" WHERE ");
+            if (after != null) sql.append("id > ?");
+            if (after != null && upTo != null) sql.append(" AND ");
+            if (upTo != null) sql.append("id <= ?");
+        }
+        sql.append(" ORDER BY id LIMIT ?");
+        args.add(limit);
+        int columns = plan.fields.size() + 1;
+        return jdbcTemplate.query(sql.toString(), (rs, i) -> {
+            Object[] r = new Object[columns];
+            for (int c = 0; c < columns; c++) r[c] = rs.getObject(c + 1);
+            return r;
+        }, args.toArray());
+    }
+
+    /** Górna granica zakresu zaczynającego się za {@code after}: id odległe o chunk-size wierszy, null = koniec tabeli. */
+    private Object boundary(TablePlan plan, Object after) {
+        int offset = Math.max(1, properties.getChunkSize()) - 1;
+        List<Object> ids = after == null
+                ? jdbcTemplate.queryForList("SELECT id FROM " + plan.table + " ORDER BY id LIMIT 1 OFFSET ?", Object.class, offset)
+                : jdbcTemplate.queryForList("SELECT id FROM " + plan.table + " WHERE id > ? ORDER BY id LIMIT 1 OFFSET ?",
+                        Object.class, after, offset);
+        return ids.isEmpty() ? null : ids.get(0);
+    }
+
+    private long count(TablePlan plan, Object after) {
+        Long n = after == null
+                ? jdbcTemplate.queryForObject("SELECT count(*) FROM " + plan.table, Long.class)
+                : jdbcTemplate.queryForObject("SELECT count(*) FROM " + plan.table + " WHERE id > ?", Long.class, after);
+        return n != null ? n : 0;
+    }
+
+    /** Checkpoint zapisany dla innego klucza (albo przed rotacją) nie obowiązuje – tabela od początku. */
+    private Checkpoint loadCheckpoint(TablePlan plan, String keyId) {
+        List<Checkpoint> rows = jdbcTemplate.query(
+                "SELECT last_id, completed FROM " + CHECKPOINTS + " WHERE table_name = ? AND key_id = ?",
+                (rs, i) -> new Checkpoint(rs.getObject(1), rs.getBoolean(2)), plan.table, keyId);
+        return rows.isEmpty() ? Checkpoint.START : rows.get(0);
+    }
+
+    private void saveCheckpoint(TablePlan plan, String keyId, Object lastId, boolean completed, long scanned, long migrated) {
+        Timestamp now = Timestamp.from(Instant.now());
+        // zapisuje tylko koordynator postępu tabeli (Watermark pod blokadą), więc UPDATE-then-INSERT wystarcza
+        // liczniki sumują się w obrębie klucza; checkpoint innego klucza jest zastępowany
+        int updated = jdbcTemplate.update("UPDATE " + CHECKPOINTS + " SET last_id = ?, completed = ?, "
+                        + "rows_scanned = CASE WHEN key_id = ? THEN rows_scanned + ? ELSE ? END, "
+                        + "rows_migrated = CASE WHEN key_id = ? THEN rows_migrated + ? ELSE ? END, "
+                        + "key_id = ?, updated_at = ? WHERE table_name = ?",
+                lastId, completed, keyId, scanned, scanned, keyId, migrated, migrated, keyId, now, plan.table);
+        if (updated == 0) {
+            jdbcTemplate.update("INSERT INTO " + CHECKPOINTS + "(table_name, last_id, completed, rows_scanned, rows_migrated, key_id, updated_at) "
+                    + "VALUES (?, ?, ?, ?, ?, ?, ?)", plan.table, lastId, completed, scanned, migrated, keyId, now);
+        }
+    }
+
+    private void finish(Run run) {
+        synchronized (this) {
+            run.state = switch (run.state) {
+                case RUNNING -> State.COMPLETED;
+                case STOPPING -> State.STOPPED;
+                default -> run.state;
+            };
+            run.finishedNs = System.nanoTime();
+        }
+        Progress p = run.progress();
+        double seconds = (run.finishedNs - run.startedNs) / 1_000_000_000d;
+        log.info("[ENC-MIGRATION] {} scanned={}, migrated={}, conflicts={}, remainingPlain={}, remainingStale={}, time={}s",
+                p.state(), p.scanned(), p.migrated(), p.conflicts(), p.remainingPlain(), p.remainingStale(),
+                String.format(Locale.ROOT, "%.2f", seconds));
+        if (p.state() == State.COMPLETED && run.mode == Mode.MIGRATE && p.remainingPlain() == 0 && p.remainingStale() == 0) {
+            log.info("[ENC-MIGRATION] Wszystkie pola zaszyfrowane kluczem {}.", run.keyId);
+        } else if (p.remainingPlain() > 0 || p.remainingStale() > 0) {
+            log.warn("[ENC-MIGRATION] Pozostały plaintexty ({}) / szyfrogramy innych kluczy ({}). Uruchom ponownie migrację "
+                    + "lub sprawdź niestandardowe pola.", p.remainingPlain(), p.remainingStale());
+        }
+    }
+
+    private record Checkpoint(Object lastId, boolean completed) {
+        static final Checkpoint START = new Checkpoint(null, false);
+    }
+
+    private record FieldPlan(String column, String logical, Encrypted.Mode mode) {}
+
+    private record TablePlan(String table, List<FieldPlan> fields, String select, String update, Counter scannedRows,
+                             Counter migratedRows, Counter conflictRows) {
+        static TablePlan of(Class<?> type, MeterRegistry meterRegistry) {
+            Table t = type.getAnnotation(Table.class);
+            String table = (t.schema().isBlank() ? "" : t.schema() + ".") + t.name();
+            List<FieldPlan> fields = Arrays.stream(type.getDeclaredFields())
+                    .filter(f -> f.isAnnotationPresent(Encrypted.class))
+                    .map(f -> fieldPlan(type, f))
+                    .toList();
+            List<String> columns = fields.stream().map(FieldPlan::column).toList();
+            String select = "SELECT id, " + String.join(", ", columns) + " FROM " + table;
+            String update = "UPDATE " + table + " SET " + columns.stream().map(c -> c + " = ?").collect(Collectors.joining(", "))
+                    + " WHERE id = ?" + columns.stream().map(c -> " AND " + c + " IS NOT DISTINCT FROM ?").collect(Collectors.joining());
+            return new TablePlan(table, fields, select, update,
+                    rows(meterRegistry, table, "scanned"), rows(meterRegistry, table, "migrated"), rows(meterRegistry, table, "conflict"));
+        }
+
+        private static FieldPlan fieldPlan(Class<?> type, Field f) {
+            Encrypted enc = f.getAnnotation(Encrypted.class);
+            String logical = enc.value().isBlank() ? type.getSimpleName().toLowerCase() + "." + f.getName() : enc.value();
+            return new FieldPlan(f.getAnnotation(Column.class).name(), logical, enc.mode());
+        }
+
+        private static Counter rows(MeterRegistry meterRegistry, String table, String result) {
+            return Counter.builder("encryption.migration.rows")
+                    .description("Wiersze przetworzone przez migrację szyfrowania")
+                    .tag("table", table)
+                    .tag("result", result)
+                    .register(meterRegistry);
+        }
+    }
+
+    /** Zakres (lo, hi] – hi == null oznacza do końca tabeli. Liczniki zapisuje jeden wątek, czyta Watermark po done(). */
+    private static final class Chunk {
+        final Object lo;
+        final Object hi;
+        Object lastSeen;
+        long scanned;
+        long migrated;
+        long conflicts;
+        long remainingPlain;
+        long remainingStale;
+        boolean done;
+
+        Chunk(Object lo, Object hi) {
+            this.lo = lo;
+            this.hi = hi;
+        }
+    }
+
+    /**
+     * Zakresy kończą się w dowolnej kolejności; checkpoint przesuwa się tylko po ciągłym prefiksie ukończonych,
+     * więc po wznowieniu żaden wiersz nie zostaje pominięty.
+     */
+    private final class Watermark {
+        private final Run run;
+        private final TablePlan plan;
+        private final ArrayDeque<Chunk> open = new ArrayDeque<>();
+        final AtomicLong scanned = new AtomicLong();
+        final AtomicLong migrated = new AtomicLong();
+        final AtomicLong conflicts = new AtomicLong();
+        final AtomicLong remainingPlain = new AtomicLong();
+        final AtomicLong remainingStale = new AtomicLong();
+        volatile boolean completed;
+
+        Watermark(Run run, TablePlan plan) {
+            this.run = run;
+            this.plan = plan;
+        }
+
+        synchronized Chunk open(Object lo, Object hi) {
+            Chunk chunk = new Chunk(lo, hi);
+            open.add(chunk);
+            return chunk;
+        }
+
+        synchronized void done(Chunk chunk) {
+            chunk.done = true;
+            long s = 0, m = 0;
+            Chunk head = null;
+            while (!open.isEmpty() && open.peek().done) {
+                head = open.poll();
+                s += head.scanned;
+                m += head.migrated;
+                scanned.addAndGet(head.scanned);
+                migrated.addAndGet(head.migrated);
+                conflicts.addAndGet(head.conflicts);
+                remainingPlain.addAndGet(head.remainingPlain);
+                remainingStale.addAndGet(head.remainingStale);
+                run.migrated.addAndGet(head.migrated);
+                run.conflicts.addAndGet(head.conflicts);
+                run.remainingPlain.addAndGet(head.remainingPlain);
+                run.remainingStale.addAndGet(head.remainingStale);
+                plan.migratedRows.increment(head.migrated);
+                plan.conflictRows.increment(head.conflicts);
+            }
+            if (head == null) return;
+            completed = head.hi == null;
+            if (run.mode == Mode.MIGRATE) {
+                Object lastId = head.hi != null ? head.hi : head.lastSeen != null ? head.lastSeen : head.lo;
+                saveCheckpoint(plan, run.keyId, lastId, completed, s, m);
+            }
+        }
+    }
+
+    private static final class Run {
+        final Mode mode;
+        final String keyId;
+        final Instant startedAt = Instant.now();
+        final long startedNs = System.nanoTime();
+        final AtomicLong estimatedTotal = new AtomicLong();
+        final AtomicLong scanned = new AtomicLong();
+        final AtomicLong migrated = new AtomicLong();
+        final AtomicLong conflicts = new AtomicLong();
+        final AtomicLong remainingPlain = new AtomicLong();
+        final AtomicLong remainingStale = new AtomicLong();
+        // najbliższy wolny moment (nanoTime) wg limitu wierszy/s – wspólny dla wszystkich wątków przebiegu
+        final AtomicLong nextSlotNs = new AtomicLong(System.nanoTime());
+        volatile State state = State.RUNNING;
+        volatile String table;
+        volatile long finishedNs;
+        Thread coordinator;
+
+        Run(Mode mode, String keyId) {
+            this.mode = mode;
+            this.keyId = keyId;
+        }
+
+        /** Rezerwuje czas na {@code rows} wierszy przy limicie {@code perSecond} i czeka na swoją kolej. */
+        void throttle(int rows, int perSecond) {
+            if (perSecond <= 0) return;
+            long cost = rows * 1_000_000_000L / perSecond;
+            long now = System.nanoTime();
+            long slot = nextSlotNs.getAndAccumulate(cost, (prev, c) -> Math.max(prev, now) + c);
+            long wait = slot - now;
+            if (wait > 0) LockSupport.parkNanos(wait);
+        }
+
+        void fail(Exception e) {
+            log.error("[ENC-MIGRATION] Przebieg przerwany błędem ({}): {}", table, e.getMessage(), e);
+            state = State.FAILED;
+        }
+
+        Progress progress() {
+            long done = scanned.get();
+            long endNs = finishedNs != 0 ? finishedNs : System.nanoTime();
+            double seconds = (endNs - startedNs) / 1_000_000_000d;
+            double rate = seconds > 0 ? done / seconds : 0;
+            long left = Math.max(0, estimatedTotal.get() - done);
+            Long eta = state == State.RUNNING && rate > 0 ? Math.round(left / rate) : null;
+            return new Progress(state, mode, keyId, table, done, migrated.get(), conflicts.get(), remainingPlain.get(),
+                    remainingStale.get(), estimatedTotal.get(), rate, eta, startedAt);
+        }
+    }
+}
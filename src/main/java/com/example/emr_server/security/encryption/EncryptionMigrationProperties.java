@@ -0,0 +1,27 @@
+package com.example.emr_server.security.encryption;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Konfiguracja online migracji szyfrowania (security.encryption.migration.*).
+ * chunk-size – liczba wierszy w zakresie id przydzielanym jednemu wątkowi; page-size – wiersze na SELECT / batch UPDATE.
+ * max-rows-per-second – łączny limit przepustowości wszystkich wątków (0 = bez limitu).
+ */
+@Configuration
+@ConfigurationProperties(prefix = "security.encryption.migration")
+public class EncryptionMigrationProperties {
+    private int threads = 2;
+    private int pageSize = 500;
+    private int chunkSize = 20_000;
+    private int maxRowsPerSecond = 2_000;
+
+    public int getThreads() { return threads; }
+    public void setThreads(int threads) { this.threads = threads; }
+    public int getPageSize() { return pageSize; }
+    public void setPageSize(int pageSize) { this.pageSize = pageSize; }
+    public int getChunkSize() { return chunkSize; }
+    public void setChunkSize(int chunkSize) { this.chunkSize = chunkSize; }
+    public int getMaxRowsPerSecond() { return maxRowsPerSecond; }
+    public void setMaxRowsPerSecond(int maxRowsPerSecond) { this.maxRowsPerSecond = maxRowsPerSecond; }
+}
@@ -1,27 +1,61 @@
 package com.example.emr_server.security.encryption;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
 import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import javax.crypto.Cipher;
 import javax.crypto.Mac;
+import javax.crypto.SecretKey;
 import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.security.GeneralSecurityException;
-import java.security.MessageDigest;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.Key;
+import java.security.KeyStore;
 import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
 /**
  * FieldEncryptionService – generyczny serwis szyfrowania pól:
  * Format deterministyczny: v1d:k1:<base64url(iv||ct)>
- * Format losowy:          v1r:k1:<base64url(iv||ct)>
+ * Format losowy:          v2r:k1:<base64url(iv||ct)>, ct = AES-GCM(1 bajt formatu || dane), AAD = "v2r:k1:";
+ *                         dane powyżej security.enc.compress-min-bytes są kompresowane (deflate), jeśli to się opłaca.
+ *                         Próg chroni krótkie pola (sekrety, adresy) przed wyciekiem przez długość po kompresji.
+ * Poprzedni format losowy: v1r:k1:<base64url(iv||ct)> – deszyfrowany, przepisywany przez EncryptionMigrationJob.
+ * Format pacjenta:        v3p:<patientId>:<base64url(iv||ct)> – jak v2r, ale kluczem danych pacjenta (DEK,
+ *                         {@link PatientDataKeyService}), AAD = nagłówek + nazwa pola. Używany dla pól RANDOM
+ *                         zapisywanych w zasięgu pacjenta ({@link PatientKeyScope}); zniszczenie DEK czyni je
+ *                         nieodczytywalnymi. Pola deterministyczne zostają na kluczach pól (wyszukiwanie między pacjentami).
  * Legacy PESEL (poprzedni): v1.<base64url(iv||ct)> – wspierany przy deszyfracji.
  * Uwaga: deterministyczne szyfrowanie ujawnia czy dwie wartości są takie same.
+ * Rotacja: pierścień kluczy ({@link KeyRing}) – szyfrowanie aktywnym kluczem, deszyfracja kluczem wskazanym przez
+ * keyId z szyfrogramu. Starsze klucze: security.enc.keys (keyId:Base64,...) lub keystore PKCS12
+ * (security.enc.keystore-file, alias = keyId). Kolejność na wielu węzłach: dodać nowy klucz i przeładować
+ * wszędzie, dopiero potem go aktywować ({@link #activateKey}) i przeszyfrować dane (EncryptionMigrationJob).
  */
 @Slf4j
 @Service
@@ -33,51 +67,328 @@ public class EncryptionService {
     @Value("${security.enc.active-key-id:k1}")
     private String activeKeyId;
 
-    private SecretKeySpec masterKey;
+    @Value("${security.enc.keys:}")
+    private String retiredKeys; // keyId:Base64[,keyId:Base64] – klucze tylko do odczytu starszych szyfrogramów
+
+    @Value("${security.enc.keystore-file:}")
+    private String keystoreFile;
+
+    @Value("${security.enc.keystore-password:}")
+    private String keystorePassword;
+
+    @Value("${security.enc.compress-min-bytes:512}")
+    private int compressMinBytes = 512;
+
+    private volatile KeyRing ring;
+    private volatile PatientDataKeyService patientKeys;
     private static EncryptionService INSTANCE;
 
     private static final SecureRandom RNG = new SecureRandom();
     private static final int IV_LEN = 12;
     private static final int TAG_BITS = 128;
+    private static final String AES_GCM = "AES/GCM/NoPadding";
+    private static final byte PAYLOAD_RAW = 0;
+    private static final byte PAYLOAD_DEFLATE = 1;
+    private static final int MAX_INFLATED = 16 * 1024 * 1024;
+
+    // Instancje Cipher/Mac nie są thread-safe – jedna na wątek zamiast lookupu providera przy każdym polu
+    private static final ThreadLocal<Cipher> CIPHERS = ThreadLocal.withInitial(() -> newInstance(() -> Cipher.getInstance(AES_GCM)));
+    private static final ThreadLocal<Mac> MACS = ThreadLocal.withInitial(() -> newInstance(() -> Mac.getInstance("HmacSHA256")));
+    // Deflater/Inflater trzymają natywny stan zlib – reset zamiast alokacji przy każdym polu; nowrap (bez nagłówka
+    // i sumy kontrolnej zlib), integralność zapewnia tag GCM
+    private static final ThreadLocal<Deflater> DEFLATERS = ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_SPEED, true));
+    private static final ThreadLocal<Inflater> INFLATERS = ThreadLocal.withInitial(() -> new Inflater(true));
+    // Ostatni wynik deterministyczny wątku: powtórne szyfrowanie tej samej wartości (np. re-bind przy UPDATE)
+    // nie trafia na blokadę ponownego użycia klucza+IV w GCM. Rozpoznawany po IV (HMAC wartości) – wątki puli
+    // nie trzymają plaintextu (PESEL, nazwiska) poza ograniczonym DeterministicValueCache
+    private record LastDeterministic(SecretKeySpec key, byte[] iv, String result) {}
+    private static final ThreadLocal<LastDeterministic> LAST_DETERMINISTIC = new ThreadLocal<>();
+
+    private final DeterministicValueCache valueCache;
+
+    // encryption.field{field,op,mode} – pole logiczne pochodzi z @Encrypted (stały, mały zbiór), nigdy z danych;
+    // timery rejestrowane leniwie, więc nieużywane kombinacje (np. random dla pól deterministycznych) nie tworzą serii
+    private final Map<String, Timer> encryptDeterministicTimers = new ConcurrentHashMap<>();
+    private final Map<String, Timer> decryptDeterministicTimers = new ConcurrentHashMap<>();
+    private final Map<String, Timer> encryptRandomTimers = new ConcurrentHashMap<>();
+    private final Map<String, Timer> decryptRandomTimers = new ConcurrentHashMap<>();
+    private final MeterRegistry meterRegistry;
+
+    public EncryptionService() {
+        this(DeterministicValueCache.disabled());
+    }
 
-    private final Map<String, SecretKeySpec> deterministicSubKeys = new ConcurrentHashMap<>();
-    private final Map<String, SecretKeySpec> randomSubKeys = new ConcurrentHashMap<>();
+    public EncryptionService(DeterministicValueCache valueCache) {
+        this(valueCache, new CompositeMeterRegistry()); // bez podpiętych rejestrów – metryki są no-op
+    }
+
+    @Autowired
+    public EncryptionService(DeterministicValueCache valueCache, MeterRegistry meterRegistry) {
+        this.valueCache = valueCache;
+        this.meterRegistry = meterRegistry;
+    }
 
     @PostConstruct
     void init() {
-        if (masterKeyB64 == null || masterKeyB64.isBlank()) {
+        reloadKeys(masterKeyB64, activeKeyId != null ? activeKeyId : "k1"); // domyślna z @Value poza Springiem
+        INSTANCE = this;
+        log.info("EncryptionService zainicjalizowany (keyId={})", activeKeyId);
+    }
+
+    /**
+     * Podmiana materiału klucza (start aplikacji / rotacja): masterKeyB64 staje się aktywnym kluczem keyId,
+     * dotychczasowe klucze zostają w pierścieniu do odczytu, a starsze klucze z konfiguracji / keystore są
+     * wczytywane ponownie. Cache wartości deterministycznych jest czyszczony – żaden wpis nie przeżywa zmiany klucza.
+     */
+    public synchronized void reloadKeys(String masterKeyB64, String keyId) {
+        Map<String, byte[]> material = currentAndConfiguredKeys();
+        if (masterKeyB64 != null && !masterKeyB64.isBlank()) {
+            material.put(keyId, Base64.getDecoder().decode(masterKeyB64));
+        } else if (!material.containsKey(keyId)) {
             byte[] tmp = new byte[32];
             RNG.nextBytes(tmp);
             log.warn("Brak security.enc.master-key – generowany EFEMERYCZNY (utrata możliwości odszyfrowania po restarcie!)");
-            masterKey = new SecretKeySpec(tmp, "AES");
-        } else {
-            byte[] raw = Base64.getDecoder().decode(masterKeyB64);
-            if (raw.length != 32) throw new IllegalStateException("Master key musi mieć 32 bajty");
-            masterKey = new SecretKeySpec(raw, "AES");
+            material.put(keyId, tmp);
         }
-        INSTANCE = this;
-        log.info("EncryptionService zainicjalizowany (keyId={})", activeKeyId);
+        this.masterKeyB64 = masterKeyB64;
+        install(new KeyRing(material, keyId));
+    }
+
+    /**
+     * Aktywacja klucza obecnego w pierścieniu lub w keystore (wczytywanym ponownie – nowy klucz można dodać
+     * do pliku bez restartu). Klucze nie są usuwane w trakcie działania, więc nic nie traci możliwości odczytu.
+     */
+    public synchronized void activateKey(String keyId) {
+        Map<String, byte[]> material = currentAndConfiguredKeys();
+        if (!material.containsKey(keyId)) throw new IllegalArgumentException("Nieznany klucz szyfrowania: " + keyId);
+        install(new KeyRing(material, keyId));
+    }
+
+    /** Od tej chwili pola RANDOM zapisywane w zasięgu pacjenta szyfrowane są jego kluczem danych (v3p). */
+    void usePatientDataKeys(PatientDataKeyService patientKeys) {
+        this.patientKeys = patientKeys;
+    }
+
+    /** Serwis kluczy danych pacjentów albo null, gdy nie jest zarejestrowany (v3p nieużywane). */
+    PatientDataKeyService patientDataKeys() {
+        return patientKeys;
+    }
+
+    /** Klucz danych pacjenta zawinięty aktywnym KEK; AAD = id pacjenta, więc zawiniętego klucza nie da się przypisać innemu. */
+    record WrappedDataKey(String keyId, String wrapped) {}
+
+    WrappedDataKey wrapDataKey(UUID patientId, byte[] dataKey) {
+        try {
+            KeyRing.Key ringKey = ring.active();
+            byte[] out = new byte[IV_LEN + dataKey.length + TAG_BITS / 8];
+            byte[] iv = new byte[IV_LEN];
+            RNG.nextBytes(iv);
+            System.arraycopy(iv, 0, out, 0, IV_LEN);
+            aesGcm(ringKey.wrapping(), out, dataKey, dataKey.length, patientId.toString().getBytes(StandardCharsets.US_ASCII));
+            return new WrappedDataKey(ringKey.id(), b64(out));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Wrap data key failed", e);
+        }
+    }
+
+    byte[] unwrapDataKey(UUID patientId, WrappedDataKey wrapped) {
+        try {
+            return aesGcmDecryptBytes(key(wrapped.keyId()).wrapping(), fromB64(wrapped.wrapped()),
+                    patientId.toString().getBytes(StandardCharsets.US_ASCII));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Unwrap data key failed", e);
+        }
+    }
+
+    public String activeKeyId() {
+        return ring.active().id();
+    }
+
+    public List<String> keyIds() {
+        return ring.all().stream().map(KeyRing.Key::id).sorted().toList();
+    }
+
+    private void install(KeyRing next) {
+        ring = next;
+        activeKeyId = next.active().id();
+        valueCache.invalidateAll();
+        log.info("Pierścień kluczy szyfrowania: aktywny={}, dostępne={}", activeKeyId, keyIds());
+    }
+
+    private Map<String, byte[]> currentAndConfiguredKeys() {
+        Map<String, byte[]> material = new LinkedHashMap<>();
+        KeyRing current = ring;
+        if (current != null) current.all().forEach(k -> material.put(k.id(), k.material()));
+        if (retiredKeys != null && !retiredKeys.isBlank()) {
+            for (String entry : retiredKeys.split(",")) {
+                int sep = entry.indexOf(':');
+                if (sep <= 0) throw new IllegalStateException("Niepoprawny wpis security.enc.keys (oczekiwano keyId:Base64)");
+                material.put(entry.substring(0, sep).trim(), Base64.getDecoder().decode(entry.substring(sep + 1).trim()));
+            }
+        }
+        if (keystoreFile != null && !keystoreFile.isBlank()) {
+            material.putAll(loadKeystore(Path.of(keystoreFile)));
+        }
+        return material;
+    }
+
+    private Map<String, byte[]> loadKeystore(Path file) {
+        char[] password = keystorePassword == null ? new char[0] : keystorePassword.toCharArray();
+        try (InputStream in = Files.newInputStream(file)) {
+            KeyStore ks = KeyStore.getInstance("PKCS12");
+            ks.load(in, password);
+            Map<String, byte[]> keys = new LinkedHashMap<>();
+            for (String alias : Collections.list(ks.aliases())) {
+                Key key = ks.isKeyEntry(alias) ? ks.getKey(alias, password) : null;
+                if (key instanceof SecretKey secret) keys.put(alias, secret.getEncoded());
+            }
+            return keys;
+        } catch (IOException | GeneralSecurityException e) {
+            throw new IllegalStateException("Nie można wczytać keystore kluczy szyfrowania: " + file, e);
+        }
+    }
+
+    private KeyRing.Key key(String keyId) {
+        KeyRing.Key key = ring.get(keyId);
+        if (key == null) throw new IllegalStateException("Nieznany klucz szyfrowania: " + keyId);
+        return key;
     }
 
     public static EncryptionService get() { return INSTANCE; }
 
+    private interface CryptoFactory<T> { T create() throws GeneralSecurityException; }
+
+    private static <T> T newInstance(CryptoFactory<T> factory) {
+        try {
+            return factory.create();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Brak algorytmu kryptograficznego", e);
+        }
+    }
+
     public boolean looksEncrypted(String v) {
         if (v == null) return false;
-        return v.startsWith("v1d:") || v.startsWith("v1r:") || v.startsWith("v1.");
+        return v.startsWith("v1d:") || v.startsWith("v2r:") || v.startsWith("v3p:") || v.startsWith("v1r:") || v.startsWith("v1.");
+    }
+
+    /**
+     * Szyfrowanie wartości pola wg trybu z @Encrypted (puste i już zaszyfrowane wartości bez zmian).
+     */
+    public String encryptField(String fieldName, Encrypted.Mode mode, String plaintext) {
+        if (plaintext == null || plaintext.isBlank() || looksEncrypted(plaintext)) return plaintext;
+        return mode == Encrypted.Mode.DETERMINISTIC
+                ? encryptDeterministic(fieldName, plaintext.trim())
+                : encryptRandom(fieldName, plaintext.trim());
+    }
+
+    /**
+     * true, gdy wartość jest zaszyfrowana aktywnym kluczem w trybie {@code mode} – nie wymaga przeszyfrowania.
+     * Wartości v3p są aktualne niezależnie od klucza – po rotacji przeszyfrowaniu podlega tylko zawinięty DEK.
+     */
+    public boolean isCurrent(String stored, Encrypted.Mode mode) {
+        if (stored == null) return false;
+        if (mode == Encrypted.Mode.RANDOM && stored.startsWith("v3p:")) return true;
+        String prefix = mode == Encrypted.Mode.DETERMINISTIC ? "v1d:" : "v2r:";
+        String id = ring.active().id();
+        return stored.startsWith(prefix) && stored.startsWith(id, 4)
+                && stored.length() > 4 + id.length() && stored.charAt(4 + id.length()) == ':';
+    }
+
+    /**
+     * Postać docelowa wartości z bazy: plaintext jest szyfrowany, szyfrogram starszym kluczem (lub w innym trybie)
+     * odszyfrowywany i szyfrowany aktywnym kluczem; wartość już aktualna wraca bez zmian.
+     */
+    public String reencryptField(String fieldName, Encrypted.Mode mode, String stored) {
+        if (stored == null || stored.isBlank() || isCurrent(stored, mode)) return stored;
+        String plaintext = looksEncrypted(stored) ? decryptField(fieldName, stored) : stored;
+        return encryptField(fieldName, mode, plaintext);
+    }
+
+    /**
+     * Szyfrogramy wartości we wszystkich kluczach pierścienia (aktywny pierwszy) – do wyszukiwania równościowego,
+     * gdy część wierszy nie jest jeszcze przeszyfrowana po rotacji.
+     */
+    public List<String> deterministicCandidates(String fieldName, String plaintext) {
+        if (plaintext == null) return List.of();
+        if (isAlreadyCiphertext(plaintext)) return List.of(plaintext);
+        KeyRing r = ring;
+        String current = encryptDeterministic(fieldName, plaintext);
+        if (r.all().size() == 1) return List.of(current);
+        List<String> out = new ArrayList<>(r.all().size());
+        out.add(current);
+        for (KeyRing.Key key : r.all()) {
+            if (key != r.active()) out.add(doEncryptDeterministic(key, fieldName, plaintext));
+        }
+        return out;
+    }
+
+    /**
+     * Tokeny indeksu ślepego wartości (już znormalizowanych) aktywnym kluczem: HMAC-SHA256 skrócony do 128 bitów.
+     * Token nie pozwala odtworzyć wartości bez klucza, ale równe wartości mają równe tokeny.
+     */
+    public List<String> blindTokens(String fieldName, Collection<String> terms) {
+        return blindTokens(ring.active(), fieldName, terms);
+    }
+
+    /** Tokeny wartości we wszystkich kluczach pierścienia (aktywny pierwszy) – indeks po rotacji może być jeszcze stary. */
+    public List<String> blindTokenCandidates(String fieldName, String term) {
+        KeyRing r = ring;
+        List<String> out = new ArrayList<>(r.all().size());
+        out.addAll(blindTokens(r.active(), fieldName, List.of(term)));
+        for (KeyRing.Key key : r.all()) {
+            if (key != r.active()) out.addAll(blindTokens(key, fieldName, List.of(term)));
+        }
+        return out;
+    }
+
+    private List<String> blindTokens(KeyRing.Key ringKey, String fieldName, Collection<String> terms) {
+        try {
+            Mac mac = MACS.get();
+            mac.init(ringKey.index(fieldName));
+            List<String> out = new ArrayList<>(terms.size());
+            for (String term : terms) {
+                byte[] digest = mac.doFinal(term.getBytes(StandardCharsets.UTF_8));
+                out.add(Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(digest, 16)));
+            }
+            return out;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Blind index token failed", e);
+        }
+    }
+
+    /**
+     * Deszyfrowanie wartości odczytanej z bazy – tryb rozpoznawany po prefiksie; plaintext zwracany bez zmian.
+     */
+    public String decryptField(String fieldName, String stored) {
+        if (stored == null || stored.isBlank() || !looksEncrypted(stored)) return stored;
+        if (stored.startsWith("v2r:") || stored.startsWith("v3p:") || stored.startsWith("v1r:")) return decryptRandom(fieldName, stored);
+        return decryptDeterministic(fieldName, stored); // v1d: oraz legacy v1.
     }
 
     // PUBLIC API (Deterministyczne)
     public String encryptDeterministic(String fieldName, String plaintext) {
         if (plaintext == null) return null;
         if (isAlreadyCiphertext(plaintext)) return plaintext; // idempotent
+        long start = System.nanoTime();
+        try {
+            return valueCache.encrypt(fieldName, plaintext, p -> doEncryptDeterministic(ring.active(), fieldName, p));
+        } finally {
+            timer(encryptDeterministicTimers, fieldName, "encrypt", "deterministic").record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private String doEncryptDeterministic(KeyRing.Key ringKey, String fieldName, String plaintext) {
         try {
-            SecretKeySpec key = subKeyDeterministic(fieldName);
-            byte[] iv = deriveDeterministicIv(key, plaintext);
-            byte[] ct = aesGcm(key, iv, plaintext.getBytes());
-            byte[] out = new byte[iv.length + ct.length];
-            System.arraycopy(iv,0,out,0,iv.length);
-            System.arraycopy(ct,0,out,iv.length,ct.length);
-            return "v1d:" + activeKeyId + ":" + b64(out);
+            SecretKeySpec key = ringKey.deterministic(fieldName);
+            byte[] data = plaintext.getBytes(StandardCharsets.UTF_8);
+            byte[] out = new byte[IV_LEN + data.length + TAG_BITS / 8];
+            deriveDeterministicIv(key, data, out);
+            LastDeterministic last = LAST_DETERMINISTIC.get();
+            if (last != null && last.key() == key && Arrays.equals(last.iv(), 0, IV_LEN, out, 0, IV_LEN)) return last.result();
+            aesGcm(key, out, data);
+            String result = "v1d:" + ringKey.id() + ":" + b64(out);
+            LAST_DETERMINISTIC.set(new LastDeterministic(key, Arrays.copyOf(out, IV_LEN), result));
+            return result;
         } catch (GeneralSecurityException e) {
             throw new IllegalStateException("Encrypt deterministic failed", e);
         }
@@ -85,6 +396,15 @@ public class EncryptionService {
 
     public String decryptDeterministic(String fieldName, String ciphertext) {
         if (ciphertext == null) return null;
+        long start = System.nanoTime();
+        try {
+            return doDecryptDeterministic(fieldName, ciphertext);
+        } finally {
+            timer(decryptDeterministicTimers, fieldName, "decrypt", "deterministic").record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private String doDecryptDeterministic(String fieldName, String ciphertext) {
         if (ciphertext.startsWith("v1d:")) {
             // Oczekiwany format: v1d:<keyId>:<base64>
             int first = ciphertext.indexOf(':', 4); // po prefiksie próbujemy znaleźć kolon po keyId
@@ -92,30 +412,35 @@ public class EncryptionService {
             String keyId = ciphertext.substring(4, first);
             String b64 = ciphertext.substring(first + 1);
             if (b64.isBlank()) throw new IllegalArgumentException("Niepoprawny format ciphertext (brak danych)");
-            byte[] all = fromB64(b64);
-            if (all.length < IV_LEN + 16) throw new IllegalArgumentException("Ciphertext za krótki");
-            byte[] iv = slice(all, 0, IV_LEN);
-            byte[] ct = slice(all, IV_LEN, all.length - IV_LEN);
-            try {
-                // aktualnie ignorujemy keyId przy wyprowadzaniu subkey (rotacja wymaga mapy keyId->master/sub key)
-                SecretKeySpec key = subKeyDeterministic(fieldName);
-                return new String(aesGcmDecrypt(key, iv, ct));
-            } catch (GeneralSecurityException e) {
-                throw new IllegalStateException("Decrypt deterministic failed", e);
-            }
+            KeyRing r = ring;
+            return valueCache.decrypt(fieldName, ciphertext, keyId.equals(r.active().id()), c -> {
+                byte[] all = fromB64(b64);
+                if (all.length < IV_LEN + 16) throw new IllegalArgumentException("Ciphertext za krótki");
+                try {
+                    SecretKeySpec key = key(keyId).deterministic(fieldName);
+                    return aesGcmDecrypt(key, all);
+                } catch (GeneralSecurityException e) {
+                    throw new IllegalStateException("Decrypt deterministic failed", e);
+                }
+            });
         }
         if (ciphertext.startsWith("v1.")) { // legacy
             String b64 = ciphertext.substring(3);
             byte[] all = fromB64(b64);
             if (all.length < IV_LEN + 16) return ciphertext; // niepoprawne – pozostaw
-            byte[] iv = slice(all, 0, IV_LEN);
-            byte[] ct = slice(all, IV_LEN, all.length - IV_LEN);
-            try {
-                SecretKeySpec key = subKeyDeterministic(fieldName);
-                return new String(aesGcmDecrypt(key, iv, ct));
-            } catch (Exception e) {
-                return ciphertext;
+            // bez keyId – próbujemy aktywny, potem pozostałe (tag GCM odrzuca zły klucz)
+            KeyRing r = ring;
+            List<KeyRing.Key> order = new ArrayList<>(r.all());
+            order.remove(r.active());
+            order.add(0, r.active());
+            for (KeyRing.Key candidate : order) {
+                try {
+                    return aesGcmDecrypt(candidate.deterministic(fieldName), all);
+                } catch (Exception e) {
+                    // następny klucz
+                }
             }
+            return ciphertext;
         }
         return ciphertext; // plaintext
     }
@@ -124,35 +449,116 @@ public class EncryptionService {
     public String encryptRandom(String fieldName, String plaintext) {
         if (plaintext == null) return null;
         if (isAlreadyCiphertext(plaintext)) return plaintext;
+        long start = System.nanoTime();
         try {
-            SecretKeySpec key = subKeyRandom(fieldName);
-            byte[] iv = new byte[IV_LEN];
-            RNG.nextBytes(iv);
-            byte[] ct = aesGcm(key, iv, plaintext.getBytes());
-            byte[] out = new byte[iv.length + ct.length];
-            System.arraycopy(iv,0,out,0,iv.length);
-            System.arraycopy(ct,0,out,iv.length,ct.length);
-            return "v1r:" + activeKeyId + ":" + b64(out);
+            return doEncryptRandom(fieldName, plaintext);
+        } finally {
+            timer(encryptRandomTimers, fieldName, "encrypt", "random").record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private String doEncryptRandom(String fieldName, String plaintext) {
+        try {
+            UUID patientId = PatientKeyScope.current();
+            PatientDataKeyService keys = patientKeys;
+            if (patientId != null && keys != null) {
+                String header = "v3p:" + patientId + ":";
+                return header + b64(seal(keys.keyForWrite(patientId), plaintext, patientAad(header, fieldName)));
+            }
+            KeyRing.Key ringKey = ring.active();
+            String header = "v2r:" + ringKey.id() + ":";
+            return header + b64(seal(ringKey.random(fieldName), plaintext, header.getBytes(StandardCharsets.US_ASCII)));
         } catch (GeneralSecurityException e) {
             throw new IllegalStateException("Encrypt random failed", e);
         }
     }
 
+    /** iv || AES-GCM(bajt formatu || dane) – dane od compressMinBytes kompresowane, jeśli to się opłaca. */
+    private byte[] seal(SecretKeySpec key, String plaintext, byte[] aad) throws GeneralSecurityException {
+        byte[] data = plaintext.getBytes(StandardCharsets.UTF_8);
+        byte[] payload = new byte[1 + data.length];
+        int payloadLen = data.length >= compressMinBytes ? deflate(data, payload) : 0;
+        if (payloadLen == 0) {
+            payload[0] = PAYLOAD_RAW;
+            System.arraycopy(data, 0, payload, 1, data.length);
+            payloadLen = payload.length;
+        }
+        byte[] out = new byte[IV_LEN + payloadLen + TAG_BITS / 8];
+        byte[] iv = new byte[IV_LEN];
+        RNG.nextBytes(iv);
+        System.arraycopy(iv, 0, out, 0, IV_LEN);
+        aesGcm(key, out, payload, payloadLen, aad);
+        return out;
+    }
+
+    private String open(SecretKeySpec key, byte[] all, byte[] aad) throws GeneralSecurityException {
+        byte[] payload = aesGcmDecryptBytes(key, all, aad);
+        return switch (payload[0]) {
+            case PAYLOAD_RAW -> new String(payload, 1, payload.length - 1, StandardCharsets.UTF_8);
+            case PAYLOAD_DEFLATE -> inflate(payload);
+            default -> throw new IllegalArgumentException("Nieznany format ładunku: " + payload[0]);
+        };
+    }
+
+    /** Jeden DEK obejmuje wszystkie pola pacjenta – nazwa pola w AAD wiąże szyfrogram z kolumną. */
+    private static byte[] patientAad(String header, String fieldName) {
+        return (header + fieldName).getBytes(StandardCharsets.UTF_8);
+    }
+
     public String decryptRandom(String fieldName, String ciphertext) {
         if (ciphertext == null) return null;
+        long start = System.nanoTime();
+        try {
+            return doDecryptRandom(fieldName, ciphertext);
+        } finally {
+            timer(decryptRandomTimers, fieldName, "decrypt", "random").record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private String doDecryptRandom(String fieldName, String ciphertext) {
+        if (ciphertext.startsWith("v2r:")) {
+            // Format: v2r:<keyId>:<base64>, nagłówek jako AAD
+            int first = ciphertext.indexOf(':', 4);
+            if (first < 0) throw new IllegalArgumentException("Niepoprawny format ciphertext random (brak separatora po keyId)");
+            String keyId = ciphertext.substring(4, first);
+            String b64 = ciphertext.substring(first + 1);
+            if (b64.isBlank()) throw new IllegalArgumentException("Niepoprawny format ciphertext random (brak danych)");
+            byte[] all = fromB64(b64);
+            if (all.length < IV_LEN + 17) throw new IllegalArgumentException("Ciphertext random za krótki");
+            try {
+                SecretKeySpec key = key(keyId).random(fieldName);
+                return open(key, all, ciphertext.substring(0, first + 1).getBytes(StandardCharsets.US_ASCII));
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("Decrypt random failed", e);
+            }
+        }
+        if (ciphertext.startsWith("v3p:")) {
+            // Format: v3p:<patientId>:<base64>, klucz danych pacjenta
+            int first = ciphertext.indexOf(':', 4);
+            if (first < 0) throw new IllegalArgumentException("Niepoprawny format ciphertext pacjenta (brak separatora po id)");
+            UUID patientId = UUID.fromString(ciphertext.substring(4, first));
+            byte[] all = fromB64(ciphertext.substring(first + 1));
+            if (all.length < IV_LEN + 17) throw new IllegalArgumentException("Ciphertext pacjenta za krótki");
+            PatientDataKeyService keys = patientKeys;
+            if (keys == null) throw new IllegalStateException("Klucze danych pacjentów niedostępne");
+            try {
+                return open(keys.keyForRead(patientId), all, patientAad(ciphertext.substring(0, first + 1), fieldName));
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("Decrypt patient failed", e);
+            }
+        }
         if (ciphertext.startsWith("v1r:")) {
             // Format: v1r:<keyId>:<base64>
             int first = ciphertext.indexOf(':', 4);
             if (first < 0) throw new IllegalArgumentException("Niepoprawny format ciphertext random (brak separatora po keyId)");
+            String keyId = ciphertext.substring(4, first);
             String b64 = ciphertext.substring(first + 1);
             if (b64.isBlank()) throw new IllegalArgumentException("Niepoprawny format ciphertext random (brak danych)");
             byte[] all = fromB64(b64);
             if (all.length < IV_LEN + 16) throw new IllegalArgumentException("Ciphertext random za krótki");
-            byte[] iv = slice(all, 0, IV_LEN);
-            byte[] ct = slice(all, IV_LEN, all.length - IV_LEN);
             try {
-                SecretKeySpec key = subKeyRandom(fieldName);
-                return new String(aesGcmDecrypt(key, iv, ct));
+                SecretKeySpec key = key(keyId).random(fieldName);
+                return aesGcmDecrypt(key, all);
             } catch (GeneralSecurityException e) {
                 throw new IllegalStateException("Decrypt random failed", e);
             }
@@ -160,50 +566,101 @@ public class EncryptionService {
         return ciphertext; // plaintext
     }
 
-    private SecretKeySpec subKeyDeterministic(String field) {
-        return deterministicSubKeys.computeIfAbsent(field, f -> deriveSubKey("DET:"+f));
+    private Timer timer(Map<String, Timer> timers, String field, String op, String mode) {
+        Timer timer = timers.get(field);
+        if (timer != null) return timer;
+        return timers.computeIfAbsent(field, f -> Timer.builder("encryption.field")
+                .tag("field", f).tag("op", op).tag("mode", mode)
+                .register(meterRegistry));
     }
-    private SecretKeySpec subKeyRandom(String field) {
-        return randomSubKeys.computeIfAbsent(field, f -> deriveSubKey("RND:"+f));
+
+    /** IV = HMAC(subKey, plaintext)[0..12) zapisany bezpośrednio na początek bufora wyjściowego. */
+    private void deriveDeterministicIv(SecretKeySpec subKey, byte[] data, byte[] out) throws GeneralSecurityException {
+        Mac mac = MACS.get();
+        mac.init(subKey);
+        mac.update(data);
+        byte[] full = mac.doFinal();
+        System.arraycopy(full, 0, out, 0, IV_LEN);
+    }
+
+    /**
+     * Kompresuje data do payload[1..] z bajtem formatu w payload[0]; zwraca długość ładunku albo 0,
+     * gdy skompresowane dane nie są krótsze od oryginału (tekst już zwięzły, dane losowe).
+     */
+    private static int deflate(byte[] data, byte[] payload) {
+        if (data.length < 2) return 0;
+        Deflater deflater = DEFLATERS.get();
+        deflater.reset();
+        deflater.setInput(data);
+        deflater.finish();
+        int n = deflater.deflate(payload, 1, data.length - 1);
+        if (!deflater.finished()) return 0;
+        payload[0] = PAYLOAD_DEFLATE;
+        return 1 + n;
     }
 
-    private SecretKeySpec deriveSubKey(String info) {
+    private static String inflate(byte[] payload) {
+        Inflater inflater = INFLATERS.get();
+        inflater.reset();
+        inflater.setInput(payload, 1, payload.length - 1);
+        byte[] buf = new byte[Math.max(64, payload.length * 4)];
+        int len = 0;
         try {
-            Mac mac = Mac.getInstance("HmacSHA256");
-            mac.init(masterKey);
-            byte[] out = mac.doFinal(info.getBytes());
-            // 32 bajty -> AES-256
-            return new SecretKeySpec(out, "AES");
-        } catch (Exception e) {
-            throw new IllegalStateException("Subkey derivation failed", e);
+            while (!inflater.finished()) {
+                if (len == buf.length) {
+                    if (buf.length >= MAX_INFLATED) throw new IllegalStateException("Rozpakowana wartość przekracza limit");
+                    buf = Arrays.copyOf(buf, Math.min(MAX_INFLATED, buf.length * 2));
+                }
+                int n = inflater.inflate(buf, len, buf.length - len);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalStateException("Niekompletne dane skompresowane");
+                }
+                len += n;
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Decompress failed", e);
         }
+        return new String(buf, 0, len, StandardCharsets.UTF_8);
     }
 
-    private byte[] deriveDeterministicIv(SecretKeySpec subKey, String plaintext) throws GeneralSecurityException {
-        Mac mac = Mac.getInstance("HmacSHA256");
-        mac.init(subKey);
-        byte[] full = mac.doFinal(plaintext.getBytes());
-        byte[] iv = new byte[IV_LEN];
-        System.arraycopy(full,0,iv,0,IV_LEN);
-        return iv;
+    /** Szyfruje data do out[IV_LEN..], IV odczytywany z out[0..IV_LEN). */
+    private void aesGcm(SecretKeySpec key, byte[] out, byte[] data) throws GeneralSecurityException {
+        aesGcm(key, out, data, data.length, null);
+    }
+
+    /** Szyfruje data[0..len) do out[IV_LEN..] z opcjonalnym AAD (uwierzytelnione, nieszyfrowane). */
+    private void aesGcm(SecretKeySpec key, byte[] out, byte[] data, int len, byte[] aad) throws GeneralSecurityException {
+        GCMParameterSpec spec = new GCMParameterSpec(TAG_BITS, out, 0, IV_LEN);
+        Cipher cipher = CIPHERS.get();
+        try {
+            cipher.init(Cipher.ENCRYPT_MODE, key, spec);
+        } catch (InvalidAlgorithmParameterException e) {
+            // JCE blokuje ponowne użycie pary klucz+IV na tej samej instancji (deterministyczne szyfrowanie
+            // tej samej wartości) – nowa instancja dla wątku
+            cipher = Cipher.getInstance(AES_GCM);
+            CIPHERS.set(cipher);
+            cipher.init(Cipher.ENCRYPT_MODE, key, spec);
+        }
+        if (aad != null) cipher.updateAAD(aad);
+        cipher.doFinal(data, 0, len, out, IV_LEN);
     }
 
-    private byte[] aesGcm(SecretKeySpec key, byte[] iv, byte[] data) throws GeneralSecurityException {
-        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
-        cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, iv));
-        return cipher.doFinal(data);
+    /** Deszyfruje all = iv||ct bez kopiowania fragmentów. */
+    private String aesGcmDecrypt(SecretKeySpec key, byte[] all) throws GeneralSecurityException {
+        return new String(aesGcmDecryptBytes(key, all, null), StandardCharsets.UTF_8);
     }
-    private byte[] aesGcmDecrypt(SecretKeySpec key, byte[] iv, byte[] ct) throws GeneralSecurityException {
-        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
-        cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, iv));
-        return cipher.doFinal(ct);
+
+    private byte[] aesGcmDecryptBytes(SecretKeySpec key, byte[] all, byte[] aad) throws GeneralSecurityException {
+        Cipher cipher = CIPHERS.get();
+        cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, all, 0, IV_LEN));
+        if (aad != null) cipher.updateAAD(aad);
+        return cipher.doFinal(all, IV_LEN, all.length - IV_LEN);
     }
 
     private boolean isAlreadyCiphertext(String v) {
-        return v.startsWith("v1d:") || v.startsWith("v1r:") || v.startsWith("v1.");
+        return v.startsWith("v1d:") || v.startsWith("v2r:") || v.startsWith("v3p:") || v.startsWith("v1r:") || v.startsWith("v1.");
     }
 
     private static String b64(byte[] in) { return Base64.getUrlEncoder().withoutPadding().encodeToString(in); }
     private static byte[] fromB64(String b) { return Base64.getUrlDecoder().decode(b); }
-    private static byte[] slice(byte[] a, int off, int len) { byte[] r = new byte[len]; System.arraycopy(a,off,r,0,len); return r; }
 }
@@ -0,0 +1,103 @@
+package com.example.emr_server.security.encryption;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Niezmienny zbiór kluczy głównych (keyId → 32B) z jednym aktywnym do szyfrowania. Pozostałe służą tylko
+ * do odczytu starszych szyfrogramów do czasu ich przeszyfrowania. Podklucze pól (HMAC(master, "DET:"/"RND:"+pole))
+ * są cache'owane per klucz, więc para (keyId, pole) wyprowadzana jest raz; podmiana pierścienia nie wymaga czyszczenia.
+ * Ten sam materiał wyprowadza też KEK (HMAC(master, "KEK")) zawijający klucze danych pacjentów
+ * oraz klucze tokenów indeksu ślepego (HMAC(master, "BIDX:"+pole)).
+ */
+final class KeyRing {
+
+    private final Map<String, Key> keys;
+    private final Key active;
+
+    KeyRing(Map<String, byte[]> material, String activeKeyId) {
+        Map<String, Key> byId = new LinkedHashMap<>();
+        material.forEach((id, raw) -> {
+            if (raw.length != 32) throw new IllegalStateException("Klucz " + id + " musi mieć 32 bajty");
+            byId.put(id, new Key(id, new SecretKeySpec(raw, "AES")));
+        });
+        this.active = byId.get(activeKeyId);
+        if (active == null) throw new IllegalStateException("Brak aktywnego klucza " + activeKeyId + " w pierścieniu " + byId.keySet());
+        this.keys = Map.copyOf(byId);
+    }
+
+    Key active() {
+        return active;
+    }
+
+    /** Klucz o danym identyfikatorze albo null, gdy nie ma go w pierścieniu. */
+    Key get(String keyId) {
+        return keys.get(keyId);
+    }
+
+    Collection<Key> all() {
+        return keys.values();
+    }
+
+    static final class Key {
+        private final String id;
+        private final SecretKeySpec master;
+        private final Map<String, SecretKeySpec> deterministicSubKeys = new ConcurrentHashMap<>();
+        private final Map<String, SecretKeySpec> randomSubKeys = new ConcurrentHashMap<>();
+        private final Map<String, SecretKeySpec> indexSubKeys = new ConcurrentHashMap<>();
+        private volatile SecretKeySpec wrapping;
+
+        private Key(String id, SecretKeySpec master) {
+            this.id = id;
+            this.master = master;
+        }
+
+        String id() {
+            return id;
+        }
+
+        byte[] material() {
+            return master.getEncoded();
+        }
+
+        SecretKeySpec deterministic(String field) {
+            SecretKeySpec key = deterministicSubKeys.get(field);
+            return key != null ? key : deterministicSubKeys.computeIfAbsent(field, f -> derive("DET:" + f));
+        }
+
+        SecretKeySpec random(String field) {
+            SecretKeySpec key = randomSubKeys.get(field);
+            return key != null ? key : randomSubKeys.computeIfAbsent(field, f -> derive("RND:" + f));
+        }
+
+        /** Klucz HMAC tokenów indeksu ślepego pola – osobny od klucza szyfrowania tego pola. */
+        SecretKeySpec index(String field) {
+            SecretKeySpec key = indexSubKeys.get(field);
+            return key != null ? key : indexSubKeys.computeIfAbsent(field, f -> derive("BIDX:" + f));
+        }
+
+        /** Klucz zawijający klucze danych pacjentów (KEK) – osobny od podkluczy pól. */
+        SecretKeySpec wrapping() {
+            SecretKeySpec key = wrapping;
+            if (key == null) wrapping = key = derive("KEK");
+            return key;
+        }
+
+        private SecretKeySpec derive(String info) {
+            try {
+                // rzadkie (raz na klucz i pole) – bez współdzielenia instancji Mac z gorącą ścieżką
+                Mac mac = Mac.getInstance("HmacSHA256");
+                mac.init(master);
+                // 32 bajty -> AES-256
+                return new SecretKeySpec(mac.doFinal(info.getBytes(StandardCharsets.UTF_8)), "AES");
+            } catch (Exception e) {
+                throw new IllegalStateException("Subkey derivation failed", e);
+            }
+        }
+    }
+}
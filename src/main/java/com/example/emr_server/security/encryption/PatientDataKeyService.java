@@ -0,0 +1,269 @@
+package com.example.emr_server.security.encryption;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.crypto.spec.SecretKeySpec;
+import java.security.SecureRandom;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Klucze danych pacjentów (DEK, 32B losowe) zawinięte kluczem KEK z pierścienia i przechowywane w
+ * emr.patient_data_keys. DEK tworzony przy pierwszym zapisie pola pacjenta w transakcji wołającego, na jej
+ * połączeniu – zapis pacjenta z pełnej puli nie czeka na drugie połączenie. Do współdzielonego cache nowy klucz
+ * trafia dopiero po commicie (do tego czasu widzi go tylko ta transakcja), więc rollback wycofuje klucz razem z
+ * danymi nim zaszyfrowanymi. Równoległe utworzenie klucza tego samego pacjenta czeka na konflikcie klucza
+ * głównego i używa klucza zapisanego jako pierwszy. Zapytania do bazy wykonywane są poza obliczaniem wpisu cache.
+ * Rozpakowane klucze trzymane w ograniczonym cache (cache-size, wygasają po cache-ttl), więc odczyt danych
+ * „gorącego” pacjenta nie kosztuje dodatkowego zapytania ani rozpakowania.
+ * Crypto-shredding ({@link #shred}): zawinięty klucz jest usuwany, a wiersz zostaje jako znacznik – kolejne
+ * odczyty i zapisy dla pacjenta kończą się {@link DataKeyDestroyedException}. Inne węzły mogą używać klucza
+ * z cache najdłużej do cache-ttl.
+ * Po rotacji KEK zawinięte klucze są przepakowywane aktywnym kluczem ({@link #rewrap}) przez przebieg migracji
+ * szyfrowania – dopiero gdy {@link #staleKeys} zwraca 0, stary klucz można wycofać z pierścienia.
+ * Metryki: enc.patient.dek (cache_gets hit/miss, cache_size).
+ */
+@Slf4j
+@Component
+public class PatientDataKeyService {
+
+    static final String INSERT_SQL = "INSERT INTO emr.patient_data_keys(patient_id, key_id, wrapped_key, destroyed_at) "
+            + "VALUES (?, ?, ?, ?) ON CONFLICT (patient_id) DO NOTHING";
+    // H2 (testy) nie obsługuje ON CONFLICT – MERGE wstawiający tylko brakujący wiersz
+    static final String MERGE_SQL = "MERGE INTO emr.patient_data_keys t USING (VALUES (CAST(? AS UUID), "
+            + "CAST(? AS VARCHAR(50)), CAST(? AS VARCHAR(200)), CAST(? AS TIMESTAMP WITH TIME ZONE))) "
+            + "s(patient_id, key_id, wrapped_key, destroyed_at) ON t.patient_id = s.patient_id "
+            + "WHEN NOT MATCHED THEN INSERT (patient_id, key_id, wrapped_key, destroyed_at) "
+            + "VALUES (s.patient_id, s.key_id, s.wrapped_key, s.destroyed_at)";
+    /** Warunek na emr.patients (alias p): klucz pacjenta nie został zniszczony – przebudowy indeksów pomijają resztę. */
+    public static final String NOT_SHREDDED = "NOT EXISTS (SELECT 1 FROM emr.patient_data_keys dk "
+            + "WHERE dk.patient_id = p.id AND dk.destroyed_at IS NOT NULL)";
+
+    private static final SecureRandom RNG = new SecureRandom();
+
+    /** Wiersz klucza: wrapped == null oznacza klucz zniszczony. */
+    private record Row(String keyId, String wrapped) {}
+
+    /** Wynik strony przepakowania; last == null – brak dalszych kluczy do przepakowania. */
+    record RewrapPage(int scanned, int rewrapped, int conflicts, int failed, UUID last) {}
+
+    /** Klucze utworzone w bieżącej transakcji – trafiają do cache po commicie; zawieszane razem z transakcją. */
+    private final class PendingKeys implements TransactionSynchronization {
+        final Map<UUID, SecretKeySpec> created = new HashMap<>();
+
+        PatientDataKeyService owner() {
+            return PatientDataKeyService.this;
+        }
+
+        @Override
+        public void afterCommit() {
+            keys.putAll(created);
+        }
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final EncryptionService encryptionService;
+    private final Cache<UUID, SecretKeySpec> keys;
+
+    private volatile String insertSql;
+
+    public PatientDataKeyService(JdbcTemplate jdbcTemplate, EncryptionService encryptionService, MeterRegistry meterRegistry,
+                                 @Value("${security.enc.patient-keys.cache-size:10000}") long cacheSize,
+                                 @Value("${security.enc.patient-keys.cache-ttl:PT5M}") Duration cacheTtl) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.encryptionService = encryptionService;
+        this.keys = Caffeine.newBuilder().maximumSize(cacheSize).expireAfterWrite(cacheTtl).recordStats().build();
+        if (meterRegistry != null) CaffeineCacheMetrics.monitor(meterRegistry, keys, "enc.patient.dek");
+    }
+
+    @PostConstruct
+    void register() {
+        encryptionService.usePatientDataKeys(this);
+    }
+
+    /** DEK do zapisu – tworzony, gdy pacjent jeszcze go nie ma. */
+    SecretKeySpec keyForWrite(UUID patientId) {
+        SecretKeySpec key = known(patientId);
+        if (key != null) return key;
+        Row row = load(patientId);
+        return row != null ? cache(patientId, unwrap(patientId, row)) : create(patientId);
+    }
+
+    /** DEK do odczytu – brak klucza oznacza uszkodzone dane, nie jest tworzony. */
+    SecretKeySpec keyForRead(UUID patientId) {
+        SecretKeySpec key = known(patientId);
+        if (key != null) return key;
+        Row row = load(patientId);
+        if (row == null) throw new IllegalStateException("Brak klucza danych pacjenta " + patientId);
+        return cache(patientId, unwrap(patientId, row));
+    }
+
+    /** Klucz z cache albo utworzony wcześniej w bieżącej, niezatwierdzonej transakcji. */
+    private SecretKeySpec known(UUID patientId) {
+        SecretKeySpec key = keys.getIfPresent(patientId);
+        if (key != null) return key;
+        PendingKeys pending = pending(false);
+        return pending != null ? pending.created.get(patientId) : null;
+    }
+
+    private SecretKeySpec cache(UUID patientId, SecretKeySpec key) {
+        keys.put(patientId, key);
+        return key;
+    }
+
+    private PendingKeys pending(boolean register) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()
+                || !TransactionSynchronizationManager.isActualTransactionActive()) {
+            return null;
+        }
+        for (TransactionSynchronization s : TransactionSynchronizationManager.getSynchronizations()) {
+            if (s instanceof PendingKeys p && p.owner() == this) return p;
+        }
+        if (!register) return null;
+        PendingKeys p = new PendingKeys();
+        TransactionSynchronizationManager.registerSynchronization(p);
+        return p;
+    }
+
+    /**
+     * Niszczy klucz danych pacjenta: pola zaszyfrowane nim (v3p) stają się nieodczytywalne, także w kopiach
+     * zapasowych wykonanych po tej operacji. true, gdy istniał aktywny klucz.
+     */
+    public boolean shred(UUID patientId) {
+        int destroyed = jdbcTemplate.update("UPDATE emr.patient_data_keys SET wrapped_key = NULL, "
+                + "destroyed_at = CURRENT_TIMESTAMP WHERE patient_id = ? AND wrapped_key IS NOT NULL", patientId);
+        if (destroyed == 0) {
+            // pacjent bez danych v3p – znacznik blokuje utworzenie klucza później
+            jdbcTemplate.update(insertSql(), patientId, null, null, Timestamp.from(Instant.now()));
+        }
+        keys.invalidate(patientId);
+        log.warn("Zniszczono klucz danych pacjenta {} (crypto-shredding)", patientId);
+        return destroyed > 0;
+    }
+
+    /** Liczba aktywnych kluczy zawiniętych innym KEK niż aktywny (do przepakowania). */
+    public long staleKeys() {
+        Long n = jdbcTemplate.queryForObject("SELECT count(*) FROM emr.patient_data_keys WHERE wrapped_key IS NOT NULL "
+                + "AND key_id <> ?", Long.class, encryptionService.activeKeyId());
+        return n != null ? n : 0;
+    }
+
+    /**
+     * Przepakowuje aktywnym KEK do {@code limit} kluczy zawiniętych innym kluczem, w kolejności patient_id po
+     * {@code after}. Sam DEK się nie zmienia, więc dane v3p i cache pozostają ważne. UPDATE jest warunkowy
+     * (stara postać), więc klucz zniszczony w międzyczasie nie zostanie odtworzony.
+     */
+    RewrapPage rewrap(UUID after, int limit) {
+        String active = encryptionService.activeKeyId();
+        List<Object[]> rows = after == null
+                ? jdbcTemplate.query("SELECT patient_id, key_id, wrapped_key FROM emr.patient_data_keys "
+                        + "WHERE wrapped_key IS NOT NULL AND key_id <> ? ORDER BY patient_id LIMIT ?", PatientDataKeyService::staleRow,
+                        active, limit)
+                : jdbcTemplate.query("SELECT patient_id, key_id, wrapped_key FROM emr.patient_data_keys "
+                        + "WHERE wrapped_key IS NOT NULL AND key_id <> ? AND patient_id > ? ORDER BY patient_id LIMIT ?",
+                        PatientDataKeyService::staleRow, active, after, limit);
+        List<Object[]> updates = new ArrayList<>(rows.size());
+        int failed = 0;
+        for (Object[] r : rows) {
+            UUID patientId = (UUID) r[0];
+            EncryptionService.WrappedDataKey old = new EncryptionService.WrappedDataKey((String) r[1], (String) r[2]);
+            byte[] raw = null;
+            try {
+                raw = encryptionService.unwrapDataKey(patientId, old);
+                EncryptionService.WrappedDataKey fresh = encryptionService.wrapDataKey(patientId, raw);
+                updates.add(new Object[]{fresh.keyId(), fresh.wrapped(), patientId, old.keyId(), old.wrapped()});
+            } catch (RuntimeException e) {
+                failed++;
+                log.error("Nie można przepakować klucza danych pacjenta {} (klucz {}): {}", patientId, old.keyId(), e.getMessage());
+            } finally {
+                if (raw != null) Arrays.fill(raw, (byte) 0);
+            }
+        }
+        int rewrapped = 0;
+        if (!updates.isEmpty()) {
+            for (int c : jdbcTemplate.batchUpdate("UPDATE emr.patient_data_keys SET key_id = ?, wrapped_key = ? "
+                    + "WHERE patient_id = ? AND key_id = ? AND wrapped_key = ?", updates)) {
+                if (c != 0) rewrapped++;
+            }
+        }
+        UUID last = rows.size() < limit ? null : (UUID) rows.get(rows.size() - 1)[0];
+        return new RewrapPage(rows.size(), rewrapped, updates.size() - rewrapped, failed, last);
+    }
+
+    private static Object[] staleRow(ResultSet rs, int i) throws SQLException {
+        return new Object[]{rs.getObject(1, UUID.class), rs.getString(2), rs.getString(3)};
+    }
+
+    private Row load(UUID patientId) {
+        List<Row> rows = jdbcTemplate.query("SELECT key_id, wrapped_key FROM emr.patient_data_keys WHERE patient_id = ?",
+                (rs, i) -> new Row(rs.getString(1), rs.getString(2)), patientId);
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+    private SecretKeySpec unwrap(UUID patientId, Row row) {
+        if (row.wrapped() == null) throw new DataKeyDestroyedException(patientId);
+        byte[] raw = encryptionService.unwrapDataKey(patientId, new EncryptionService.WrappedDataKey(row.keyId(), row.wrapped()));
+        try {
+            return new SecretKeySpec(raw, "AES");
+        } finally {
+            Arrays.fill(raw, (byte) 0);
+        }
+    }
+
+    /**
+     * Wstawia DEK w transakcji wołającego i zwraca klucz ponownie odczytany z bazy – przy równoległym utworzeniu
+     * (inny wątek / węzeł) obowiązuje klucz zapisany jako pierwszy. Klucz wstawiony w aktywnej transakcji trafia
+     * do cache dopiero po jej commicie.
+     */
+    private SecretKeySpec create(UUID patientId) {
+        byte[] raw = new byte[32];
+        RNG.nextBytes(raw);
+        int inserted;
+        try {
+            EncryptionService.WrappedDataKey wrapped = encryptionService.wrapDataKey(patientId, raw);
+            inserted = jdbcTemplate.update(insertSql(), patientId, wrapped.keyId(), wrapped.wrapped(), null);
+        } finally {
+            Arrays.fill(raw, (byte) 0);
+        }
+        Row row = load(patientId);
+        if (row == null) throw new IllegalStateException("Brak klucza danych pacjenta " + patientId);
+        SecretKeySpec key = unwrap(patientId, row);
+        PendingKeys pending = inserted > 0 ? pending(true) : null;
+        if (pending == null) return cache(patientId, key);
+        pending.created.put(patientId, key);
+        return key;
+    }
+
+    private String insertSql() {
+        if (insertSql == null) {
+            String product = jdbcTemplate.execute((ConnectionCallback<String>) c -> c.getMetaData().getDatabaseProductName());
+            insertSql = product != null && product.startsWith("PostgreSQL") ? INSERT_SQL : MERGE_SQL;
+        }
+        return insertSql;
+    }
+
+    long cachedKeys() {
+        keys.cleanUp();
+        return keys.estimatedSize();
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.emr_server.security.encryption;
+
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.event.spi.PreInsertEvent;
+import org.hibernate.event.spi.PreInsertEventListener;
+import org.hibernate.event.spi.PreUpdateEvent;
+import org.hibernate.event.spi.PreUpdateEventListener;
+import org.hibernate.persister.entity.EntityPersister;
+
+import java.util.UUID;
+
+/**
+ * Pacjent, którego dotyczy bieżący zapis encji – {@link EncryptedStringType} nie zna właściciela wiązanej wartości,
+ * więc Hibernate ustawia go na wątku tuż przed INSERT/UPDATE encji {@link PatientScoped} (listenery pre-insert /
+ * pre-update wywoływane są bezpośrednio przed bindowaniem parametrów tej encji) i czyści po nim.
+ * Rejestrowany przez {@link PatientKeyScopeIntegrator}, więc serwisy i repozytoria nic o nim nie wiedzą.
+ */
+public final class PatientKeyScope {
+
+    private static final ThreadLocal<UUID> CURRENT = new ThreadLocal<>();
+
+    private PatientKeyScope() {
+    }
+
+    public static UUID current() {
+        return CURRENT.get();
+    }
+
+    static void enter(Object entity) {
+        UUID patientId = entity instanceof PatientScoped scoped ? scoped.patientScopeId() : null;
+        if (patientId != null) CURRENT.set(patientId);
+        else CURRENT.remove();
+    }
+
+    static void clear() {
+        CURRENT.remove();
+    }
+
+    static final class Listener implements PreInsertEventListener, PreUpdateEventListener,
+            PostInsertEventListener, PostUpdateEventListener {
+
+        static final Listener INSTANCE = new Listener();
+
+        @Override
+        public boolean onPreInsert(PreInsertEvent event) {
+            enter(event.getEntity());
+            return false;
+        }
+
+        @Override
+        public boolean onPreUpdate(PreUpdateEvent event) {
+            enter(event.getEntity());
+            return false;
+        }
+
+        @Override
+        public void onPostInsert(PostInsertEvent event) {
+            clear();
+        }
+
+        @Override
+        public void onPostUpdate(PostUpdateEvent event) {
+            clear();
+        }
+
+        @Override
+        public boolean requiresPostCommitHandling(EntityPersister persister) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.emr_server.security.encryption;
+
+import org.hibernate.boot.Metadata;
+import org.hibernate.boot.spi.BootstrapContext;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.service.spi.SessionFactoryServiceRegistry;
+
+/**
+ * Podpina {@link PatientKeyScope} do zdarzeń zapisu encji. Rejestrowany przez ServiceLoader
+ * (META-INF/services/org.hibernate.integrator.spi.Integrator), więc działa w każdej SessionFactory – także
+ * w testach @DataJpaTest i benchmarkach budujących Hibernate ręcznie.
+ */
+public class PatientKeyScopeIntegrator implements Integrator {
+
+    @Override
+    public void integrate(Metadata metadata, BootstrapContext bootstrapContext, SessionFactoryImplementor sessionFactory) {
+        EventListenerRegistry registry = sessionFactory.getServiceRegistry().requireService(EventListenerRegistry.class);
+        registry.appendListeners(EventType.PRE_INSERT, PatientKeyScope.Listener.INSTANCE);
+        registry.appendListeners(EventType.PRE_UPDATE, PatientKeyScope.Listener.INSTANCE);
+        registry.appendListeners(EventType.POST_INSERT, PatientKeyScope.Listener.INSTANCE);
+        registry.appendListeners(EventType.POST_UPDATE, PatientKeyScope.Listener.INSTANCE);
+    }
+
+    @Override
+    public void disintegrate(SessionFactoryImplementor sessionFactory, SessionFactoryServiceRegistry serviceRegistry) {
+        // listenery bez stanu – nic do zwolnienia
+    }
+}
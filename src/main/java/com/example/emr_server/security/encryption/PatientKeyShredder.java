@@ -0,0 +1,209 @@
+package com.example.emr_server.security.encryption;
+
+import com.example.emr_server.entity.Allergy;
+import com.example.emr_server.entity.ChronicDisease;
+import com.example.emr_server.entity.LabResult;
+import com.example.emr_server.entity.MedicationHistory;
+import com.example.emr_server.entity.Patient;
+import com.example.emr_server.entity.Prescription;
+import com.example.emr_server.entity.PrescriptionMedication;
+import com.example.emr_server.entity.Visit;
+import jakarta.persistence.Column;
+import jakarta.persistence.Table;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Crypto-shredding danych pacjenta z raportem tego, co po nim pozostaje odczytywalne.
+ * Przed zniszczeniem klucza pola RANDOM pacjenta zapisane jeszcze przed v3p (plaintext, v1r, v2r – szyfrowane
+ * kluczem głównym) są przeszyfrowywane jego kluczem danych, więc giną razem z nim. Pola DETERMINISTIC (imię,
+ * nazwisko, PESEL, nazwy badań i rozpoznań) pozostają szyfrowane kluczem głównym – potrzebne do wyszukiwania
+ * i unikalności – i są zwracane w raporcie jako nadal odczytywalne, podobnie jak pola RANDOM, których nie
+ * udało się przeszyfrować.
+ * Indeksy pochodne (tokeny nazwiska, klucze blokujące i kandydaci duplikatów) są usuwane, a przebudowy
+ * ({@link PatientNameIndexJob}, PatientDedupJob) pomijają pacjentów ze zniszczonym kluczem. Kolumny bez
+ * szyfrowania (treść dokumentacji, nazwy i ścieżki plików) raport wymienia osobno – klucz ich nie chroni,
+ * a pliki wskazywane przez medical_files.file_path leżą poza bazą i trzeba je usunąć niezależnie.
+ */
+@Slf4j
+@Component
+public class PatientKeyShredder {
+
+    /** Kolumna nadal odczytywalna kluczem głównym: rows – liczba wierszy pacjenta z wartością. */
+    public record ReadableField(String table, String column, Encrypted.Mode mode, long rows) {}
+
+    /** Kolumna pacjenta zapisywana bez szyfrowania: rows – liczba wierszy pacjenta z wartością. */
+    public record UnencryptedField(String table, String column, long rows) {}
+
+    /**
+     * keyDestroyed=false – klucz był już zniszczony albo pacjent nie miał danych v3p;
+     * derivedDeleted – usunięte wiersze indeksów pochodnych.
+     */
+    public record Report(UUID patientId, boolean keyDestroyed, long reencrypted, List<ReadableField> stillReadable,
+                         List<UnencryptedField> unencrypted, long derivedDeleted) {}
+
+    /** Encja pacjenta i warunek wybierający jego wiersze (parametr: id pacjenta). */
+    record Scope(Class<?> entity, String patientFilter) {}
+
+    static final List<Scope> SCOPES = List.of(
+            new Scope(Patient.class, "id = ?"),
+            new Scope(Allergy.class, "patient_id = ?"),
+            new Scope(ChronicDisease.class, "patient_id = ?"),
+            new Scope(LabResult.class, "patient_id = ?"),
+            new Scope(MedicationHistory.class, "patient_id = ?"),
+            new Scope(Prescription.class, "patient_id = ?"),
+            new Scope(Visit.class, "patient_id = ?"),
+            new Scope(PrescriptionMedication.class,
+                    "prescription_id IN (SELECT id FROM emr.prescriptions WHERE patient_id = ?)"));
+
+    /** Kolumna pacjenta bez @Encrypted i warunek wybierający jego wiersze (parametr: id pacjenta). */
+    record PlainColumn(String table, String column, String patientFilter) {}
+
+    static final List<PlainColumn> UNENCRYPTED = List.of(
+            new PlainColumn("emr.medical_records", "content", "patient_id = ?"),
+            new PlainColumn("emr.medical_files", "file_name", "patient_id = ?"),
+            new PlainColumn("emr.medical_files", "file_path", "patient_id = ?"));
+
+    /** Indeks pochodny danych pacjenta – odtwarzalny, więc usuwany zamiast raportowany. */
+    record DerivedTable(String table, String patientFilter) {}
+
+    static final List<DerivedTable> DERIVED = List.of(
+            new DerivedTable("emr.patient_name_tokens", "patient_id = ?"),
+            new DerivedTable("emr.patient_blocking_keys", "patient_id = ?"),
+            new DerivedTable("emr.patient_duplicate_candidates", "? IN (patient_a, patient_b)"));
+
+    private record FieldPlan(String column, String logical, Encrypted.Mode mode) {}
+
+    private record TablePlan(String table, String patientFilter, List<FieldPlan> fields) {
+        static TablePlan of(Scope scope) {
+            Table t = scope.entity().getAnnotation(Table.class);
+            String table = (t.schema().isBlank() ? "" : t.schema() + ".") + t.name();
+            List<FieldPlan> fields = Arrays.stream(scope.entity().getDeclaredFields())
+                    .filter(f -> f.isAnnotationPresent(Encrypted.class))
+                    .map(f -> {
+                        Encrypted enc = f.getAnnotation(Encrypted.class);
+                        String logical = enc.value().isBlank()
+                                ? scope.entity().getSimpleName().toLowerCase() + "." + f.getName() : enc.value();
+                        return new FieldPlan(f.getAnnotation(Column.class).name(), logical, enc.mode());
+                    })
+                    .toList();
+            return new TablePlan(table, scope.patientFilter(), fields);
+        }
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final EncryptionService encryptionService;
+    private final PatientDataKeyService patientDataKeys;
+    private final List<TablePlan> plans;
+    private final List<PlainColumn> unencrypted;
+    private final List<DerivedTable> derived;
+
+    @Autowired
+    public PatientKeyShredder(JdbcTemplate jdbcTemplate, EncryptionService encryptionService,
+                              PatientDataKeyService patientDataKeys) {
+        this(jdbcTemplate, encryptionService, patientDataKeys, SCOPES, UNENCRYPTED, DERIVED);
+    }
+
+    PatientKeyShredder(JdbcTemplate jdbcTemplate, EncryptionService encryptionService,
+                       PatientDataKeyService patientDataKeys, List<Scope> scopes, List<PlainColumn> unencrypted,
+                       List<DerivedTable> derived) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.encryptionService = encryptionService;
+        this.patientDataKeys = patientDataKeys;
+        this.plans = scopes.stream().map(TablePlan::of).filter(p -> !p.fields().isEmpty()).toList();
+        this.unencrypted = unencrypted;
+        this.derived = derived;
+    }
+
+    /**
+     * Przeszyfrowuje starsze pola RANDOM pacjenta jego kluczem danych, niszczy klucz, usuwa indeksy pochodne
+     * i zwraca raport pól, które nadal da się odczytać. Nieodwracalne.
+     */
+    public Report shred(UUID patientId) {
+        long reencrypted = 0;
+        for (TablePlan plan : plans) reencrypted += reencryptLegacy(plan, patientId);
+        boolean destroyed = patientDataKeys.shred(patientId);
+        List<ReadableField> readable = new ArrayList<>();
+        for (TablePlan plan : plans) {
+            for (FieldPlan f : plan.fields()) {
+                long rows = countReadable(plan, f, patientId);
+                if (rows > 0) readable.add(new ReadableField(plan.table(), f.column(), f.mode(), rows));
+            }
+        }
+        if (readable.stream().anyMatch(r -> r.mode() == Encrypted.Mode.RANDOM)) {
+            log.warn("Crypto-shredding pacjenta {}: pola RANDOM nadal odczytywalne kluczem głównym: {}", patientId, readable);
+        }
+        long derivedDeleted = 0;
+        for (DerivedTable d : derived) {
+            derivedDeleted += jdbcTemplate.update("DELETE FROM " + d.table() + " WHERE " + d.patientFilter(), patientId);
+        }
+        List<UnencryptedField> plain = new ArrayList<>();
+        for (PlainColumn c : unencrypted) {
+            Long rows = jdbcTemplate.queryForObject("SELECT count(*) FROM " + c.table() + " WHERE " + c.patientFilter()
+                    + " AND " + c.column() + " IS NOT NULL", Long.class, patientId);
+            if (rows != null && rows > 0) plain.add(new UnencryptedField(c.table(), c.column(), rows));
+        }
+        if (!plain.isEmpty()) {
+            log.warn("Crypto-shredding pacjenta {}: dane bez szyfrowania pozostają: {}", patientId, plain);
+        }
+        return new Report(patientId, destroyed, reencrypted, readable, plain, derivedDeleted);
+    }
+
+    /** Pola RANDOM poza v3p → v3p kluczem pacjenta; UPDATE warunkowy – wartość zmieniona w międzyczasie zostaje. */
+    private long reencryptLegacy(TablePlan plan, UUID patientId) {
+        List<FieldPlan> random = plan.fields().stream().filter(f -> f.mode() == Encrypted.Mode.RANDOM).toList();
+        if (random.isEmpty()) return 0;
+        StringBuilder where = new StringBuilder();
+        for (FieldPlan f : random) {
+            where.append(where.isEmpty() ? "" : " OR ").append('(').append(f.column()).append(" IS NOT NULL AND ")
+                    .append(f.column()).append(" NOT LIKE 'v3p:%')");
+        }
+        List<Object[]> rows = jdbcTemplate.query("SELECT id, " + String.join(", ", random.stream().map(FieldPlan::column).toList())
+                        + " FROM " + plan.table() + " WHERE " + plan.patientFilter() + " AND (" + where + ")",
+                (rs, i) -> {
+                    Object[] r = new Object[random.size() + 1];
+                    for (int c = 0; c < r.length; c++) r[c] = rs.getObject(c + 1);
+                    return r;
+                }, patientId);
+        long changed = 0;
+        PatientKeyScope.enter((PatientScoped) () -> patientId);
+        try {
+            for (Object[] row : rows) {
+                for (int i = 0; i < random.size(); i++) {
+                    FieldPlan f = random.get(i);
+                    if (!(row[i + 1] instanceof String stored) || stored.isBlank() || stored.startsWith("v3p:")) continue;
+                    try {
+                        String plaintext = encryptionService.looksEncrypted(stored)
+                                ? encryptionService.decryptField(f.logical(), stored) : stored;
+                        String target = encryptionService.encryptField(f.logical(), f.mode(), plaintext);
+                        changed += jdbcTemplate.update("UPDATE " + plan.table() + " SET " + f.column() + " = ? WHERE id = ? AND "
+                                + f.column() + " = ?", target, row[0], stored);
+                    } catch (DataKeyDestroyedException e) {
+                        return changed; // klucz już zniszczony – pozostałe pola trafią do raportu
+                    } catch (RuntimeException e) {
+                        log.error("Crypto-shredding pacjenta {}: nie przeszyfrowano {}.{}: {}", patientId, plan.table(),
+                                f.column(), e.getMessage());
+                    }
+                }
+            }
+        } finally {
+            PatientKeyScope.clear();
+        }
+        return changed;
+    }
+
+    private long countReadable(TablePlan plan, FieldPlan f, UUID patientId) {
+        String condition = f.column() + " IS NOT NULL AND " + f.column() + " <> ''"
+                + (f.mode() == Encrypted.Mode.RANDOM ? " AND " + f.column() + " NOT LIKE 'v3p:%'" : "");
+        Long n = jdbcTemplate.queryForObject("SELECT count(*) FROM " + plan.table() + " WHERE " + plan.patientFilter()
+                + " AND " + condition, Long.class, patientId);
+        return n != null ? n : 0;
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.emr_server.security.encryption;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Indeks ślepy prefiksów nazwiska (emr.patient_name_tokens): nazwisko jest normalizowane (małe litery, bez
+ * polskich znaków diakrytycznych, bez interpunkcji), a każdy jego prefiks od {@link #MIN_PREFIX} znaków – dla
+ * całości i każdego członu nazwiska złożonego – zapisywany jako token HMAC. Wyszukiwanie prefiksu to jedno
+ * wyszukanie tokenu w indeksie PK, bez deszyfrowania nazwisk.
+ * Ujawnia tyle, że pacjenci o wspólnym prefiksie nazwiska mają wspólny token (częstości prefiksów) – dlatego
+ * minimum 3 znaki i brak n-gramów ze środka nazwiska.
+ */
+@Component
+public class PatientNameIndex {
+
+    public static final int MIN_PREFIX = 3;
+    static final String FIELD = "patient.last_name";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final EncryptionService encryptionService;
+
+    public PatientNameIndex(JdbcTemplate jdbcTemplate, EncryptionService encryptionService) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.encryptionService = encryptionService;
+    }
+
+    /**
+     * Podmienia tokeny pacjenta na tokeny nazwiska lastName (null / puste – usuwa). Dołącza do transakcji zapisu
+     * pacjenta; blokada jego wiersza (FOR UPDATE, jak w backfillu) szereguje przebudowy tokenów tego pacjenta,
+     * więc równoległe zmiany nazwiska nie zostawią tokenów obu nazwisk ani nie zderzą się na kluczu głównym.
+     */
+    @Transactional
+    public void reindex(UUID patientId, String lastName) {
+        boolean exists = !jdbcTemplate.queryForList("SELECT id FROM emr.patients WHERE id = ? FOR UPDATE",
+                UUID.class, patientId).isEmpty();
+        jdbcTemplate.update("DELETE FROM emr.patient_name_tokens WHERE patient_id = ?", patientId);
+        if (!exists) return;
+        List<Object[]> rows = new ArrayList<>();
+        for (String token : tokens(lastName)) rows.add(new Object[]{token, patientId});
+        if (!rows.isEmpty()) {
+            jdbcTemplate.batchUpdate("INSERT INTO emr.patient_name_tokens(token, patient_id) VALUES (?, ?)", rows);
+        }
+    }
+
+    /** Tokeny zapisywane dla nazwiska (aktywny klucz). */
+    List<String> tokens(String lastName) {
+        Set<String> prefixes = prefixes(lastName);
+        return prefixes.isEmpty() ? List.of() : encryptionService.blindTokens(FIELD, prefixes);
+    }
+
+    /**
+     * Tokeny wyszukiwanego prefiksu (we wszystkich kluczach pierścienia); spacje i łączniki są pomijane,
+     * więc „nowak-kow” trafia w nazwisko złożone. Za krótki prefiks – IllegalArgumentException.
+     */
+    public List<String> queryTokens(String prefix) {
+        String term = normalize(prefix).replace(" ", "");
+        if (term.length() < MIN_PREFIX) {
+            throw new IllegalArgumentException("Prefiks nazwiska musi mieć co najmniej " + MIN_PREFIX + " znaki");
+        }
+        return encryptionService.blindTokenCandidates(FIELD, term);
+    }
+
+    static Set<String> prefixes(String lastName) {
+        Set<String> out = new LinkedHashSet<>();
+        if (lastName == null) return out;
+        String normalized = normalize(lastName);
+        if (normalized.isEmpty()) return out;
+        addPrefixes(out, normalized.replace(" ", ""));
+        if (normalized.indexOf(' ') >= 0) {
+            for (String part : normalized.split(" ")) addPrefixes(out, part);
+        }
+        return out;
+    }
+
+    private static void addPrefixes(Set<String> out, String word) {
+        for (int len = MIN_PREFIX; len <= word.length(); len++) out.add(word.substring(0, len));
+    }
+
+    /** Małe litery, polskie znaki złożone do ASCII (ł osobno – nie rozkłada się w NFD), separatory jako jedna spacja. */
+    public static String normalize(String value) {
+        String decomposed = Normalizer.normalize(value.toLowerCase(Locale.ROOT), Normalizer.Form.NFD);
+        StringBuilder sb = new StringBuilder(decomposed.length());
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) continue;
+            if (c == 'ł') c = 'l';
+            if (Character.isLetterOrDigit(c)) {
+                sb.append(c);
+            } else if (!sb.isEmpty() && sb.charAt(sb.length() - 1) != ' ') {
+                sb.append(' ');
+            }
+        }
+        int end = sb.length();
+        if (end > 0 && sb.charAt(end - 1) == ' ') sb.setLength(end - 1);
+        return sb.toString();
+    }
+}
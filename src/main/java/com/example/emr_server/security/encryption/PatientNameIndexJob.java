@@ -0,0 +1,189 @@
+package com.example.emr_server.security.encryption;
+
+import com.example.emr_server.security.encryption.EncryptionMigrationJob.State;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Budowa indeksu ślepego nazwisk (emr.patient_name_tokens) dla istniejących pacjentów oraz po rotacji klucza –
+ * tokeny są liczone kluczem aktywnym, a wyszukiwanie sprawdza tokeny wszystkich kluczy pierścienia, więc indeks
+ * działa w trakcie przebudowy. Stronicowanie keyset po id; strona jest przetwarzana w jednej transakcji
+ * z blokadą wierszy pacjentów (FOR UPDATE) – ta sama kolejność blokad co przy zapisie pacjenta przez aplikację,
+ * więc równoległa zmiana nazwiska nie zostanie nadpisana starymi tokenami.
+ * Tempo ogranicza security.enc.migration.page-size / max-rows-per-second. Przebieg jest lokalny dla węzła.
+ */
+@Slf4j
+@Component
+public class PatientNameIndexJob {
+
+    public record Progress(State state, String keyId, long indexed, long tokens, long estimatedTotal,
+                           double rowsPerSecond, Instant startedAt) {}
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate tx;
+    private final EncryptionService encryptionService;
+    private final PatientNameIndex nameIndex;
+    private final EncryptionMigrationProperties properties;
+
+    private volatile Run run;
+
+    public PatientNameIndexJob(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                               EncryptionService encryptionService, PatientNameIndex nameIndex,
+                               EncryptionMigrationProperties properties) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.tx = new TransactionTemplate(transactionManager);
+        this.encryptionService = encryptionService;
+        this.nameIndex = nameIndex;
+        this.properties = properties;
+    }
+
+    /** Uruchamia przebudowę w tle; false, gdy poprzednia jeszcze trwa. */
+    public synchronized boolean start() {
+        Run current = run;
+        if (current != null && (current.state == State.RUNNING || current.state == State.STOPPING)) {
+            return false;
+        }
+        Run next = new Run(encryptionService.activeKeyId());
+        next.worker = Thread.ofPlatform().name("name-index").daemon().priority(Thread.MIN_PRIORITY).unstarted(() -> execute(next));
+        run = next;
+        next.worker.start();
+        return true;
+    }
+
+    /** Zatrzymuje przebudowę po bieżącej stronie. */
+    public synchronized boolean stop() {
+        Run current = run;
+        if (current == null || current.state != State.RUNNING) return false;
+        current.state = State.STOPPING;
+        return true;
+    }
+
+    public Progress progress() {
+        Run current = run;
+        return current != null ? current.progress() : new Progress(State.IDLE, null, 0, 0, 0, 0, null);
+    }
+
+    /** Czeka na zakończenie bieżącego przebiegu; true, gdy zakończył się przed upływem czasu. */
+    public boolean await(Duration timeout) throws InterruptedException {
+        Run current = run;
+        return current == null || current.worker.join(timeout);
+    }
+
+    @PreDestroy
+    void shutdown() throws InterruptedException {
+        if (stop()) await(Duration.ofSeconds(30));
+    }
+
+    private void execute(Run run) {
+        try {
+            Long total = jdbcTemplate.queryForObject("SELECT count(*) FROM emr.patients", Long.class);
+            run.estimatedTotal = total != null ? total : 0;
+            log.info("[NAME-INDEX] Start (keyId={}, patients≈{})", run.keyId, run.estimatedTotal);
+            int pageSize = Math.max(1, properties.getPageSize());
+            UUID after = null;
+            while (run.state == State.RUNNING) {
+                run.throttle(pageSize, properties.getMaxRowsPerSecond());
+                UUID from = after;
+                UUID last = tx.execute(status -> indexPage(run, from, pageSize));
+                if (last == null) break;
+                after = last;
+            }
+        } catch (Exception e) {
+            log.error("[NAME-INDEX] Przebieg przerwany błędem: {}", e.getMessage(), e);
+            run.state = State.FAILED;
+        } finally {
+            finish(run);
+        }
+    }
+
+    /** Indeksuje stronę za {@code after}; zwraca ostatnie id albo null, gdy to koniec tabeli. */
+    private UUID indexPage(Run run, UUID after, int pageSize) {
+        String sql = "SELECT id, last_name FROM emr.patients p WHERE " + PatientDataKeyService.NOT_SHREDDED
+                + (after != null ? " AND id > ?" : "") + " ORDER BY id LIMIT ? FOR UPDATE";
+        Object[] args = after != null ? new Object[]{after, pageSize} : new Object[]{pageSize};
+        List<Object[]> rows = jdbcTemplate.query(sql, (rs, i) -> new Object[]{rs.getObject(1, UUID.class), rs.getString(2)}, args);
+        if (rows.isEmpty()) return null;
+        List<Object[]> deletes = new ArrayList<>(rows.size());
+        List<Object[]> inserts = new ArrayList<>();
+        for (Object[] row : rows) {
+            UUID id = (UUID) row[0];
+            deletes.add(new Object[]{id});
+            String lastName;
+            try {
+                lastName = encryptionService.decryptField(PatientNameIndex.FIELD, (String) row[1]);
+            } catch (Exception e) {
+                log.error("[NAME-INDEX] Nie można odszyfrować nazwiska pacjenta {}: {}", id, e.getMessage());
+                run.skipped++;
+                continue;
+            }
+            for (String token : nameIndex.tokens(lastName)) inserts.add(new Object[]{token, id});
+        }
+        jdbcTemplate.batchUpdate("DELETE FROM emr.patient_name_tokens WHERE patient_id = ?", deletes);
+        if (!inserts.isEmpty()) {
+            jdbcTemplate.batchUpdate("INSERT INTO emr.patient_name_tokens(token, patient_id) VALUES (?, ?)", inserts);
+        }
+        run.indexed += rows.size();
+        run.tokens += inserts.size();
+        return rows.size() < pageSize ? null : (UUID) rows.get(rows.size() - 1)[0];
+    }
+
+    private void finish(Run run) {
+        synchronized (this) {
+            run.state = switch (run.state) {
+                case RUNNING -> State.COMPLETED;
+                case STOPPING -> State.STOPPED;
+                default -> run.state;
+            };
+            run.finishedNs = System.nanoTime();
+        }
+        Progress p = run.progress();
+        log.info("[NAME-INDEX] {} indexed={}, tokens={}, skipped={}, time={}s", p.state(), p.indexed(), p.tokens(), run.skipped,
+                String.format(Locale.ROOT, "%.2f", (run.finishedNs - run.startedNs) / 1_000_000_000d));
+    }
+
+    private static final class Run {
+        final String keyId;
+        final Instant startedAt = Instant.now();
+        final long startedNs = System.nanoTime();
+        // liczniki zapisuje wyłącznie wątek przebiegu
+        volatile long estimatedTotal;
+        volatile long indexed;
+        volatile long tokens;
+        volatile long skipped;
+        volatile State state = State.RUNNING;
+        volatile long finishedNs;
+        long nextSlotNs = System.nanoTime();
+        Thread worker;
+
+        Run(String keyId) {
+            this.keyId = keyId;
+        }
+
+        void throttle(int rows, int perSecond) {
+            if (perSecond <= 0) return;
+            long now = System.nanoTime();
+            long slot = Math.max(nextSlotNs, now);
+            nextSlotNs = slot + rows * 1_000_000_000L / perSecond;
+            if (slot > now) LockSupport.parkNanos(slot - now);
+        }
+
+        Progress progress() {
+            long done = indexed;
+            long endNs = finishedNs != 0 ? finishedNs : System.nanoTime();
+            double seconds = (endNs - startedNs) / 1_000_000_000d;
+            return new Progress(state, keyId, done, tokens, estimatedTotal, seconds > 0 ? done / seconds : 0, startedAt);
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.example.emr_server.security.encryption;
+
+import java.util.UUID;
+
+/**
+ * Encja z danymi jednego pacjenta – jej pola RANDOM są szyfrowane kluczem danych tego pacjenta
+ * (zasięg ustawiany przy zapisie przez {@link PatientKeyScope}).
+ */
+public interface PatientScoped {
+
+    /** Id pacjenta, którego kluczem szyfrowane są pola encji; null – klucze pól jak dotychczas. */
+    UUID patientScopeId();
+}
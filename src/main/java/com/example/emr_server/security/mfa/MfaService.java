@@ -123,7 +123,6 @@ public class MfaService {
             String c = randomRecoveryCode();
             codes.add(c);
             MfaRecoveryCode rc = new MfaRecoveryCode();
-            rc.setId(UUID.randomUUID());
             rc.setUser(user);
             rc.setCodeHash(HashUtil.sha256Hex(c.toLowerCase(Locale.ROOT)));
             recoveryCodeRepository.save(rc);
@@ -0,0 +1,87 @@
+package com.example.emr_server.security.monitoring;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Count-min sketch o stałym rozmiarze (depth x width liczników int) z zanikaniem: co half-life wszystkie
+ * liczniki są dzielone przez 2, więc estymata odpowiada liczbie zdarzeń ważonej wiekiem, a nie sumie od startu.
+ * Aktualizacja konserwatywna (zwiększane tylko minimalne komórki) ogranicza przeszacowanie przy kolizjach.
+ * Nie jest bezpieczny wątkowo – synchronizuje wywołujący.
+ */
+final class DecayingCountMinSketch {
+
+    private final int depth;
+    private final int width;
+    private final int[] counters;
+    private final long halfLifeMillis;
+    private long nextDecayAt;
+
+    DecayingCountMinSketch(int depth, int width, long halfLifeMillis, long nowMillis) {
+        if (depth <= 0 || width <= 0) throw new IllegalArgumentException("depth i width muszą być dodatnie");
+        this.depth = depth;
+        this.width = width;
+        this.counters = new int[depth * width];
+        this.halfLifeMillis = halfLifeMillis;
+        this.nextDecayAt = nowMillis + halfLifeMillis;
+    }
+
+    /** Dodaje zdarzenie i zwraca estymatę po dodaniu. */
+    int add(String key, long nowMillis) {
+        decay(nowMillis);
+        long hash = hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        int min = Integer.MAX_VALUE;
+        for (int i = 0; i < depth; i++) min = Math.min(min, counters[index(i, h1, h2)]);
+        int updated = min == Integer.MAX_VALUE ? min : min + 1;
+        for (int i = 0; i < depth; i++) {
+            int idx = index(i, h1, h2);
+            if (counters[idx] < updated) counters[idx] = updated;
+        }
+        return updated;
+    }
+
+    int estimate(String key, long nowMillis) {
+        decay(nowMillis);
+        long hash = hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        int min = Integer.MAX_VALUE;
+        for (int i = 0; i < depth; i++) min = Math.min(min, counters[index(i, h1, h2)]);
+        return min;
+    }
+
+    /**
+     * Zwraca liczbę wykonanych połowień (0, gdy nie minął half-life) – ta sama skala musi zostać
+     * zastosowana do liczników top-K.
+     */
+    int decay(long nowMillis) {
+        if (nowMillis < nextDecayAt) return 0;
+        long periods = (nowMillis - nextDecayAt) / halfLifeMillis + 1;
+        int shift = (int) Math.min(periods, 31);
+        for (int i = 0; i < counters.length; i++) counters[i] >>>= shift;
+        nextDecayAt += periods * halfLifeMillis;
+        return shift;
+    }
+
+    // podwójne haszowanie (Kirsch–Mitzenmacher): h1 + i*h2, dodatni indeks kolumny w wierszu i
+    private int index(int row, int h1, int h2) {
+        int combined = h1 + row * h2;
+        return row * width + ((combined & Integer.MAX_VALUE) % width);
+    }
+
+    private static long hash(String key) {
+        // FNV-1a 64 + finalizer splitmix64 (dwie niezależne połówki dla podwójnego haszowania)
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 30;
+        h *= 0xbf58476d1ce4e5b9L;
+        h ^= h >>> 27;
+        h *= 0x94d049bb133111ebL;
+        h ^= h >>> 31;
+        return h;
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.emr_server.security.monitoring;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * Dedykowany, ograniczony executor zdarzeń bezpieczeństwa: stała liczba wątków i kolejka o stałej pojemności.
+ * Przy przepełnieniu (zalew zdarzeń) nadmiar jest odrzucany i zliczany w security.events.dropped,
+ * zamiast blokować wątki żądań lub rosnąć bez ograniczeń.
+ */
+@Configuration
+public class SecurityMonitoringConfig {
+
+    public static final String EXECUTOR = "securityEventExecutor";
+
+    @Bean(name = EXECUTOR)
+    public ThreadPoolTaskExecutor securityEventExecutor(SecurityMonitoringProperties properties, MeterRegistry meterRegistry) {
+        Counter dropped = meterRegistry.counter("security.events.dropped");
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(properties.getExecutorThreads());
+        executor.setMaxPoolSize(properties.getExecutorThreads());
+        executor.setQueueCapacity(properties.getExecutorQueueCapacity());
+        executor.setThreadNamePrefix("security-events-");
+        executor.setDaemon(true);
+        executor.setRejectedExecutionHandler((task, pool) -> dropped.increment());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(5);
+        executor.initialize();
+        ExecutorServiceMetrics.monitor(meterRegistry, executor.getThreadPoolExecutor(), "security-events");
+        return executor;
+    }
+}
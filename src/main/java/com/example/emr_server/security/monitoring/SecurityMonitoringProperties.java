@@ -0,0 +1,47 @@
+package com.example.emr_server.security.monitoring;
+
+import com.example.emr_server.security.SecurityMonitoringService.SecurityEventType;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Konfiguracja wykrywania podejrzanej aktywności (security.monitoring.*).
+ * Progi per typ zdarzenia: security.monitoring.thresholds.authentication-failure=10 itd.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "security.monitoring")
+public class SecurityMonitoringProperties {
+    private int sketchDepth = 4;
+    private int sketchWidth = 2048;
+    private Duration halfLife = Duration.ofMinutes(10);
+    private int topK = 20;
+    private int defaultThreshold = 10;
+    private Map<SecurityEventType, Integer> thresholds = new EnumMap<>(SecurityEventType.class);
+    private int executorThreads = 1;
+    private int executorQueueCapacity = 10_000;
+
+    public int thresholdFor(SecurityEventType type) {
+        return thresholds.getOrDefault(type, defaultThreshold);
+    }
+
+    public int getSketchDepth() { return sketchDepth; }
+    public void setSketchDepth(int sketchDepth) { this.sketchDepth = sketchDepth; }
+    public int getSketchWidth() { return sketchWidth; }
+    public void setSketchWidth(int sketchWidth) { this.sketchWidth = sketchWidth; }
+    public Duration getHalfLife() { return halfLife; }
+    public void setHalfLife(Duration halfLife) { this.halfLife = halfLife; }
+    public int getTopK() { return topK; }
+    public void setTopK(int topK) { this.topK = topK; }
+    public int getDefaultThreshold() { return defaultThreshold; }
+    public void setDefaultThreshold(int defaultThreshold) { this.defaultThreshold = defaultThreshold; }
+    public Map<SecurityEventType, Integer> getThresholds() { return thresholds; }
+    public void setThresholds(Map<SecurityEventType, Integer> thresholds) { this.thresholds = thresholds; }
+    public int getExecutorThreads() { return executorThreads; }
+    public void setExecutorThreads(int executorThreads) { this.executorThreads = executorThreads; }
+    public int getExecutorQueueCapacity() { return executorQueueCapacity; }
+    public void setExecutorQueueCapacity(int executorQueueCapacity) { this.executorQueueCapacity = executorQueueCapacity; }
+}
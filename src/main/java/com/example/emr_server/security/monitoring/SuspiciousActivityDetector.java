@@ -0,0 +1,89 @@
+package com.example.emr_server.security.monitoring;
+
+import com.example.emr_server.security.SecurityMonitoringService.SecurityEventType;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Wykrywanie powtarzającej się podejrzanej aktywności o stałym zużyciu pamięci: na każdy typ zdarzenia
+ * count-min sketch z zanikaniem (half-life) + lista top-K identyfikatorów. Liczba różnych identyfikatorów
+ * (np. sfałszowane X-Forwarded-For) nie wpływa na rozmiar stanu, a licznik maleje, gdy aktywność ustaje,
+ * więc alert nie powtarza się w nieskończoność.
+ */
+@Component
+public class SuspiciousActivityDetector {
+
+    /** Przekroczenie progu przez identyfikator – estymata ważona wiekiem. */
+    public record Alert(SecurityEventType type, String identifier, int estimate, int threshold) {}
+
+    public record Offender(String identifier, int estimate) {}
+
+    private static final int MAX_IDENTIFIER_LENGTH = 64;
+
+    private final SecurityMonitoringProperties properties;
+    private final LongSupplier clockMillis;
+    private final Map<SecurityEventType, DecayingCountMinSketch> sketches = new EnumMap<>(SecurityEventType.class);
+    private final Map<SecurityEventType, TopKTracker> topK = new EnumMap<>(SecurityEventType.class);
+
+    @Autowired
+    public SuspiciousActivityDetector(SecurityMonitoringProperties properties) {
+        this(properties, System::currentTimeMillis);
+    }
+
+    SuspiciousActivityDetector(SecurityMonitoringProperties properties, LongSupplier clockMillis) {
+        this.properties = properties;
+        this.clockMillis = clockMillis;
+        long now = clockMillis.getAsLong();
+        for (SecurityEventType type : SecurityEventType.values()) {
+            sketches.put(type, new DecayingCountMinSketch(properties.getSketchDepth(), properties.getSketchWidth(),
+                    properties.getHalfLife().toMillis(), now));
+            topK.put(type, new TopKTracker(properties.getTopK()));
+        }
+    }
+
+    /**
+     * Rejestruje zdarzenie; zwraca alert tylko w chwili przekroczenia progu (a nie przy każdym kolejnym
+     * zdarzeniu) – ponowny alert dopiero gdy estymata spadnie poniżej progu i znów go przekroczy. Przekroczenie
+     * to przejście estymaty z poniżej progu na próg lub wyżej, więc liczy się także skok o więcej niż 1 (kolizje
+     * z innymi kluczami w sketchu).
+     */
+    public synchronized Alert record(SecurityEventType type, String identifier) {
+        String key = normalize(identifier);
+        long now = clockMillis.getAsLong();
+        DecayingCountMinSketch sketch = sketches.get(type);
+        TopKTracker tracker = topK.get(type);
+        tracker.decay(sketch.decay(now));
+        int previous = sketch.estimate(key, now);
+        int estimate = sketch.add(key, now);
+        tracker.offer(key, estimate);
+        int threshold = properties.thresholdFor(type);
+        return previous < threshold && estimate >= threshold ? new Alert(type, key, estimate, threshold) : null;
+    }
+
+    public synchronized List<Offender> topOffenders(SecurityEventType type, int limit) {
+        DecayingCountMinSketch sketch = sketches.get(type);
+        TopKTracker tracker = topK.get(type);
+        tracker.decay(sketch.decay(clockMillis.getAsLong()));
+        List<Offender> out = new ArrayList<>();
+        for (TopKTracker.Entry e : tracker.top(limit)) out.add(new Offender(e.key(), e.count()));
+        return out;
+    }
+
+    public synchronized int estimate(SecurityEventType type, String identifier) {
+        DecayingCountMinSketch sketch = sketches.get(type);
+        long now = clockMillis.getAsLong(); // jeden odczyt – sketch i top-K zanikają do tej samej chwili
+        topK.get(type).decay(sketch.decay(now));
+        return sketch.estimate(normalize(identifier), now);
+    }
+
+    private static String normalize(String identifier) {
+        if (identifier == null || identifier.isBlank()) return "unknown";
+        return identifier.length() > MAX_IDENTIFIER_LENGTH ? identifier.substring(0, MAX_IDENTIFIER_LENGTH) : identifier;
+    }
+}
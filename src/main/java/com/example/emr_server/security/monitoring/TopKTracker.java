@@ -0,0 +1,58 @@
+package com.example.emr_server.security.monitoring;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Najaktywniejsze klucze (heavy hitters) według estymaty ze sketcha – co najwyżej k wpisów.
+ * Nowy klucz wypiera najmniejszy wpis tylko, gdy jego estymata jest większa. Przy k rzędu kilkudziesięciu
+ * liniowe szukanie minimum jest tańsze od utrzymywania kopca. Nie jest bezpieczny wątkowo.
+ */
+final class TopKTracker {
+
+    record Entry(String key, int count) {}
+
+    private final int k;
+    private final Map<String, Integer> counts;
+
+    TopKTracker(int k) {
+        this.k = k;
+        this.counts = new HashMap<>(k * 2);
+    }
+
+    void offer(String key, int estimate) {
+        if (counts.containsKey(key) || counts.size() < k) {
+            counts.put(key, estimate);
+            return;
+        }
+        String minKey = null;
+        int min = Integer.MAX_VALUE;
+        for (Map.Entry<String, Integer> e : counts.entrySet()) {
+            if (e.getValue() < min) {
+                min = e.getValue();
+                minKey = e.getKey();
+            }
+        }
+        if (estimate > min) {
+            counts.remove(minKey);
+            counts.put(key, estimate);
+        }
+    }
+
+    /** Ta sama skala co sketch; wygasłe (0) wpisy są usuwane. */
+    void decay(int shift) {
+        if (shift <= 0) return;
+        counts.replaceAll((key, c) -> c >>> shift);
+        counts.values().removeIf(c -> c == 0);
+    }
+
+    List<Entry> top(int limit) {
+        List<Entry> out = new ArrayList<>(counts.size());
+        counts.forEach((key, c) -> out.add(new Entry(key, c)));
+        out.sort(Comparator.comparingInt(Entry::count).reversed().thenComparing(Entry::key));
+        return out.size() > limit ? out.subList(0, limit) : out;
+    }
+}
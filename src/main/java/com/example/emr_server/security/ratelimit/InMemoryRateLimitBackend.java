@@ -0,0 +1,83 @@
+package com.example.emr_server.security.ratelimit;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Token bucket w wariancie GCRA (Generic Cell Rate Algorithm): dla każdego klucza trzymany jest wyłącznie
+ * teoretyczny czas nadejścia kolejnego żądania (TAT, long w AtomicLong), aktualizowany pętlą CAS – bez blokad
+ * i bez składania kluczy tekstowych na żądanie (osobna mapa na kubełek). Limit odnawia się płynnie,
+ * więc nie ma podwojenia przepustowości na granicy okien jak przy fixed-window.
+ * Stan jest lokalny dla procesu – przy kilku węzłach efektywny limit mnoży się przez ich liczbę.
+ */
+@Component
+@ConditionalOnProperty(name = "security.ratelimit.backend", havingValue = "memory", matchIfMissing = true)
+public class InMemoryRateLimitBackend implements RateLimitBackend {
+
+    // TAT = Long.MIN_VALUE oznacza pełny kubełek (max(TAT, now) = now)
+    private static final Function<String, AtomicLong> NEW_STATE = k -> new AtomicLong(Long.MIN_VALUE);
+
+    private final LongSupplier nanoClock;
+
+    @Autowired
+    public InMemoryRateLimitBackend() {
+        this(System::nanoTime);
+    }
+
+    InMemoryRateLimitBackend(LongSupplier nanoClock) {
+        this.nanoClock = nanoClock;
+    }
+
+    @Override
+    public Limiter limiter(String bucket, RateLimitService.RateLimitSpec spec) {
+        return new GcraLimiter(spec);
+    }
+
+    private final class GcraLimiter implements Limiter {
+        final long emissionNanos;   // odstęp między tokenami
+        final long toleranceNanos;  // emission * burst
+        final Cache<String, AtomicLong> state;
+
+        GcraLimiter(RateLimitService.RateLimitSpec spec) {
+            this.emissionNanos = Math.max(1, spec.window().toNanos() / spec.limit());
+            this.toleranceNanos = emissionNanos * spec.burst();
+            // po czasie tolerance bez żądań kubełek jest pełny – wpis można usunąć
+            this.state = Caffeine.newBuilder()
+                    .expireAfterAccess(Duration.ofNanos(toleranceNanos))
+                    .maximumSize(100_000)
+                    .build();
+        }
+
+        @Override
+        public RateLimitService.RateCheck tryConsume(String key) {
+            AtomicLong tat = state.get(key, NEW_STATE);
+            long now = nanoClock.getAsLong();
+            while (true) {
+                long current = tat.get();
+                long next = Math.max(current, now) + emissionNanos;
+                long ahead = next - now;
+                if (ahead > toleranceNanos) {
+                    // kolejny token będzie dostępny, gdy next - t <= tolerance
+                    return new RateLimitService.RateCheck(false, 0, RateLimitService.epochSecondsAfter(ahead - toleranceNanos));
+                }
+                if (tat.compareAndSet(current, next)) {
+                    int remaining = (int) ((toleranceNanos - ahead) / emissionNanos);
+                    return new RateLimitService.RateCheck(true, remaining, RateLimitService.epochSecondsAfter(ahead));
+                }
+            }
+        }
+
+        @Override
+        public long trackedKeys() {
+            return state.estimatedSize();
+        }
+    }
+}
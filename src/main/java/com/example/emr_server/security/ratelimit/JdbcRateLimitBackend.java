@@ -0,0 +1,343 @@
+package com.example.emr_server.security.ratelimit;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Limity wspólne dla wszystkich węzłów: liczniki per (kubełek, skrót klucza, okno) w tabeli UNLOGGED
+ * emr.rate_limit_counters. Żądanie nie czeka na bazę – decyzja zapada lokalnie na podstawie ostatniej
+ * znanej sumy globalnej plus lokalnych, jeszcze niewysłanych trafień. Co flush-interval przyrosty
+ * gorących kluczy są wysyłane jednym batchem upsertów (INSERT ... ON CONFLICT DO UPDATE, na H2 MERGE),
+ * po czym odczytywane są aktualne sumy. Okno przesuwne przybliżone z dwóch okien stałych
+ * (poprzednie ważone pozostałą częścią bieżącego) – bez podwojenia limitu na granicy okien.
+ * Przekroczenie limitu ponad wartość globalną jest ograniczone do żądań z jednego flush-interval na węzeł.
+ * Przy niedostępnej bazie limit działa dalej lokalnie.
+ * Burst mniejszy od limitu to drugie okno (kubełek "nazwa:burst") o długości window * burst / limit z limitem
+ * burst – tyle, ile GCRA backendu memory odnawia w tym czasie. Burst większy od limitu nie podnosi limitu okna.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "security.ratelimit.backend", havingValue = "jdbc")
+public class JdbcRateLimitBackend implements RateLimitBackend {
+
+    static final String UPSERT_SQL =
+            "INSERT INTO emr.rate_limit_counters(bucket, key_hash, window_start, hits, expires_at) VALUES (?, ?, ?, ?, ?) "
+                    + "ON CONFLICT (bucket, key_hash, window_start) DO UPDATE SET hits = emr.rate_limit_counters.hits + EXCLUDED.hits";
+    // H2 (testy) nie obsługuje ON CONFLICT DO UPDATE – standardowy MERGE o tej samej semantyce
+    static final String MERGE_SQL =
+            "MERGE INTO emr.rate_limit_counters t USING (VALUES (CAST(? AS VARCHAR(64)), CAST(? AS VARCHAR(32)), "
+                    + "CAST(? AS BIGINT), CAST(? AS BIGINT), CAST(? AS BIGINT))) s(bucket, key_hash, window_start, hits, expires_at) "
+                    + "ON t.bucket = s.bucket AND t.key_hash = s.key_hash AND t.window_start = s.window_start "
+                    + "WHEN MATCHED THEN UPDATE SET hits = t.hits + s.hits "
+                    + "WHEN NOT MATCHED THEN INSERT (bucket, key_hash, window_start, hits, expires_at) "
+                    + "VALUES (s.bucket, s.key_hash, s.window_start, s.hits, s.expires_at)";
+    static final String CLEANUP_SQL = "DELETE FROM emr.rate_limit_counters WHERE expires_at < ?";
+    private static final int READ_CHUNK = 200;
+    private static final long CLEANUP_INTERVAL_MS = TimeUnit.MINUTES.toMillis(1);
+
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    /** Przyrost do wysłania: hits trafień slotu w oknie window. */
+    private record Delta(Slot slot, long window, long hits) {}
+    private record CounterId(String bucket, String keyHash, long windowStart) {}
+
+    private final JdbcTemplate jdbcTemplate;
+    private final long flushIntervalMs;
+    private final LongSupplier clockMillis;
+    private final Set<Slot> dirty = ConcurrentHashMap.newKeySet();
+    private final Queue<Delta> leftovers = new ConcurrentLinkedQueue<>();
+
+    private final DistributionSummary batchSizes;
+    private final Timer flushLatency;
+    private final Counter flushErrors;
+
+    private volatile String upsertSql;
+    private volatile boolean running;
+    private Thread worker;
+
+    @Autowired
+    public JdbcRateLimitBackend(JdbcTemplate jdbcTemplate, RateLimitProperties properties, MeterRegistry meterRegistry) {
+        this(jdbcTemplate, properties.getFlushInterval().toMillis(), meterRegistry, System::currentTimeMillis);
+    }
+
+    JdbcRateLimitBackend(JdbcTemplate jdbcTemplate, long flushIntervalMs, MeterRegistry meterRegistry, LongSupplier clockMillis) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.flushIntervalMs = Math.max(10, flushIntervalMs);
+        this.clockMillis = clockMillis;
+        this.batchSizes = DistributionSummary.builder("ratelimit.backend.batch.size").register(meterRegistry);
+        this.flushLatency = Timer.builder("ratelimit.backend.flush.latency").register(meterRegistry);
+        this.flushErrors = meterRegistry.counter("ratelimit.backend.flush.errors");
+    }
+
+    @PostConstruct
+    void start() {
+        running = true;
+        worker = new Thread(this::run, "ratelimit-flusher");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        running = false;
+        if (worker != null) {
+            worker.interrupt();
+            worker.join(TimeUnit.SECONDS.toMillis(5));
+        }
+        flush();
+    }
+
+    @Override
+    public Limiter limiter(String bucket, RateLimitService.RateLimitSpec spec) {
+        return new WindowLimiter(bucket, spec);
+    }
+
+    private void run() {
+        long lastCleanup = clockMillis.getAsLong();
+        while (running) {
+            try {
+                Thread.sleep(flushIntervalMs);
+                flush();
+                long now = clockMillis.getAsLong();
+                if (now - lastCleanup >= CLEANUP_INTERVAL_MS) {
+                    jdbcTemplate.update(CLEANUP_SQL, now);
+                    lastCleanup = now;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                log.error("Błąd wątku zapisu liczników rate limit: {}", e.getMessage());
+            }
+        }
+    }
+
+    /** Wysyła zgromadzone przyrosty jednym batchem i odświeża sumy globalne wysłanych kluczy. */
+    void flush() {
+        List<Delta> batch = new ArrayList<>();
+        for (Delta d; (d = leftovers.poll()) != null; ) batch.add(d);
+        for (Iterator<Slot> it = dirty.iterator(); it.hasNext(); ) {
+            Slot s = it.next();
+            it.remove();
+            synchronized (s) {
+                if (s.unflushed > 0) {
+                    batch.add(new Delta(s, s.window, s.unflushed));
+                    s.inFlight += s.unflushed;
+                    s.unflushed = 0;
+                }
+            }
+        }
+        if (batch.isEmpty()) return;
+
+        long start = System.nanoTime();
+        try {
+            jdbcTemplate.batchUpdate(upsertSql(), batch, batch.size(), (ps, d) -> {
+                long windowMs = d.slot().limiter.windowMs;
+                ps.setString(1, d.slot().limiter.bucket);
+                ps.setString(2, d.slot().keyHash);
+                ps.setLong(3, d.window() * windowMs);
+                ps.setLong(4, d.hits());
+                ps.setLong(5, (d.window() + 2) * windowMs);
+            });
+            Map<CounterId, Long> totals = readTotals(batch);
+            for (Delta d : batch) {
+                Long total = totals.get(id(d));
+                d.slot().applyFlushed(d, total != null ? total : d.hits());
+            }
+        } catch (DataAccessException e) {
+            flushErrors.increment();
+            log.warn("Nie wysłano {} liczników rate limit: {} – limit tylko lokalny do kolejnej próby", batch.size(), e.getMessage());
+            for (Delta d : batch) d.slot().applyFlushed(d, -1);
+        }
+        batchSizes.record(batch.size());
+        flushLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    private Map<CounterId, Long> readTotals(List<Delta> batch) {
+        Map<CounterId, Long> totals = new HashMap<>();
+        for (int from = 0; from < batch.size(); from += READ_CHUNK) {
+            List<Delta> chunk = batch.subList(from, Math.min(batch.size(), from + READ_CHUNK));
+            StringBuilder sql = new StringBuilder("SELECT bucket, key_hash, window_start, hits FROM emr.rate_limit_counters "
+                    + "WHERE (bucket, key_hash, window_start) IN (");
+            Object[] args = new Object[chunk.size() * 3];
+            for (int i = 0; i < chunk.size(); i++) {
+                if (i > 0) sql.append(", ");
+                sql.append("(?, ?, ?)");
+                CounterId id = id(chunk.get(i));
+                args[i * 3] = id.bucket();
+                args[i * 3 + 1] = id.keyHash();
+                args[i * 3 + 2] = id.windowStart();
+            }
+            sql.append(')');
+            jdbcTemplate.query(sql.toString(), rs -> {
+                totals.put(new CounterId(rs.getString(1), rs.getString(2), rs.getLong(3)), rs.getLong(4));
+            }, args);
+        }
+        return totals;
+    }
+
+    private static CounterId id(Delta d) {
+        return new CounterId(d.slot().limiter.bucket, d.slot().keyHash, d.window() * d.slot().limiter.windowMs);
+    }
+
+    private String upsertSql() {
+        if (upsertSql == null) {
+            String product = jdbcTemplate.execute((ConnectionCallback<String>) c -> c.getMetaData().getDatabaseProductName());
+            upsertSql = product != null && product.startsWith("PostgreSQL") ? UPSERT_SQL : MERGE_SQL;
+        }
+        return upsertSql;
+    }
+
+    static String hash(String key) {
+        byte[] digest = SHA256.get().digest(key.getBytes(StandardCharsets.UTF_8));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(digest, 16));
+    }
+
+    private final class WindowLimiter implements Limiter {
+        final String bucket;
+        final int limit;
+        final long windowMs;
+        final Cache<String, Slot> slots;
+        final Function<String, Slot> newSlot;
+        final WindowLimiter burst; // null, gdy burst >= limit
+
+        WindowLimiter(String bucket, RateLimitService.RateLimitSpec spec) {
+            this(bucket, spec.limit(), spec.window().toMillis(), spec.burst());
+        }
+
+        private WindowLimiter(String bucket, int limit, long windowMs, int burst) {
+            this.bucket = bucket;
+            this.limit = limit;
+            this.windowMs = windowMs;
+            // bieżące + poprzednie okno – starszy stan nie wpływa już na decyzję
+            this.slots = Caffeine.newBuilder()
+                    .expireAfterAccess(Duration.ofMillis(2 * windowMs))
+                    .maximumSize(100_000)
+                    .build();
+            this.newSlot = k -> new Slot(this, hash(k));
+            this.burst = burst < limit
+                    ? new WindowLimiter(bucket + ":burst", burst, Math.max(1, windowMs * burst / limit), burst) : null;
+        }
+
+        @Override
+        public RateLimitService.RateCheck tryConsume(String key) {
+            Slot s = slots.get(key, newSlot);
+            Slot b = burst != null ? burst.slots.get(key, burst.newSlot) : null;
+            long now = clockMillis.getAsLong();
+            long window = now / windowMs;
+            long resetEpoch = ((window + 1) * windowMs + 999) / 1000L;
+            double remaining;
+            boolean allowed;
+            // kolejność blokad zawsze slot okna -> slot burst
+            synchronized (s) {
+                double estimate = s.estimate(now);
+                remaining = limit - estimate - 1;
+                allowed = remaining >= 0;
+                if (allowed && b != null) {
+                    synchronized (b) {
+                        double burstEstimate = b.estimate(now);
+                        remaining = Math.min(remaining, burst.limit - burstEstimate - 1);
+                        allowed = remaining >= 0;
+                        if (allowed) b.unflushed++;
+                        else resetEpoch = ((now / burst.windowMs + 1) * burst.windowMs + 999) / 1000L;
+                    }
+                }
+                if (allowed) s.unflushed++;
+            }
+            if (!allowed) return new RateLimitService.RateCheck(false, 0, resetEpoch);
+            dirty.add(s);
+            if (b != null) dirty.add(b);
+            return new RateLimitService.RateCheck(true, (int) Math.max(0, remaining), resetEpoch);
+        }
+
+        @Override
+        public long trackedKeys() {
+            return slots.estimatedSize();
+        }
+    }
+
+    /** Stan klucza w bieżącym oknie; pola chronione monitorem slotu. */
+    private final class Slot {
+        final WindowLimiter limiter;
+        final String keyHash;
+        long window = Long.MIN_VALUE;
+        long previous;   // suma globalna poprzedniego okna
+        long known;      // ostatnia suma globalna bieżącego okna (z bazy, zawiera nasze wysłane przyrosty)
+        long inFlight;   // wysłane, ale jeszcze bez odpowiedzi
+        long unflushed;  // lokalne trafienia czekające na flush
+
+        Slot(WindowLimiter limiter, String keyHash) {
+            this.limiter = limiter;
+            this.keyHash = keyHash;
+        }
+
+        /** Estymata okna przesuwnego w chwili now; wywoływane pod monitorem slotu. */
+        double estimate(long now) {
+            long w = now / limiter.windowMs;
+            roll(w);
+            double previousWeight = 1.0 - (double) (now - w * limiter.windowMs) / limiter.windowMs;
+            return previous * previousWeight + known + inFlight + unflushed;
+        }
+
+        void roll(long w) {
+            if (w == window) return;
+            if (window != Long.MIN_VALUE && unflushed > 0) {
+                // przyrost starego okna wysyłany przy najbliższym flush
+                leftovers.add(new Delta(this, window, unflushed));
+            }
+            previous = w == window + 1 ? known + inFlight + unflushed : 0;
+            known = 0;
+            inFlight = 0;
+            unflushed = 0;
+            window = w;
+        }
+
+        /** total < 0 – zapis nieudany, przyrost pozostaje wiedzą lokalną. */
+        synchronized void applyFlushed(Delta d, long total) {
+            if (d.window() == window) {
+                inFlight = Math.max(0, inFlight - d.hits());
+                known = total >= 0 ? Math.max(known, total) : known + d.hits();
+            } else if (d.window() == window - 1 && total >= 0) {
+                previous = Math.max(previous, total);
+            }
+        }
+    }
+}
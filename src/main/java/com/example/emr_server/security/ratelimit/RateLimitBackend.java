@@ -0,0 +1,18 @@
+package com.example.emr_server.security.ratelimit;
+
+/**
+ * Magazyn stanu limitów. Wybór przez security.ratelimit.backend:
+ * memory (domyślnie, stan w procesie) albo jdbc (wspólny licznik w bazie dla wielu węzłów za nginx).
+ */
+public interface RateLimitBackend {
+
+    /** Tworzony raz na kubełek przy starcie – ścieżka żądania nie szuka kubełka po nazwie. */
+    Limiter limiter(String bucket, RateLimitService.RateLimitSpec spec);
+
+    interface Limiter {
+        RateLimitService.RateCheck tryConsume(String key);
+
+        /** Liczba kluczy trzymanych lokalnie (metryka ratelimit.keys). */
+        long trackedKeys();
+    }
+}
@@ -1,7 +1,5 @@
 package com.example.emr_server.security.ratelimit;
 
-import com.example.emr_server.entity.SecurityIncident;
-import com.example.emr_server.repository.SecurityIncidentRepository;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ReadListener;
 import jakarta.servlet.ServletException;
@@ -18,9 +16,7 @@ import org.springframework.web.filter.OncePerRequestFilter;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
-import java.time.Instant;
 import java.util.Locale;
-import java.util.UUID;
 
 @Slf4j
 @Component
@@ -28,7 +24,7 @@ import java.util.UUID;
 public class RateLimitFilter extends OncePerRequestFilter {
 
     private final RateLimitService rateLimitService;
-    private final SecurityIncidentRepository incidentRepository;
+    private final RateLimitIncidentAggregator incidentAggregator;
 
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
@@ -48,6 +44,15 @@ public class RateLimitFilter extends OncePerRequestFilter {
             return;
         }
 
+        // Kosztowne generowanie plików (PDF, ICS, eksport) – osobny, niższy limit
+        if (isHeavy(request, path)) {
+            RateLimitService.RateCheck heavy = rateLimitService.tryConsume("HEAVY_IP", ip);
+            if (!heavy.allowed()) {
+                reject(response, ip, path, "HEAVY_IP", heavy.resetEpochSeconds());
+                return;
+            }
+        }
+
         boolean isLogin = path.equals("/auth/login") && "POST".equalsIgnoreCase(request.getMethod());
         boolean isPwdResetRequest = path.equals("/auth/password-reset/request") && "POST".equalsIgnoreCase(request.getMethod());
         boolean isPwdResetConfirm = path.equals("/auth/password-reset/confirm") && "POST".equalsIgnoreCase(request.getMethod());
@@ -89,19 +94,9 @@ public class RateLimitFilter extends OncePerRequestFilter {
     }
 
     private void reject(HttpServletResponse response, String ip, String path, String bucket, long resetEpoch) throws IOException {
-        log.warn("RATE_LIMIT_EXCEEDED ip={} path={} bucket={} resetEpoch={}", ip, path, bucket, resetEpoch);
-        try {
-            SecurityIncident si = new SecurityIncident();
-            si.setId(UUID.randomUUID());
-            si.setDetectedAt(Instant.now());
-            si.setSeverity("medium");
-            si.setCategory("RATE_LIMIT");
-            si.setDescription("Przekroczono limit: " + bucket + " na " + path + " z IP " + ip);
-            si.setStatus("open");
-            incidentRepository.save(si);
-        } catch (Exception e) {
-            log.debug("Nie udało się zapisać incydentu rate limiting: {}", e.getMessage());
-        }
+        // bez I/O na ścieżce odrzucenia – incydent i log zbiorczo w tle
+        log.debug("RATE_LIMIT_EXCEEDED ip={} path={} bucket={} resetEpoch={}", ip, path, bucket, resetEpoch);
+        incidentAggregator.record(bucket, ip, path);
         response.setStatus(429);
         response.setContentType(MediaType.APPLICATION_JSON_VALUE);
         long retryAfter = Math.max(0, resetEpoch - (System.currentTimeMillis()/1000L));
@@ -110,6 +105,11 @@ public class RateLimitFilter extends OncePerRequestFilter {
         response.getWriter().write(body);
     }
 
+    private static boolean isHeavy(HttpServletRequest request, String path) {
+        return "GET".equalsIgnoreCase(request.getMethod())
+                && (path.endsWith("/pdf") || path.endsWith("/ics") || path.endsWith("/ics-feed") || path.endsWith("/export"));
+    }
+
     private String extractClientIp(HttpServletRequest request) {
         String hdr = request.getHeader("X-Forwarded-For");
         if (hdr != null && !hdr.isBlank()) {
@@ -0,0 +1,273 @@
+package com.example.emr_server.security.ratelimit;
+
+import com.example.emr_server.entity.id.UuidV7Generator;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * Agregacja odrzuceń rate limiting do incydentów bezpieczeństwa. Ścieżka odrzucenia tylko zlicza w pamięci
+ * per (kubełek, IP, ścieżka z identyfikatorami zastąpionymi {id}); wątek w tle co flush-interval zapisuje
+ * jeden incydent na klucz z liczbą wystąpień, first/last seen i przykładowymi ścieżkami. Kolejne serie
+ * tego samego klucza w oknie dedup-window dopisywane są do otwartego incydentu zamiast tworzyć nowy.
+ * Liczba kluczy jest ograniczona – nadmiar trafia do zbiorczego klucza kubełka (IP "*"). Adres spoza składni IP
+ * (np. sfałszowany X-Forwarded-For) zapisywany jest jako "?". Agregaty, których nie udało się zapisać, wracają do
+ * kolejki i trafiają do bazy przy następnym flushu.
+ */
+@Slf4j
+@Component
+public class RateLimitIncidentAggregator {
+
+    private static final int HIGH_SEVERITY_OCCURRENCES = 100;
+    static final String INSERT_SQL = "INSERT INTO emr.security_incidents(id, detected_at, severity, category, description, status, "
+            + "occurrences, first_seen_at, last_seen_at, source_ip) VALUES (?, ?, ?, 'RATE_LIMIT', ?, 'open', ?, ?, ?, ?)";
+    static final String UPDATE_SQL = "UPDATE emr.security_incidents SET occurrences = occurrences + ?, last_seen_at = ?, "
+            + "severity = CASE WHEN occurrences + ? >= " + HIGH_SEVERITY_OCCURRENCES + " THEN 'high' ELSE severity END "
+            + "WHERE id = ? AND status = 'open'";
+    private static final int MAX_SAMPLE_PATHS = 5;
+    static final String INVALID_IP = "?";
+    private static final int MAX_IP_LENGTH = 45; // source_ip varchar(45)
+    private static final Pattern IPV4 = Pattern.compile("\\d{1,3}(\\.\\d{1,3}){3}");
+    private static final Pattern ID_SEGMENT = Pattern.compile(
+            "/([0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}|\\d+)(?=/|$)");
+
+    record Key(String bucket, String ip, String path) {}
+
+    /** Modyfikowany wyłącznie wewnątrz compute() mapy – bez własnej synchronizacji. */
+    private static final class Aggregate {
+        Instant firstSeen;
+        Instant lastSeen;
+        int count;
+        final Set<String> samplePaths = new LinkedHashSet<>();
+
+        Aggregate(Instant now) {
+            this.firstSeen = now;
+        }
+
+        /** Dołącza niezapisany agregat z poprzedniego flushu. */
+        Aggregate merge(Aggregate other) {
+            if (other.firstSeen.isBefore(firstSeen)) firstSeen = other.firstSeen;
+            if (lastSeen == null || other.lastSeen.isAfter(lastSeen)) lastSeen = other.lastSeen;
+            count += other.count;
+            for (String p : other.samplePaths) {
+                if (samplePaths.size() >= MAX_SAMPLE_PATHS) break;
+                samplePaths.add(p);
+            }
+            return this;
+        }
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final long flushIntervalMs;
+    private final int maxKeys;
+    private final Supplier<Instant> clock;
+    private final Map<Key, Aggregate> pending = new ConcurrentHashMap<>();
+    // klucz -> otwarty incydent, do którego dopisywane są kolejne serie
+    private final Cache<Key, UUID> openIncidents;
+    private final Counter flushed;
+
+    private volatile boolean running;
+    private Thread worker;
+
+    @Autowired
+    public RateLimitIncidentAggregator(JdbcTemplate jdbcTemplate,
+                                       MeterRegistry meterRegistry,
+                                       @Value("${security.ratelimit.incidents.flush-interval:30s}") Duration flushInterval,
+                                       @Value("${security.ratelimit.incidents.dedup-window:15m}") Duration dedupWindow,
+                                       @Value("${security.ratelimit.incidents.max-keys:10000}") int maxKeys) {
+        this(jdbcTemplate, meterRegistry, flushInterval, dedupWindow, maxKeys, Instant::now);
+    }
+
+    RateLimitIncidentAggregator(JdbcTemplate jdbcTemplate, MeterRegistry meterRegistry, Duration flushInterval,
+                                Duration dedupWindow, int maxKeys, Supplier<Instant> clock) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.flushIntervalMs = flushInterval.toMillis();
+        this.maxKeys = maxKeys;
+        this.clock = clock;
+        this.openIncidents = Caffeine.newBuilder().expireAfterWrite(dedupWindow).maximumSize(maxKeys).build();
+        this.flushed = meterRegistry.counter("ratelimit.incidents.flushed");
+        Gauge.builder("ratelimit.incidents.pending", pending, Map::size).register(meterRegistry);
+    }
+
+    @PostConstruct
+    void start() {
+        running = true;
+        worker = new Thread(this::run, "ratelimit-incidents");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        running = false;
+        if (worker != null) {
+            worker.interrupt();
+            worker.join(TimeUnit.SECONDS.toMillis(5));
+        }
+        flush();
+    }
+
+    /** Wywoływane przy każdym 429 – tylko pamięć, bez I/O. */
+    public void record(String bucket, String ip, String path) {
+        Key key = new Key(bucket, normalizeIp(ip), ID_SEGMENT.matcher(path).replaceAll("/{id}"));
+        if (pending.size() >= maxKeys && !pending.containsKey(key)) {
+            key = new Key(bucket, "*", "*");
+        }
+        Instant now = clock.get();
+        pending.compute(key, (k, agg) -> {
+            if (agg == null) agg = new Aggregate(now);
+            agg.lastSeen = now;
+            agg.count++;
+            if (agg.samplePaths.size() < MAX_SAMPLE_PATHS) agg.samplePaths.add(path);
+            return agg;
+        });
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                Thread.sleep(flushIntervalMs);
+                flush();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                log.error("Błąd zapisu incydentów rate limiting: {}", e.getMessage());
+            }
+        }
+    }
+
+    void flush() {
+        List<Map.Entry<Key, Aggregate>> batch = new ArrayList<>();
+        for (Key key : pending.keySet()) {
+            Aggregate agg = pending.remove(key);
+            if (agg != null) batch.add(Map.entry(key, agg));
+        }
+        if (batch.isEmpty()) return;
+
+        List<Object[]> updates = new ArrayList<>();
+        List<Map.Entry<Key, Aggregate>> updated = new ArrayList<>();
+        List<Map.Entry<Key, Aggregate>> inserts = new ArrayList<>();
+        for (Map.Entry<Key, Aggregate> e : batch) {
+            UUID open = openIncidents.getIfPresent(e.getKey());
+            if (open == null) {
+                inserts.add(e);
+            } else {
+                Aggregate agg = e.getValue();
+                updates.add(new Object[]{agg.count, Timestamp.from(agg.lastSeen), agg.count, open});
+                updated.add(e);
+            }
+        }
+        List<Map.Entry<Key, Aggregate>> written = new ArrayList<>(batch.size());
+        if (!updates.isEmpty()) {
+            try {
+                int[] counts = jdbcTemplate.batchUpdate(UPDATE_SQL, updates);
+                for (int i = 0; i < counts.length; i++) {
+                    // incydent zamknięty lub usunięty w międzyczasie – nowy wiersz
+                    if (counts[i] == 0) inserts.add(updated.get(i));
+                    else written.add(updated.get(i));
+                }
+            } catch (DataAccessException ex) {
+                log.warn("Nie udało się dopisać {} serii rate limiting do incydentów: {}", updated.size(), ex.getMessage());
+                updated.forEach(this::requeue);
+            }
+        }
+        if (!inserts.isEmpty()) written.addAll(insert(inserts));
+
+        flushed.increment(written.size());
+        for (Map.Entry<Key, Aggregate> e : written) {
+            log.warn("RATE_LIMIT_EXCEEDED ip={} path={} bucket={} count={} firstSeen={} lastSeen={}",
+                    e.getKey().ip(), e.getKey().path(), e.getKey().bucket(), e.getValue().count,
+                    e.getValue().firstSeen, e.getValue().lastSeen);
+        }
+    }
+
+    /**
+     * Wstawia nowe incydenty paczką; gdy paczka się nie powiedzie – wiersz po wierszu z tymi samymi id
+     * (duplikat klucza = wiersz już zapisany). Klucz trafia do openIncidents dopiero po zapisie wiersza,
+     * niezapisane agregaty wracają do kolejki.
+     */
+    private List<Map.Entry<Key, Aggregate>> insert(List<Map.Entry<Key, Aggregate>> inserts) {
+        List<Object[]> rows = new ArrayList<>(inserts.size());
+        for (Map.Entry<Key, Aggregate> e : inserts) {
+            UUID id = UuidV7Generator.next(); // jak encja SecurityIncident – rosnące id
+            Aggregate agg = e.getValue();
+            rows.add(new Object[]{id, Timestamp.from(agg.firstSeen), severity(agg.count), describe(e.getKey(), agg),
+                    agg.count, Timestamp.from(agg.firstSeen), Timestamp.from(agg.lastSeen), e.getKey().ip()});
+        }
+        try {
+            jdbcTemplate.batchUpdate(INSERT_SQL, rows);
+            for (int i = 0; i < inserts.size(); i++) openIncidents.put(inserts.get(i).getKey(), (UUID) rows.get(i)[0]);
+            return inserts;
+        } catch (DataAccessException ex) {
+            log.warn("Paczka {} incydentów rate limiting odrzucona, zapis pojedynczo: {}", rows.size(), ex.getMessage());
+        }
+        List<Map.Entry<Key, Aggregate>> written = new ArrayList<>(inserts.size());
+        for (int i = 0; i < inserts.size(); i++) {
+            Map.Entry<Key, Aggregate> e = inserts.get(i);
+            try {
+                jdbcTemplate.update(INSERT_SQL, rows.get(i));
+            } catch (DuplicateKeyException ex) {
+                // zapisany przed błędem paczki
+            } catch (DataAccessException ex) {
+                log.warn("Nie udało się zapisać incydentu rate limiting ip={} bucket={}: {}", e.getKey().ip(),
+                        e.getKey().bucket(), ex.getMessage());
+                requeue(e);
+                continue;
+            }
+            openIncidents.put(e.getKey(), (UUID) rows.get(i)[0]);
+            written.add(e);
+        }
+        return written;
+    }
+
+    private void requeue(Map.Entry<Key, Aggregate> e) {
+        pending.merge(e.getKey(), e.getValue(), (current, failed) -> current.merge(failed));
+    }
+
+    /** Adres IP z X-Forwarded-For pochodzi od klienta – tylko literał IP mieszczący się w source_ip. */
+    static String normalizeIp(String ip) {
+        if (ip == null) return INVALID_IP;
+        String trimmed = ip.trim();
+        if (trimmed.isEmpty() || trimmed.length() > MAX_IP_LENGTH) return INVALID_IP;
+        boolean valid = trimmed.indexOf(':') >= 0
+                ? trimmed.chars().allMatch(c -> Character.digit(c, 16) >= 0 || c == '.' || c == ':')
+                : IPV4.matcher(trimmed).matches();
+        return valid ? trimmed.toLowerCase(Locale.ROOT) : INVALID_IP;
+    }
+
+    private static String severity(int count) {
+        return count >= HIGH_SEVERITY_OCCURRENCES ? "high" : "medium";
+    }
+
+    private static String describe(Key key, Aggregate agg) {
+        return "Przekroczono limit: " + key.bucket() + " na " + key.path() + " z IP " + key.ip()
+                + " (przykładowe ścieżki: " + String.join(", ", agg.samplePaths) + ")";
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.emr_server.security.ratelimit;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Konfiguracja limitów (security.ratelimit.*). GLOBAL_IP bierze wartości z requests-per-minute / burst-capacity,
+ * pozostałe kubełki można nadpisać przez security.ratelimit.buckets.&lt;nazwa&gt;.limit|period|burst,
+ * np. security.ratelimit.buckets.login-ip.limit=30 (nazwa: małe litery i '-' zamiast '_').
+ * backend: memory (stan w procesie) albo jdbc (wspólne liczniki w bazie, wysyłane co flush-interval).
+ */
+@Configuration
+@ConfigurationProperties(prefix = "security.ratelimit")
+public class RateLimitProperties {
+    private int requestsPerMinute = 100;
+    private int burstCapacity = 100;
+    private Map<String, Bucket> buckets = new LinkedHashMap<>();
+    private String backend = "memory";
+    private Duration flushInterval = Duration.ofMillis(200);
+
+    public int getRequestsPerMinute() { return requestsPerMinute; }
+    public void setRequestsPerMinute(int requestsPerMinute) { this.requestsPerMinute = requestsPerMinute; }
+    public int getBurstCapacity() { return burstCapacity; }
+    public void setBurstCapacity(int burstCapacity) { this.burstCapacity = burstCapacity; }
+    public Map<String, Bucket> getBuckets() { return buckets; }
+    public void setBuckets(Map<String, Bucket> buckets) { this.buckets = buckets; }
+    public String getBackend() { return backend; }
+    public void setBackend(String backend) { this.backend = backend; }
+    public Duration getFlushInterval() { return flushInterval; }
+    public void setFlushInterval(Duration flushInterval) { this.flushInterval = flushInterval; }
+
+    /** limit żądań na period; burst = pojemność kubełka (domyślnie równa limit). */
+    public static class Bucket {
+        private Integer limit;
+        private Duration period;
+        private Integer burst;
+
+        public Integer getLimit() { return limit; }
+        public void setLimit(Integer limit) { this.limit = limit; }
+        public Duration getPeriod() { return period; }
+        public void setPeriod(Duration period) { this.period = period; }
+        public Integer getBurst() { return burst; }
+        public void setBurst(Integer burst) { this.burst = burst; }
+    }
+}
@@ -1,71 +1,108 @@
 package com.example.emr_server.security.ratelimit;
 
-import com.github.benmanes.caffeine.cache.Cache;
-import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * Prosty fixed-window rate limiting w pamięci (Caffeine) – wystarczające dla pracy.
- * W opisie można dodać możliwość migracji do Redis (INCR + EXPIRE) dla skalowania.
+ * Limity żądań per kubełek (IP, login, reset hasła, kosztowne endpointy). Stan trzyma {@link RateLimitBackend}
+ * (w procesie albo wspólny w bazie), tu – specyfikacje kubełków i metryki.
+ * Specyfikacje: domyślne poniżej, nadpisywane z security.ratelimit.* ({@link RateLimitProperties}).
  */
 @Service
 public class RateLimitService {
-    public record RateLimitSpec(int limit, Duration window) {}
+    /** limit żądań na window, burst = pojemność kubełka (ile żądań naraz po okresie bezczynności). */
+    public record RateLimitSpec(int limit, Duration window, int burst) {
+        public RateLimitSpec(int limit, Duration window) {
+            this(limit, window, limit);
+        }
+    }
     public record RateCheck(boolean allowed, int remaining, long resetEpochSeconds) {}
 
-    private static class Counter {
-        long windowStart; // numer okna
-        int count;
+    private static final class Bucket {
+        final RateLimitSpec spec;
+        final RateLimitBackend.Limiter limiter;
+        final Counter allowed;
+        final Counter rejected;
+
+        Bucket(String name, RateLimitSpec spec, RateLimitBackend backend, MeterRegistry registry) {
+            this.spec = spec;
+            this.limiter = backend.limiter(name, spec);
+            this.allowed = Counter.builder("ratelimit.requests").tag("bucket", name).tag("outcome", "allowed").register(registry);
+            this.rejected = Counter.builder("ratelimit.requests").tag("bucket", name).tag("outcome", "rejected").register(registry);
+            Gauge.builder("ratelimit.keys", limiter, RateLimitBackend.Limiter::trackedKeys).tag("bucket", name).register(registry);
+        }
+    }
+
+    private final Map<String, Bucket> buckets;
+
+    @Autowired
+    public RateLimitService(RateLimitProperties properties, RateLimitBackend backend, MeterRegistry registry) {
+        this(specs(properties), backend, registry);
     }
 
-    private final Map<String, RateLimitSpec> specs = new ConcurrentHashMap<>();
-    private final Cache<String, Counter> cache = Caffeine.newBuilder()
-            .expireAfterWrite(Duration.ofMinutes(10)) // wystarcza aby stale czyszczone
-            .maximumSize(100_000)
-            .build();
+    RateLimitService(Map<String, RateLimitSpec> specs, RateLimitBackend backend, MeterRegistry registry) {
+        Map<String, Bucket> map = new HashMap<>();
+        specs.forEach((name, spec) -> map.put(name, new Bucket(name, spec, backend, registry)));
+        this.buckets = Map.copyOf(map);
+    }
+
+    public RateCheck tryConsume(String bucket, String key) {
+        Bucket b = buckets.get(bucket);
+        if (b == null) {
+            return new RateCheck(true, Integer.MAX_VALUE, Instant.now().getEpochSecond()+60);
+        }
+        RateCheck check = b.limiter.tryConsume(key);
+        (check.allowed() ? b.allowed : b.rejected).increment();
+        return check;
+    }
 
-    public RateLimitService() {
+    public Map<String, RateLimitSpec> specs() {
+        Map<String, RateLimitSpec> out = new LinkedHashMap<>();
+        buckets.forEach((name, b) -> out.put(name, b.spec));
+        return out;
+    }
+
+    static long epochSecondsAfter(long nanos) {
+        long millis = System.currentTimeMillis() + (nanos + 999_999) / 1_000_000;
+        return (millis + 999) / 1000L; // sekundy UNIX, zaokrąglenie w górę
+    }
+
+    static Map<String, RateLimitSpec> specs(RateLimitProperties properties) {
         // Domyślne specy
+        Map<String, RateLimitSpec> specs = new LinkedHashMap<>();
         specs.put("LOGIN_IP", new RateLimitSpec(20, Duration.ofMinutes(1)));
         specs.put("LOGIN_USER", new RateLimitSpec(5, Duration.ofMinutes(1)));
-        specs.put("GLOBAL_IP", new RateLimitSpec(100, Duration.ofMinutes(1)));
+        specs.put("GLOBAL_IP", new RateLimitSpec(properties.getRequestsPerMinute(), Duration.ofMinutes(1), properties.getBurstCapacity()));
         specs.put("HEAVY_IP", new RateLimitSpec(10, Duration.ofMinutes(5)));
         // Reset hasła
         specs.put("PWD_RESET_IP", new RateLimitSpec(5, Duration.ofMinutes(15)));
         specs.put("PWD_RESET_USER", new RateLimitSpec(3, Duration.ofMinutes(15)));
         specs.put("PWD_RESET_CONFIRM_IP", new RateLimitSpec(10, Duration.ofMinutes(10)));
-    }
-
-    public RateCheck tryConsume(String bucket, String key) {
-        RateLimitSpec spec = specs.get(bucket);
-        if (spec == null) {
-            return new RateCheck(true, Integer.MAX_VALUE, Instant.now().getEpochSecond()+60);
-        }
-        long nowMs = System.currentTimeMillis();
-        long windowIndex = nowMs / spec.window().toMillis();
-        String composite = bucket + ":" + key + ":" + windowIndex;
-        Counter c = cache.getIfPresent(composite);
-        if (c == null) {
-            c = new Counter();
-            c.windowStart = windowIndex;
-            c.count = 1;
-            cache.put(composite, c);
-            return new RateCheck(true, spec.limit()-1, windowResetEpoch(spec, windowIndex));
-        }
-        if (c.count >= spec.limit()) {
-            return new RateCheck(false, 0, windowResetEpoch(spec, windowIndex));
-        }
-        c.count++;
-        return new RateCheck(true, spec.limit()-c.count, windowResetEpoch(spec, windowIndex));
-    }
 
-    private long windowResetEpoch(RateLimitSpec spec, long windowIndex) {
-        long windowStartMs = windowIndex * spec.window().toMillis();
-        return (windowStartMs + spec.window().toMillis()) / 1000L; // sekundy UNIX
+        properties.getBuckets().forEach((key, cfg) -> {
+            String name = key.toUpperCase(Locale.ROOT).replace('-', '_');
+            RateLimitSpec base = specs.get(name);
+            Integer limit = cfg.getLimit() != null ? cfg.getLimit() : base != null ? Integer.valueOf(base.limit()) : null;
+            Duration period = cfg.getPeriod() != null ? cfg.getPeriod() : base != null ? base.window() : null;
+            if (limit == null || period == null) {
+                throw new IllegalStateException("Niepełna konfiguracja kubełka rate limit: " + name + " (wymagane limit i period)");
+            }
+            int burst = cfg.getBurst() != null ? cfg.getBurst() : cfg.getLimit() == null && base != null ? base.burst() : limit;
+            if (limit <= 0 || burst <= 0 || period.isZero() || period.isNegative()) {
+                throw new IllegalStateException("Niepoprawna konfiguracja kubełka rate limit: " + name);
+            }
+            specs.put(name, new RateLimitSpec(limit, period, burst));
+        });
+        return specs;
     }
 }
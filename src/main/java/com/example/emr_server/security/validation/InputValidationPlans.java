@@ -0,0 +1,150 @@
+package com.example.emr_server.security.validation;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.RecordComponent;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Plany walidacji argumentów kontrolerów liczone raz na klasę (ClassValue) zamiast refleksji przy każdym żądaniu.
+ * Plan to lista akcesorów (MethodHandle: accessor komponentu rekordu albo getter pola) do właściwości, które mogą
+ * zawierać tekst – String, kolekcje, mapy, tablice i zagnieżdżone DTO aplikacji. Typy spoza pakietu aplikacji
+ * (Pageable, Optional, HttpServletRequest, UUID, daty...) mają pusty plan i są pomijane bez refleksji.
+ */
+@Slf4j
+public final class InputValidationPlans {
+
+    private static final String APP_PACKAGE = "com.example.emr_server.";
+    // zagnieżdżenie głębsze niż limit jest odrzucane jako niebezpieczne – nie może ukryć treści przed skanem
+    private static final int MAX_DEPTH = 32;
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    private enum Kind { SKIP, STRING, COLLECTION, MAP, ARRAY, BEAN }
+
+    private record Property(String name, MethodHandle getter) {}
+
+    private record Plan(Kind kind, Property[] properties) {}
+
+    private static final Property[] NO_PROPERTIES = new Property[0];
+    private static final Plan SKIP = new Plan(Kind.SKIP, NO_PROPERTIES);
+
+    // rodzaj wartości też jest częścią planu: negatywne instanceof względem interfejsów (Collection, Map)
+    // są na JDK 21 zaskakująco drogie, a większość argumentów to Optional/Pageable/UUID
+    private static final ClassValue<Plan> PLANS = new ClassValue<>() {
+        @Override
+        protected Plan computeValue(Class<?> type) {
+            return buildPlan(type);
+        }
+    };
+
+    private InputValidationPlans() {}
+
+    /**
+     * Przechodzi po tekstach zawartych w obiekcie i zwraca ścieżkę pierwszego, który nie przechodzi walidacji
+     * ("" dla samego Stringa, np. "items[1].dosageInfo", "content[]" dla wartości/klucza mapy), albo null.
+     * Kolekcja, mapa lub DTO zagnieżdżone głębiej niż MAX_DEPTH jest zwracane jako niebezpieczne (ścieżka do
+     * miejsca przekroczenia limitu).
+     */
+    public static String findUnsafe(Object value, Predicate<String> unsafe) {
+        return walk(value, unsafe, 0);
+    }
+
+    private static String walk(Object value, Predicate<String> unsafe, int depth) {
+        if (value == null) return null;
+        Plan plan = PLANS.get(value.getClass());
+        if (plan.kind() == Kind.SKIP) return null;
+        if (plan.kind() == Kind.STRING) return unsafe.test((String) value) ? "" : null;
+        if (depth >= MAX_DEPTH) return "";
+        return switch (plan.kind()) {
+            case COLLECTION -> walkItems((Collection<?>) value, unsafe, depth);
+            case ARRAY -> walkItems(Arrays.asList((Object[]) value), unsafe, depth);
+            case MAP -> walkMap((Map<?, ?>) value, unsafe, depth);
+            default -> walkProperties(plan.properties(), value, unsafe, depth);
+        };
+    }
+
+    private static String walkItems(Collection<?> items, Predicate<String> unsafe, int depth) {
+        int i = 0;
+        for (Object item : items) {
+            String path = walk(item, unsafe, depth + 1);
+            if (path != null) return "[" + i + "]" + dotted(path);
+            i++;
+        }
+        return null;
+    }
+
+    private static String walkMap(Map<?, ?> map, Predicate<String> unsafe, int depth) {
+        // klucza z żądania nie wstawiamy do ścieżki – trafia ona do komunikatu błędu
+        for (Map.Entry<?, ?> e : map.entrySet()) {
+            String path = walk(e.getKey(), unsafe, depth + 1);
+            if (path == null) path = walk(e.getValue(), unsafe, depth + 1);
+            if (path != null) return "[]" + dotted(path);
+        }
+        return null;
+    }
+
+    private static String walkProperties(Property[] properties, Object bean, Predicate<String> unsafe, int depth) {
+        for (Property property : properties) {
+            Object nested;
+            try {
+                nested = (Object) property.getter().invokeExact(bean);
+            } catch (Throwable t) {
+                continue; // walidacja best-effort, jak dotąd
+            }
+            String path = walk(nested, unsafe, depth + 1);
+            if (path != null) return property.name() + dotted(path);
+        }
+        return null;
+    }
+
+    private static String dotted(String path) {
+        return path.isEmpty() || path.startsWith("[") ? path : "." + path;
+    }
+
+    private static Plan buildPlan(Class<?> type) {
+        if (type == String.class) return new Plan(Kind.STRING, NO_PROPERTIES);
+        if (Collection.class.isAssignableFrom(type)) return new Plan(Kind.COLLECTION, NO_PROPERTIES);
+        if (Map.class.isAssignableFrom(type)) return new Plan(Kind.MAP, NO_PROPERTIES);
+        if (type.isArray()) return type.getComponentType().isPrimitive() ? SKIP : new Plan(Kind.ARRAY, NO_PROPERTIES);
+        if (!type.getName().startsWith(APP_PACKAGE) || type.isEnum()) return SKIP;
+        List<Property> properties = new ArrayList<>();
+        try {
+            if (type.isRecord()) {
+                MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(type, MethodHandles.lookup());
+                for (RecordComponent component : type.getRecordComponents()) {
+                    if (!mayContainText(component.getType())) continue;
+                    properties.add(new Property(component.getName(), lookup.unreflect(component.getAccessor()).asType(GETTER_TYPE)));
+                }
+            } else {
+                for (Class<?> c = type; c != null && c.getName().startsWith(APP_PACKAGE); c = c.getSuperclass()) {
+                    MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(c, MethodHandles.lookup());
+                    for (Field field : c.getDeclaredFields()) {
+                        if (Modifier.isStatic(field.getModifiers()) || field.isSynthetic() || !mayContainText(field.getType())) continue;
+                        properties.add(new Property(field.getName(), lookup.unreflectGetter(field).asType(GETTER_TYPE)));
+                    }
+                }
+            }
+        } catch (IllegalAccessException | RuntimeException e) {
+            log.debug("Brak planu walidacji dla {}: {}", type.getName(), e.toString());
+            return SKIP;
+        }
+        return properties.isEmpty() ? SKIP : new Plan(Kind.BEAN, properties.toArray(NO_PROPERTIES));
+    }
+
+    private static boolean mayContainText(Class<?> type) {
+        if (type == String.class || type == Object.class) return true;
+        if (Collection.class.isAssignableFrom(type) || Map.class.isAssignableFrom(type)) return true;
+        if (type.isArray()) return !type.getComponentType().isPrimitive();
+        return !type.isPrimitive() && !type.isEnum() && type.getName().startsWith(APP_PACKAGE);
+    }
+}
@@ -0,0 +1,157 @@
+package com.example.emr_server.security.validation;
+
+import java.text.Normalizer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Wyszukiwanie wielu wzorców naraz (Aho–Corasick) w jednym przebiegu po tekście, bez rozróżniania wielkości liter.
+ * Automat jest budowany raz i spłaszczany do tablicy przejść [stan × 128] (wzorce są ASCII), więc krok to jeden odczyt
+ * z tablicy, bez alokacji. Każdy wzorzec należy do kategorii (bit maski) – wynik to maska znalezionych kategorii.
+ * Tekst zawierający znaki spoza ASCII jest dodatkowo sprawdzany po normalizacji NFKC (np. znaki pełnej szerokości).
+ */
+public final class MultiPatternMatcher {
+
+    private static final int ALPHABET = 128;
+    private static final int NON_ASCII = 1 << 31;
+    private static final int HAS_OUTPUT = 1 << 31;
+
+    private final int[] transitions;
+    private final int[] outputs;
+
+    private MultiPatternMatcher(int[] transitions, int[] outputs) {
+        this.transitions = transitions;
+        this.outputs = outputs;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Zwraca maskę kategorii z {@code wanted}, których wzorce występują w tekście (0 = brak).
+     * Przerywa na pierwszym trafieniu, więc przy kilku kategoriach wynik może zawierać tylko jedną z nich.
+     */
+    public int find(String input, int wanted) {
+        if (input == null || input.isEmpty()) return 0;
+        int result = scan(input, wanted);
+        int found = result & ~NON_ASCII;
+        if (found != 0 || (result & NON_ASCII) == 0 || Normalizer.isNormalized(input, Normalizer.Form.NFKC)) {
+            return found;
+        }
+        return scan(Normalizer.normalize(input, Normalizer.Form.NFKC), wanted) & ~NON_ASCII;
+    }
+
+    private int scan(String input, int wanted) {
+        int[] table = transitions;
+        int state = 0;
+        int seen = 0;
+        for (int i = 0, n = input.length(); i < n; i++) {
+            int c = input.charAt(i);
+            if (c >= ALPHABET) {
+                seen = NON_ASCII;
+                c = Character.toLowerCase(c);
+                if (c >= ALPHABET) {
+                    // znak spoza alfabetu wzorców przerywa każde częściowe dopasowanie
+                    state = 0;
+                    continue;
+                }
+            }
+            int next = table[state + c];
+            state = next & ~HAS_OUTPUT;
+            if (next < 0) {
+                int hit = outputs[state / ALPHABET] & wanted;
+                if (hit != 0) return hit;
+            }
+        }
+        return seen;
+    }
+
+    public static final class Builder {
+        private final List<int[]> gotoTable = new ArrayList<>();
+        private final List<Integer> outputMasks = new ArrayList<>();
+
+        private Builder() {
+            newState();
+        }
+
+        public Builder add(int category, String... patterns) {
+            if (category == 0 || (category & NON_ASCII) != 0) {
+                throw new IllegalArgumentException("Kategoria musi być niezerową maską bitów 0..30");
+            }
+            for (String pattern : patterns) {
+                if (pattern.isEmpty()) throw new IllegalArgumentException("Pusty wzorzec");
+                int state = 0;
+                for (char c : pattern.toLowerCase(Locale.ROOT).toCharArray()) {
+                    if (c >= ALPHABET) throw new IllegalArgumentException("Wzorzec spoza ASCII: " + pattern);
+                    int next = gotoTable.get(state)[c];
+                    if (next < 0) {
+                        next = newState();
+                        gotoTable.get(state)[c] = next;
+                    }
+                    state = next;
+                }
+                outputMasks.set(state, outputMasks.get(state) | category);
+            }
+            return this;
+        }
+
+        public MultiPatternMatcher build() {
+            int states = gotoTable.size();
+            int[] fail = new int[states];
+            int[] out = new int[states];
+            for (int s = 0; s < states; s++) out[s] = outputMasks.get(s);
+
+            // BFS: dla każdego stanu uzupełniamy brakujące przejścia przejściami stanu porażki (automat deterministyczny)
+            ArrayDeque<Integer> queue = new ArrayDeque<>();
+            int[] root = gotoTable.get(0);
+            for (int c = 0; c < ALPHABET; c++) {
+                if (root[c] < 0) {
+                    root[c] = 0;
+                } else {
+                    fail[root[c]] = 0;
+                    queue.add(root[c]);
+                }
+            }
+            while (!queue.isEmpty()) {
+                int s = queue.poll();
+                int[] row = gotoTable.get(s);
+                int[] failRow = gotoTable.get(fail[s]);
+                for (int c = 0; c < ALPHABET; c++) {
+                    int child = row[c];
+                    if (child < 0) {
+                        row[c] = failRow[c];
+                    } else {
+                        fail[child] = failRow[c];
+                        out[child] |= out[fail[child]];
+                        queue.add(child);
+                    }
+                }
+            }
+
+            // przejście = przesunięcie wiersza stanu docelowego; najstarszy bit oznacza stan z wyjściem,
+            // więc w typowym przebiegu (brak trafień) pętla czyta tylko jedną tablicę
+            int[] transitions = new int[states * ALPHABET];
+            for (int s = 0; s < states; s++) {
+                int[] row = gotoTable.get(s);
+                for (int c = 0; c < ALPHABET; c++) {
+                    // wielkie litery ASCII prowadzą tam, gdzie małe – porównanie bez rozróżniania wielkości liter za darmo
+                    int target = c >= 'A' && c <= 'Z' ? row[c + ('a' - 'A')] : row[c];
+                    transitions[s * ALPHABET + c] = target * ALPHABET | (out[target] != 0 ? HAS_OUTPUT : 0);
+                }
+            }
+            return new MultiPatternMatcher(transitions, out);
+        }
+
+        private int newState() {
+            int[] row = new int[ALPHABET];
+            Arrays.fill(row, -1);
+            gotoTable.add(row);
+            outputMasks.add(0);
+            return gotoTable.size() - 1;
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.example.emr_server.service;
 
 import com.example.emr_server.entity.Allergy;
 import com.example.emr_server.controller.dto.AllergyDto;
+import com.example.emr_server.controller.dto.CursorPage;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 
@@ -33,4 +34,14 @@ public interface AllergyService {
             Optional<UUID> notedById,
             Pageable pageable
     );
+
+    // Tryb kursorowy (keyset): te same filtry, sortowanie id malejąco, bez COUNT
+    CursorPage<AllergyDto> scrollVisible(
+            Optional<UUID> patientId,
+            Optional<String> allergen,
+            Optional<String> severity,
+            Optional<UUID> notedById,
+            String after,
+            int size
+    );
 }
\ No newline at end of file
@@ -7,9 +7,13 @@ import com.example.emr_server.security.SecurityUtil;
 import com.example.emr_server.repository.UserRepository;
 import com.example.emr_server.repository.AllergyRepository;
 import com.example.emr_server.controller.dto.AllergyDto;
+import com.example.emr_server.controller.dto.CursorPage;
 import com.example.emr_server.repository.spec.AllergySpecifications;
+import com.example.emr_server.util.CursorPaging;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
@@ -20,6 +24,9 @@ import java.util.stream.Collectors;
 @Service
 public class AllergyServiceImpl implements AllergyService {
 
+    // Tryb kursorowy: stabilny, unikalny klucz sortowania (kolumny bez NULL)
+    private static final Sort KEYSET_SORT = Sort.by(Sort.Direction.DESC, "id");
+
     private final AllergyRepository allergyRepository;
     private final AuthorizationService authorizationService;
     private final UserRepository userRepository;
@@ -162,14 +169,31 @@ public class AllergyServiceImpl implements AllergyService {
             java.util.Optional<String> severity,
             java.util.Optional<java.util.UUID> notedById,
             Pageable pageable
+    ) {
+        return allergyRepository.findAll(visibleSpec(patientId, allergen, severity, notedById), pageable).map(this::toDto);
+    }
+
+    @Override
+    public CursorPage<AllergyDto> scrollVisible(
+            java.util.Optional<java.util.UUID> patientId,
+            java.util.Optional<String> allergen,
+            java.util.Optional<String> severity,
+            java.util.Optional<java.util.UUID> notedById,
+            String after,
+            int size
+    ) {
+        return CursorPaging.scroll(allergyRepository, visibleSpec(patientId, allergen, severity, notedById), KEYSET_SORT, after, size, this::toDto);
+    }
+
+    private Specification<Allergy> visibleSpec(
+            java.util.Optional<java.util.UUID> patientId,
+            java.util.Optional<String> allergen,
+            java.util.Optional<String> severity,
+            java.util.Optional<java.util.UUID> notedById
     ) {
         User u = current();
-        var spec = AllergySpecifications.withFilters(patientId, allergen, severity, notedById);
-        var all = allergyRepository.findAll(spec);
-        var visible = all.stream()
-                .filter(a -> authorizationService.canReadPatient(u, a.getPatient()))
-                .map(this::toDto)
-                .toList();
-        return com.example.emr_server.util.PageUtils.paginate(visible, pageable);
+        var spec = AllergySpecifications.withFilters(patientId, allergen, severity, notedById)
+                .and(authorizationService.readableViaPatient(u));
+        return spec;
     }
 }
\ No newline at end of file
@@ -1,58 +1,58 @@
 package com.example.emr_server.service;
 
-import com.example.emr_server.entity.AuditLog;
 import com.example.emr_server.entity.Patient;
 import com.example.emr_server.entity.User;
-import com.example.emr_server.repository.AuditLogRepository;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Propagation;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.UUID;
 
+/**
+ * Zdarzenia audytu trafiają do AuditWriter (kolejka + batch INSERT) zamiast osobnej transakcji
+ * REQUIRES_NEW na każde zdarzenie. W aktywnej transakcji zdarzenie jest przekazywane po jej
+ * zakończeniu (również przy rollbacku – próba operacji też jest audytowana).
+ */
 @Service
 public class AuditService {
 
-    private final AuditLogRepository auditLogRepository;
+    private final AuditWriter auditWriter;
 
-    public AuditService(AuditLogRepository auditLogRepository) {
-        this.auditLogRepository = auditLogRepository;
+    public AuditService(AuditWriter auditWriter) {
+        this.auditWriter = auditWriter;
     }
 
-    @Transactional(propagation = Propagation.REQUIRES_NEW)
     public void logPatient(User user, Patient patient, String action, String description) {
-        try {
-            AuditLog log = new AuditLog();
-            log.setUser(user);
-            log.setPatient(patient);
-            log.setAction(action);
-            log.setDescription(description);
-            log.setTimestamp(Instant.now());
-            auditLogRepository.save(log);
-        } catch (Exception ignored) {
-            // celowo nie przerywamy głównej transakcji
-        }
+        submit(new AuditWriter.AuditEvent(idOf(user), patient == null ? null : patient.getId(), action, description, Instant.now()));
     }
 
     // Nowe: ogólne logowanie bez powiązania z pacjentem
-    @Transactional(propagation = Propagation.REQUIRES_NEW)
     public void log(User user, String action, String description) {
-        try {
-            AuditLog log = new AuditLog();
-            log.setUser(user);
-            log.setAction(action);
-            log.setDescription(description);
-            log.setTimestamp(Instant.now());
-            auditLogRepository.save(log);
-        } catch (Exception ignored) {
-            // nie przerywamy transakcji biznesowej
+        submit(new AuditWriter.AuditEvent(idOf(user), null, action, description, Instant.now()));
+    }
+
+    private void submit(AuditWriter.AuditEvent event) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    auditWriter.submit(event);
+                }
+            });
+        } else {
+            auditWriter.submit(event);
         }
     }
 
+    private UUID idOf(User user) {
+        return user == null ? null : user.getId();
+    }
+
     public String diffPatient(Patient before, Patient after) {
         if (before == null || after == null) return "";
         List<String> changes = new ArrayList<>();
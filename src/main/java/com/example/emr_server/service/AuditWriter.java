@@ -0,0 +1,216 @@
+package com.example.emr_server.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Asynchroniczny zapis audytu: ograniczona kolejka w pamięci + wątek zapisujący batch INSERT-ami
+ * do emr.audit_log. Gdy kolejka jest pełna lub baza niedostępna, zdarzenia trafiają do lokalnego
+ * pliku (append-only, JSON per linia), który jest odtwarzany przy kolejnym starcie.
+ * Metryki: audit.queue.depth, audit.batch.size, audit.flush.latency, audit.spilled.
+ */
+@Slf4j
+@Component
+public class AuditWriter {
+
+    public record AuditEvent(UUID userId, UUID patientId, String action, String description, Instant timestamp) {}
+
+    static final String INSERT_SQL =
+            "INSERT INTO emr.audit_log(user_id, patient_id, action, description, \"timestamp\") VALUES (?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final BlockingQueue<AuditEvent> queue;
+    private final int batchSize;
+    private final long flushIntervalMs;
+    private final Path spillFile;
+
+    private final DistributionSummary batchSizes;
+    private final Timer flushLatency;
+    private final Counter spilled;
+    private final Counter submitted;
+    private final Counter batchFailures;
+
+    private volatile boolean running;
+    private Thread worker;
+
+    public AuditWriter(JdbcTemplate jdbcTemplate,
+                       ObjectMapper objectMapper,
+                       MeterRegistry meterRegistry,
+                       @Value("${security.audit.queue-capacity:10000}") int queueCapacity,
+                       @Value("${security.audit.batch-size:200}") int batchSize,
+                       @Value("${security.audit.flush-interval-ms:500}") long flushIntervalMs,
+                       @Value("${security.audit.spill-file:data/audit-spill.jsonl}") Path spillFile) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.batchSize = batchSize;
+        this.flushIntervalMs = flushIntervalMs;
+        this.spillFile = spillFile;
+        Gauge.builder("audit.queue.depth", queue, BlockingQueue::size).register(meterRegistry);
+        this.batchSizes = DistributionSummary.builder("audit.batch.size").register(meterRegistry);
+        this.flushLatency = Timer.builder("audit.flush.latency").register(meterRegistry);
+        this.spilled = meterRegistry.counter("audit.spilled");
+        this.submitted = meterRegistry.counter("audit.events.submitted");
+        this.batchFailures = meterRegistry.counter("audit.flush.failures");
+    }
+
+    @PostConstruct
+    void start() {
+        running = true;
+        worker = new Thread(this::run, "audit-writer");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        running = false;
+        if (worker != null) {
+            worker.interrupt();
+            worker.join(TimeUnit.SECONDS.toMillis(10));
+        }
+        List<AuditEvent> rest = new ArrayList<>();
+        queue.drainTo(rest);
+        if (!rest.isEmpty()) flush(rest);
+    }
+
+    /** Nie blokuje wywołującego – przy pełnej kolejce zdarzenie trafia do pliku. */
+    public void submit(AuditEvent event) {
+        submitted.increment();
+        if (!queue.offer(event)) {
+            spill(List.of(event));
+        }
+    }
+
+    private void run() {
+        replaySpillFile();
+        List<AuditEvent> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                AuditEvent first = queue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                log.error("Błąd wątku zapisu audytu: {}", e.getMessage());
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    void flush(List<AuditEvent> batch) {
+        long start = System.nanoTime();
+        try {
+            jdbcTemplate.batchUpdate(INSERT_SQL, batch, batch.size(), (ps, e) -> {
+                ps.setObject(1, e.userId());
+                ps.setObject(2, e.patientId());
+                ps.setString(3, e.action());
+                ps.setString(4, e.description());
+                ps.setTimestamp(5, Timestamp.from(e.timestamp()));
+            });
+        } catch (DataAccessException ex) {
+            batchFailures.increment();
+            log.warn("Batch audytu nieudany ({} zdarzeń): {} – zapis pojedynczy", batch.size(), ex.getMessage());
+            insertOneByOne(batch);
+        }
+        batchSizes.record(batch.size());
+        flushLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    private void insertOneByOne(List<AuditEvent> batch) {
+        for (int i = 0; i < batch.size(); i++) {
+            AuditEvent e = batch.get(i);
+            try {
+                insert(e);
+            } catch (DataIntegrityViolationException ex) {
+                // np. pacjent z wycofanej transakcji – zachowujemy zdarzenie bez powiązania
+                try {
+                    insert(new AuditEvent(e.userId(), null, e.action(), e.description(), e.timestamp()));
+                } catch (DataAccessException ex2) {
+                    log.error("Nie zapisano zdarzenia audytu {}: {}", e, ex2.getMessage());
+                }
+            } catch (DataAccessException ex) {
+                // baza niedostępna – reszta do pliku
+                spill(batch.subList(i, batch.size()));
+                return;
+            }
+        }
+    }
+
+    private void insert(AuditEvent e) {
+        jdbcTemplate.update(INSERT_SQL, e.userId(), e.patientId(), e.action(), e.description(), Timestamp.from(e.timestamp()));
+    }
+
+    synchronized void spill(List<AuditEvent> events) {
+        try {
+            if (spillFile.getParent() != null) Files.createDirectories(spillFile.getParent());
+            try (BufferedWriter w = Files.newBufferedWriter(spillFile, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                for (AuditEvent e : events) {
+                    w.write(objectMapper.writeValueAsString(e));
+                    w.newLine();
+                }
+            }
+            spilled.increment(events.size());
+        } catch (IOException ex) {
+            log.error("Nie zapisano {} zdarzeń audytu do pliku {}: {} {}", events.size(), spillFile, ex.getMessage(), events);
+        }
+    }
+
+    void replaySpillFile() {
+        Path replay = spillFile.resolveSibling(spillFile.getFileName() + ".replay");
+        try {
+            synchronized (this) {
+                if (!Files.exists(replay)) {
+                    if (!Files.exists(spillFile)) return;
+                    Files.move(spillFile, replay, StandardCopyOption.ATOMIC_MOVE);
+                }
+            }
+            List<AuditEvent> events = new ArrayList<>();
+            for (String line : Files.readAllLines(replay, StandardCharsets.UTF_8)) {
+                if (!line.isBlank()) events.add(objectMapper.readValue(line, AuditEvent.class));
+            }
+            log.info("Odtwarzanie {} zdarzeń audytu z pliku {}", events.size(), replay);
+            for (int i = 0; i < events.size(); i += batchSize) {
+                flush(events.subList(i, Math.min(events.size(), i + batchSize)));
+            }
+            Files.delete(replay);
+        } catch (IOException ex) {
+            log.error("Błąd odtwarzania pliku audytu {}: {}", replay, ex.getMessage());
+        }
+    }
+}
@@ -5,6 +5,7 @@ import com.example.emr_server.entity.PatientConsent;
 import com.example.emr_server.entity.User;
 import com.example.emr_server.repository.PatientConsentRepository;
 import com.example.emr_server.repository.PatientRepository;
+import com.example.emr_server.security.ConsentCache;
 import com.example.emr_server.security.CustomUserDetails;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -21,10 +22,13 @@ public class BtgServiceImpl implements BtgService {
 
     private final PatientRepository patientRepository;
     private final PatientConsentRepository patientConsentRepository;
+    private final ConsentCache consentCache;
 
-    public BtgServiceImpl(PatientRepository patientRepository, PatientConsentRepository patientConsentRepository) {
+    public BtgServiceImpl(PatientRepository patientRepository, PatientConsentRepository patientConsentRepository,
+                          ConsentCache consentCache) {
         this.patientRepository = patientRepository;
         this.patientConsentRepository = patientConsentRepository;
+        this.consentCache = consentCache;
     }
 
     @Override
@@ -46,7 +50,6 @@ public class BtgServiceImpl implements BtgService {
         }
 
         PatientConsent consent = new PatientConsent();
-        consent.setId(UUID.randomUUID());
         consent.setPatient(patient);
         consent.setGrantedTo(currentUser);
         consent.setScope("btg");
@@ -54,7 +57,9 @@ public class BtgServiceImpl implements BtgService {
         consent.setReason(reason);
         consent.setExpiresAt(Instant.now().plus(minutes, ChronoUnit.MINUTES));
 
-        return patientConsentRepository.save(consent);
+        PatientConsent saved = patientConsentRepository.save(consent);
+        consentCache.invalidate(currentUser.getId());
+        return saved;
     }
 
     @Override
@@ -83,6 +88,7 @@ public class BtgServiceImpl implements BtgService {
             PatientConsent pc = existing.get();
             pc.setRevokedAt(Instant.now());
             patientConsentRepository.save(pc);
+            consentCache.invalidate(currentUser.getId());
             return true;
         }
         return false;
@@ -2,6 +2,7 @@ package com.example.emr_server.service;
 
 import com.example.emr_server.entity.ChronicDisease;
 import com.example.emr_server.controller.dto.ChronicDiseaseDto;
+import com.example.emr_server.controller.dto.CursorPage;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 
@@ -137,4 +138,27 @@ public interface ChronicDiseaseService {
             Optional<String> notesFragment,
             Pageable pageable
     );
+
+    /**
+     * Tryb kursorowy (keyset) wyszukiwania: te same filtry, sortowanie id malejąco,
+     * bez zapytania COUNT.
+     *
+     * @param patientId     opcjonalny UUID pacjenta
+     * @param diseaseName   opcjonalna nazwa choroby
+     * @param start         opcjonalna data początkowa diagnozy
+     * @param end           opcjonalna data końcowa diagnozy
+     * @param notesFragment opcjonalny fragment notatek do wyszukania
+     * @param after kursor z poprzedniej strony (pusty = pierwsza strona)
+     * @param size  rozmiar strony (maks. {@link com.example.emr_server.util.CursorPaging#MAX_SIZE})
+     * @return strona z kursorem kolejnej strony
+     */
+    CursorPage<ChronicDiseaseDto> scrollVisible(
+            Optional<UUID> patientId,
+            Optional<String> diseaseName,
+            Optional<LocalDate> start,
+            Optional<LocalDate> end,
+            Optional<String> notesFragment,
+            String after,
+            int size
+    );
 }
\ No newline at end of file
@@ -7,9 +7,13 @@ import com.example.emr_server.security.SecurityUtil;
 import com.example.emr_server.repository.UserRepository;
 import com.example.emr_server.repository.ChronicDiseaseRepository;
 import com.example.emr_server.controller.dto.ChronicDiseaseDto;
+import com.example.emr_server.controller.dto.CursorPage;
 import com.example.emr_server.repository.spec.ChronicDiseaseSpecifications;
+import com.example.emr_server.util.CursorPaging;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDate;
@@ -21,6 +25,9 @@ import java.util.stream.Collectors;
 @Service
 public class ChronicDiseaseServiceImpl implements ChronicDiseaseService {
 
+    // Tryb kursorowy: stabilny, unikalny klucz sortowania (kolumny bez NULL)
+    private static final Sort KEYSET_SORT = Sort.by(Sort.Direction.DESC, "id");
+
     private final ChronicDiseaseRepository chronicDiseaseRepository;
     private final AuthorizationService authorizationService;
     private final UserRepository userRepository;
@@ -171,14 +178,33 @@ public class ChronicDiseaseServiceImpl implements ChronicDiseaseService {
             java.util.Optional<java.time.LocalDate> end,
             java.util.Optional<String> notesFragment,
             Pageable pageable
+    ) {
+        return chronicDiseaseRepository.findAll(visibleSpec(patientId, diseaseName, start, end, notesFragment), pageable).map(this::toDto);
+    }
+
+    @Override
+    public CursorPage<ChronicDiseaseDto> scrollVisible(
+            java.util.Optional<java.util.UUID> patientId,
+            java.util.Optional<String> diseaseName,
+            java.util.Optional<java.time.LocalDate> start,
+            java.util.Optional<java.time.LocalDate> end,
+            java.util.Optional<String> notesFragment,
+            String after,
+            int size
+    ) {
+        return CursorPaging.scroll(chronicDiseaseRepository, visibleSpec(patientId, diseaseName, start, end, notesFragment), KEYSET_SORT, after, size, this::toDto);
+    }
+
+    private Specification<ChronicDisease> visibleSpec(
+            java.util.Optional<java.util.UUID> patientId,
+            java.util.Optional<String> diseaseName,
+            java.util.Optional<java.time.LocalDate> start,
+            java.util.Optional<java.time.LocalDate> end,
+            java.util.Optional<String> notesFragment
     ) {
         User u = current();
-        var spec = ChronicDiseaseSpecifications.withFilters(patientId, diseaseName, start, end, notesFragment);
-        var all = chronicDiseaseRepository.findAll(spec);
-        var visible = all.stream()
-                .filter(cd -> authorizationService.canReadPatient(u, cd.getPatient()))
-                .map(this::toDto)
-                .toList();
-        return com.example.emr_server.util.PageUtils.paginate(visible, pageable);
+        var spec = ChronicDiseaseSpecifications.withFilters(patientId, diseaseName, start, end, notesFragment)
+                .and(authorizationService.readableViaPatient(u));
+        return spec;
     }
 }
\ No newline at end of file
@@ -2,9 +2,12 @@ package com.example.emr_server.service;
 
 import com.example.emr_server.entity.LabResult;
 import com.example.emr_server.controller.dto.LabResultDto;
+import com.example.emr_server.controller.dto.CursorPage;
+import com.example.emr_server.service.export.ExportFormat;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 
+import java.io.OutputStream;
 import java.time.LocalDate;
 import java.util.List;
 import java.util.Optional;
@@ -165,4 +168,51 @@ public interface LabResultService {
             Optional<String> resultFragment,
             Pageable pageable
     );
+
+    /**
+     * Tryb kursorowy (keyset) wyszukiwania: te same filtry, sortowanie id malejąco,
+     * bez zapytania COUNT.
+     *
+     * @param patientId    opcjonalny UUID pacjenta
+     * @param orderedById  opcjonalny UUID użytkownika zlecającego badanie
+     * @param status        opcjonalny status badania
+     * @param start        opcjonalna początkowa data wyników
+     * @param end          opcjonalna końcowa data wyników
+     * @param testName     opcjonalna nazwa testu
+     * @param resultFragment opcjonalny fragment wyniku
+     * @param after kursor z poprzedniej strony (pusty = pierwsza strona)
+     * @param size  rozmiar strony (maks. {@link com.example.emr_server.util.CursorPaging#MAX_SIZE})
+     * @return strona z kursorem kolejnej strony
+     */
+    CursorPage<LabResultDto> scrollVisible(
+            Optional<UUID> patientId,
+            Optional<UUID> orderedById,
+            Optional<String> status,
+            Optional<LocalDate> start,
+            Optional<LocalDate> end,
+            Optional<String> testName,
+            Optional<String> resultFragment,
+            String after,
+            int size
+    );
+
+    /**
+     * Eksport strumieniowy (NDJSON/CSV) widocznych rekordów z tymi samymi filtrami co lista,
+     * zapisywany bezpośrednio do strumienia odpowiedzi; zużycie pamięci nie zależy od liczby wierszy.
+     *
+     * @param format format eksportu
+     * @param out    strumień wyjściowy (nie jest zamykany)
+     * @return liczba wyeksportowanych wierszy
+     */
+    long exportVisible(
+            Optional<UUID> patientId,
+            Optional<UUID> orderedById,
+            Optional<String> status,
+            Optional<LocalDate> start,
+            Optional<LocalDate> end,
+            Optional<String> testName,
+            Optional<String> resultFragment,
+            ExportFormat format,
+            OutputStream out
+    );
 }
\ No newline at end of file
@@ -7,11 +7,18 @@ import com.example.emr_server.security.SecurityUtil;
 import com.example.emr_server.repository.UserRepository;
 import com.example.emr_server.repository.LabResultRepository;
 import com.example.emr_server.controller.dto.LabResultDto;
+import com.example.emr_server.controller.dto.CursorPage;
 import com.example.emr_server.repository.spec.LabResultSpecifications;
+import com.example.emr_server.util.CursorPaging;
+import com.example.emr_server.service.export.ExportFormat;
+import com.example.emr_server.service.export.StreamingExporter;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 
+import java.io.OutputStream;
 import java.time.LocalDate;
 import java.util.List;
 import java.util.Optional;
@@ -21,19 +28,25 @@ import java.util.stream.Collectors;
 @Service
 public class LabResultServiceImpl implements LabResultService {
 
+    // Tryb kursorowy: stabilny, unikalny klucz sortowania (kolumny bez NULL)
+    private static final Sort KEYSET_SORT = Sort.by(Sort.Direction.DESC, "id");
+
     private final LabResultRepository labResultRepository;
     private final AuthorizationService authorizationService;
     private final UserRepository userRepository;
     private final AuditService auditService;
+    private final StreamingExporter streamingExporter;
 
     public LabResultServiceImpl(LabResultRepository labResultRepository,
                                 AuthorizationService authorizationService,
                                 UserRepository userRepository,
-                                AuditService auditService) {
+                                AuditService auditService,
+                                StreamingExporter streamingExporter) {
         this.labResultRepository = labResultRepository;
         this.authorizationService = authorizationService;
         this.userRepository = userRepository;
         this.auditService = auditService;
+        this.streamingExporter = streamingExporter;
     }
 
     private User current() { return SecurityUtil.getCurrentUser(userRepository).orElse(null); }
@@ -201,14 +214,54 @@ public class LabResultServiceImpl implements LabResultService {
             java.util.Optional<String> testName,
             java.util.Optional<String> resultFragment,
             Pageable pageable
+    ) {
+        return labResultRepository.findAll(visibleSpec(patientId, orderedById, status, start, end, testName, resultFragment), pageable).map(this::toDto);
+    }
+
+    @Override
+    public CursorPage<LabResultDto> scrollVisible(
+            java.util.Optional<java.util.UUID> patientId,
+            java.util.Optional<java.util.UUID> orderedById,
+            java.util.Optional<String> status,
+            java.util.Optional<java.time.LocalDate> start,
+            java.util.Optional<java.time.LocalDate> end,
+            java.util.Optional<String> testName,
+            java.util.Optional<String> resultFragment,
+            String after,
+            int size
+    ) {
+        return CursorPaging.scroll(labResultRepository, visibleSpec(patientId, orderedById, status, start, end, testName, resultFragment), KEYSET_SORT, after, size, this::toDto);
+    }
+
+    @Override
+    public long exportVisible(
+            java.util.Optional<java.util.UUID> patientId,
+            java.util.Optional<java.util.UUID> orderedById,
+            java.util.Optional<String> status,
+            java.util.Optional<java.time.LocalDate> start,
+            java.util.Optional<java.time.LocalDate> end,
+            java.util.Optional<String> testName,
+            java.util.Optional<String> resultFragment,
+            ExportFormat format,
+            OutputStream out
+    ) {
+        long rows = streamingExporter.export(LabResult.class, visibleSpec(patientId, orderedById, status, start, end, testName, resultFragment), KEYSET_SORT, LabResultDto.class, this::toDto, format, out);
+        auditService.log(current(), "EXPORT_LAB_RESULTS", "format=" + format.name().toLowerCase() + " rows=" + rows);
+        return rows;
+    }
+
+    private Specification<LabResult> visibleSpec(
+            java.util.Optional<java.util.UUID> patientId,
+            java.util.Optional<java.util.UUID> orderedById,
+            java.util.Optional<String> status,
+            java.util.Optional<java.time.LocalDate> start,
+            java.util.Optional<java.time.LocalDate> end,
+            java.util.Optional<String> testName,
+            java.util.Optional<String> resultFragment
     ) {
         User u = current();
-        var spec = LabResultSpecifications.withFilters(patientId, orderedById, status, start, end, testName, resultFragment);
-        var all = labResultRepository.findAll(spec);
-        var visible = all.stream()
-                .filter(r -> authorizationService.canReadPatient(u, r.getPatient()))
-                .map(this::toDto)
-                .toList();
-        return com.example.emr_server.util.PageUtils.paginate(visible, pageable);
+        var spec = LabResultSpecifications.withFilters(patientId, orderedById, status, start, end, testName, resultFragment)
+                .and(authorizationService.readableViaPatient(u));
+        return spec;
     }
 }
\ No newline at end of file
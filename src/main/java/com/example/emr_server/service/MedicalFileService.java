@@ -2,6 +2,7 @@ package com.example.emr_server.service;
 
 import com.example.emr_server.entity.MedicalFile;
 import com.example.emr_server.controller.dto.MedicalFileDto;
+import com.example.emr_server.controller.dto.CursorPage;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 
@@ -164,4 +165,29 @@ public interface MedicalFileService {
             Optional<String> fileNameFragment,
             Pageable pageable
     );
+
+    /**
+     * Tryb kursorowy (keyset) wyszukiwania: te same filtry, sortowanie (uploaded_at, id) malejąco,
+     * bez zapytania COUNT.
+     *
+     * @param patientId         opcjonalny UUID pacjenta
+     * @param uploadedById      opcjonalny UUID użytkownika, który przesłał plik
+     * @param mimeType          opcjonalny typ MIME pliku
+     * @param start              opcjonalny znacznik początkowego czasu przesłania
+     * @param end                opcjonalny znacznik końcowego czasu przesłania
+     * @param fileNameFragment   opcjonalny fragment nazwy pliku
+     * @param after kursor z poprzedniej strony (pusty = pierwsza strona)
+     * @param size  rozmiar strony (maks. {@link com.example.emr_server.util.CursorPaging#MAX_SIZE})
+     * @return strona z kursorem kolejnej strony
+     */
+    CursorPage<MedicalFileDto> scrollVisible(
+            Optional<UUID> patientId,
+            Optional<UUID> uploadedById,
+            Optional<String> mimeType,
+            Optional<Instant> start,
+            Optional<Instant> end,
+            Optional<String> fileNameFragment,
+            String after,
+            int size
+    );
 }
\ No newline at end of file
@@ -6,10 +6,15 @@ import com.example.emr_server.security.AuthorizationService;
 import com.example.emr_server.security.SecurityUtil;
 import com.example.emr_server.repository.MedicalFileRepository;
 import com.example.emr_server.repository.UserRepository;
+import com.example.emr_server.repository.projection.MedicalFileListRow;
 import com.example.emr_server.controller.dto.MedicalFileDto;
+import com.example.emr_server.controller.dto.CursorPage;
 import com.example.emr_server.repository.spec.MedicalFileSpecifications;
+import com.example.emr_server.util.CursorPaging;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 
 import java.time.Instant;
@@ -21,6 +26,9 @@ import java.util.stream.Collectors;
 @Service
 public class MedicalFileServiceImpl implements MedicalFileService {
 
+    // Tryb kursorowy: stabilny, unikalny klucz sortowania (kolumny bez NULL)
+    private static final Sort KEYSET_SORT = Sort.by(Sort.Direction.DESC, "uploadedAt", "id");
+
     private final MedicalFileRepository medicalFileRepository;
     private final AuthorizationService authorizationService;
     private final UserRepository userRepository;
@@ -122,7 +130,11 @@ public class MedicalFileServiceImpl implements MedicalFileService {
     // Metody DTO + autoryzacja
     @Override
     public List<MedicalFileDto> getVisibleByPatient(UUID patientId) {
-        return getMedicalFilesByPatientId(patientId).stream().map(this::toDto).toList();
+        User u = current();
+        return medicalFileRepository.findListRowsByPatientId(patientId).stream()
+                .filter(r -> authorizationService.canReadPatient(u, r.patientId(), r.patientCreatedById()))
+                .map(MedicalFileListRow::toDto)
+                .toList();
     }
 
     @Override
@@ -194,14 +206,35 @@ public class MedicalFileServiceImpl implements MedicalFileService {
             java.util.Optional<java.time.Instant> end,
             java.util.Optional<String> fileNameFragment,
             Pageable pageable
+    ) {
+        return medicalFileRepository.findAll(visibleSpec(patientId, uploadedById, mimeType, start, end, fileNameFragment), pageable).map(this::toDto);
+    }
+
+    @Override
+    public CursorPage<MedicalFileDto> scrollVisible(
+            java.util.Optional<java.util.UUID> patientId,
+            java.util.Optional<java.util.UUID> uploadedById,
+            java.util.Optional<String> mimeType,
+            java.util.Optional<java.time.Instant> start,
+            java.util.Optional<java.time.Instant> end,
+            java.util.Optional<String> fileNameFragment,
+            String after,
+            int size
+    ) {
+        return CursorPaging.scroll(medicalFileRepository, visibleSpec(patientId, uploadedById, mimeType, start, end, fileNameFragment), KEYSET_SORT, after, size, this::toDto);
+    }
+
+    private Specification<MedicalFile> visibleSpec(
+            java.util.Optional<java.util.UUID> patientId,
+            java.util.Optional<java.util.UUID> uploadedById,
+            java.util.Optional<String> mimeType,
+            java.util.Optional<java.time.Instant> start,
+            java.util.Optional<java.time.Instant> end,
+            java.util.Optional<String> fileNameFragment
     ) {
         User u = current();
-        var spec = MedicalFileSpecifications.withFilters(patientId, uploadedById, mimeType, start, end, fileNameFragment);
-        var all = medicalFileRepository.findAll(spec);
-        var visible = all.stream()
-                .filter(f -> authorizationService.canReadPatient(u, f.getPatient()))
-                .map(this::toDto)
-                .toList();
-        return com.example.emr_server.util.PageUtils.paginate(visible, pageable);
+        var spec = MedicalFileSpecifications.withFilters(patientId, uploadedById, mimeType, start, end, fileNameFragment)
+                .and(authorizationService.readableViaPatient(u));
+        return spec;
     }
 }
\ No newline at end of file
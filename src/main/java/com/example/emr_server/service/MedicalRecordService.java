@@ -2,6 +2,7 @@ package com.example.emr_server.service;
 
 import com.example.emr_server.entity.MedicalRecord;
 import com.example.emr_server.controller.dto.MedicalRecordDto;
+import com.example.emr_server.controller.dto.CursorPage;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 
@@ -154,4 +155,27 @@ public interface MedicalRecordService {
             Optional<Instant> end,
             Pageable pageable
     );
+
+    /**
+     * Tryb kursorowy (keyset) wyszukiwania: te same filtry, sortowanie (created_at, id) malejąco,
+     * bez zapytania COUNT.
+     *
+     * @param patientId  opcjonalnie UUID pacjenta
+     * @param createdById opcjonalnie UUID użytkownika, który utworzył rekord
+     * @param type        opcjonalnie typ rekordu (np. "Diagnosis", "Treatment Plan")
+     * @param start       opcjonalnie początek okresu tworzenia
+     * @param end         opcjonalnie koniec okresu tworzenia
+     * @param after kursor z poprzedniej strony (pusty = pierwsza strona)
+     * @param size  rozmiar strony (maks. {@link com.example.emr_server.util.CursorPaging#MAX_SIZE})
+     * @return strona z kursorem kolejnej strony
+     */
+    CursorPage<MedicalRecordDto> scrollVisible(
+            Optional<UUID> patientId,
+            Optional<UUID> createdById,
+            Optional<String> type,
+            Optional<Instant> start,
+            Optional<Instant> end,
+            String after,
+            int size
+    );
 }
\ No newline at end of file
@@ -7,9 +7,13 @@ import com.example.emr_server.security.SecurityUtil;
 import com.example.emr_server.repository.UserRepository;
 import com.example.emr_server.repository.MedicalRecordRepository;
 import com.example.emr_server.controller.dto.MedicalRecordDto;
+import com.example.emr_server.controller.dto.CursorPage;
 import com.example.emr_server.repository.spec.MedicalRecordSpecifications;
+import com.example.emr_server.util.CursorPaging;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 
 import java.time.Instant;
@@ -21,6 +25,9 @@ import java.util.stream.Collectors;
 @Service
 public class MedicalRecordServiceImpl implements MedicalRecordService {
 
+    // Tryb kursorowy: stabilny, unikalny klucz sortowania (kolumny bez NULL)
+    private static final Sort KEYSET_SORT = Sort.by(Sort.Direction.DESC, "createdAt", "id");
+
     private final MedicalRecordRepository medicalRecordRepository;
     private final AuthorizationService authorizationService;
     private final UserRepository userRepository;
@@ -188,14 +195,33 @@ public class MedicalRecordServiceImpl implements MedicalRecordService {
             java.util.Optional<java.time.Instant> start,
             java.util.Optional<java.time.Instant> end,
             Pageable pageable
+    ) {
+        return medicalRecordRepository.findAll(visibleSpec(patientId, createdById, type, start, end), pageable).map(this::toDto);
+    }
+
+    @Override
+    public CursorPage<MedicalRecordDto> scrollVisible(
+            java.util.Optional<java.util.UUID> patientId,
+            java.util.Optional<java.util.UUID> createdById,
+            java.util.Optional<String> type,
+            java.util.Optional<java.time.Instant> start,
+            java.util.Optional<java.time.Instant> end,
+            String after,
+            int size
+    ) {
+        return CursorPaging.scroll(medicalRecordRepository, visibleSpec(patientId, createdById, type, start, end), KEYSET_SORT, after, size, this::toDto);
+    }
+
+    private Specification<MedicalRecord> visibleSpec(
+            java.util.Optional<java.util.UUID> patientId,
+            java.util.Optional<java.util.UUID> createdById,
+            java.util.Optional<String> type,
+            java.util.Optional<java.time.Instant> start,
+            java.util.Optional<java.time.Instant> end
     ) {
         User u = current();
-        var spec = MedicalRecordSpecifications.withFilters(patientId, createdById, type, start, end);
-        var all = medicalRecordRepository.findAll(spec);
-        var visible = all.stream()
-                .filter(r -> authorizationService.canReadPatient(u, r.getPatient()))
-                .map(this::toDto)
-                .toList();
-        return com.example.emr_server.util.PageUtils.paginate(visible, pageable);
+        var spec = MedicalRecordSpecifications.withFilters(patientId, createdById, type, start, end)
+                .and(authorizationService.readableViaPatient(u));
+        return spec;
     }
 }
\ No newline at end of file
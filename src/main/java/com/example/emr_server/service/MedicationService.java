@@ -2,6 +2,7 @@ package com.example.emr_server.service;
 
 import com.example.emr_server.controller.dto.MedicationDto;
 import com.example.emr_server.controller.dto.MedicationPackageDto;
+import com.example.emr_server.controller.dto.CursorPage;
 import com.example.emr_server.service.dto.MedicationUrplImportRequest;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
@@ -10,6 +11,8 @@ import java.util.Optional;
 
 public interface MedicationService {
     Page<MedicationDto> search(String q, String atc, Pageable pageable);
+    // Tryb kursorowy (keyset): sortowanie (name, id), bez COUNT
+    CursorPage<MedicationDto> scroll(String q, String atc, String after, int size);
     Optional<MedicationPackageDto> findPackageByGtin(String gtin);
     MedicationDto importUrplRecord(MedicationUrplImportRequest req);
 }
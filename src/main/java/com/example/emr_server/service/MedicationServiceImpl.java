@@ -1,5 +1,6 @@
 package com.example.emr_server.service;
 
+import com.example.emr_server.controller.dto.CursorPage;
 import com.example.emr_server.controller.dto.MedicationDto;
 import com.example.emr_server.controller.dto.MedicationPackageDto;
 import com.example.emr_server.entity.Medication;
@@ -8,8 +9,11 @@ import com.example.emr_server.repository.MedicationPackageRepository;
 import com.example.emr_server.repository.MedicationRepository;
 import com.example.emr_server.repository.spec.MedicationSpecifications;
 import com.example.emr_server.service.dto.MedicationUrplImportRequest;
+import com.example.emr_server.util.CursorPaging;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 
 import java.time.Instant;
@@ -20,6 +24,9 @@ import java.util.Optional;
 @Service
 public class MedicationServiceImpl implements MedicationService {
 
+    // Tryb kursorowy: name jest NOT NULL, id rozstrzyga duplikaty nazw
+    private static final Sort KEYSET_SORT = Sort.by("name", "id");
+
     private final MedicationRepository medicationRepository;
     private final MedicationPackageRepository packageRepository;
 
@@ -60,10 +67,19 @@ public class MedicationServiceImpl implements MedicationService {
 
     @Override
     public Page<MedicationDto> search(String q, String atc, Pageable pageable) {
+        return medicationRepository.findAll(searchSpec(q, atc), pageable)
+                .map(this::toDto);
+    }
+
+    @Override
+    public CursorPage<MedicationDto> scroll(String q, String atc, String after, int size) {
+        return CursorPaging.scroll(medicationRepository, searchSpec(q, atc), KEYSET_SORT, after, size, this::toDto);
+    }
+
+    private Specification<Medication> searchSpec(String q, String atc) {
         String qNorm = (q==null || q.isBlank())? null : q.trim();
         String atcNorm = (atc==null || atc.isBlank())? null : atc.trim();
-        return medicationRepository.findAll(MedicationSpecifications.search(qNorm, atcNorm), pageable)
-                .map(this::toDto);
+        return MedicationSpecifications.search(qNorm, atcNorm);
     }
 
     @Override
@@ -1,6 +1,7 @@
 package com.example.emr_server.service;
 
 import com.example.emr_server.controller.dto.PatientDto;
+import com.example.emr_server.controller.dto.CursorPage;
 import com.example.emr_server.entity.Patient;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
@@ -152,6 +153,7 @@ public interface PatientService {
      *
      * @param firstName      opcjonalne imię pacjenta
      * @param lastName       opcjonalne nazwisko pacjenta
+     * @param lastNamePrefix opcjonalny początek nazwiska (min. 3 znaki, bez rozróżniania polskich znaków) – indeks ślepy
      * @param pesel          opcjonalny numer PESEL pacjenta
      * @param dobStart       opcjonalna data początkowa urodzenia
      * @param dobEnd         opcjonalna data końcowa urodzenia
@@ -164,6 +166,7 @@ public interface PatientService {
     Page<PatientDto> searchVisible(
             Optional<String> firstName,
             Optional<String> lastName,
+            Optional<String> lastNamePrefix,
             Optional<String> pesel,
             Optional<LocalDate> dobStart,
             Optional<LocalDate> dobEnd,
@@ -172,4 +175,35 @@ public interface PatientService {
             Optional<UUID> createdById,
             Pageable pageable
     );
+
+    /**
+     * Tryb kursorowy (keyset) wyszukiwania: te same filtry, sortowanie (created_at, id) malejąco,
+     * bez zapytania COUNT.
+     *
+     * @param firstName      opcjonalne imię pacjenta
+     * @param lastName       opcjonalne nazwisko pacjenta
+     * @param lastNamePrefix opcjonalny początek nazwiska (min. 3 znaki, bez rozróżniania polskich znaków) – indeks ślepy
+     * @param pesel          opcjonalny numer PESEL pacjenta
+     * @param dobStart       opcjonalna data początkowa urodzenia
+     * @param dobEnd         opcjonalna data końcowa urodzenia
+     * @param gender         opcjonalna płeć pacjenta
+     * @param addressFragment opcjonalny fragment adresu pacjenta
+     * @param createdById    opcjonalny UUID użytkownika, który utworzył pacjenta
+     * @param after kursor z poprzedniej strony (pusty = pierwsza strona)
+     * @param size  rozmiar strony (maks. {@link com.example.emr_server.util.CursorPaging#MAX_SIZE})
+     * @return strona z kursorem kolejnej strony
+     */
+    CursorPage<PatientDto> scrollVisible(
+            Optional<String> firstName,
+            Optional<String> lastName,
+            Optional<String> lastNamePrefix,
+            Optional<String> pesel,
+            Optional<LocalDate> dobStart,
+            Optional<LocalDate> dobEnd,
+            Optional<String> gender,
+            Optional<String> addressFragment,
+            Optional<UUID> createdById,
+            String after,
+            int size
+    );
 }
\ No newline at end of file
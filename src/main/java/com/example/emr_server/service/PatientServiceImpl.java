@@ -1,17 +1,24 @@
 package com.example.emr_server.service;
 
 import com.example.emr_server.entity.Patient;
+import com.example.emr_server.exception.ValidationException;
 import com.example.emr_server.repository.PatientRepository;
 import com.example.emr_server.security.encryption.EncryptionService;
+import com.example.emr_server.security.encryption.PatientNameIndex;
 import com.example.emr_server.security.AuthorizationService;
 import com.example.emr_server.security.SecurityUtil;
 import com.example.emr_server.repository.UserRepository;
 import com.example.emr_server.entity.User;
 import com.example.emr_server.controller.dto.PatientDto;
+import com.example.emr_server.controller.dto.CursorPage;
 import com.example.emr_server.repository.spec.PatientSpecifications;
+import com.example.emr_server.util.CursorPaging;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
 import java.util.List;
@@ -22,27 +29,45 @@ import java.util.stream.Collectors;
 @Service
 public class PatientServiceImpl implements PatientService {
 
+    // Tryb kursorowy: stabilny, unikalny klucz sortowania (kolumny bez NULL)
+    private static final Sort KEYSET_SORT = Sort.by(Sort.Direction.DESC, "createdAt", "id");
+
     private final PatientRepository patientRepository;
     private final EncryptionService encryptionService;
     private final AuthorizationService authorizationService;
     private final UserRepository userRepository;
     private final AuditService auditService;
+    private final PatientNameIndex patientNameIndex;
 
     public PatientServiceImpl(PatientRepository patientRepository,
                               EncryptionService encryptionService,
                               AuthorizationService authorizationService,
                               UserRepository userRepository,
-                              AuditService auditService) {
+                              AuditService auditService,
+                              PatientNameIndex patientNameIndex) {
         this.patientRepository = patientRepository;
         this.encryptionService = encryptionService;
         this.authorizationService = authorizationService;
         this.userRepository = userRepository;
         this.auditService = auditService;
+        this.patientNameIndex = patientNameIndex;
+    }
+
+    // szyfrogramy we wszystkich kluczach pierścienia – po rotacji część wierszy ma jeszcze stary klucz
+    private List<String> encDet(String logicalField, String value) {
+        if (value == null || value.isBlank()) return java.util.Collections.singletonList(value);
+        return encryptionService.deterministicCandidates(logicalField, value.trim());
     }
 
-    private String encDet(String logicalField, String value) {
-        if (value == null || value.isBlank()) return value;
-        return encryptionService.encryptDeterministic(logicalField, value.trim());
+    // UNIQUE(pesel) porównuje szyfrogramy: ten sam PESEL zapisany przed rotacją starym kluczem przeszedłby
+    // przez ograniczenie, a później zablokował jego przeszyfrowanie – sprawdzamy we wszystkich kluczach
+    private void requireUniquePesel(String pesel, UUID self) {
+        if (pesel == null || pesel.isBlank()) return;
+        List<String> candidates = encDet("patient.pesel", pesel);
+        boolean taken = self == null
+                ? patientRepository.existsByPeselIn(candidates)
+                : patientRepository.existsByPeselInAndIdNot(candidates, self);
+        if (taken) throw new ValidationException("Pacjent o tym numerze PESEL już istnieje");
     }
 
     private User current() {
@@ -64,17 +89,17 @@ public class PatientServiceImpl implements PatientService {
 
     @Override
     public List<Patient> getPatientsByFirstName(String firstName) {
-        return patientRepository.findByFirstName(encDet("patient.first_name", firstName));
+        return patientRepository.findByFirstNameIn(encDet("patient.first_name", firstName));
     }
 
     @Override
     public List<Patient> getPatientsByLastName(String lastName) {
-        return patientRepository.findByLastName(encDet("patient.last_name", lastName));
+        return patientRepository.findByLastNameIn(encDet("patient.last_name", lastName));
     }
 
     @Override
     public List<Patient> getPatientsByFirstNameAndLastName(String firstName, String lastName) {
-        return patientRepository.findByFirstNameAndLastName(
+        return patientRepository.findByFirstNameInAndLastNameIn(
                 encDet("patient.first_name", firstName),
                 encDet("patient.last_name", lastName)
         );
@@ -82,7 +107,7 @@ public class PatientServiceImpl implements PatientService {
 
     @Override
     public Optional<Patient> getPatientByPesel(String pesel) {
-        return patientRepository.findByPesel(encDet("patient.pesel", pesel));
+        return patientRepository.findFirstByPeselIn(encDet("patient.pesel", pesel));
     }
 
     @Override
@@ -101,8 +126,12 @@ public class PatientServiceImpl implements PatientService {
     }
 
     @Override
+    @Transactional
     public Patient savePatient(Patient patient) {
-        return patientRepository.save(patient);
+        requireUniquePesel(patient.getPesel(), patient.getId());
+        Patient saved = patientRepository.saveAndFlush(patient);
+        patientNameIndex.reindex(saved.getId(), saved.getLastName());
+        return saved;
     }
 
     @Override
@@ -126,14 +155,20 @@ public class PatientServiceImpl implements PatientService {
     }
 
     @Override
+    @Transactional
     public Optional<Patient> updatePatient(UUID id, Patient update) {
         return patientRepository.findById(id).map(existing -> {
+            if (!java.util.Objects.equals(existing.getPesel(), update.getPesel())) {
+                requireUniquePesel(update.getPesel(), id);
+            }
             existing.setFirstName(update.getFirstName());
             existing.setLastName(update.getLastName());
             existing.setPesel(update.getPesel());
             existing.setContactInfo(update.getContactInfo());
             existing.setAddress(update.getAddress());
-            return patientRepository.save(existing);
+            Patient saved = patientRepository.saveAndFlush(existing);
+            patientNameIndex.reindex(saved.getId(), saved.getLastName());
+            return saved;
         });
     }
 
@@ -141,8 +176,7 @@ public class PatientServiceImpl implements PatientService {
     @Override
     public List<PatientDto> getAllVisibleForCurrent() {
         User u = current();
-        return patientRepository.findAll().stream()
-                .filter(p -> authorizationService.canReadPatient(u, p))
+        return patientRepository.findAll(authorizationService.readablePatients(u)).stream()
                 .map(this::toDto)
                 .collect(Collectors.toList());
     }
@@ -156,6 +190,7 @@ public class PatientServiceImpl implements PatientService {
     }
 
     @Override
+    @Transactional
     public PatientDto createForCurrent(Patient patient) {
         User u = current();
         if (u == null) throw new SecurityException("Brak autoryzacji");
@@ -163,12 +198,15 @@ public class PatientServiceImpl implements PatientService {
         if (!authorizationService.canWritePatient(u, patient)) {
             throw new SecurityException("Brak uprawnień do utworzenia pacjenta");
         }
-        Patient saved = patientRepository.save(patient);
+        requireUniquePesel(patient.getPesel(), patient.getId());
+        Patient saved = patientRepository.saveAndFlush(patient);
+        patientNameIndex.reindex(saved.getId(), saved.getLastName());
         auditService.logPatient(u, saved, "CREATE_PATIENT", "Utworzono pacjenta id=" + saved.getId());
         return toDto(saved);
     }
 
     @Override
+    @Transactional
     public Optional<PatientDto> updateForCurrent(UUID id, Patient update) {
         User u = current();
         if (u == null) throw new SecurityException("Brak autoryzacji");
@@ -185,13 +223,20 @@ public class PatientServiceImpl implements PatientService {
             before.setAddress(existing.getAddress());
             before.setDateOfBirth(existing.getDateOfBirth());
             before.setGender(existing.getGender());
+            if (!java.util.Objects.equals(existing.getPesel(), update.getPesel())) {
+                requireUniquePesel(update.getPesel(), id);
+            }
 
             existing.setFirstName(update.getFirstName());
             existing.setLastName(update.getLastName());
             existing.setPesel(update.getPesel());
             existing.setContactInfo(update.getContactInfo());
             existing.setAddress(update.getAddress());
-            Patient saved = patientRepository.save(existing);
+            // jedna transakcja: UPDATE pacjenta blokuje jego wiersz przed tokenami – ta sama kolejność blokad co w backfillu
+            Patient saved = patientRepository.saveAndFlush(existing);
+            if (!java.util.Objects.equals(before.getLastName(), saved.getLastName())) {
+                patientNameIndex.reindex(saved.getId(), saved.getLastName());
+            }
             String diff = auditService.diffPatient(before, saved);
             auditService.logPatient(u, saved, "UPDATE_PATIENT", diff.isBlank()?"Brak zmian":diff);
             return toDto(saved);
@@ -216,6 +261,7 @@ public class PatientServiceImpl implements PatientService {
     public Page<PatientDto> searchVisible(
             java.util.Optional<String> firstName,
             java.util.Optional<String> lastName,
+            java.util.Optional<String> lastNamePrefix,
             java.util.Optional<String> pesel,
             java.util.Optional<java.time.LocalDate> dobStart,
             java.util.Optional<java.time.LocalDate> dobEnd,
@@ -223,18 +269,48 @@ public class PatientServiceImpl implements PatientService {
             java.util.Optional<String> addressFragment,
             java.util.Optional<java.util.UUID> createdById,
             Pageable pageable
+    ) {
+        return patientRepository.findAll(visibleSpec(firstName, lastName, lastNamePrefix, pesel, dobStart, dobEnd, gender, addressFragment, createdById), pageable).map(this::toDto);
+    }
+
+    @Override
+    public CursorPage<PatientDto> scrollVisible(
+            java.util.Optional<String> firstName,
+            java.util.Optional<String> lastName,
+            java.util.Optional<String> lastNamePrefix,
+            java.util.Optional<String> pesel,
+            java.util.Optional<java.time.LocalDate> dobStart,
+            java.util.Optional<java.time.LocalDate> dobEnd,
+            java.util.Optional<String> gender,
+            java.util.Optional<String> addressFragment,
+            java.util.Optional<java.util.UUID> createdById,
+            String after,
+            int size
+    ) {
+        return CursorPaging.scroll(patientRepository, visibleSpec(firstName, lastName, lastNamePrefix, pesel, dobStart, dobEnd, gender, addressFragment, createdById), KEYSET_SORT, after, size, this::toDto);
+    }
+
+    private Specification<Patient> visibleSpec(
+            java.util.Optional<String> firstName,
+            java.util.Optional<String> lastName,
+            java.util.Optional<String> lastNamePrefix,
+            java.util.Optional<String> pesel,
+            java.util.Optional<java.time.LocalDate> dobStart,
+            java.util.Optional<java.time.LocalDate> dobEnd,
+            java.util.Optional<String> gender,
+            java.util.Optional<String> addressFragment,
+            java.util.Optional<java.util.UUID> createdById
     ) {
         User u = current();
         // encrypt deterministic fields to match DB
-        var encFirst = firstName.isPresent() ? java.util.Optional.ofNullable(encDet("patient.first_name", firstName.get())) : java.util.Optional.<String>empty();
-        var encLast = lastName.isPresent() ? java.util.Optional.ofNullable(encDet("patient.last_name", lastName.get())) : java.util.Optional.<String>empty();
-        var encPes = pesel.isPresent() ? java.util.Optional.ofNullable(encDet("patient.pesel", pesel.get())) : java.util.Optional.<String>empty();
-        var spec = PatientSpecifications.withFilters(encFirst, encLast, encPes, dobStart, dobEnd, gender, addressFragment, createdById);
-        var all = patientRepository.findAll(spec);
-        var visible = all.stream()
-                .filter(p -> authorizationService.canReadPatient(u, p))
-                .map(this::toDto)
-                .toList();
-        return com.example.emr_server.util.PageUtils.paginate(visible, pageable);
+        var encFirst = firstName.isPresent() ? java.util.Optional.of(encDet("patient.first_name", firstName.get())) : java.util.Optional.<List<String>>empty();
+        var encLast = lastName.isPresent() ? java.util.Optional.of(encDet("patient.last_name", lastName.get())) : java.util.Optional.<List<String>>empty();
+        var encPes = pesel.isPresent() ? java.util.Optional.of(encDet("patient.pesel", pesel.get())) : java.util.Optional.<List<String>>empty();
+        var spec = PatientSpecifications.withFilters(encFirst, encLast, encPes, dobStart, dobEnd, gender, addressFragment, createdById)
+                .and(authorizationService.readablePatients(u));
+        if (lastNamePrefix.isPresent() && !lastNamePrefix.get().isBlank()) {
+            spec = spec.and(PatientSpecifications.lastNameTokens(patientNameIndex.queryTokens(lastNamePrefix.get())));
+        }
+        return spec;
     }
 }
\ No newline at end of file
@@ -7,6 +7,9 @@ import com.example.emr_server.repository.PrescriptionRepository;
 import com.example.emr_server.repository.UserRepository;
 import com.example.emr_server.security.AuthorizationService;
 import com.example.emr_server.security.SecurityUtil;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.pdmodel.PDPageContentStream;
@@ -36,15 +39,20 @@ public class PrescriptionPdfService {
     private final AuthorizationService authorizationService;
     private final UserRepository userRepository;
     private final AuditService auditService;
+    private final Timer renderLatency;
+    private final DistributionSummary pdfSize;
 
     public PrescriptionPdfService(PrescriptionRepository prescriptionRepository,
                                   AuthorizationService authorizationService,
                                   UserRepository userRepository,
-                                  AuditService auditService) {
+                                  AuditService auditService,
+                                  MeterRegistry meterRegistry) {
         this.prescriptionRepository = prescriptionRepository;
         this.authorizationService = authorizationService;
         this.userRepository = userRepository;
         this.auditService = auditService;
+        this.renderLatency = Timer.builder("prescription.pdf.render").register(meterRegistry);
+        this.pdfSize = DistributionSummary.builder("prescription.pdf.size").baseUnit("bytes").register(meterRegistry);
     }
 
     @Transactional(readOnly = true)
@@ -55,7 +63,9 @@ public class PrescriptionPdfService {
                 .map(p -> {
                     // audyt pobrania PDF
                     try { auditService.logPatient(current, p.getPatient(), "PDF_DOWNLOAD", "prescriptionId=" + p.getId()); } catch (Exception ignored) {}
-                    return render(p);
+                    byte[] pdf = renderLatency.record(() -> render(p));
+                    pdfSize.record(pdf.length);
+                    return pdf;
                 });
     }
 
@@ -2,9 +2,12 @@ package com.example.emr_server.service;
 
 import com.example.emr_server.entity.Prescription;
 import com.example.emr_server.controller.dto.PrescriptionDto;
+import com.example.emr_server.controller.dto.CursorPage;
+import com.example.emr_server.service.export.ExportFormat;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 
+import java.io.OutputStream;
 import java.time.LocalDate;
 import java.util.List;
 import java.util.Optional;
@@ -147,4 +150,45 @@ public interface PrescriptionService {
             Optional<LocalDate> end,
             Pageable pageable
     );
+
+    /**
+     * Tryb kursorowy (keyset) wyszukiwania: te same filtry, sortowanie id malejąco,
+     * bez zapytania COUNT.
+     *
+     * @param patientId UUID pacjenta (opcjonalnie)
+     * @param doctorId UUID lekarza (opcjonalnie)
+     * @param active flaga aktywności recepty (opcjonalnie)
+     * @param start początek zakresu daty wystawienia (opcjonalnie)
+     * @param end koniec zakresu daty wystawienia (opcjonalnie)
+     * @param after kursor z poprzedniej strony (pusty = pierwsza strona)
+     * @param size  rozmiar strony (maks. {@link com.example.emr_server.util.CursorPaging#MAX_SIZE})
+     * @return strona z kursorem kolejnej strony
+     */
+    CursorPage<PrescriptionDto> scrollVisible(
+            Optional<UUID> patientId,
+            Optional<UUID> doctorId,
+            Optional<Boolean> active,
+            Optional<LocalDate> start,
+            Optional<LocalDate> end,
+            String after,
+            int size
+    );
+
+    /**
+     * Eksport strumieniowy (NDJSON/CSV) widocznych rekordów z tymi samymi filtrami co lista,
+     * zapisywany bezpośrednio do strumienia odpowiedzi; zużycie pamięci nie zależy od liczby wierszy.
+     *
+     * @param format format eksportu
+     * @param out    strumień wyjściowy (nie jest zamykany)
+     * @return liczba wyeksportowanych wierszy
+     */
+    long exportVisible(
+            Optional<UUID> patientId,
+            Optional<UUID> doctorId,
+            Optional<Boolean> active,
+            Optional<LocalDate> start,
+            Optional<LocalDate> end,
+            ExportFormat format,
+            OutputStream out
+    );
 }
\ No newline at end of file
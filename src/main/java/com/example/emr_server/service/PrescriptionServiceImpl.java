@@ -8,12 +8,19 @@ import com.example.emr_server.repository.UserRepository;
 import com.example.emr_server.repository.PrescriptionRepository;
 import com.example.emr_server.controller.dto.PrescriptionDto;
 import com.example.emr_server.controller.dto.PrescriptionItemDto;
+import com.example.emr_server.controller.dto.CursorPage;
 import com.example.emr_server.entity.PrescriptionMedication;
 import com.example.emr_server.repository.spec.PrescriptionSpecifications;
+import com.example.emr_server.util.CursorPaging;
+import com.example.emr_server.service.export.ExportFormat;
+import com.example.emr_server.service.export.StreamingExporter;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 
+import java.io.OutputStream;
 import java.time.LocalDate;
 import java.time.temporal.ChronoUnit;
 import java.util.List;
@@ -24,19 +31,25 @@ import java.util.stream.Collectors;
 @Service
 public class PrescriptionServiceImpl implements PrescriptionService {
 
+    // Tryb kursorowy: stabilny, unikalny klucz sortowania (kolumny bez NULL)
+    private static final Sort KEYSET_SORT = Sort.by(Sort.Direction.DESC, "id");
+
     private final PrescriptionRepository prescriptionRepository;
     private final AuthorizationService authorizationService;
     private final UserRepository userRepository;
     private final AuditService auditService;
+    private final StreamingExporter streamingExporter;
 
     public PrescriptionServiceImpl(PrescriptionRepository prescriptionRepository,
                                    AuthorizationService authorizationService,
                                    UserRepository userRepository,
-                                   AuditService auditService) {
+                                   AuditService auditService,
+                                   StreamingExporter streamingExporter) {
         this.prescriptionRepository = prescriptionRepository;
         this.authorizationService = authorizationService;
         this.userRepository = userRepository;
         this.auditService = auditService;
+        this.streamingExporter = streamingExporter;
     }
 
     private User current() { return SecurityUtil.getCurrentUser(userRepository).orElse(null); }
@@ -210,14 +223,48 @@ public class PrescriptionServiceImpl implements PrescriptionService {
             java.util.Optional<java.time.LocalDate> start,
             java.util.Optional<java.time.LocalDate> end,
             Pageable pageable
+    ) {
+        return prescriptionRepository.findAll(visibleSpec(patientId, doctorId, active, start, end), pageable).map(this::toDto);
+    }
+
+    @Override
+    public CursorPage<PrescriptionDto> scrollVisible(
+            java.util.Optional<java.util.UUID> patientId,
+            java.util.Optional<java.util.UUID> doctorId,
+            java.util.Optional<java.lang.Boolean> active,
+            java.util.Optional<java.time.LocalDate> start,
+            java.util.Optional<java.time.LocalDate> end,
+            String after,
+            int size
+    ) {
+        return CursorPaging.scroll(prescriptionRepository, visibleSpec(patientId, doctorId, active, start, end), KEYSET_SORT, after, size, this::toDto);
+    }
+
+    @Override
+    public long exportVisible(
+            java.util.Optional<java.util.UUID> patientId,
+            java.util.Optional<java.util.UUID> doctorId,
+            java.util.Optional<java.lang.Boolean> active,
+            java.util.Optional<java.time.LocalDate> start,
+            java.util.Optional<java.time.LocalDate> end,
+            ExportFormat format,
+            OutputStream out
+    ) {
+        long rows = streamingExporter.export(Prescription.class, visibleSpec(patientId, doctorId, active, start, end), KEYSET_SORT, PrescriptionDto.class, this::toDto, format, out);
+        auditService.log(current(), "EXPORT_PRESCRIPTIONS", "format=" + format.name().toLowerCase() + " rows=" + rows);
+        return rows;
+    }
+
+    private Specification<Prescription> visibleSpec(
+            java.util.Optional<java.util.UUID> patientId,
+            java.util.Optional<java.util.UUID> doctorId,
+            java.util.Optional<java.lang.Boolean> active,
+            java.util.Optional<java.time.LocalDate> start,
+            java.util.Optional<java.time.LocalDate> end
     ) {
         User u = current();
-        var spec = PrescriptionSpecifications.withFilters(patientId, doctorId, active, start, end);
-        var all = prescriptionRepository.findAll(spec);
-        var visible = all.stream()
-                .filter(p -> authorizationService.canReadPatient(u, p.getPatient()))
-                .map(this::toDto)
-                .toList();
-        return com.example.emr_server.util.PageUtils.paginate(visible, pageable);
+        var spec = PrescriptionSpecifications.withFilters(patientId, doctorId, active, start, end)
+                .and(authorizationService.readableViaPatient(u));
+        return spec;
     }
 }
\ No newline at end of file
@@ -2,7 +2,10 @@ package com.example.emr_server.service;
 
 import com.example.emr_server.entity.Visit;
 import com.example.emr_server.controller.dto.VisitDto;
+import com.example.emr_server.controller.dto.CursorPage;
+import com.example.emr_server.service.export.ExportFormat;
 
+import java.io.OutputStream;
 import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
@@ -51,6 +54,36 @@ public interface VisitService {
             Pageable pageable
     );
 
+    // Tryb kursorowy (keyset): te same filtry, sortowanie (visit_date, id) malejąco, bez COUNT
+    CursorPage<VisitDto> scrollVisible(
+            Optional<UUID> patientId,
+            Optional<UUID> doctorId,
+            Optional<Instant> start,
+            Optional<Instant> end,
+            Optional<String> type,
+            Optional<String> diagnosis,
+            Optional<String> reason,
+            Optional<Boolean> confidential,
+            Optional<String> status,
+            String after,
+            int size
+    );
+
+    // Eksport strumieniowy (NDJSON/CSV) widocznych wizyt – stała pamięć niezależnie od liczby wierszy
+    long exportVisible(
+            Optional<UUID> patientId,
+            Optional<UUID> doctorId,
+            Optional<Instant> start,
+            Optional<Instant> end,
+            Optional<String> type,
+            Optional<String> diagnosis,
+            Optional<String> reason,
+            Optional<Boolean> confidential,
+            Optional<String> status,
+            ExportFormat format,
+            OutputStream out
+    );
+
     // Eksport ICS dla wizyty
     Optional<String> exportIcs(UUID visitId);
 
@@ -9,17 +9,23 @@ import com.example.emr_server.repository.VisitRepository;
 import com.example.emr_server.repository.UserRepository;
 import com.example.emr_server.repository.PatientRepository;
 import com.example.emr_server.controller.dto.VisitDto;
+import com.example.emr_server.controller.dto.CursorPage;
 import com.example.emr_server.repository.spec.VisitSpecifications;
+import com.example.emr_server.util.CursorPaging;
+import com.example.emr_server.service.export.ExportFormat;
+import com.example.emr_server.service.export.StreamingExporter;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.io.OutputStream;
 import java.time.Instant;
 import java.time.Duration;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
-import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -28,22 +34,28 @@ import java.util.stream.Collectors;
 @Service
 public class VisitServiceImpl implements VisitService {
 
+    // Tryb kursorowy: stabilny, unikalny klucz sortowania (kolumny bez NULL)
+    private static final Sort KEYSET_SORT = Sort.by(Sort.Direction.DESC, "visitDate", "id");
+
     private final VisitRepository visitRepository;
     private final AuthorizationService authorizationService;
     private final UserRepository userRepository;
     private final AuditService auditService;
+    private final StreamingExporter streamingExporter;
     private final PatientRepository patientRepository;
 
     public VisitServiceImpl(VisitRepository visitRepository,
                             AuthorizationService authorizationService,
                             UserRepository userRepository,
                             AuditService auditService,
-                            PatientRepository patientRepository) {
+                            PatientRepository patientRepository,
+                            StreamingExporter streamingExporter) {
         this.visitRepository = visitRepository;
         this.authorizationService = authorizationService;
         this.userRepository = userRepository;
         this.auditService = auditService;
         this.patientRepository = patientRepository;
+        this.streamingExporter = streamingExporter;
     }
 
     private User current() { return SecurityUtil.getCurrentUser(userRepository).orElse(null); }
@@ -248,15 +260,62 @@ public class VisitServiceImpl implements VisitService {
             java.util.Optional<Boolean> confidential,
             java.util.Optional<String> status,
             Pageable pageable
+    ) {
+        // projekcja kolumn VisitDto – lista tylko do odczytu, bez encji i proxy pacjenta/lekarza
+        return visitRepository.findDtos(visibleSpec(patientId, doctorId, start, end, type, diagnosis, reason, confidential, status), pageable);
+    }
+
+    @Override
+    public CursorPage<VisitDto> scrollVisible(
+            java.util.Optional<java.util.UUID> patientId,
+            java.util.Optional<java.util.UUID> doctorId,
+            java.util.Optional<java.time.Instant> start,
+            java.util.Optional<java.time.Instant> end,
+            java.util.Optional<String> type,
+            java.util.Optional<String> diagnosis,
+            java.util.Optional<String> reason,
+            java.util.Optional<Boolean> confidential,
+            java.util.Optional<String> status,
+            String after,
+            int size
+    ) {
+        return CursorPaging.scroll(visitRepository, visibleSpec(patientId, doctorId, start, end, type, diagnosis, reason, confidential, status), KEYSET_SORT, after, size, this::toDto);
+    }
+
+    @Override
+    public long exportVisible(
+            java.util.Optional<java.util.UUID> patientId,
+            java.util.Optional<java.util.UUID> doctorId,
+            java.util.Optional<java.time.Instant> start,
+            java.util.Optional<java.time.Instant> end,
+            java.util.Optional<String> type,
+            java.util.Optional<String> diagnosis,
+            java.util.Optional<String> reason,
+            java.util.Optional<Boolean> confidential,
+            java.util.Optional<String> status,
+            ExportFormat format,
+            OutputStream out
+    ) {
+        long rows = streamingExporter.export(Visit.class, visibleSpec(patientId, doctorId, start, end, type, diagnosis, reason, confidential, status), KEYSET_SORT, VisitDto.class, this::toDto, format, out);
+        auditService.log(current(), "EXPORT_VISITS", "format=" + format.name().toLowerCase() + " rows=" + rows);
+        return rows;
+    }
+
+    private Specification<Visit> visibleSpec(
+            java.util.Optional<java.util.UUID> patientId,
+            java.util.Optional<java.util.UUID> doctorId,
+            java.util.Optional<java.time.Instant> start,
+            java.util.Optional<java.time.Instant> end,
+            java.util.Optional<String> type,
+            java.util.Optional<String> diagnosis,
+            java.util.Optional<String> reason,
+            java.util.Optional<Boolean> confidential,
+            java.util.Optional<String> status
     ) {
         User u = current();
-        var spec = VisitSpecifications.withFilters(patientId, doctorId, start, end, type, diagnosis, reason, confidential, status);
-        var all = visitRepository.findAll(spec);
-        var visible = all.stream()
-                .filter(v -> authorizationService.canReadPatient(u, v.getPatient()))
-                .map(this::toDto)
-                .toList();
-        return com.example.emr_server.util.PageUtils.paginate(visible, pageable);
+        var spec = VisitSpecifications.withFilters(patientId, doctorId, start, end, type, diagnosis, reason, confidential, status)
+                .and(authorizationService.readableViaPatient(u));
+        return spec;
     }
 
     @Override
@@ -321,12 +380,9 @@ public class VisitServiceImpl implements VisitService {
                 java.util.Optional.empty(),
                 java.util.Optional.empty(),
                 status
-        );
+        ).and(authorizationService.<Visit>readableViaPatient(u));
         var fmt = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'").withZone(ZoneOffset.UTC);
-        var visits = visitRepository.findAll(spec).stream()
-                .filter(v -> authorizationService.canReadPatient(u, v.getPatient()))
-                .sorted(Comparator.comparing(Visit::getVisitDate))
-                .toList();
+        var visits = visitRepository.findAll(spec, Sort.by("visitDate"));
         StringBuilder sb = new StringBuilder();
         sb.append("BEGIN:VCALENDAR\r\n")
           .append("VERSION:2.0\r\n")
@@ -0,0 +1,104 @@
+package com.example.emr_server.service.dedup;
+
+import java.time.LocalDate;
+import java.util.Locale;
+import java.util.UUID;
+
+/**
+ * Ocena podobieństwa pary pacjentów (0..1): nazwisko 0.30 i imię 0.20 (Jaro-Winkler na znormalizowanych
+ * wartościach, bez polskich znaków), data urodzenia 0.25 (zgodna albo jedna pomyłka: zamiana dnia z miesiącem,
+ * inna jedna składowa) i PESEL 0.25 (zgodny albo jedna literówka / przestawienie sąsiednich cyfr).
+ * Różne PESEL-e przy zgodnych danych osobowych dają najwyżej 0.75 – zwykle to różne osoby, np. bliźnięta.
+ */
+final class DuplicateScorer {
+
+    /** Wartości znormalizowane: imię i nazwisko bez polskich znaków i separatorów, PESEL – same cyfry. */
+    record Person(UUID id, String firstName, String lastName, LocalDate dateOfBirth, String pesel) {}
+
+    record Match(double score, String reasons) {}
+
+    private DuplicateScorer() {
+    }
+
+    static Match score(Person a, Person b) {
+        double last = jaroWinkler(a.lastName(), b.lastName());
+        double first = jaroWinkler(a.firstName(), b.firstName());
+        double dob = dateScore(a.dateOfBirth(), b.dateOfBirth());
+        double pesel = peselScore(a.pesel(), b.pesel());
+        double score = 0.30 * last + 0.20 * first + 0.25 * dob + 0.25 * pesel;
+        String reasons = String.format(Locale.ROOT, "last=%.2f,first=%.2f,dob=%s,pesel=%s",
+                last, first, label(dob), label(pesel));
+        return new Match(score, reasons);
+    }
+
+    private static String label(double component) {
+        return component == 1 ? "eq" : component > 0 ? "typo" : "diff";
+    }
+
+    static double dateScore(LocalDate a, LocalDate b) {
+        if (a == null || b == null) return 0;
+        if (a.equals(b)) return 1;
+        boolean swapped = a.getYear() == b.getYear() && a.getMonthValue() == b.getDayOfMonth()
+                && a.getDayOfMonth() == b.getMonthValue();
+        int same = (a.getYear() == b.getYear() ? 1 : 0) + (a.getMonthValue() == b.getMonthValue() ? 1 : 0)
+                + (a.getDayOfMonth() == b.getDayOfMonth() ? 1 : 0);
+        return swapped || same == 2 ? 0.6 : 0;
+    }
+
+    static double peselScore(String a, String b) {
+        if (a == null || b == null || a.isEmpty() || b.isEmpty()) return 0;
+        if (a.equals(b)) return 1;
+        return a.length() == b.length() && editDistance(a, b) == 1 ? 0.8 : 0;
+    }
+
+    /** Odległość Damerau-Levenshteina (wariant OSA) – przestawienie sąsiednich znaków liczone jako jedna zmiana. */
+    static int editDistance(String a, String b) {
+        int[][] d = new int[a.length() + 1][b.length() + 1];
+        for (int i = 0; i <= a.length(); i++) d[i][0] = i;
+        for (int j = 0; j <= b.length(); j++) d[0][j] = j;
+        for (int i = 1; i <= a.length(); i++) {
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                int v = Math.min(Math.min(d[i - 1][j] + 1, d[i][j - 1] + 1), d[i - 1][j - 1] + cost);
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    v = Math.min(v, d[i - 2][j - 2] + 1);
+                }
+                d[i][j] = v;
+            }
+        }
+        return d[a.length()][b.length()];
+    }
+
+    static double jaroWinkler(String a, String b) {
+        if (a == null || b == null || a.isEmpty() || b.isEmpty()) return 0;
+        if (a.equals(b)) return 1;
+        int window = Math.max(0, Math.max(a.length(), b.length()) / 2 - 1);
+        boolean[] matchedA = new boolean[a.length()];
+        boolean[] matchedB = new boolean[b.length()];
+        int matches = 0;
+        for (int i = 0; i < a.length(); i++) {
+            int from = Math.max(0, i - window);
+            int to = Math.min(b.length() - 1, i + window);
+            for (int j = from; j <= to; j++) {
+                if (!matchedB[j] && a.charAt(i) == b.charAt(j)) {
+                    matchedA[i] = matchedB[j] = true;
+                    matches++;
+                    break;
+                }
+            }
+        }
+        if (matches == 0) return 0;
+        int transpositions = 0;
+        for (int i = 0, j = 0; i < a.length(); i++) {
+            if (!matchedA[i]) continue;
+            while (!matchedB[j]) j++;
+            if (a.charAt(i) != b.charAt(j)) transpositions++;
+            j++;
+        }
+        double m = matches;
+        double jaro = (m / a.length() + m / b.length() + (m - transpositions / 2.0) / m) / 3;
+        int prefix = 0;
+        while (prefix < Math.min(4, Math.min(a.length(), b.length())) && a.charAt(prefix) == b.charAt(prefix)) prefix++;
+        return jaro + prefix * 0.1 * (1 - jaro);
+    }
+}
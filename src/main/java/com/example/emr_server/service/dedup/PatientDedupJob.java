@@ -0,0 +1,505 @@
+package com.example.emr_server.service.dedup;
+
+import com.example.emr_server.entity.id.UuidV7Generator;
+import com.example.emr_server.security.encryption.EncryptionMigrationJob.State;
+import com.example.emr_server.security.encryption.EncryptionService;
+import com.example.emr_server.security.encryption.PatientDataKeyService;
+import com.example.emr_server.security.encryption.PatientNameIndex;
+import com.example.emr_server.service.dedup.DuplicateScorer.Match;
+import com.example.emr_server.service.dedup.DuplicateScorer.Person;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Wykrywanie zduplikowanych rejestracji pacjentów (literówki w nazwisku, PESEL wpisany dwukrotnie).
+ * Zamiast porównywać każdą parę (O(n²)) pacjenci są grupowani w bloki po kluczach blokujących – HMAC
+ * (klucz indeksu ślepego pola patient.dedup) z kodu fonetycznego {@link PolishPhonetic} nazwiska i imienia
+ * z datą urodzenia oraz z PESEL-u – i oceniane są tylko pary w obrębie bloku ({@link DuplicateScorer}).
+ * Klucze trafiają do emr.patient_blocking_keys (bez jawnych kodów i dat), pary powyżej min-score do
+ * emr.patient_duplicate_candidates do przeglądu; decyzje z poprzednich przebiegów nie są nadpisywane.
+ * Przebieg pełny przelicza klucze wszystkich pacjentów, przyrostowy – tylko pacjentów utworzonych od ostatniego
+ * ukończonego przebiegu (z zakładką), porównując ich z blokami istniejących. Zmiana aktywnego klucza szyfrowania
+ * wymusza przebieg pełny. Deszyfrowanie i ocena par – pula fork-join o równoległości threads.
+ * W pamięci trzymani są tylko członkowie bloków do oceny (odszyfrowani ponownie po zapisie kluczy), nie wszyscy
+ * pacjenci. Wiersz, którego nie da się odszyfrować, jest pomijany i liczony w skipped. Przebieg jest lokalny dla węzła.
+ */
+@Slf4j
+@Component
+public class PatientDedupJob {
+
+    public enum Mode { FULL, INCREMENTAL }
+
+    public record Progress(State state, Mode mode, String keyId, long patients, long skipped, long blocks,
+                           long oversizedBlocks, long pairs, long candidates, Instant startedAt) {}
+
+    static final String FIELD = "patient.dedup";
+    // pacjenci po crypto-shreddingu nie dostają kluczy blokujących ani kandydatów
+    private static final String SELECT = "SELECT id, first_name, last_name, pesel, date_of_birth, created_at "
+            + "FROM emr.patients p WHERE " + PatientDataKeyService.NOT_SHREDDED;
+    // pacjent zapisany w trakcie poprzedniego przebiegu mógł dostać created_at sprzed jego watermarku
+    private static final Duration OVERLAP = Duration.ofMinutes(5);
+    private static final int IN_CHUNK = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final EncryptionService encryptionService;
+    private final PatientDedupProperties properties;
+
+    private volatile Run run;
+
+    public PatientDedupJob(JdbcTemplate jdbcTemplate, EncryptionService encryptionService, PatientDedupProperties properties) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.encryptionService = encryptionService;
+        this.properties = properties;
+    }
+
+    /** Przebieg przyrostowy wg app.dedup.cron (domyślnie wyłączony). */
+    @Scheduled(cron = "${app.dedup.cron:-}")
+    public void scheduledRun() {
+        start(false);
+    }
+
+    /** Uruchamia przebieg w tle; false, gdy poprzedni jeszcze trwa. full=false – przyrostowy, o ile to możliwe. */
+    public synchronized boolean start(boolean full) {
+        Run current = run;
+        if (current != null && (current.state == State.RUNNING || current.state == State.STOPPING)) {
+            return false;
+        }
+        Run next = new Run(full, encryptionService.activeKeyId());
+        next.worker = Thread.ofPlatform().name("patient-dedup").daemon().unstarted(() -> execute(next));
+        run = next;
+        next.worker.start();
+        return true;
+    }
+
+    /** Zatrzymuje przebieg po bieżącej stronie; kolejny przebieg zacznie od ostatniego ukończonego. */
+    public synchronized boolean stop() {
+        Run current = run;
+        if (current == null || current.state != State.RUNNING) return false;
+        current.state = State.STOPPING;
+        return true;
+    }
+
+    public Progress progress() {
+        Run current = run;
+        return current != null ? current.progress() : new Progress(State.IDLE, null, null, 0, 0, 0, 0, 0, 0, null);
+    }
+
+    /** Czeka na zakończenie bieżącego przebiegu; true, gdy zakończył się przed upływem czasu. */
+    public boolean await(Duration timeout) throws InterruptedException {
+        Run current = run;
+        return current == null || current.worker.join(timeout);
+    }
+
+    @PreDestroy
+    void shutdown() throws InterruptedException {
+        if (stop()) await(Duration.ofSeconds(30));
+    }
+
+    private void execute(Run run) {
+        ForkJoinPool pool = new ForkJoinPool(properties.getThreads() > 0
+                ? properties.getThreads() : Runtime.getRuntime().availableProcessors());
+        try {
+            Timestamp since = plan(run);
+            jdbcTemplate.update("INSERT INTO emr.patient_dedup_runs(id, mode, state, key_id, watermark, started_at) "
+                            + "VALUES (?, ?, ?, ?, ?, ?)", run.id, run.mode.name(), State.RUNNING.name(), run.keyId,
+                    Timestamp.from(run.startedAt), Timestamp.from(run.startedAt));
+            log.info("[DEDUP] Start (mode={}, keyId={}, since={})", run.mode, run.keyId, since);
+            if (run.mode == Mode.FULL) jdbcTemplate.update("DELETE FROM emr.patient_blocking_keys");
+
+            Map<UUID, Person> people = new HashMap<>();
+            Set<String> newKeys = new HashSet<>();
+            loadAndKey(run, pool, since, people, newKeys);
+            if (run.state != State.RUNNING) return;
+
+            List<UUID[]> blocks = run.mode == Mode.FULL ? sharedBlocks(run) : blocksOf(run, newKeys);
+            if (run.state != State.RUNNING) return;
+            Set<UUID> fresh = run.mode == Mode.FULL ? null : new HashSet<>(people.keySet());
+            loadPeople(run, pool, neighbours(blocks, people), people);
+            if (run.state != State.RUNNING) return;
+
+            List<Candidate> found = pool.invoke(new ScoreTask(blocks, 0, blocks.size(), people, fresh,
+                    properties.getMinScore(), run.pairs));
+            run.candidates = save(found);
+        } catch (Exception e) {
+            log.error("[DEDUP] Przebieg przerwany błędem: {}", e.getMessage(), e);
+            run.state = State.FAILED;
+        } finally {
+            pool.shutdown();
+            finish(run);
+        }
+    }
+
+    /**
+     * Pełny, gdy wymuszony, gdy brak ukończonego przebiegu, gdy ostatni ukończony liczył klucze innym kluczem
+     * szyfrowania albo gdy po nim przerwano przebieg pełny (klucze blokujące wyczyszczone). Zwraca dolną granicę
+     * created_at dla przebiegu przyrostowego.
+     */
+    private Timestamp plan(Run run) {
+        run.mode = Mode.FULL;
+        if (run.forceFull) return null;
+        List<Object[]> history = jdbcTemplate.query("SELECT mode, state, key_id, watermark FROM emr.patient_dedup_runs "
+                        + "ORDER BY started_at DESC LIMIT 100",
+                (rs, i) -> new Object[]{rs.getString(1), rs.getString(2), rs.getString(3), rs.getTimestamp(4)});
+        for (Object[] r : history) {
+            boolean completed = State.COMPLETED.name().equals(r[1]);
+            if (!completed && Mode.FULL.name().equals(r[0])) return null;
+            if (!completed) continue;
+            if (!run.keyId.equals(r[2])) return null;
+            run.mode = Mode.INCREMENTAL;
+            return Timestamp.from(((Timestamp) r[3]).toInstant().minus(OVERLAP));
+        }
+        return null;
+    }
+
+    /**
+     * Stronicowanie keyset po (created_at, id) – indeks patients_created_at_id_idx; klucze zapisywane per strona.
+     * Do people trafiają tylko nowi pacjenci przebiegu przyrostowego – w pełnym członków bloków ładuje loadPeople.
+     */
+    private void loadAndKey(Run run, ForkJoinPool pool, Timestamp since, Map<UUID, Person> people, Set<String> newKeys)
+            throws Exception {
+        int pageSize = Math.max(1, properties.getPageSize());
+        Timestamp afterCreated = since;
+        UUID afterId = null;
+        while (run.state == State.RUNNING) {
+            List<Row> rows;
+            if (afterId != null) {
+                rows = jdbcTemplate.query(SELECT + " AND (created_at, id) > (?, ?) ORDER BY created_at, id LIMIT ?",
+                        PatientDedupJob::row, afterCreated, afterId, pageSize);
+            } else if (afterCreated != null) {
+                rows = jdbcTemplate.query(SELECT + " AND created_at > ? ORDER BY created_at, id LIMIT ?",
+                        PatientDedupJob::row, afterCreated, pageSize);
+            } else {
+                rows = jdbcTemplate.query(SELECT + " ORDER BY created_at, id LIMIT ?", PatientDedupJob::row, pageSize);
+            }
+            if (rows.isEmpty()) break;
+            List<Keyed> keyed = decrypted(run, pool, rows, this::keyed);
+            List<Object[]> inserts = new ArrayList<>();
+            for (Keyed k : keyed) {
+                if (run.mode == Mode.INCREMENTAL) people.put(k.person.id(), k.person);
+                for (String key : k.keys) inserts.add(new Object[]{key, k.person.id()});
+                if (run.mode == Mode.INCREMENTAL) newKeys.addAll(k.keys);
+            }
+            if (run.mode == Mode.INCREMENTAL) {
+                // zakładka: pacjent mógł mieć klucze z poprzedniego przebiegu
+                jdbcTemplate.batchUpdate("DELETE FROM emr.patient_blocking_keys WHERE patient_id = ?",
+                        keyed.stream().map(k -> new Object[]{k.person.id()}).toList());
+            }
+            jdbcTemplate.batchUpdate("INSERT INTO emr.patient_blocking_keys(block_key, patient_id) VALUES (?, ?)", inserts);
+            run.patients += rows.size();
+            Row last = rows.get(rows.size() - 1);
+            afterCreated = last.createdAt;
+            afterId = last.id;
+            if (rows.size() < pageSize) break;
+        }
+    }
+
+    /** Przebieg pełny: bloki o co najmniej dwóch pacjentach, grupowane przez bazę. */
+    private List<UUID[]> sharedBlocks(Run run) {
+        List<UUID[]> blocks = new ArrayList<>();
+        BlockCollector collector = new BlockCollector(run, blocks);
+        jdbcTemplate.query("SELECT k.block_key, k.patient_id FROM emr.patient_blocking_keys k "
+                + "JOIN (SELECT block_key FROM emr.patient_blocking_keys GROUP BY block_key HAVING count(*) > 1) s "
+                + "ON s.block_key = k.block_key ORDER BY k.block_key", collector::accept);
+        collector.flush();
+        return blocks;
+    }
+
+    /** Przebieg przyrostowy: bloki kluczy nowych pacjentów wraz z istniejącymi członkami. */
+    private List<UUID[]> blocksOf(Run run, Set<String> newKeys) {
+        List<UUID[]> blocks = new ArrayList<>();
+        List<String> keys = new ArrayList<>(newKeys);
+        for (int from = 0; from < keys.size() && run.state == State.RUNNING; from += IN_CHUNK) {
+            List<String> chunk = keys.subList(from, Math.min(keys.size(), from + IN_CHUNK));
+            BlockCollector collector = new BlockCollector(run, blocks);
+            jdbcTemplate.query("SELECT block_key, patient_id FROM emr.patient_blocking_keys WHERE block_key IN ("
+                    + placeholders(chunk.size()) + ") ORDER BY block_key", collector::accept, chunk.toArray());
+            collector.flush();
+        }
+        return blocks;
+    }
+
+    private static Set<UUID> neighbours(List<UUID[]> blocks, Map<UUID, Person> people) {
+        Set<UUID> missing = new HashSet<>();
+        for (UUID[] block : blocks) {
+            for (UUID id : block) if (!people.containsKey(id)) missing.add(id);
+        }
+        return missing;
+    }
+
+    private void loadPeople(Run run, ForkJoinPool pool, Set<UUID> ids, Map<UUID, Person> people) throws Exception {
+        List<UUID> all = new ArrayList<>(ids);
+        for (int from = 0; from < all.size() && run.state == State.RUNNING; from += IN_CHUNK) {
+            List<UUID> chunk = all.subList(from, Math.min(all.size(), from + IN_CHUNK));
+            List<Row> rows = jdbcTemplate.query(SELECT + " AND id IN (" + placeholders(chunk.size()) + ")",
+                    PatientDedupJob::row, chunk.toArray());
+            // w przebiegu pełnym pominięte już policzył loadAndKey – tu tylko przyrostowy
+            Run counting = run.mode == Mode.INCREMENTAL ? run : null;
+            for (Person p : decrypted(counting, pool, rows, this::person)) people.put(p.id(), p);
+        }
+    }
+
+    /** Deszyfruje stronę równolegle; wiersz z błędem deszyfrowania jest pomijany (liczony, gdy run != null). */
+    private <T> List<T> decrypted(Run run, ForkJoinPool pool, List<Row> rows, Function<Row, T> decrypt) throws Exception {
+        return pool.submit(() -> rows.parallelStream().map(row -> {
+            try {
+                return decrypt.apply(row);
+            } catch (RuntimeException e) {
+                log.error("[DEDUP] Nie można odszyfrować danych pacjenta {}: {}", row.id, e.getMessage());
+                if (run != null) run.skipped.incrementAndGet();
+                return null;
+            }
+        }).filter(Objects::nonNull).toList()).get();
+    }
+
+    /** Zapis kandydatów nieobecnych w tabeli – para już oceniona lub w przeglądzie zostaje bez zmian. */
+    private long save(List<Candidate> found) {
+        Map<List<UUID>, Candidate> unique = new LinkedHashMap<>();
+        for (Candidate c : found) unique.putIfAbsent(List.of(c.a, c.b), c);
+        List<Object[]> rows = new ArrayList<>(unique.size());
+        for (Candidate c : unique.values()) rows.add(new Object[]{c.a, c.b, c.score, c.reasons, c.a, c.b});
+        if (rows.isEmpty()) return 0;
+        int[][] counts = jdbcTemplate.batchUpdate("INSERT INTO emr.patient_duplicate_candidates(patient_a, patient_b, score, reasons) "
+                + "SELECT CAST(? AS uuid), CAST(? AS uuid), CAST(? AS double precision), CAST(? AS varchar(200)) "
+                + "WHERE NOT EXISTS (SELECT 1 FROM emr.patient_duplicate_candidates "
+                + "WHERE patient_a = ? AND patient_b = ?)", rows, 500, (ps, r) -> {
+            for (int i = 0; i < r.length; i++) ps.setObject(i + 1, r[i]);
+        });
+        long inserted = 0;
+        for (int[] batch : counts) {
+            for (int c : batch) if (c != 0) inserted++;
+        }
+        return inserted;
+    }
+
+    private void finish(Run run) {
+        synchronized (this) {
+            run.state = switch (run.state) {
+                case RUNNING -> State.COMPLETED;
+                case STOPPING -> State.STOPPED;
+                default -> run.state;
+            };
+            run.finishedNs = System.nanoTime();
+        }
+        Progress p = run.progress();
+        try {
+            jdbcTemplate.update("UPDATE emr.patient_dedup_runs SET state = ?, patients = ?, pairs = ?, candidates = ?, "
+                    + "finished_at = ? WHERE id = ?", p.state().name(), p.patients(), p.pairs(), p.candidates(),
+                    Timestamp.from(Instant.now()), run.id);
+        } catch (Exception e) {
+            log.warn("[DEDUP] Nie zapisano stanu przebiegu {}: {}", run.id, e.getMessage());
+        }
+        log.info("[DEDUP] {} mode={}, patients={}, skipped={}, blocks={}, oversizedBlocks={}, pairs={}, newCandidates={}, time={}s",
+                p.state(), p.mode(), p.patients(), p.skipped(), p.blocks(), p.oversizedBlocks(), p.pairs(), p.candidates(),
+                String.format(Locale.ROOT, "%.2f", (run.finishedNs - run.startedNs) / 1_000_000_000d));
+        if (p.oversizedBlocks() > 0) {
+            log.warn("[DEDUP] Pominięto {} bloków większych niż app.dedup.max-block-size={}", p.oversizedBlocks(),
+                    properties.getMaxBlockSize());
+        }
+    }
+
+    private Keyed keyed(Row row) {
+        String first = encryptionService.decryptField("patient.first_name", row.firstName);
+        String last = encryptionService.decryptField("patient.last_name", row.lastName);
+        Person person = person(row, first, last);
+        return new Keyed(person, encryptionService.blindTokens(FIELD, blockingTerms(first, last, person)));
+    }
+
+    private Person person(Row row) {
+        return person(row, encryptionService.decryptField("patient.first_name", row.firstName),
+                encryptionService.decryptField("patient.last_name", row.lastName));
+    }
+
+    private Person person(Row row, String first, String last) {
+        String pesel = encryptionService.decryptField("patient.pesel", row.pesel);
+        return new Person(row.id, first != null ? PatientNameIndex.normalize(first).replace(" ", "") : "",
+                last != null ? PatientNameIndex.normalize(last).replace(" ", "") : "",
+                row.dateOfBirth, pesel != null ? pesel.replaceAll("\\D", "") : "");
+    }
+
+    /**
+     * Nazwisko + data urodzenia, imię + nazwisko + rok (pomyłka w dacie), imię + data (zmiana nazwiska)
+     * oraz PESEL (inna pisownia imienia i nazwiska). Kody fonetyczne z wartości przed normalizacją – reguły dwuznaków.
+     */
+    static List<String> blockingTerms(String firstName, String lastName, Person person) {
+        String first = PolishPhonetic.encode(firstName);
+        String last = PolishPhonetic.encode(lastName);
+        LocalDate dob = person.dateOfBirth();
+        List<String> terms = new ArrayList<>(4);
+        if (!last.isEmpty() && dob != null) terms.add("L|" + last + "|" + dob);
+        if (!first.isEmpty() && !last.isEmpty() && dob != null) terms.add("N|" + first + "|" + last + "|" + dob.getYear());
+        if (!first.isEmpty() && dob != null) terms.add("F|" + first + "|" + dob);
+        if (!person.pesel().isEmpty()) terms.add("P|" + person.pesel());
+        return terms;
+    }
+
+    private static Row row(ResultSet rs, int i) throws SQLException {
+        java.sql.Date dob = rs.getDate(5);
+        return new Row(rs.getObject(1, UUID.class), rs.getString(2), rs.getString(3), rs.getString(4),
+                dob != null ? dob.toLocalDate() : null, rs.getTimestamp(6));
+    }
+
+    private static String placeholders(int n) {
+        return String.join(", ", Collections.nCopies(n, "?"));
+    }
+
+    /** Kolejność zgodna z porównaniem uuid w PostgreSQL (bajtowo, bez znaku). */
+    static int compare(UUID x, UUID y) {
+        int c = Long.compareUnsigned(x.getMostSignificantBits(), y.getMostSignificantBits());
+        return c != 0 ? c : Long.compareUnsigned(x.getLeastSignificantBits(), y.getLeastSignificantBits());
+    }
+
+    private record Row(UUID id, String firstName, String lastName, String pesel, LocalDate dateOfBirth, Timestamp createdAt) {}
+
+    private record Keyed(Person person, List<String> keys) {}
+
+    record Candidate(UUID a, UUID b, double score, String reasons) {
+        static Candidate of(Person x, Person y, Match match) {
+            return compare(x.id(), y.id()) < 0
+                    ? new Candidate(x.id(), y.id(), match.score(), match.reasons())
+                    : new Candidate(y.id(), x.id(), match.score(), match.reasons());
+        }
+    }
+
+    /** Składa kolejne wiersze (block_key, patient_id) posortowane po kluczu w bloki; pomija pojedyncze i za duże. */
+    private final class BlockCollector {
+        private final Run run;
+        private final List<UUID[]> blocks;
+        private final List<UUID> members = new ArrayList<>();
+        private String key;
+
+        BlockCollector(Run run, List<UUID[]> blocks) {
+            this.run = run;
+            this.blocks = blocks;
+        }
+
+        void accept(ResultSet rs) throws SQLException {
+            String k = rs.getString(1);
+            if (!k.equals(key)) {
+                flush();
+                key = k;
+            }
+            members.add(rs.getObject(2, UUID.class));
+        }
+
+        void flush() {
+            if (members.size() > properties.getMaxBlockSize()) {
+                run.oversizedBlocks++;
+            } else if (members.size() > 1) {
+                blocks.add(members.toArray(UUID[]::new));
+                run.blocks++;
+            }
+            members.clear();
+        }
+    }
+
+    /**
+     * Ocena par w blokach [from, to) – podział na połowy do {@link #SEQUENTIAL_BLOCKS} bloków, wyniki łączone.
+     * fresh != null (przebieg przyrostowy) – tylko pary z co najmniej jednym nowym pacjentem.
+     */
+    static final class ScoreTask extends RecursiveTask<List<Candidate>> {
+        private static final int SEQUENTIAL_BLOCKS = 64;
+
+        private final List<UUID[]> blocks;
+        private final int from;
+        private final int to;
+        private final Map<UUID, Person> people;
+        private final Set<UUID> fresh;
+        private final double minScore;
+        private final AtomicLong pairs;
+
+        ScoreTask(List<UUID[]> blocks, int from, int to, Map<UUID, Person> people, Set<UUID> fresh, double minScore,
+                  AtomicLong pairs) {
+            this.blocks = blocks;
+            this.from = from;
+            this.to = to;
+            this.people = people;
+            this.fresh = fresh;
+            this.minScore = minScore;
+            this.pairs = pairs;
+        }
+
+        @Override
+        protected List<Candidate> compute() {
+            if (to - from > SEQUENTIAL_BLOCKS) {
+                int mid = (from + to) >>> 1;
+                ScoreTask left = new ScoreTask(blocks, from, mid, people, fresh, minScore, pairs);
+                left.fork();
+                List<Candidate> right = new ScoreTask(blocks, mid, to, people, fresh, minScore, pairs).compute();
+                List<Candidate> out = new ArrayList<>(left.join());
+                out.addAll(right);
+                return out;
+            }
+            List<Candidate> out = new ArrayList<>();
+            long scored = 0;
+            for (int b = from; b < to; b++) {
+                UUID[] block = blocks.get(b);
+                for (int i = 0; i < block.length; i++) {
+                    Person x = people.get(block[i]);
+                    if (x == null) continue;
+                    for (int j = i + 1; j < block.length; j++) {
+                        Person y = people.get(block[j]);
+                        if (y == null || (fresh != null && !fresh.contains(x.id()) && !fresh.contains(y.id()))) continue;
+                        scored++;
+                        Match match = DuplicateScorer.score(x, y);
+                        if (match.score() >= minScore) out.add(Candidate.of(x, y, match));
+                    }
+                }
+            }
+            pairs.addAndGet(scored);
+            return out;
+        }
+    }
+
+    private static final class Run {
+        final UUID id = UuidV7Generator.next();
+        final boolean forceFull;
+        final String keyId;
+        final Instant startedAt = Instant.now();
+        final long startedNs = System.nanoTime();
+        final AtomicLong pairs = new AtomicLong();
+        final AtomicLong skipped = new AtomicLong();
+        // pozostałe liczniki zapisuje wyłącznie wątek przebiegu
+        volatile Mode mode;
+        volatile long patients;
+        volatile long blocks;
+        volatile long oversizedBlocks;
+        volatile long candidates;
+        volatile State state = State.RUNNING;
+        volatile long finishedNs;
+        Thread worker;
+
+        Run(boolean forceFull, String keyId) {
+            this.forceFull = forceFull;
+            this.keyId = keyId;
+        }
+
+        Progress progress() {
+            return new Progress(state, mode, keyId, patients, skipped.get(), blocks, oversizedBlocks, pairs.get(), candidates, startedAt);
+        }
+    }
+}
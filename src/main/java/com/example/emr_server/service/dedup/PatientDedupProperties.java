@@ -0,0 +1,27 @@
+package com.example.emr_server.service.dedup;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Konfiguracja wykrywania duplikatów pacjentów (app.dedup.*).
+ * threads – równoległość deszyfrowania i oceny par (0 = liczba procesorów); page-size – pacjenci na SELECT;
+ * max-block-size – bloki większe są pomijane (klucz zbyt mało selektywny); min-score – próg kandydata.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "app.dedup")
+public class PatientDedupProperties {
+    private int threads = 0;
+    private int pageSize = 2_000;
+    private int maxBlockSize = 500;
+    private double minScore = 0.8;
+
+    public int getThreads() { return threads; }
+    public void setThreads(int threads) { this.threads = threads; }
+    public int getPageSize() { return pageSize; }
+    public void setPageSize(int pageSize) { this.pageSize = pageSize; }
+    public int getMaxBlockSize() { return maxBlockSize; }
+    public void setMaxBlockSize(int maxBlockSize) { this.maxBlockSize = maxBlockSize; }
+    public double getMinScore() { return minScore; }
+    public void setMinScore(double minScore) { this.minScore = minScore; }
+}
@@ -0,0 +1,62 @@
+package com.example.emr_server.service.dedup;
+
+import com.example.emr_server.controller.dto.DuplicateCandidateDto;
+import com.example.emr_server.exception.ResourceNotFoundException;
+import com.example.emr_server.security.SecurityUtil;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Przegląd kandydatów na duplikaty wskazanych przez {@link PatientDedupJob}. Decyzja jest tylko oznaczeniem pary –
+ * scalanie kart pacjentów pozostaje czynnością ręczną.
+ */
+@Service
+public class PatientDuplicateService {
+
+    public enum Status { OPEN, CONFIRMED, REJECTED }
+
+    public enum Decision { CONFIRMED, REJECTED }
+
+    private static final String SELECT = "SELECT patient_a, patient_b, score, reasons, status, found_at, reviewed_by, reviewed_at "
+            + "FROM emr.patient_duplicate_candidates";
+
+    private static final RowMapper<DuplicateCandidateDto> MAPPER = (rs, i) -> new DuplicateCandidateDto(
+            rs.getObject(1, UUID.class), rs.getObject(2, UUID.class), rs.getDouble(3), rs.getString(4), rs.getString(5),
+            offset(rs.getTimestamp(6)), rs.getObject(7, UUID.class), offset(rs.getTimestamp(8)));
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public PatientDuplicateService(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /** Kandydaci o danym statusie, od najwyższej oceny. */
+    public List<DuplicateCandidateDto> list(Status status, int limit) {
+        return jdbcTemplate.query(SELECT + " WHERE status = ? ORDER BY score DESC, patient_a, patient_b LIMIT ?",
+                MAPPER, status.name(), Math.max(1, Math.min(limit, 1_000)));
+    }
+
+    /** Oznacza parę (w dowolnej kolejności identyfikatorów) decyzją bieżącego użytkownika. */
+    public DuplicateCandidateDto review(UUID first, UUID second, Decision decision) {
+        boolean ordered = PatientDedupJob.compare(first, second) < 0;
+        UUID a = ordered ? first : second;
+        UUID b = ordered ? second : first;
+        int updated = jdbcTemplate.update("UPDATE emr.patient_duplicate_candidates SET status = ?, reviewed_by = ?, "
+                        + "reviewed_at = ? WHERE patient_a = ? AND patient_b = ?",
+                decision.name(), SecurityUtil.getCurrentUserId(), Timestamp.from(Instant.now()), a, b);
+        if (updated == 0) throw new ResourceNotFoundException("Kandydat na duplikat " + a + " / " + b + " nie istnieje");
+        return jdbcTemplate.queryForObject(SELECT + " WHERE patient_a = ? AND patient_b = ?", MAPPER, a, b);
+    }
+
+    private static OffsetDateTime offset(Timestamp ts) {
+        return ts != null ? ts.toInstant().atOffset(ZoneOffset.UTC) : null;
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.emr_server.service.dedup;
+
+import com.example.emr_server.security.encryption.PatientNameIndex;
+
+import java.util.Locale;
+
+/**
+ * Kod fonetyczny imion i nazwisk w stylu Soundex, dostosowany do polskiej pisowni: dwuznaki i litery o tej samej
+ * wymowie (rz/ż, ch/h, sz/ś/s, cz/ć/c, ó/u) sprowadzane są do jednej postaci, a spółgłoski grupowane w klasy
+ * dźwięczna/bezdźwięczna (b/p, d/t, g/k, w/f). Samogłoski po pierwszej literze są pomijane, powtórzenia klas
+ * łączone, kod ma najwyżej {@link #MAX_LENGTH} znaków – „Kowalski”, „Kovalsky” i „Kowalska” dają KFLSK,
+ * „Wiśniewska” i „Wiszniewska” – FSNFSK.
+ */
+final class PolishPhonetic {
+
+    static final int MAX_LENGTH = 6;
+
+    private static final String[][] REWRITES = {
+            {"ch", "h"}, {"ż", "z"}, {"ź", "z"}, {"rz", "z"}, {"sz", "s"}, {"cz", "c"}, {"dz", "c"}, {"ck", "k"},
+            {"ś", "s"}, {"ć", "c"}, {"ó", "u"}, {"ł", "l"}, {"x", "ks"}, {"v", "w"}, {"ph", "f"}
+    };
+
+    private PolishPhonetic() {
+    }
+
+    /** Kod fonetyczny; pusty dla wartości bez liter. Człony nazwiska złożonego są łączone. */
+    static String encode(String name) {
+        if (name == null) return "";
+        String s = name.toLowerCase(Locale.ROOT);
+        for (String[] r : REWRITES) s = s.replace(r[0], r[1]);
+        s = PatientNameIndex.normalize(s).replace(" ", "");
+        StringBuilder code = new StringBuilder(MAX_LENGTH);
+        char previous = 0;
+        for (int i = 0; i < s.length() && code.length() < MAX_LENGTH; i++) {
+            char c = classOf(s.charAt(i));
+            if (code.isEmpty()) {
+                code.append(c == 0 ? 'A' : c);
+            } else if (c != 0 && c != previous) {
+                code.append(c);
+            }
+            previous = c;
+        }
+        return code.toString();
+    }
+
+    /** Klasa spółgłoski; 0 dla samogłosek (w tym j, y) i znaków spoza alfabetu. */
+    private static char classOf(char c) {
+        return switch (c) {
+            case 'b', 'p' -> 'P';
+            case 'd', 't' -> 'T';
+            case 'g', 'k', 'q' -> 'K';
+            case 'f', 'w' -> 'F';
+            case 's', 'z' -> 'S';
+            case 'c' -> 'C';
+            case 'h' -> 'H';
+            case 'l' -> 'L';
+            case 'r' -> 'R';
+            case 'm', 'n' -> 'N';
+            default -> 0;
+        };
+    }
+}
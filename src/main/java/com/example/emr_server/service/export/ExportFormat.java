@@ -0,0 +1,29 @@
+package com.example.emr_server.service.export;
+
+import org.springframework.http.MediaType;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+public enum ExportFormat {
+    NDJSON(new MediaType("application", "x-ndjson"), "ndjson"),
+    CSV(new MediaType("text", "csv", StandardCharsets.UTF_8), "csv");
+
+    private final MediaType mediaType;
+    private final String extension;
+
+    ExportFormat(MediaType mediaType, String extension) {
+        this.mediaType = mediaType;
+        this.extension = extension;
+    }
+
+    public MediaType mediaType() { return mediaType; }
+
+    public String fileName(String base) { return base + "." + extension; }
+
+    /** ?format=ndjson|csv – inna wartość kończy się 400 (IllegalArgumentException). */
+    public static ExportFormat parse(String value) {
+        if (value == null || value.isBlank()) return NDJSON;
+        return ExportFormat.valueOf(value.trim().toUpperCase(Locale.ROOT));
+    }
+}
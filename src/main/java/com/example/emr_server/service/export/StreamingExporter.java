@@ -0,0 +1,179 @@
+package com.example.emr_server.service.export;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.TypedQuery;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.reflect.RecordComponent;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Eksport strumieniowy (NDJSON / CSV) o stałym zużyciu pamięci niezależnie od liczby wierszy:
+ * zapytanie z tymi samymi Specification co listy (filtry + widoczność pacjenta w bazie),
+ * odczyt kursorem JDBC z fetch size w transakcji read-only, mapowanie na DTO (deszyfrowanie
+ * w EncryptedStringType) i zapis wiersz po wierszu. Po każdej paczce fetch-size wierszy
+ * kontekst persystencji jest czyszczony, a bufor wypychany do klienta.
+ */
+@Component
+public class StreamingExporter {
+
+    private final EntityManager em;
+    private final TransactionTemplate readOnlyTx;
+    private final ObjectMapper objectMapper;
+    private final int fetchSize;
+
+    public StreamingExporter(EntityManager em,
+                             PlatformTransactionManager transactionManager,
+                             ObjectMapper objectMapper,
+                             @Value("${app.export.fetch-size:500}") int fetchSize) {
+        this.em = em;
+        this.readOnlyTx = new TransactionTemplate(transactionManager);
+        this.readOnlyTx.setReadOnly(true);
+        this.objectMapper = objectMapper;
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * @return liczba wyeksportowanych wierszy
+     */
+    public <E, D extends Record> long export(Class<E> entityType,
+                                             Specification<E> spec,
+                                             Sort sort,
+                                             Class<D> dtoType,
+                                             Function<E, D> mapper,
+                                             ExportFormat format,
+                                             OutputStream out) {
+        Long count = readOnlyTx.execute(status -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+            RowWriter<D> rows = format == ExportFormat.CSV ? new CsvRowWriter<>(dtoType, writer) : new NdjsonRowWriter<>(writer);
+            long written = 0;
+            try (Stream<E> stream = query(entityType, spec, sort).getResultStream()) {
+                rows.header();
+                List<E> chunk = new ArrayList<>(fetchSize);
+                Iterator<E> it = stream.iterator();
+                while (it.hasNext()) {
+                    chunk.add(it.next());
+                    if (chunk.size() == fetchSize || !it.hasNext()) {
+                        // mapowanie całej paczki naraz – leniwe kolekcje ładowane wsadowo (default_batch_fetch_size)
+                        for (E e : chunk) rows.row(mapper.apply(e));
+                        written += chunk.size();
+                        chunk.clear();
+                        em.clear();
+                        writer.flush();
+                    }
+                }
+                writer.flush();
+            } catch (IOException e) {
+                // najczęściej zerwane połączenie klienta
+                throw new UncheckedIOException(e);
+            }
+            return written;
+        });
+        return count == null ? 0 : count;
+    }
+
+    private <E> TypedQuery<E> query(Class<E> entityType, Specification<E> spec, Sort sort) {
+        CriteriaBuilder cb = em.getCriteriaBuilder();
+        CriteriaQuery<E> cq = cb.createQuery(entityType);
+        Root<E> root = cq.from(entityType);
+        Predicate predicate = spec == null ? null : spec.toPredicate(root, cq, cb);
+        if (predicate != null) cq.where(predicate);
+        if (sort != null && sort.isSorted()) cq.orderBy(QueryUtils.toOrders(sort, root, cb));
+        return em.createQuery(cq)
+                .setHint(HibernateHints.HINT_FETCH_SIZE, fetchSize)
+                .setHint(HibernateHints.HINT_READ_ONLY, true);
+    }
+
+    private interface RowWriter<D> {
+        void header() throws IOException;
+        void row(D dto) throws IOException;
+    }
+
+    private final class NdjsonRowWriter<D> implements RowWriter<D> {
+        private final Writer writer;
+
+        NdjsonRowWriter(Writer writer) { this.writer = writer; }
+
+        @Override
+        public void header() {}
+
+        @Override
+        public void row(D dto) throws IOException {
+            writer.write(objectMapper.writeValueAsString(dto));
+            writer.write('\n');
+        }
+    }
+
+    /** Kolumny = komponenty rekordu DTO; zagnieżdżone kolekcje i mapy jako JSON w jednej komórce. */
+    private final class CsvRowWriter<D extends Record> implements RowWriter<D> {
+        private final RecordComponent[] components;
+        private final Writer writer;
+
+        CsvRowWriter(Class<D> dtoType, Writer writer) {
+            this.components = dtoType.getRecordComponents();
+            this.writer = writer;
+        }
+
+        @Override
+        public void header() throws IOException {
+            for (int i = 0; i < components.length; i++) {
+                if (i > 0) writer.write(',');
+                writer.write(components[i].getName());
+            }
+            writer.write("\r\n");
+        }
+
+        @Override
+        public void row(D dto) throws IOException {
+            for (int i = 0; i < components.length; i++) {
+                if (i > 0) writer.write(',');
+                Object value;
+                try {
+                    value = components[i].getAccessor().invoke(dto);
+                } catch (ReflectiveOperationException e) {
+                    throw new IllegalStateException("Nie można odczytać pola " + components[i].getName(), e);
+                }
+                if (value != null) {
+                    if (value instanceof Collection<?> || value instanceof Map<?, ?>) writer.write(escape(objectMapper.writeValueAsString(value), false));
+                    else writer.write(escape(value.toString(), value instanceof String));
+                }
+            }
+            writer.write("\r\n");
+        }
+
+        private String escape(String v, boolean text) {
+            boolean quote = v.indexOf(',') >= 0 || v.indexOf('"') >= 0 || v.indexOf('\n') >= 0 || v.indexOf('\r') >= 0;
+            // neutralizacja formuł przy otwieraniu w arkuszu (CSV injection) – tylko pola tekstowe
+            if (text && !v.isEmpty() && "=+-@".indexOf(v.charAt(0)) >= 0) {
+                v = "'" + v;
+                quote = true;
+            }
+            return quote ? '"' + v.replace("\"", "\"\"") + '"' : v;
+        }
+    }
+}
@@ -2,6 +2,9 @@ package com.example.emr_server.service.urpl;
 
 import com.example.emr_server.service.MedicationService;
 import com.example.emr_server.service.dto.MedicationUrplImportRequest;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.scheduling.annotation.Scheduled;
@@ -14,9 +17,20 @@ public class UrplImportService {
     private final UrplClient urplClient;
     private final MedicationService medicationService;
 
-    public UrplImportService(UrplClient urplClient, MedicationService medicationService) {
+    private final Timer importDuration;
+    private final Timer pageFetch;
+    private final Counter pages;
+    private final Counter recordsImported;
+    private final Counter recordsFailed;
+
+    public UrplImportService(UrplClient urplClient, MedicationService medicationService, MeterRegistry meterRegistry) {
         this.urplClient = urplClient;
         this.medicationService = medicationService;
+        this.importDuration = Timer.builder("urpl.import.duration").register(meterRegistry);
+        this.pageFetch = Timer.builder("urpl.import.page.fetch").register(meterRegistry);
+        this.pages = meterRegistry.counter("urpl.import.pages");
+        this.recordsImported = Counter.builder("urpl.import.records").tag("outcome", "imported").register(meterRegistry);
+        this.recordsFailed = Counter.builder("urpl.import.records").tag("outcome", "failed").register(meterRegistry);
     }
 
     // Uruchamiane raz dziennie o 02:30
@@ -30,13 +44,19 @@ public class UrplImportService {
     }
 
     public int runImport(int startPage, int size, int maxPages) {
+        return importDuration.record(() -> importPages(startPage, size, maxPages));
+    }
+
+    private int importPages(int startPage, int size, int maxPages) {
         int imported = 0;
         int page = startPage;
         for (int i = 0; i < maxPages; i++) {
-            var resp = urplClient.fetchPage(page, size);
+            final int current = page;
+            var resp = pageFetch.record(() -> urplClient.fetchPage(current, size));
             if (resp == null || resp.getContent() == null || resp.getContent().isEmpty()) {
                 break;
             }
+            pages.increment();
             for (var p : resp.getContent()) {
                 try {
                     var req = new MedicationUrplImportRequest(
@@ -59,7 +79,9 @@ public class UrplImportService {
                     );
                     medicationService.importUrplRecord(req);
                     imported++;
+                    recordsImported.increment();
                 } catch (Exception e) {
+                    recordsFailed.increment();
                     log.warn("URPL record import failed (id={})", p.getId(), e);
                 }
             }
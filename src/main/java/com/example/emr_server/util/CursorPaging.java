@@ -0,0 +1,101 @@
+package com.example.emr_server.util;
+
+import com.example.emr_server.controller.dto.CursorPage;
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * Paginacja kursorowa (keyset / seek) dla list: WHERE (sort_key, id) > (ostatni z poprzedniej strony)
+ * zamiast OFFSET – koszt strony nie rośnie z jej numerem i nie ma zapytania COUNT.
+ * Kursor jest nieprzezroczysty dla klienta: base64url z wartościami kluczy sortowania ostatniego wiersza.
+ * Sort musi kończyć się unikalną kolumną (id), a kolumny sortowania nie mogą zawierać NULL.
+ */
+public final class CursorPaging {
+    private CursorPaging() {}
+
+    public static final int DEFAULT_SIZE = 20;
+    public static final int MAX_SIZE = 100;
+
+    public static <E, D> CursorPage<D> scroll(JpaSpecificationExecutor<E> repository,
+                                              Specification<E> spec,
+                                              Sort sort,
+                                              String after,
+                                              int size,
+                                              Function<E, D> mapper) {
+        int limit = Math.max(1, Math.min(size, MAX_SIZE));
+        KeysetScrollPosition position = decode(after, sort);
+        Window<E> window = repository.findBy(spec, q -> q.sortBy(sort).limit(limit).scroll(position));
+        String next = window.hasNext() && !window.isEmpty()
+                ? encode(((KeysetScrollPosition) window.positionAt(window.size() - 1)).getKeys())
+                : null;
+        return new CursorPage<>(window.getContent().stream().map(mapper).toList(), limit, next);
+    }
+
+    /** Pusty/brak kursora = pierwsza strona. Kursor musi zawierać dokładnie klucze sortowania endpointu. */
+    static KeysetScrollPosition decode(String cursor, Sort sort) {
+        if (cursor == null || cursor.isBlank()) return ScrollPosition.keyset();
+        Map<String, Object> keys = new LinkedHashMap<>();
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            for (String entry : raw.split("\n")) {
+                String[] parts = entry.split(":", 3);
+                if (parts.length != 3) throw new IllegalArgumentException("Niepoprawny kursor");
+                keys.put(parts[0], parse(parts[1], URLDecoder.decode(parts[2], StandardCharsets.UTF_8)));
+            }
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Niepoprawny kursor", e);
+        }
+        for (Sort.Order order : sort) {
+            if (!keys.containsKey(order.getProperty())) throw new IllegalArgumentException("Kursor nie pasuje do sortowania");
+        }
+        if (keys.size() != sort.stream().count()) throw new IllegalArgumentException("Kursor nie pasuje do sortowania");
+        return ScrollPosition.forward(keys);
+    }
+
+    static String encode(Map<String, ?> keys) {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, ?> e : keys.entrySet()) {
+            if (!sb.isEmpty()) sb.append('\n');
+            sb.append(e.getKey()).append(':').append(typeOf(e.getValue())).append(':')
+                    .append(URLEncoder.encode(String.valueOf(e.getValue()), StandardCharsets.UTF_8));
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static char typeOf(Object v) {
+        if (v instanceof Instant) return 'I';
+        if (v instanceof LocalDate) return 'D';
+        if (v instanceof UUID) return 'U';
+        if (v instanceof Long) return 'L';
+        if (v instanceof Integer) return 'N';
+        if (v instanceof String) return 'S';
+        throw new IllegalArgumentException("Nieobsługiwany typ klucza kursora: " + (v == null ? "null" : v.getClass()));
+    }
+
+    private static Object parse(String type, String value) {
+        return switch (type) {
+            case "I" -> Instant.parse(value);
+            case "D" -> LocalDate.parse(value);
+            case "U" -> UUID.fromString(value);
+            case "L" -> Long.parseLong(value);
+            case "N" -> Integer.parseInt(value);
+            case "S" -> value;
+            default -> throw new IllegalArgumentException("Niepoprawny kursor");
+        };
+    }
+}
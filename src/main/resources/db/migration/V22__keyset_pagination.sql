@@ -0,0 +1,18 @@
+-- Paginacja kursorowa (keyset): stabilne klucze sortowania (kolumna czasu, id) bez NULL + indeksy złożone
+set search_path to emr, public;
+
+-- Hibernate wstawiał jawne NULL mimo DEFAULT now() – uzupełnienie braków i wymuszenie NOT NULL
+UPDATE emr.patients SET created_at = now() WHERE created_at IS NULL;
+ALTER TABLE emr.patients ALTER COLUMN created_at SET NOT NULL;
+
+UPDATE emr.medical_files SET uploaded_at = now() WHERE uploaded_at IS NULL;
+ALTER TABLE emr.medical_files ALTER COLUMN uploaded_at SET NOT NULL;
+
+UPDATE emr.medical_records SET created_at = now() WHERE created_at IS NULL;
+ALTER TABLE emr.medical_records ALTER COLUMN created_at SET NOT NULL;
+
+CREATE INDEX IF NOT EXISTS patients_created_at_id_idx ON emr.patients(created_at, id);
+CREATE INDEX IF NOT EXISTS visits_visit_date_id_idx ON emr.visits(visit_date, id);
+CREATE INDEX IF NOT EXISTS medical_files_uploaded_at_id_idx ON emr.medical_files(uploaded_at, id);
+CREATE INDEX IF NOT EXISTS medical_records_created_at_id_idx ON emr.medical_records(created_at, id);
+CREATE INDEX IF NOT EXISTS medications_name_id_idx ON emr.medications(name, id);
@@ -0,0 +1,13 @@
+-- Wspólne liczniki rate limiting dla wielu węzłów (security.ratelimit.backend=jdbc)
+set search_path to emr, public;
+
+-- UNLOGGED: bez WAL (liczniki są ulotne, utrata po awarii bazy jest akceptowalna)
+CREATE UNLOGGED TABLE IF NOT EXISTS emr.rate_limit_counters (
+    bucket varchar(64) NOT NULL,
+    key_hash varchar(32) NOT NULL,   -- skrót SHA-256 klucza (IP / login) – bez danych osobowych w tabeli
+    window_start bigint NOT NULL,    -- początek okna, epoch ms
+    hits bigint NOT NULL,
+    expires_at bigint NOT NULL,      -- epoch ms, po którym wiersz może zostać usunięty
+    PRIMARY KEY (bucket, key_hash, window_start)
+);
+CREATE INDEX IF NOT EXISTS rate_limit_counters_expires_idx ON emr.rate_limit_counters(expires_at);
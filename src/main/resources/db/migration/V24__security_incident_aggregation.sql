@@ -0,0 +1,7 @@
+-- Zagregowane incydenty (np. seria odrzuceń rate limiting): liczba wystąpień i zakres czasu w jednym wierszu
+set search_path to emr, public;
+
+ALTER TABLE emr.security_incidents ADD COLUMN IF NOT EXISTS occurrences integer NOT NULL DEFAULT 1;
+ALTER TABLE emr.security_incidents ADD COLUMN IF NOT EXISTS first_seen_at timestamptz;
+ALTER TABLE emr.security_incidents ADD COLUMN IF NOT EXISTS last_seen_at timestamptz;
+ALTER TABLE emr.security_incidents ADD COLUMN IF NOT EXISTS source_ip varchar(45);
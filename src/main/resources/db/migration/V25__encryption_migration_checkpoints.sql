@@ -0,0 +1,12 @@
+-- Postęp online migracji szyfrowania (EncryptionMigrationJob): per tabela wszystkie wiersze o id <= last_id
+-- są już przetworzone, więc przerwany przebieg wznawia się od tego miejsca
+set search_path to emr, public;
+
+CREATE TABLE IF NOT EXISTS emr.encryption_migration_checkpoints (
+    table_name varchar(100) PRIMARY KEY,
+    last_id uuid,                          -- NULL = od początku tabeli
+    completed boolean NOT NULL DEFAULT false,
+    rows_scanned bigint NOT NULL DEFAULT 0,
+    rows_migrated bigint NOT NULL DEFAULT 0,
+    updated_at timestamptz NOT NULL DEFAULT now()
+);
@@ -0,0 +1,4 @@
+-- Checkpoint migracji szyfrowania dotyczy konkretnego aktywnego klucza: po rotacji przebieg zaczyna od początku
+set search_path to emr, public;
+
+ALTER TABLE emr.encryption_migration_checkpoints ADD COLUMN IF NOT EXISTS key_id varchar(50);
@@ -0,0 +1,11 @@
+-- Klucze danych pacjentów (envelope encryption): DEK zawinięty kluczem KEK z pierścienia (key_id).
+-- wrapped_key = NULL i destroyed_at ustawione – klucz zniszczony (crypto-shredding), dane v3p nieodczytywalne.
+set search_path to emr, public;
+
+CREATE TABLE IF NOT EXISTS emr.patient_data_keys (
+    patient_id   uuid PRIMARY KEY,         -- bez FK: znacznik zniszczenia przeżywa usunięcie pacjenta
+    key_id       varchar(50),
+    wrapped_key  varchar(200),
+    created_at   timestamptz NOT NULL DEFAULT now(),
+    destroyed_at timestamptz
+);
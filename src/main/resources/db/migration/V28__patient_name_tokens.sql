@@ -0,0 +1,11 @@
+-- Indeks ślepy prefiksów nazwiska (PatientNameIndex): token = HMAC znormalizowanego prefiksu.
+-- PK (token, patient_id) obsługuje wyszukiwanie prefiksu; indeks po patient_id – podmianę tokenów pacjenta.
+set search_path to emr, public;
+
+CREATE TABLE IF NOT EXISTS emr.patient_name_tokens (
+    token      varchar(32) NOT NULL,
+    patient_id uuid NOT NULL REFERENCES emr.patients(id) ON DELETE CASCADE,
+    PRIMARY KEY (token, patient_id)
+);
+
+CREATE INDEX IF NOT EXISTS idx_patient_name_tokens_patient ON emr.patient_name_tokens (patient_id);
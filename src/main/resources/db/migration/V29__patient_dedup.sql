@@ -0,0 +1,45 @@
+-- Wykrywanie duplikatów pacjentów (PatientDedupJob).
+-- patient_blocking_keys: klucze blokujące = HMAC(kod fonetyczny imienia/nazwiska + data urodzenia / PESEL);
+-- para trafia do oceny tylko przy wspólnym kluczu. Przechowywane, żeby kolejne przebiegi oceniały tylko nowych pacjentów.
+set search_path to emr, public;
+
+CREATE TABLE IF NOT EXISTS emr.patient_blocking_keys (
+    block_key  varchar(32) NOT NULL,
+    patient_id uuid NOT NULL REFERENCES emr.patients(id) ON DELETE CASCADE,
+    PRIMARY KEY (block_key, patient_id)
+);
+
+CREATE INDEX IF NOT EXISTS idx_patient_blocking_keys_patient ON emr.patient_blocking_keys (patient_id);
+
+-- Kandydaci do przeglądu: patient_a < patient_b; decyzja (CONFIRMED / REJECTED) nie jest nadpisywana kolejnymi przebiegami.
+CREATE TABLE IF NOT EXISTS emr.patient_duplicate_candidates (
+    patient_a   uuid NOT NULL REFERENCES emr.patients(id) ON DELETE CASCADE,
+    patient_b   uuid NOT NULL REFERENCES emr.patients(id) ON DELETE CASCADE,
+    score       double precision NOT NULL,
+    reasons     varchar(200),
+    status      varchar(20) NOT NULL DEFAULT 'OPEN',
+    found_at    timestamptz NOT NULL DEFAULT now(),
+    reviewed_by uuid REFERENCES emr.users(id),
+    reviewed_at timestamptz,
+    PRIMARY KEY (patient_a, patient_b),
+    CONSTRAINT chk_patient_duplicate_status CHECK (status IN ('OPEN', 'CONFIRMED', 'REJECTED'))
+);
+
+CREATE INDEX IF NOT EXISTS idx_patient_duplicate_candidates_status ON emr.patient_duplicate_candidates (status, score DESC);
+
+-- Historia przebiegów; watermark (created_at) ostatniego ukończonego przebiegu wyznacza pacjentów dla przebiegu
+-- przyrostowego, a nieukończony przebieg pełny (klucze blokujące wyczyszczone) wymusza kolejny pełny.
+CREATE TABLE IF NOT EXISTS emr.patient_dedup_runs (
+    id          uuid PRIMARY KEY,
+    mode        varchar(20) NOT NULL,
+    state       varchar(20) NOT NULL,
+    key_id      varchar(50) NOT NULL,
+    watermark   timestamptz NOT NULL,
+    patients    bigint NOT NULL DEFAULT 0,
+    pairs       bigint NOT NULL DEFAULT 0,
+    candidates  bigint NOT NULL DEFAULT 0,
+    started_at  timestamptz NOT NULL,
+    finished_at timestamptz
+);
+
+CREATE INDEX IF NOT EXISTS idx_patient_dedup_runs_started ON emr.patient_dedup_runs (started_at DESC);
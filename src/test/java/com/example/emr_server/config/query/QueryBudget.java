@@ -0,0 +1,26 @@
+package com.example.emr_server.config.query;
+
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Budżet zapytań SQL Hibernate dla testu: test nie przechodzi, gdy wykona więcej niż {@link #max()} instrukcji
+ * albo gdy jeden kształt zapytania powtórzy się więcej niż {@link #maxRepeats()} razy (N+1).
+ * Liczone jest tylko ciało testu (bez @BeforeEach), w wątku testu. Na klasie – domyślny budżet dla wszystkich metod.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.METHOD, ElementType.TYPE})
+@ExtendWith(QueryBudgetExtension.class)
+public @interface QueryBudget {
+
+    int max();
+
+    /** -1 = bez osobnego limitu powtórzeń (obowiązuje tylko {@link #max()}). */
+    int maxRepeats() default -1;
+}
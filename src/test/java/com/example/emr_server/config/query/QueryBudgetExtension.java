@@ -0,0 +1,57 @@
+package com.example.emr_server.config.query;
+
+import org.junit.jupiter.api.extension.AfterTestExecutionCallback;
+import org.junit.jupiter.api.extension.BeforeTestExecutionCallback;
+import org.junit.jupiter.api.extension.ExtensionContext;
+import org.junit.platform.commons.support.AnnotationSupport;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.fail;
+
+/**
+ * Rozszerzenie JUnit do {@link QueryBudget}: otwiera zakres {@link QueryCounter} tuż przed ciałem testu
+ * i porównuje wynik z budżetem po jego zakończeniu. Komunikat błędu wymienia powtarzane zapytania.
+ */
+public class QueryBudgetExtension implements BeforeTestExecutionCallback, AfterTestExecutionCallback {
+
+    private static final ExtensionContext.Namespace NAMESPACE = ExtensionContext.Namespace.create(QueryBudgetExtension.class);
+
+    @Override
+    public void beforeTestExecution(ExtensionContext context) {
+        context.getStore(NAMESPACE).put(context.getUniqueId(), QueryCounter.open());
+    }
+
+    @Override
+    public void afterTestExecution(ExtensionContext context) {
+        QueryCounter.Scope scope = context.getStore(NAMESPACE).remove(context.getUniqueId(), QueryCounter.Scope.class);
+        if (scope == null) return;
+        scope.close();
+        if (context.getExecutionException().isPresent()) return; // nie zasłaniamy właściwego błędu testu
+        QueryBudget budget = budget(context);
+        if (budget == null) return;
+
+        List<QueryCounter.Repeated> repeated = scope.repeatedMoreThan(1);
+        if (scope.statements() > budget.max()) {
+            fail("Przekroczony budżet zapytań: %d instrukcji, limit %d%s",
+                    scope.statements(), budget.max(), describe(repeated));
+        }
+        if (budget.maxRepeats() >= 0 && !scope.repeatedMoreThan(budget.maxRepeats()).isEmpty()) {
+            fail("Powtarzane zapytanie (N+1), limit powtórzeń %d%s", budget.maxRepeats(), describe(repeated));
+        }
+    }
+
+    private static QueryBudget budget(ExtensionContext context) {
+        return AnnotationSupport.findAnnotation(context.getTestMethod(), QueryBudget.class)
+                .or(() -> AnnotationSupport.findAnnotation(context.getTestClass(), QueryBudget.class))
+                .orElse(null);
+    }
+
+    private static String describe(List<QueryCounter.Repeated> repeated) {
+        if (repeated.isEmpty()) return "";
+        return repeated.stream()
+                .map(r -> r.count() + "x " + r.shape())
+                .collect(Collectors.joining("\n  ", "\nPowtarzane zapytania:\n  ", ""));
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.emr_server.config.query;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.servlet.HandlerMapping;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class QueryBudgetFilterTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void repeatedShapeOverLimit_countsBreachTaggedWithUriPattern() throws Exception {
+        // Given: kontroler wykonuje 1 + 6 zapytań o lekarza (N+1), limit powtórzeń 5
+        QueryBudgetFilter filter = new QueryBudgetFilter(new QueryBudgetProperties(), meterRegistry);
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/visits/patient/123");
+        request.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, "/api/visits/patient/{patientId}");
+
+        // When
+        filter.doFilter(request, new MockHttpServletResponse(), (req, res) -> {
+            QueryCounter.record("select v1_0.id from emr.visits v1_0 where v1_0.patient_id=?");
+            for (int i = 0; i < 6; i++) {
+                QueryCounter.record("select u1_0.id from emr.users u1_0 where u1_0.id=?");
+            }
+        });
+
+        // Then: metryka z wzorcem ścieżki, bez identyfikatorów; suma (7) mieści się w limicie 20
+        assertThat(meterRegistry.get("hibernate.request.statements")
+                .tag("uri", "/api/visits/patient/{patientId}").summary().totalAmount()).isEqualTo(7);
+        assertThat(meterRegistry.get("hibernate.request.budget.exceeded").tag("kind", "repeated").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.find("hibernate.request.budget.exceeded").tag("kind", "total").counter()).isNull();
+    }
+
+    @Test
+    void withinBudget_recordsSummaryWithoutBreach() throws Exception {
+        // Given
+        QueryBudgetFilter filter = new QueryBudgetFilter(new QueryBudgetProperties(), meterRegistry);
+
+        // When: brak dopasowanego wzorca (np. 404) – tag UNKNOWN zamiast surowego URI
+        filter.doFilter(new MockHttpServletRequest("GET", "/api/patients/abc"), new MockHttpServletResponse(),
+                (req, res) -> QueryCounter.record("select 1"));
+
+        // Then
+        assertThat(meterRegistry.get("hibernate.request.statements").tag("uri", "UNKNOWN").summary().count()).isEqualTo(1);
+        assertThat(meterRegistry.find("hibernate.request.budget.exceeded").counter()).isNull();
+    }
+}
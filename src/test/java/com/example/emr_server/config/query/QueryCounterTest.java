@@ -0,0 +1,38 @@
+package com.example.emr_server.config.query;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class QueryCounterTest {
+
+    @Test
+    void shape_collapsesWhitespaceAndInLists() {
+        // Given / When / Then: różna długość listy IN z batch fetch to ten sam kształt
+        assertThat(QueryCounter.shape("select p1_0.id from emr.patients p1_0 where p1_0.id in (?,?,?)"))
+                .isEqualTo(QueryCounter.shape("select p1_0.id\n  from emr.patients p1_0 where p1_0.id in (?, ?)"))
+                .isEqualTo("select p1_0.id from emr.patients p1_0 where p1_0.id in (?)");
+    }
+
+    @Test
+    void record_countsInAllOpenScopesAndIgnoresOutsideScope() {
+        // Given
+        QueryCounter.record("select 1"); // poza zakresem – pomijane
+        try (QueryCounter.Scope outer = QueryCounter.open()) {
+            QueryCounter.record("select * from emr.visits where id=?");
+            try (QueryCounter.Scope inner = QueryCounter.open()) {
+                // When
+                QueryCounter.record("select * from emr.users where id=?");
+                QueryCounter.record("select * from  emr.users where id=?");
+
+                // Then
+                assertThat(inner.statements()).isEqualTo(2);
+                assertThat(inner.mostRepeated()).get()
+                        .isEqualTo(new QueryCounter.Repeated("select * from emr.users where id=?", 2));
+            }
+            QueryCounter.record("select * from emr.visits where id=?");
+            assertThat(outer.statements()).isEqualTo(4);
+            assertThat(outer.repeatedMoreThan(1)).hasSize(2);
+        }
+    }
+}
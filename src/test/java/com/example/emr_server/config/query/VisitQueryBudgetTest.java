@@ -0,0 +1,79 @@
+package com.example.emr_server.config.query;
+
+import com.example.emr_server.entity.Patient;
+import com.example.emr_server.entity.User;
+import com.example.emr_server.entity.Visit;
+import com.example.emr_server.testsupport.EmrJpaTest;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Przykład użycia @QueryBudget: leniwe asocjacje wizyt ładowane paczkami (default_batch_fetch_size),
+ * więc liczba zapytań nie rośnie z liczbą wierszy.
+ */
+@EmrJpaTest
+class VisitQueryBudgetTest {
+
+    @Autowired
+    private EntityManager em;
+
+    @BeforeEach
+    void setUp() {
+        User doctor = user("lekarz");
+        for (int i = 0; i < 8; i++) {
+            Patient p = new Patient();
+            p.setFirstName("Anna" + i);
+            p.setLastName("Nowak");
+            p.setPesel("8502021234" + i);
+            p.setDateOfBirth(LocalDate.of(1985, 2, 2));
+            p.setCreatedBy(user("rejestracja" + i));
+            em.persist(p);
+            for (int j = 0; j < 2; j++) {
+                Visit v = new Visit();
+                v.setId(UUID.randomUUID());
+                v.setPatient(p);
+                v.setDoctor(doctor);
+                v.setVisitDate(Instant.now());
+                v.setVisitType("kontrolna");
+                em.persist(v);
+            }
+        }
+        em.flush();
+        em.clear();
+    }
+
+    @Test
+    @QueryBudget(max = 3, maxRepeats = 1)
+    void visitsWithPatientCreators_loadedInBatches() {
+        // When: wizyty + pacjenci + twórcy pacjentów – po jednym zapytaniu na poziom, nie na wiersz
+        List<Visit> visits = em.createQuery("select v from Visit v", Visit.class).getResultList();
+        long creators = visits.stream()
+                .map(v -> v.getPatient().getCreatedBy().getUsername())
+                .distinct()
+                .count();
+
+        // Then
+        assertThat(visits).hasSize(16);
+        assertThat(creators).isEqualTo(8);
+    }
+
+    private User user(String username) {
+        User u = new User();
+        u.setId(UUID.randomUUID());
+        u.setUsername(username);
+        u.setEmail(username + "@emr.local");
+        u.setPasswordHash("x");
+        u.setRole("doctor");
+        em.persist(u);
+        return u;
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.emr_server.entity.id;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UuidV7GeneratorTest {
+
+    @Test
+    void next_setsVersionVariantAndUnixMillis() {
+        // Given
+        long now = 1_760_000_000_000L;
+
+        // When
+        UUID id = UuidV7Generator.next(now, new AtomicLong());
+
+        // Then
+        assertThat(id.version()).isEqualTo(7);
+        assertThat(id.variant()).isEqualTo(2);
+        assertThat(id.getMostSignificantBits() >>> 16).isEqualTo(now);
+    }
+
+    @Test
+    void next_sameMillisecond_monotonicInDatabaseOrder() {
+        // Given: wiele id w jednej milisekundzie (paczka INSERT)
+        long now = System.currentTimeMillis();
+        AtomicLong last = new AtomicLong();
+        List<UUID> ids = new ArrayList<>();
+
+        // When
+        for (int i = 0; i < 5000; i++) ids.add(UuidV7Generator.next(now, last));
+
+        // Then: porządek jak w PostgreSQL (bajty bez znaku) = kolejność generowania; przepełnienie licznika
+        // przesuwa czas do przodu, nigdy wstecz
+        for (int i = 1; i < ids.size(); i++) {
+            assertThat(unsignedCompare(ids.get(i - 1), ids.get(i))).isNegative();
+        }
+        assertThat(ids.get(0).getMostSignificantBits() >>> 16).isEqualTo(now);
+    }
+
+    private static int unsignedCompare(UUID a, UUID b) {
+        int msb = Long.compareUnsigned(a.getMostSignificantBits(), b.getMostSignificantBits());
+        return msb != 0 ? msb : Long.compareUnsigned(a.getLeastSignificantBits(), b.getLeastSignificantBits());
+    }
+}
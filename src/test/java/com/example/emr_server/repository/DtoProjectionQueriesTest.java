@@ -0,0 +1,133 @@
+package com.example.emr_server.repository;
+
+import com.example.emr_server.config.query.QueryBudget;
+import com.example.emr_server.controller.dto.VisitDto;
+import com.example.emr_server.entity.MedicalFile;
+import com.example.emr_server.entity.Patient;
+import com.example.emr_server.entity.User;
+import com.example.emr_server.entity.Visit;
+import com.example.emr_server.repository.projection.MedicalFileListRow;
+import com.example.emr_server.repository.spec.VisitSpecifications;
+import com.example.emr_server.testsupport.EmrJpaTest;
+import jakarta.persistence.EntityManager;
+import org.hibernate.Session;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@EmrJpaTest
+class DtoProjectionQueriesTest {
+
+    private static final Instant T0 = Instant.parse("2025-03-01T08:00:00Z");
+
+    @Autowired
+    private EntityManager em;
+
+    @Autowired
+    private VisitRepository visitRepository;
+
+    @Autowired
+    private MedicalFileRepository medicalFileRepository;
+
+    private User doctor;
+    private User registrar;
+    private Patient patient;
+
+    @BeforeEach
+    void setUp() {
+        doctor = user("lekarz");
+        registrar = user("rejestracja");
+        patient = new Patient();
+        patient.setFirstName("Zofia");
+        patient.setLastName("Wiśniewska");
+        patient.setPesel("75010112345");
+        patient.setDateOfBirth(LocalDate.of(1975, 1, 1));
+        patient.setCreatedBy(registrar);
+        em.persist(patient);
+        for (int i = 0; i < 3; i++) {
+            Visit v = new Visit();
+            v.setId(UUID.randomUUID());
+            v.setPatient(patient);
+            v.setDoctor(doctor);
+            v.setVisitDate(T0.plus(i, ChronoUnit.DAYS));
+            v.setVisitType("kontrolna");
+            v.setDiagnosis("I10 Nadciśnienie");
+            v.setNotes("notatka " + i);
+            v.setStatus(i == 0 ? Visit.Status.CANCELED : Visit.Status.COMPLETED);
+            em.persist(v);
+        }
+        medicalFile("wynik.pdf", doctor);
+        medicalFile("skan.png", null);
+        em.flush();
+        em.clear();
+    }
+
+    @Test
+    @QueryBudget(max = 2)
+    void findDtos_pageOfDecryptedColumnsWithCount() {
+        // Given: filtr statusu, 1. strona po 1 wierszu – potrzebny osobny COUNT
+        var spec = VisitSpecifications.withFilters(Optional.of(patient.getId()), Optional.empty(), Optional.empty(),
+                Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(), Optional.of("completed"));
+
+        // When
+        Page<VisitDto> page = visitRepository.findDtos(spec, PageRequest.of(0, 1, Sort.by(Sort.Direction.DESC, "visitDate")));
+
+        // Then: najnowsza wizyta, pola zaszyfrowane odczytane jako plaintext, status jako nazwa
+        assertThat(page.getTotalElements()).isEqualTo(2);
+        VisitDto dto = page.getContent().get(0);
+        assertThat(dto.visitDate()).isEqualTo(T0.plus(2, ChronoUnit.DAYS));
+        assertThat(dto.patientId()).isEqualTo(patient.getId());
+        assertThat(dto.doctorId()).isEqualTo(doctor.getId());
+        assertThat(dto.diagnosis()).isEqualTo("I10 Nadciśnienie");
+        assertThat(dto.notes()).isEqualTo("notatka 2");
+        assertThat(dto.status()).isEqualTo("COMPLETED");
+        assertThat(em.unwrap(Session.class).getStatistics().getEntityCount()).isZero();
+    }
+
+    @Test
+    @QueryBudget(max = 1)
+    void findListRowsByPatientId_includesCreatorAndFilesWithoutUploader() {
+        // When
+        List<MedicalFileListRow> rows = medicalFileRepository.findListRowsByPatientId(patient.getId());
+
+        // Then: jeden SELECT, bez ładowania pacjenta; plik bez uploadera nie znika (brak złączenia z users)
+        assertThat(rows).hasSize(2)
+                .allSatisfy(r -> assertThat(r.patientCreatedById()).isEqualTo(registrar.getId()));
+        assertThat(rows).extracting(MedicalFileListRow::uploadedById).containsExactlyInAnyOrder(doctor.getId(), null);
+        assertThat(rows).extracting(r -> r.toDto().fileName()).containsExactlyInAnyOrder("wynik.pdf", "skan.png");
+    }
+
+    private void medicalFile(String name, User uploadedBy) {
+        MedicalFile f = new MedicalFile();
+        f.setId(UUID.randomUUID());
+        f.setPatient(patient);
+        f.setUploadedBy(uploadedBy);
+        f.setFileName(name);
+        f.setFilePath("/files/" + name);
+        f.setMimeType(name.endsWith(".pdf") ? "application/pdf" : "image/png");
+        em.persist(f);
+    }
+
+    private User user(String username) {
+        User u = new User();
+        u.setId(UUID.randomUUID());
+        u.setUsername(username);
+        u.setEmail(username + "@emr.local");
+        u.setPasswordHash("x");
+        u.setRole("doctor");
+        em.persist(u);
+        return u;
+    }
+}
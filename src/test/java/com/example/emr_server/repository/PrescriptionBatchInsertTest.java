@@ -0,0 +1,82 @@
+package com.example.emr_server.repository;
+
+import com.example.emr_server.config.query.QueryBudget;
+import com.example.emr_server.entity.Patient;
+import com.example.emr_server.entity.Prescription;
+import com.example.emr_server.entity.PrescriptionMedication;
+import com.example.emr_server.entity.User;
+import com.example.emr_server.testsupport.EmrJpaTest;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.time.LocalDate;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@EmrJpaTest
+class PrescriptionBatchInsertTest {
+
+    @Autowired
+    private EntityManager em;
+
+    private User doctor;
+    private Patient patient;
+
+    @BeforeEach
+    void setUp() {
+        doctor = new User();
+        doctor.setUsername("lekarz");
+        doctor.setEmail("lekarz@emr.local");
+        doctor.setPasswordHash("x");
+        doctor.setRole("doctor");
+        em.persist(doctor);
+        patient = new Patient();
+        patient.setFirstName("Jan");
+        patient.setLastName("Kowalski");
+        patient.setPesel("90010112345");
+        patient.setDateOfBirth(LocalDate.of(1990, 1, 1));
+        patient.setCreatedBy(doctor);
+        em.persist(patient);
+        em.flush();
+    }
+
+    @Test
+    void persist_assignsTimeOrderedIdsInJvm() {
+        // Then: id nadane przy persist (przed INSERT), bez gen_random_uuid()/IDENTITY
+        assertThat(doctor.getId().version()).isEqualTo(7);
+        assertThat(patient.getId().version()).isEqualTo(7);
+    }
+
+    @Test
+    @QueryBudget(max = 4) // 2 INSERT (paczki) + 2 SELECT w asercjach; bez batchowania byłoby 80 INSERT
+    void flush_prescriptionsWithItems_twoBatchedInserts() {
+        // Given: 20 recept po 3 pozycje, zapisy przeplatane (recepta, pozycje, recepta...)
+        for (int i = 0; i < 20; i++) {
+            Prescription p = new Prescription();
+            p.setPatient(patient);
+            p.setDoctor(doctor);
+            p.setDosageInfo("Stosować zgodnie z zaleceniem " + i);
+            p.setIssuedDate(LocalDate.now());
+            for (int j = 0; j < 3; j++) {
+                PrescriptionMedication item = new PrescriptionMedication();
+                item.setDosageInfo("1 tabletka " + j + "x dziennie");
+                item.setQuantity(1);
+                item.setUnit("op.");
+                p.addItem(item);
+            }
+            em.persist(p);
+        }
+
+        // When: order_inserts grupuje INSERT-y per tabela, batch_size=50 – po jednej instrukcji na paczkę
+        em.flush();
+
+        // Then
+        Long items = em.createQuery("select count(i) from PrescriptionMedication i", Long.class).getSingleResult();
+        assertThat(items).isEqualTo(60);
+        UUID any = em.createQuery("select p.id from Prescription p", UUID.class).setMaxResults(1).getSingleResult();
+        assertThat(any.version()).isEqualTo(7);
+    }
+}
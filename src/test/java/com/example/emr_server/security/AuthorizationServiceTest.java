@@ -0,0 +1,130 @@
+package com.example.emr_server.security;
+
+import com.example.emr_server.entity.Patient;
+import com.example.emr_server.entity.User;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class AuthorizationServiceTest {
+
+    @Mock
+    private ConsentCache consentCache;
+
+    @Mock
+    private Root<Patient> root;
+
+    @Mock
+    private CriteriaQuery<?> query;
+
+    @Mock
+    private CriteriaBuilder cb;
+
+    @Mock
+    private Predicate denyAll;
+
+    @Spy
+    private SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @InjectMocks
+    private AuthorizationService authorizationService;
+
+    @Test
+    void readablePatients_adminUser_returnsUnrestrictedSpec() {
+        // Given: admin user
+        User admin = user("ADMIN");
+
+        // When: building the visibility spec
+        Specification<Patient> spec = authorizationService.readablePatients(admin);
+
+        // Then: no predicate is added and consents are not queried
+        assertThat(spec.toPredicate(root, query, cb)).isNull();
+        verifyNoInteractions(cb, consentCache);
+    }
+
+    @Test
+    void readablePatients_nonClinicalRole_returnsDenyAllSpec() {
+        // Given: user without a clinical role
+        User patientUser = user("patient");
+        when(cb.disjunction()).thenReturn(denyAll);
+
+        // When: building the visibility spec
+        Specification<Patient> spec = authorizationService.readablePatients(patientUser);
+
+        // Then: predicate matches nothing
+        assertThat(spec.toPredicate(root, query, cb)).isSameAs(denyAll);
+        verify(cb).disjunction();
+        verifyNoInteractions(consentCache);
+    }
+
+    @Test
+    void readablePatients_nullUser_returnsDenyAllSpec() {
+        // Given: no authenticated user
+        when(cb.disjunction()).thenReturn(denyAll);
+
+        // When: building the visibility spec
+        Specification<Patient> spec = authorizationService.readablePatients(null);
+
+        // Then: predicate matches nothing
+        assertThat(spec.toPredicate(root, query, cb)).isSameAs(denyAll);
+        verify(cb).disjunction();
+    }
+
+    @Test
+    void canReadPatient_recordsDecisionReasonWithoutIdentifiers() {
+        // Given: nurse with an active consent, and a user without a clinical role
+        User nurse = user("NURSE");
+        Patient patient = new Patient();
+        patient.setId(UUID.randomUUID());
+        when(consentCache.hasActiveConsent(nurse, patient.getId(), "read")).thenReturn(true);
+
+        // When
+        boolean nurseAllowed = authorizationService.canReadPatient(nurse, patient);
+        boolean otherAllowed = authorizationService.canReadPatient(user("patient"), patient);
+
+        // Then: counters tagged only by action/outcome/reason
+        assertThat(nurseAllowed).isTrue();
+        assertThat(otherAllowed).isFalse();
+        assertThat(meterRegistry.get("authz.decisions").tags("action", "read", "reason", "consent").counter().count()).isEqualTo(1.0);
+        assertThat(meterRegistry.get("authz.decisions").tags("action", "read", "outcome", "denied").counter().count()).isEqualTo(1.0);
+    }
+
+    @Test
+    void canReadPatient_byIds_sameRuleWithoutPatientEntity() {
+        // Given: lekarz-twórca i lekarz bez zgody – identyfikatory z projekcji DTO
+        User creator = user("doctor");
+        User other = user("doctor");
+        UUID patientId = UUID.randomUUID();
+
+        // When / Then: twórca bez sprawdzania zgód, pozostali – zgoda z cache
+        assertThat(authorizationService.canReadPatient(creator, patientId, creator.getId())).isTrue();
+        assertThat(authorizationService.canReadPatient(other, patientId, creator.getId())).isFalse();
+        verify(consentCache).hasActiveConsent(other, patientId, "read");
+        verifyNoMoreInteractions(consentCache);
+    }
+
+    private User user(String role) {
+        User u = new User();
+        u.setId(UUID.randomUUID());
+        u.setRole(role);
+        return u;
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.emr_server.security;
+
+import com.example.emr_server.entity.Patient;
+import com.example.emr_server.entity.PatientConsent;
+import com.example.emr_server.entity.User;
+import com.example.emr_server.repository.PatientConsentRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ConsentCacheTest {
+
+    @Mock
+    private PatientConsentRepository consentRepository;
+
+    private SimpleMeterRegistry meterRegistry;
+    private ConsentCache consentCache;
+    private User doctor;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        consentCache = new ConsentCache(consentRepository, meterRegistry, Duration.ofMinutes(5), 100);
+        doctor = new User();
+        doctor.setId(UUID.randomUUID());
+    }
+
+    @Test
+    void hasActiveConsent_manyPatients_loadsConsentsOnce() {
+        // Given: doctor with read consents for 3 patients
+        List<PatientConsent> consents = List.of(
+                consent(UUID.randomUUID(), "read", null),
+                consent(UUID.randomUUID(), "read", null),
+                consent(UUID.randomUUID(), "read", null));
+        when(consentRepository.findByGrantedToAndRevokedAtIsNull(doctor)).thenReturn(consents);
+
+        // When: checking 100 rows
+        int granted = 0;
+        for (int i = 0; i < 100; i++) {
+            UUID patientId = consents.get(i % 3).getPatient().getId();
+            if (consentCache.hasActiveConsent(doctor, patientId, "read")) granted++;
+        }
+
+        // Then: single repository call, hits recorded
+        assertThat(granted).isEqualTo(100);
+        verify(consentRepository, times(1)).findByGrantedToAndRevokedAtIsNull(doctor);
+        assertThat(meterRegistry.get("cache.gets").tag("cache", "authz.consents").tag("result", "hit")
+                .functionCounter().count()).isEqualTo(99);
+    }
+
+    @Test
+    void hasActiveConsent_scopeMismatchOrExpired_returnsFalse() {
+        // Given: write consent and an already expired BTG consent
+        UUID patientId = UUID.randomUUID();
+        when(consentRepository.findByGrantedToAndRevokedAtIsNull(doctor)).thenReturn(List.of(
+                consent(patientId, "write", null),
+                consent(patientId, "btg", Instant.now().minus(1, ChronoUnit.SECONDS))));
+
+        // When / Then: neither read nor expired btg is granted
+        assertThat(consentCache.hasActiveConsent(doctor, patientId, "read")).isFalse();
+        assertThat(consentCache.hasActiveConsent(doctor, patientId, "btg")).isFalse();
+        assertThat(consentCache.hasActiveConsent(doctor, patientId, "write")).isTrue();
+    }
+
+    @Test
+    void hasActiveConsent_btgExpiresWhileCached_returnsFalseAfterExpiry() throws InterruptedException {
+        // Given: BTG consent expiring within a second
+        UUID patientId = UUID.randomUUID();
+        when(consentRepository.findByGrantedToAndRevokedAtIsNull(doctor)).thenReturn(List.of(
+                consent(patientId, "btg", Instant.now().plusMillis(300))));
+        assertThat(consentCache.hasActiveConsent(doctor, patientId, "btg")).isTrue();
+
+        // When: expiry passes
+        Thread.sleep(350);
+
+        // Then: access is no longer granted
+        assertThat(consentCache.hasActiveConsent(doctor, patientId, "btg")).isFalse();
+    }
+
+    @Test
+    void invalidate_withoutTransaction_reloadsConsents() {
+        // Given: cached empty consent set
+        UUID patientId = UUID.randomUUID();
+        when(consentRepository.findByGrantedToAndRevokedAtIsNull(doctor))
+                .thenReturn(List.of())
+                .thenReturn(List.of(consent(patientId, "btg", Instant.now().plus(30, ChronoUnit.MINUTES))));
+        assertThat(consentCache.hasActiveConsent(doctor, patientId, "btg")).isFalse();
+
+        // When: consent granted and cache invalidated
+        consentCache.invalidate(doctor.getId());
+
+        // Then: new consent is visible
+        assertThat(consentCache.hasActiveConsent(doctor, patientId, "btg")).isTrue();
+        verify(consentRepository, times(2)).findByGrantedToAndRevokedAtIsNull(doctor);
+    }
+
+    private PatientConsent consent(UUID patientId, String scope, Instant expiresAt) {
+        Patient patient = new Patient();
+        patient.setId(patientId);
+        PatientConsent c = new PatientConsent();
+        c.setId(UUID.randomUUID());
+        c.setPatient(patient);
+        c.setGrantedTo(doctor);
+        c.setScope(scope);
+        c.setExpiresAt(expiresAt);
+        return c;
+    }
+}
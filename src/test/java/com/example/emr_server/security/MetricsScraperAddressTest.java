@@ -0,0 +1,47 @@
+package com.example.emr_server.security;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.web.util.matcher.IpAddressMatcher;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MetricsScraperAddressTest {
+
+    private static final List<IpAddressMatcher> PROXIES = List.of(new IpAddressMatcher("10.0.0.0/8"));
+
+    /** Jak ForwardedHeaderFilter: getRemoteAddr() z X-Forwarded-For, pierwszy wpis. */
+    private static HttpServletRequest forwarded(String socket, String xForwardedFor) {
+        MockHttpServletRequest raw = new MockHttpServletRequest("GET", "/actuator/prometheus");
+        raw.setRemoteAddr(socket);
+        if (xForwardedFor != null) raw.addHeader("X-Forwarded-For", xForwardedFor);
+        return new HttpServletRequestWrapper(raw) {
+            @Override
+            public String getRemoteAddr() {
+                return xForwardedFor != null ? xForwardedFor.split(",")[0].trim() : socket;
+            }
+        };
+    }
+
+    @Test
+    void spoofedForwardedFor_fromUntrustedPeer_isIgnored() {
+        // When / Then: klient z zewnątrz podaje localhost – liczy się adres gniazda
+        assertThat(SecurityConfig.scraperAddress(forwarded("203.0.113.7", "127.0.0.1"), PROXIES)).isEqualTo("203.0.113.7");
+        assertThat(SecurityConfig.scraperAddress(forwarded("203.0.113.7", "127.0.0.1"), List.of())).isEqualTo("203.0.113.7");
+    }
+
+    @Test
+    void trustedProxy_usesRightmostAddressOutsideProxies() {
+        // Given: klient dopisał fałszywy localhost, nasze proxy dopisało jego prawdziwy adres i swój
+        HttpServletRequest request = forwarded("10.0.0.5", "127.0.0.1, 198.51.100.20, 10.0.0.9");
+
+        // When / Then
+        assertThat(SecurityConfig.scraperAddress(request, PROXIES)).isEqualTo("198.51.100.20");
+        assertThat(SecurityConfig.scraperAddress(forwarded("10.0.0.5", "127.0.0.1"), PROXIES)).isEqualTo("127.0.0.1");
+        assertThat(SecurityConfig.scraperAddress(forwarded("10.0.0.5", "evil.example, 10.0.0.9"), PROXIES)).isNull();
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.emr_server.security;
+
+import com.example.emr_server.entity.User;
+import com.example.emr_server.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class PrincipalCacheTest {
+
+    @Mock
+    private UserRepository userRepository;
+
+    private PrincipalCache principalCache;
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        principalCache = new PrincipalCache(userRepository, new SimpleMeterRegistry(), Duration.ofSeconds(30), 100);
+        user = new User();
+        user.setId(UUID.randomUUID());
+        user.setRole("doctor");
+        user.setAccountLocked(false);
+    }
+
+    @Test
+    void getActiveUser_sameToken_loadsUserOnce() {
+        // Given: existing active user
+        when(userRepository.findById(user.getId())).thenReturn(Optional.of(user));
+
+        // When: authenticating 10 requests with the same token
+        for (int i = 0; i < 10; i++) {
+            assertThat(principalCache.getActiveUser(user.getId(), 1000L)).get().usingRecursiveComparison().isEqualTo(user);
+        }
+
+        // Then: single database lookup
+        verify(userRepository, times(1)).findById(user.getId());
+    }
+
+    @Test
+    void getActiveUser_afterLockAndInvalidate_rejectsUser() {
+        // Given: cached principal
+        User locked = new User();
+        locked.setId(user.getId());
+        locked.setAccountLocked(true);
+        when(userRepository.findById(user.getId()))
+                .thenReturn(Optional.of(user))
+                .thenReturn(Optional.of(locked));
+        assertThat(principalCache.getActiveUser(user.getId(), 1000L)).isPresent();
+
+        // When: account locked and cache invalidated
+        principalCache.invalidate(user.getId());
+
+        // Then: locked account is rejected and not cached
+        assertThat(principalCache.getActiveUser(user.getId(), 1000L)).isEmpty();
+        assertThat(principalCache.getActiveUser(user.getId(), 1000L)).isEmpty();
+        verify(userRepository, times(3)).findById(user.getId());
+    }
+
+    @Test
+    void invalidate_removesEntriesForAllTokensOfUser() {
+        // Given: two tokens of the same user cached
+        when(userRepository.findById(user.getId())).thenReturn(Optional.of(user));
+        principalCache.getActiveUser(user.getId(), 1000L);
+        principalCache.getActiveUser(user.getId(), 2000L);
+
+        // When: invalidating the user
+        principalCache.invalidate(user.getId());
+        principalCache.getActiveUser(user.getId(), 1000L);
+        principalCache.getActiveUser(user.getId(), 2000L);
+
+        // Then: both tokens reloaded
+        verify(userRepository, times(4)).findById(user.getId());
+    }
+
+    @Test
+    void getActiveUser_concurrentRequests_getIndependentCopies() {
+        // Given: cached principal
+        user.setUsername("jkowalski");
+        user.setEmail("jan@example.com");
+        user.setPasswordHash("old-hash");
+        user.setMfaEnabled(false);
+        user.setFailedLoginAttempts(0);
+        when(userRepository.findById(user.getId())).thenReturn(Optional.of(user));
+        principalCache.getActiveUser(user.getId(), 1000L);
+        User first = principalCache.getActiveUser(user.getId(), 1000L).orElseThrow();
+        assertThat(first).isNotSameAs(user).usingRecursiveComparison().isEqualTo(user);
+
+        // When: one request mutates its principal (e.g. password change, MFA setup)
+        first.setPasswordHash("new-hash");
+        first.setMfaEnabled(true);
+        User second = principalCache.getActiveUser(user.getId(), 1000L).orElseThrow();
+
+        // Then: another request of the same user sees the cached state
+        assertThat(second).isNotSameAs(first).usingRecursiveComparison().isEqualTo(user);
+        assertThat(second.getPasswordHash()).isEqualTo("old-hash");
+        assertThat(second.getMfaEnabled()).isFalse();
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.emr_server.security;
+
+import com.example.emr_server.entity.User;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManager;
+import org.hibernate.Session;
+import org.hibernate.jdbc.ReturningWork;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class RlsContextBinderTest {
+
+    @Mock
+    private EntityManager em;
+
+    @Mock
+    private Session session;
+
+    @Mock
+    private Connection connection;
+
+    @Mock
+    private DatabaseMetaData metaData;
+
+    @Mock
+    private PreparedStatement statement;
+
+    private SimpleMeterRegistry meterRegistry;
+    private RlsContextBinder binder;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        meterRegistry = new SimpleMeterRegistry();
+        binder = new RlsContextBinder(meterRegistry);
+        when(em.unwrap(Session.class)).thenReturn(session);
+        when(session.doReturningWork(any())).thenAnswer(inv -> inv.<ReturningWork<?>>getArgument(0).execute(connection));
+        when(connection.getMetaData()).thenReturn(metaData);
+        when(metaData.getDatabaseProductName()).thenReturn("PostgreSQL");
+        when(connection.prepareStatement(anyString())).thenReturn(statement);
+        authenticate("doctor");
+    }
+
+    @AfterEach
+    void tearDown() {
+        binder.unbind();
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void ensureBound_sameUserInTransaction_skipsSetConfig() throws Exception {
+        // Given: context bound at transaction start
+        binder.bindNewTransaction(em);
+
+        // When: three nested @Transactional calls
+        binder.ensureBound(em);
+        binder.ensureBound(em);
+        binder.ensureBound(em);
+
+        // Then: a single set_config statement, three avoided
+        verify(connection, times(1)).prepareStatement(anyString());
+        assertThat(meterRegistry.counter("rls.set_config.executed").count()).isEqualTo(1);
+        assertThat(meterRegistry.counter("rls.set_config.avoided").count()).isEqualTo(3);
+    }
+
+    @Test
+    void ensureBound_userChangedInTransaction_setsContextAgain() throws Exception {
+        // Given: context bound for one user
+        binder.bindNewTransaction(em);
+
+        // When: authentication changes mid-transaction
+        authenticate("nurse");
+        binder.ensureBound(em);
+
+        // Then: user id and role are set again in one statement
+        verify(connection, times(2)).prepareStatement(anyString());
+        verify(statement).setString(2, "nurse");
+        assertThat(meterRegistry.counter("rls.set_config.avoided").count()).isZero();
+    }
+
+    private void authenticate(String role) {
+        User user = new User();
+        user.setId(UUID.randomUUID());
+        user.setRole(role);
+        CustomUserDetails cud = new CustomUserDetails(user);
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken(cud, null, cud.getAuthorities()));
+    }
+}
@@ -1,9 +1,10 @@
 package com.example.emr_server.security;
 
+import com.example.emr_server.security.monitoring.SecurityMonitoringProperties;
+import com.example.emr_server.security.monitoring.SuspiciousActivityDetector;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
@@ -17,8 +18,10 @@ import static org.assertj.core.api.Assertions.assertThatThrownBy;
 @ExtendWith(MockitoExtension.class)
 class SecurityMonitoringServiceTest {
 
-    @InjectMocks
-    private SecurityMonitoringService securityMonitoringService;
+    private final SuspiciousActivityDetector detector = new SuspiciousActivityDetector(new SecurityMonitoringProperties());
+
+    // zdarzenia przetwarzane synchronicznie w wątku testu
+    private final SecurityMonitoringService securityMonitoringService = new SecurityMonitoringService(detector, Runnable::run);
 
     @Test
     @DisplayName("logSecurityEvent_authenticationFailure_logsWarning")
@@ -103,4 +106,23 @@ class SecurityMonitoringServiceTest {
         // Then: no exception thrown (service handles nulls gracefully)
         assertThat(eventType).isNotNull();
     }
+
+    @Test
+    @DisplayName("logSecurityEvent_repeatedFailures_trackedPerIpInDetector")
+    void logSecurityEvent_repeatedFailures_trackedPerIpInDetector() {
+        // Given: 12 authentication failures from one IP, 1 from another
+        for (int i = 0; i < 12; i++) {
+            securityMonitoringService.logSecurityEvent(SecurityMonitoringService.SecurityEventType.AUTHENTICATION_FAILURE,
+                "user" + i, "Invalid password", "198.51.100.7");
+        }
+        securityMonitoringService.logSecurityEvent(SecurityMonitoringService.SecurityEventType.AUTHENTICATION_FAILURE,
+            "other", "Invalid password", "198.51.100.8");
+
+        // When
+        var top = detector.topOffenders(SecurityMonitoringService.SecurityEventType.AUTHENTICATION_FAILURE, 5);
+
+        // Then: heaviest IP first
+        assertThat(top).first().isEqualTo(new SuspiciousActivityDetector.Offender("198.51.100.7", 12));
+        assertThat(top).hasSize(2);
+    }
 }
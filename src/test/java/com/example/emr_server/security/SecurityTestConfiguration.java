@@ -1,5 +1,7 @@
 package com.example.emr_server.security;
 
+import com.example.emr_server.security.monitoring.SecurityMonitoringProperties;
+import com.example.emr_server.security.monitoring.SuspiciousActivityDetector;
 import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Primary;
@@ -16,7 +18,7 @@ public class SecurityTestConfiguration {
     @Bean
     @Primary
     public SecurityMonitoringService testSecurityMonitoringService() {
-        return new SecurityMonitoringService() {
+        return new SecurityMonitoringService(new SuspiciousActivityDetector(new SecurityMonitoringProperties()), Runnable::run) {
             @Override
             public void logSecurityEvent(SecurityEventType eventType, String userId, String details, String ipAddress) {
                 // Simplified logging for tests - just log to console
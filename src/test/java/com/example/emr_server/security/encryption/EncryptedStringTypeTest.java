@@ -0,0 +1,94 @@
+package com.example.emr_server.security.encryption;
+
+import com.example.emr_server.entity.Patient;
+import com.example.emr_server.testsupport.EmrJpaTest;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.TestPropertySource;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@EmrJpaTest
+@TestPropertySource(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+class EncryptedStringTypeTest {
+
+    private static final int PATIENTS = 20;
+
+    @Autowired
+    private EntityManager em;
+
+    @Autowired
+    private EntityManagerFactory emf;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        statistics = emf.unwrap(SessionFactory.class).getStatistics();
+        for (int i = 0; i < PATIENTS; i++) {
+            Patient p = new Patient();
+            p.setFirstName("Jan" + i);
+            p.setLastName("Kowalski");
+            p.setPesel("9001011234" + (i % 10));
+            p.setAddress("ul. Testowa " + i);
+            p.setDateOfBirth(LocalDate.of(1990, 1, 1));
+            em.persist(p);
+        }
+        em.flush();
+        em.clear();
+        statistics.clear();
+    }
+
+    @Test
+    void loadingAndReadingPatients_issuesNoUpdates() {
+        // When: loading and reading all encrypted fields, then flushing the session
+        List<Patient> patients = em.createQuery("select p from Patient p", Patient.class).getResultList();
+        patients.forEach(p -> assertThat(p.getFirstName() + p.getLastName() + p.getPesel() + p.getAddress()).isNotBlank());
+        em.flush();
+
+        // Then: plaintext in entities and no UPDATE from dirty checking
+        assertThat(patients).hasSize(PATIENTS);
+        assertThat(patients).allSatisfy(p -> assertThat(p.getLastName()).isEqualTo("Kowalski"));
+        assertThat(statistics.getEntityUpdateCount()).isZero();
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+    }
+
+    @Test
+    void storedColumns_containCiphertext() {
+        // When: reading raw column values
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = em.createNativeQuery("select last_name, address from emr.patients").getResultList();
+
+        // Then: deterministic and random formats are kept
+        assertThat(rows).hasSize(PATIENTS);
+        assertThat(rows).allSatisfy(r -> {
+            assertThat((String) r[0]).startsWith("v1d:");
+            assertThat((String) r[1]).startsWith("v2r:");
+        });
+        assertThat(rows.stream().map(r -> r[0]).distinct()).hasSize(1);
+    }
+
+    @Test
+    void modifyingEncryptedField_issuesSingleUpdate() {
+        // Given: loaded patients
+        List<Patient> patients = em.createQuery("select p from Patient p", Patient.class).getResultList();
+
+        // When: changing one plaintext value
+        patients.get(0).setLastName("Nowak");
+        em.flush();
+        em.clear();
+
+        // Then: only the modified entity is updated and the new value round-trips
+        assertThat(statistics.getEntityUpdateCount()).isEqualTo(1);
+        Patient reloaded = em.find(Patient.class, patients.get(0).getId());
+        assertThat(reloaded.getLastName()).isEqualTo("Nowak");
+    }
+}
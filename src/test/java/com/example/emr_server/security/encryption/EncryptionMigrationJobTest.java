@@ -0,0 +1,288 @@
+package com.example.emr_server.security.encryption;
+
+import com.example.emr_server.entity.LabResult;
+import com.example.emr_server.entity.Patient;
+import com.example.emr_server.testsupport.EmrTestDatabase;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EncryptionMigrationJobTest {
+
+    private static final int PATIENTS = 50;
+
+    private EmbeddedDatabase db;
+    private JdbcTemplate jdbcTemplate;
+    private EncryptionService encryptionService;
+    private final EncryptionMigrationProperties properties = new EncryptionMigrationProperties();
+
+    @BeforeEach
+    void setUp() {
+        db = EmrTestDatabase.create();
+        jdbcTemplate = new JdbcTemplate(db);
+        for (int i = 0; i < PATIENTS; i++) {
+            jdbcTemplate.update("INSERT INTO emr.patients(id, first_name, last_name, pesel, date_of_birth, address) "
+                    + "VALUES (?, ?, ?, ?, DATE '1990-01-01', ?)", UUID.randomUUID(),
+                    "Jan" + i, "Kowalski", String.format("900101%05d", i), i % 5 == 0 ? null : "ul. Długa " + i);
+        }
+        jdbcTemplate.update("INSERT INTO emr.lab_results(id, patient_id, test_name, result) VALUES (?, ?, 'Morfologia', 'w normie')",
+                UUID.randomUUID(), UUID.randomUUID());
+
+        encryptionService = TestEncryptionKeys.encryptionService();
+
+        // małe zakresy i strony – wiele zakresów kończy się poza kolejnością na kilku wątkach
+        properties.setThreads(3);
+        properties.setChunkSize(7);
+        properties.setPageSize(3);
+        properties.setMaxRowsPerSecond(0);
+    }
+
+    @AfterEach
+    void tearDown() {
+        db.shutdown();
+    }
+
+    private EncryptionMigrationJob job(EncryptionService service) {
+        return new EncryptionMigrationJob(jdbcTemplate, service, properties, new SimpleMeterRegistry(),
+                List.of(Patient.class, LabResult.class));
+    }
+
+    private void runToEnd(EncryptionMigrationJob job, EncryptionMigrationJob.Mode mode) throws InterruptedException {
+        assertThat(job.start(mode, false)).isTrue();
+        assertThat(job.await(Duration.ofSeconds(30))).isTrue();
+    }
+
+    private int plainPatients() {
+        return jdbcTemplate.queryForObject("SELECT count(*) FROM emr.patients WHERE first_name NOT LIKE 'v1d:%' "
+                + "OR pesel NOT LIKE 'v1d:%' OR (address IS NOT NULL AND address NOT LIKE 'v2r:%')", Integer.class);
+    }
+
+    @Test
+    void migrate_encryptsAllRowsAcrossChunks_andMarksTablesCompleted() throws Exception {
+        // Given
+        EncryptionMigrationJob job = job(encryptionService);
+
+        // When
+        runToEnd(job, EncryptionMigrationJob.Mode.MIGRATE);
+
+        // Then: każdy wiersz zaszyfrowany, odczytywalny, checkpointy obu tabel zakończone
+        EncryptionMigrationJob.Progress progress = job.progress();
+        assertThat(progress.state()).isEqualTo(EncryptionMigrationJob.State.COMPLETED);
+        assertThat(progress.scanned()).isEqualTo(PATIENTS + 1);
+        assertThat(progress.migrated()).isEqualTo(PATIENTS + 1);
+        assertThat(progress.remainingPlain()).isZero();
+        assertThat(plainPatients()).isZero();
+        String pesel = jdbcTemplate.queryForObject("SELECT pesel FROM emr.patients ORDER BY id LIMIT 1", String.class);
+        assertThat(encryptionService.decryptField("patient.pesel", pesel)).matches("900101\\d{5}");
+        assertThat(jdbcTemplate.queryForObject("SELECT sum(rows_scanned) FROM emr.encryption_migration_checkpoints "
+                + "WHERE completed", Long.class)).isEqualTo(PATIENTS + 1);
+    }
+
+    @Test
+    void migrate_resumesAfterCheckpoint_andSkipsCompletedTables() throws Exception {
+        // Given: checkpoint w połowie pacjentów, wyniki badań już zakończone
+        List<UUID> ids = jdbcTemplate.queryForList("SELECT id FROM emr.patients ORDER BY id", UUID.class);
+        UUID checkpoint = ids.get(PATIENTS / 2 - 1);
+        jdbcTemplate.update("INSERT INTO emr.encryption_migration_checkpoints(table_name, last_id, completed, key_id, updated_at) "
+                + "VALUES ('emr.patients', ?, FALSE, 'k1', CURRENT_TIMESTAMP), ('emr.lab_results', NULL, TRUE, 'k1', CURRENT_TIMESTAMP)",
+                checkpoint);
+        EncryptionMigrationJob job = job(encryptionService);
+
+        // When
+        runToEnd(job, EncryptionMigrationJob.Mode.MIGRATE);
+
+        // Then: przetworzona tylko druga połowa
+        assertThat(job.progress().scanned()).isEqualTo(PATIENTS / 2);
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM emr.patients WHERE pesel NOT LIKE 'v1d:%'", Integer.class))
+                .isEqualTo(PATIENTS / 2);
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM emr.patients WHERE id > ? AND pesel NOT LIKE 'v1d:%'",
+                Integer.class, checkpoint)).isZero();
+        assertThat(jdbcTemplate.queryForObject("SELECT result FROM emr.lab_results", String.class)).isEqualTo("w normie");
+    }
+
+    @Test
+    void validate_countsPlaintextWithoutWriting() throws Exception {
+        // Given
+        EncryptionMigrationJob job = job(encryptionService);
+
+        // When
+        runToEnd(job, EncryptionMigrationJob.Mode.VALIDATE);
+
+        // Then
+        assertThat(job.progress().remainingPlain()).isEqualTo(PATIENTS + 1);
+        assertThat(job.progress().migrated()).isZero();
+        assertThat(plainPatients()).isEqualTo(PATIENTS);
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM emr.encryption_migration_checkpoints", Integer.class)).isZero();
+    }
+
+    @Test
+    void migrate_rowChangedConcurrently_isNotOverwritten() throws Exception {
+        // Given: aplikacja zapisuje pierwszego pacjenta (już zaszyfrowanego, z nowym adresem) między odczytem a UPDATE migracji
+        UUID first = jdbcTemplate.queryForObject("SELECT id FROM emr.patients ORDER BY id LIMIT 1", UUID.class);
+        AtomicBoolean written = new AtomicBoolean();
+        EncryptionService racing = new EncryptionService() {
+            @Override
+            public String encryptField(String fieldName, Encrypted.Mode mode, String plaintext) {
+                if (written.compareAndSet(false, true)) {
+                    jdbcTemplate.update("UPDATE emr.patients SET first_name = ?, last_name = ?, pesel = ?, address = ? WHERE id = ?",
+                            encryptionService.encryptField("patient.first_name", Encrypted.Mode.DETERMINISTIC, "Jan"),
+                            encryptionService.encryptField("patient.last_name", Encrypted.Mode.DETERMINISTIC, "Kowalski"),
+                            encryptionService.encryptField("patient.pesel", Encrypted.Mode.DETERMINISTIC, "90010199999"),
+                            encryptionService.encryptField("patient.address", Encrypted.Mode.RANDOM, "ul. Nowa 1"), first);
+                }
+                return encryptionService.encryptField(fieldName, mode, plaintext);
+            }
+        };
+        TestEncryptionKeys.init(racing);
+        properties.setThreads(1);
+        EncryptionMigrationJob job = job(racing);
+
+        // When
+        runToEnd(job, EncryptionMigrationJob.Mode.MIGRATE);
+
+        // Then: zapis aplikacji zachowany, konflikt policzony
+        String address = jdbcTemplate.queryForObject("SELECT address FROM emr.patients WHERE id = ?", String.class, first);
+        assertThat(encryptionService.decryptField("patient.address", address)).isEqualTo("ul. Nowa 1");
+        assertThat(job.progress().conflicts()).isEqualTo(1);
+        assertThat(plainPatients()).isZero();
+    }
+
+    @Test
+    void migrate_afterKeyRotation_reencryptsOldKeyValues_andIgnoresOldCheckpoints() throws Exception {
+        // Given: dane zaszyfrowane kluczem k1 (przebieg zakończony), potem aktywacja k2
+        runToEnd(job(encryptionService), EncryptionMigrationJob.Mode.MIGRATE);
+        String peselK1 = jdbcTemplate.queryForObject("SELECT pesel FROM emr.patients ORDER BY id LIMIT 1", String.class);
+        byte[] next = new byte[32];
+        next[0] = 42;
+        encryptionService.reloadKeys(Base64.getEncoder().encodeToString(next), "k2");
+        EncryptionMigrationJob job = job(encryptionService);
+
+        // When
+        runToEnd(job, EncryptionMigrationJob.Mode.MIGRATE);
+
+        // Then: wszystkie wartości w k2, odczyt bez zmian, checkpointy przypisane do k2
+        assertThat(job.progress().keyId()).isEqualTo("k2");
+        assertThat(job.progress().migrated()).isEqualTo(PATIENTS + 1);
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM emr.patients WHERE pesel NOT LIKE 'v1d:k2:%' "
+                + "OR (address IS NOT NULL AND address NOT LIKE 'v2r:k2:%')", Integer.class)).isZero();
+        String peselK2 = jdbcTemplate.queryForObject("SELECT pesel FROM emr.patients ORDER BY id LIMIT 1", String.class);
+        assertThat(encryptionService.decryptField("patient.pesel", peselK2))
+                .isEqualTo(encryptionService.decryptField("patient.pesel", peselK1));
+        assertThat(jdbcTemplate.queryForList("SELECT DISTINCT key_id FROM emr.encryption_migration_checkpoints", String.class))
+                .containsExactly("k2");
+    }
+
+    @Test
+    void migrate_afterKeyRotation_countsDuplicatePeselAsConflict_andCompletes() throws Exception {
+        // Given: PESEL zapisany kluczem k1, a po aktywacji k2 ten sam PESEL u drugiego pacjenta
+        runToEnd(job(encryptionService), EncryptionMigrationJob.Mode.MIGRATE);
+        jdbcTemplate.execute("ALTER TABLE emr.patients ADD CONSTRAINT patients_pesel_uq UNIQUE (pesel)");
+        UUID first = jdbcTemplate.queryForObject("SELECT id FROM emr.patients ORDER BY id LIMIT 1", UUID.class);
+        String peselK1 = jdbcTemplate.queryForObject("SELECT pesel FROM emr.patients WHERE id = ?", String.class, first);
+        byte[] next = new byte[32];
+        next[0] = 42;
+        encryptionService.reloadKeys(Base64.getEncoder().encodeToString(next), "k2");
+        String plain = encryptionService.decryptField("patient.pesel", peselK1);
+        jdbcTemplate.update("INSERT INTO emr.patients(id, first_name, last_name, pesel, date_of_birth) VALUES (?, ?, ?, ?, DATE '1990-01-01')",
+                UUID.randomUUID(), encryptionService.encryptField("patient.first_name", Encrypted.Mode.DETERMINISTIC, "Jan"),
+                encryptionService.encryptField("patient.last_name", Encrypted.Mode.DETERMINISTIC, "Kowalski"),
+                encryptionService.encryptField("patient.pesel", Encrypted.Mode.DETERMINISTIC, plain));
+        EncryptionMigrationJob job = job(encryptionService);
+
+        // When
+        runToEnd(job, EncryptionMigrationJob.Mode.MIGRATE);
+
+        // Then: przebieg zakończony, duplikat policzony jako konflikt i pozostawiony przy k1, reszta w k2
+        EncryptionMigrationJob.Progress progress = job.progress();
+        assertThat(progress.state()).isEqualTo(EncryptionMigrationJob.State.COMPLETED);
+        assertThat(progress.conflicts()).isEqualTo(1);
+        assertThat(progress.remainingStale()).isEqualTo(1);
+        assertThat(progress.migrated()).isEqualTo(PATIENTS);
+        assertThat(jdbcTemplate.queryForObject("SELECT pesel FROM emr.patients WHERE id = ?", String.class, first))
+                .isEqualTo(peselK1);
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM emr.patients WHERE pesel NOT LIKE 'v1d:k2:%'",
+                Integer.class)).isEqualTo(1);
+    }
+
+    @Test
+    void migrate_rewritesLegacyRandomFormat() throws Exception {
+        // Given: adresy zapisane w poprzednim formacie losowym v1r (bez bajtu formatu i AAD)
+        List<UUID> ids = jdbcTemplate.queryForList("SELECT id FROM emr.patients WHERE address IS NOT NULL ORDER BY id", UUID.class);
+        for (UUID id : ids) {
+            jdbcTemplate.update("UPDATE emr.patients SET address = ? WHERE id = ?", legacyRandom("patient.address", "ul. Stara 7"), id);
+        }
+        EncryptionMigrationJob job = job(encryptionService);
+
+        // When
+        runToEnd(job, EncryptionMigrationJob.Mode.MIGRATE);
+
+        // Then: wszystkie adresy przepisane do v2r, treść bez zmian
+        assertThat(plainPatients()).isZero();
+        String address = jdbcTemplate.queryForObject("SELECT address FROM emr.patients WHERE id = ?", String.class, ids.get(0));
+        assertThat(encryptionService.decryptField("patient.address", address)).isEqualTo("ul. Stara 7");
+    }
+
+    private static String legacyRandom(String field, String plaintext) throws Exception {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(TestEncryptionKeys.master(), "HmacSHA256"));
+        SecretKeySpec key = new SecretKeySpec(mac.doFinal(("RND:" + field).getBytes(StandardCharsets.UTF_8)), "AES");
+        byte[] iv = new byte[12];
+        new SecureRandom().nextBytes(iv);
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(128, iv));
+        byte[] ct = cipher.doFinal(plaintext.getBytes(StandardCharsets.UTF_8));
+        byte[] all = new byte[iv.length + ct.length];
+        System.arraycopy(iv, 0, all, 0, iv.length);
+        System.arraycopy(ct, 0, all, iv.length, ct.length);
+        return "v1r:k1:" + Base64.getUrlEncoder().withoutPadding().encodeToString(all);
+    }
+
+    @Test
+    void validate_afterKeyRotation_countsStaleKeyValues() throws Exception {
+        // Given
+        runToEnd(job(encryptionService), EncryptionMigrationJob.Mode.MIGRATE);
+        byte[] next = new byte[32];
+        next[0] = 42;
+        encryptionService.reloadKeys(Base64.getEncoder().encodeToString(next), "k2");
+        EncryptionMigrationJob job = job(encryptionService);
+
+        // When
+        runToEnd(job, EncryptionMigrationJob.Mode.VALIDATE);
+
+        // Then
+        assertThat(job.progress().remainingStale()).isEqualTo(PATIENTS + 1);
+        assertThat(job.progress().remainingPlain()).isZero();
+    }
+
+    @Test
+    void migrate_respectsRowsPerSecondLimit() throws Exception {
+        // Given: 51 wierszy w ~23 stronach po 3 wiersze, limit 200 wierszy/s (15 ms na stronę)
+        properties.setMaxRowsPerSecond(200);
+        EncryptionMigrationJob job = job(encryptionService);
+        long start = System.nanoTime();
+
+        // When
+        runToEnd(job, EncryptionMigrationJob.Mode.MIGRATE);
+
+        // Then: przebieg rozciągnięty w czasie mimo 3 wątków
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isGreaterThan(Duration.ofMillis(250));
+        assertThat(plainPatients()).isZero();
+    }
+}
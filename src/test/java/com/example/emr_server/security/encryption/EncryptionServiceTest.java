@@ -0,0 +1,272 @@
+package com.example.emr_server.security.encryption;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyStore;
+import java.util.Base64;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class EncryptionServiceTest {
+
+    private static final byte[] MASTER = TestEncryptionKeys.master();
+
+    private EncryptionService service;
+
+    @BeforeEach
+    void setUp() {
+        service = TestEncryptionKeys.encryptionService();
+    }
+
+    @Test
+    void encryptDeterministic_matchesReferenceFormat() throws Exception {
+        // Given: reference computation (HMAC subkey, HMAC-derived IV, AES-GCM)
+        String plaintext = "Łukasz Żółć";
+        SecretKeySpec subKey = new SecretKeySpec(hmac(MASTER, "DET:patient.first_name"), "AES");
+        byte[] iv = new byte[12];
+        System.arraycopy(hmac(subKey.getEncoded(), plaintext), 0, iv, 0, 12);
+        Cipher c = Cipher.getInstance("AES/GCM/NoPadding");
+        c.init(Cipher.ENCRYPT_MODE, subKey, new GCMParameterSpec(128, iv));
+        byte[] ct = c.doFinal(plaintext.getBytes(StandardCharsets.UTF_8));
+        byte[] all = new byte[iv.length + ct.length];
+        System.arraycopy(iv, 0, all, 0, iv.length);
+        System.arraycopy(ct, 0, all, iv.length, ct.length);
+        String expected = "v1d:k1:" + Base64.getUrlEncoder().withoutPadding().encodeToString(all);
+
+        // When / Then: stored format unchanged
+        assertThat(service.encryptDeterministic("patient.first_name", plaintext)).isEqualTo(expected);
+        assertThat(service.decryptDeterministic("patient.first_name", expected)).isEqualTo(plaintext);
+    }
+
+    @Test
+    void encryptDeterministic_sameValueRepeatedly_isStable() {
+        // When: encrypting the same value on the same thread (same key and IV)
+        String first = service.encryptDeterministic("patient.pesel", "90010112345");
+        String second = service.encryptDeterministic("patient.pesel", "90010112345");
+
+        // Then: identical ciphertext, no IV-reuse failure
+        assertThat(second).isEqualTo(first);
+
+        // And: the per-thread memo does not keep the plaintext
+        ThreadLocal<?> memo = (ThreadLocal<?>) ReflectionTestUtils.getField(EncryptionService.class, "LAST_DETERMINISTIC");
+        assertThat(memo.get()).isNotNull();
+        assertThat(memo.get().toString()).doesNotContain("90010112345");
+    }
+
+    @Test
+    void encryptRandom_roundTrip() {
+        // When: encrypting the same address twice
+        String a = service.encryptRandom("patient.address", "ul. Świętokrzyska 12, Kraków");
+        String b = service.encryptRandom("patient.address", "ul. Świętokrzyska 12, Kraków");
+
+        // Then: different ciphertexts, both decrypt
+        assertThat(a).startsWith("v2r:k1:").isNotEqualTo(b);
+        assertThat(service.decryptRandom("patient.address", a)).isEqualTo("ul. Świętokrzyska 12, Kraków");
+        assertThat(service.decryptField("patient.address", b)).isEqualTo("ul. Świętokrzyska 12, Kraków");
+    }
+
+    @Test
+    void encryptRandom_longNote_isCompressedAndRoundTrips() {
+        // Given: a repetitive clinical note above the compression threshold and a short one below it
+        String note = "Pacjent zgłasza ból w klatce piersiowej, bez promieniowania. Osłuchowo bez zmian. ".repeat(20);
+        String shortNote = "Kontrola za 2 tygodnie.";
+
+        // When
+        String stored = service.encryptRandom("visit.notes", note);
+        String storedShort = service.encryptRandom("visit.notes", shortNote);
+
+        // Then: long note stored well below its plaintext size, short one keeps plain length (no length oracle)
+        assertThat(stored).startsWith("v2r:k1:");
+        assertThat(stored.length()).isLessThan(note.getBytes(StandardCharsets.UTF_8).length / 4);
+        assertThat(service.decryptField("visit.notes", stored)).isEqualTo(note);
+        assertThat(Base64.getUrlDecoder().decode(storedShort.substring("v2r:k1:".length())))
+                .hasSize(12 + 1 + shortNote.getBytes(StandardCharsets.UTF_8).length + 16);
+        assertThat(service.decryptField("visit.notes", storedShort)).isEqualTo(shortNote);
+    }
+
+    @Test
+    void decryptRandom_legacyV1r_stillReadableButNotCurrent() throws Exception {
+        // Given: value written in the previous random format (no flag byte, no AAD)
+        SecretKeySpec subKey = new SecretKeySpec(hmac(MASTER, "RND:visit.notes"), "AES");
+        byte[] iv = new byte[12];
+        iv[0] = 7;
+        Cipher c = Cipher.getInstance("AES/GCM/NoPadding");
+        c.init(Cipher.ENCRYPT_MODE, subKey, new GCMParameterSpec(128, iv));
+        byte[] ct = c.doFinal("Stan ogólny dobry".getBytes(StandardCharsets.UTF_8));
+        byte[] all = new byte[iv.length + ct.length];
+        System.arraycopy(iv, 0, all, 0, iv.length);
+        System.arraycopy(ct, 0, all, iv.length, ct.length);
+        String legacy = "v1r:k1:" + Base64.getUrlEncoder().withoutPadding().encodeToString(all);
+
+        // When / Then: decrypts, is flagged for re-encryption and rewritten as v2r
+        assertThat(service.decryptField("visit.notes", legacy)).isEqualTo("Stan ogólny dobry");
+        assertThat(service.isCurrent(legacy, Encrypted.Mode.RANDOM)).isFalse();
+        String rewritten = service.reencryptField("visit.notes", Encrypted.Mode.RANDOM, legacy);
+        assertThat(rewritten).startsWith("v2r:k1:");
+        assertThat(service.decryptField("visit.notes", rewritten)).isEqualTo("Stan ogólny dobry");
+    }
+
+    @Test
+    void decryptRandom_tamperedHeader_rejected() {
+        // Given: ciphertext moved under a different key id header
+        byte[] other = new byte[32];
+        other[0] = 1;
+        service.reloadKeys(Base64.getEncoder().encodeToString(other), "k2");
+        service.activateKey("k1");
+        String stored = service.encryptRandom("visit.notes", "Zalecenia: odpoczynek");
+        String swapped = "v2r:k2:" + stored.substring("v2r:k1:".length());
+
+        // When / Then: header is authenticated, so decryption fails
+        assertThatThrownBy(() -> service.decryptField("visit.notes", swapped)).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void valueCache_enabledField_servesRepeatedDecryptsAndSearchTerms() {
+        // Given: cache enabled only for allergy.allergen
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        DeterministicValueCache cache = new DeterministicValueCache(meterRegistry, "allergy.allergen", 100);
+        EncryptionService cached = cachedService(cache);
+        String stored = cached.encryptDeterministic("allergy.allergen", "Penicylina");
+
+        // When: the same ciphertext read many times, value searched again, other field decrypted
+        for (int i = 0; i < 5; i++) assertThat(cached.decryptField("allergy.allergen", stored)).isEqualTo("Penicylina");
+        assertThat(cached.encryptDeterministic("allergy.allergen", "Penicylina")).isEqualTo(stored);
+        String pesel = cached.encryptDeterministic("patient.pesel", "90010112345");
+        cached.decryptField("patient.pesel", pesel);
+
+        // Then: one miss + four hits for decrypt, search term from cache, pesel never cached
+        assertThat(meterRegistry.get("cache.gets").tag("cache", "enc.det.decrypt").tag("result", "hit")
+                .functionCounter().count()).isEqualTo(4);
+        assertThat(meterRegistry.get("cache.gets").tag("cache", "enc.det.encrypt").tag("result", "hit")
+                .functionCounter().count()).isEqualTo(1);
+        assertThat(cache.size()).isEqualTo(2);
+    }
+
+    @Test
+    void valueCache_keyReload_wipesEntries() {
+        // Given: cached values
+        DeterministicValueCache cache = new DeterministicValueCache(new SimpleMeterRegistry(), "lab.test_name", 100);
+        EncryptionService cached = cachedService(cache);
+        cached.decryptField("lab.test_name", cached.encryptDeterministic("lab.test_name", "Morfologia"));
+        assertThat(cache.size()).isPositive();
+
+        // When: key material rotated
+        byte[] next = new byte[32];
+        next[0] = 42;
+        cached.reloadKeys(Base64.getEncoder().encodeToString(next), "k2");
+
+        // Then: nothing survives, new ciphertexts use the new key
+        assertThat(cache.size()).isZero();
+        assertThat(cached.encryptDeterministic("lab.test_name", "Morfologia")).startsWith("v1d:k2:");
+    }
+
+    @Test
+    void fieldTimers_taggedByLogicalFieldOpAndMode() {
+        // Given
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        EncryptionService metered = TestEncryptionKeys.init(new EncryptionService(DeterministicValueCache.disabled(), meterRegistry));
+
+        // When
+        String pesel = metered.encryptField("patient.pesel", Encrypted.Mode.DETERMINISTIC, "90010112345");
+        metered.decryptField("patient.pesel", pesel);
+        metered.decryptField("patient.address", metered.encryptField("patient.address", Encrypted.Mode.RANDOM, "ul. Polna 1"));
+
+        // Then: one timer per (field, op, mode) – values never become tags
+        assertThat(meterRegistry.get("encryption.field").tags("field", "patient.pesel", "op", "encrypt", "mode", "deterministic")
+                .timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("encryption.field").tags("field", "patient.pesel", "op", "decrypt").timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("encryption.field").tags("field", "patient.address", "mode", "random").timers())
+                .hasSize(2).allSatisfy(t -> assertThat(t.count()).isEqualTo(1));
+        assertThat(meterRegistry.find("encryption.field").tags("field", "patient.pesel", "mode", "random").timer()).isNull();
+    }
+
+    @Test
+    void keyRotation_oldCiphertextsDecryptWithTheirKey_newOnesUseActiveKey() {
+        // Given: values written under k1
+        String pesel = service.encryptDeterministic("patient.pesel", "90010112345");
+        String address = service.encryptRandom("patient.address", "ul. Polna 1");
+
+        // When: k2 becomes active
+        byte[] next = new byte[32];
+        next[0] = 42;
+        service.reloadKeys(Base64.getEncoder().encodeToString(next), "k2");
+
+        // Then: routed by embedded keyId; old values are not current and re-encrypt to k2
+        assertThat(service.keyIds()).containsExactly("k1", "k2");
+        assertThat(service.decryptField("patient.pesel", pesel)).isEqualTo("90010112345");
+        assertThat(service.decryptField("patient.address", address)).isEqualTo("ul. Polna 1");
+        assertThat(service.isCurrent(pesel, Encrypted.Mode.DETERMINISTIC)).isFalse();
+        String rotated = service.reencryptField("patient.pesel", Encrypted.Mode.DETERMINISTIC, pesel);
+        assertThat(rotated).startsWith("v1d:k2:").isEqualTo(service.encryptDeterministic("patient.pesel", "90010112345"));
+        assertThat(service.isCurrent(rotated, Encrypted.Mode.DETERMINISTIC)).isTrue();
+        assertThat(service.reencryptField("patient.pesel", Encrypted.Mode.DETERMINISTIC, rotated)).isSameAs(rotated);
+        assertThat(service.deterministicCandidates("patient.pesel", "90010112345")).containsExactly(rotated, pesel);
+    }
+
+    @Test
+    void unknownKeyId_failsInsteadOfDecryptingWithWrongKey() {
+        // Given: ciphertext from a node with a key this one does not have
+        byte[] foreign = new byte[32];
+        foreign[1] = 7;
+        EncryptionService other = TestEncryptionKeys.init(new EncryptionService(), foreign, "k9");
+        String address = other.encryptRandom("patient.address", "ul. Polna 1");
+
+        // When / Then
+        assertThatThrownBy(() -> service.decryptField("patient.address", address))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("k9");
+        assertThatThrownBy(() -> service.activateKey("k9")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void keystoreFile_providesRetiredKeys_andActivationWithoutRestart(@TempDir Path dir) throws Exception {
+        // Given: k0 (retired) in a PKCS12 keystore, data written under k0
+        byte[] k0 = new byte[32];
+        k0[2] = 9;
+        Path file = dir.resolve("enc-keys.p12");
+        KeyStore ks = KeyStore.getInstance("PKCS12");
+        ks.load(null, null);
+        char[] password = "changeit".toCharArray();
+        ks.setEntry("k0", new KeyStore.SecretKeyEntry(new SecretKeySpec(k0, "AES")), new KeyStore.PasswordProtection(password));
+        try (OutputStream out = Files.newOutputStream(file)) {
+            ks.store(out, password);
+        }
+        EncryptionService old = TestEncryptionKeys.init(new EncryptionService(), k0, "k0");
+        String stored = old.encryptDeterministic("lab.test_name", "Morfologia");
+
+        // When: service with k1 active and the keystore configured
+        EncryptionService ringed = new EncryptionService();
+        ReflectionTestUtils.setField(ringed, "keystoreFile", file.toString());
+        ReflectionTestUtils.setField(ringed, "keystorePassword", "changeit");
+        TestEncryptionKeys.init(ringed);
+
+        // Then: k0 readable, k1 stays active until explicitly switched
+        assertThat(ringed.decryptField("lab.test_name", stored)).isEqualTo("Morfologia");
+        assertThat(ringed.encryptDeterministic("lab.test_name", "Morfologia")).startsWith("v1d:k1:");
+        ringed.activateKey("k0");
+        assertThat(ringed.encryptDeterministic("lab.test_name", "Morfologia")).isEqualTo(stored);
+    }
+
+    private EncryptionService cachedService(DeterministicValueCache cache) {
+        return TestEncryptionKeys.init(new EncryptionService(cache));
+    }
+
+    private static byte[] hmac(byte[] key, String data) throws Exception {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(key, "HmacSHA256"));
+        return mac.doFinal(data.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,262 @@
+package com.example.emr_server.security.encryption;
+
+import com.example.emr_server.entity.Allergy;
+import com.example.emr_server.entity.Patient;
+import com.example.emr_server.entity.User;
+import com.example.emr_server.testsupport.EmrTestDatabase;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.hibernate.SessionFactory;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Base64;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PatientDataKeyServiceTest {
+
+    private EmbeddedDatabase db;
+    private JdbcTemplate jdbcTemplate;
+    private EncryptionService encryptionService;
+    private PatientDataKeyService keys;
+    private SessionFactory sessionFactory;
+
+    @BeforeEach
+    void setUp() {
+        db = EmrTestDatabase.create();
+        jdbcTemplate = new JdbcTemplate(db);
+        encryptionService = TestEncryptionKeys.encryptionService();
+        keys = new PatientDataKeyService(jdbcTemplate, encryptionService, new SimpleMeterRegistry(), 100, Duration.ofMinutes(5));
+        keys.register();
+
+        sessionFactory = new MetadataSources(new StandardServiceRegistryBuilder()
+                .applySetting(AvailableSettings.JAKARTA_NON_JTA_DATASOURCE, db)
+                .applySetting(AvailableSettings.DEFAULT_SCHEMA, "emr")
+                .build())
+                .addAnnotatedClasses(User.class, Patient.class, Allergy.class)
+                .buildMetadata()
+                .buildSessionFactory();
+    }
+
+    @AfterEach
+    void tearDown() {
+        sessionFactory.close();
+        encryptionService.usePatientDataKeys(null);
+        db.shutdown();
+    }
+
+    private Patient persistPatientWithAllergy() {
+        return sessionFactory.fromTransaction(s -> {
+            Patient patient = new Patient();
+            patient.setFirstName("Anna");
+            patient.setLastName("Nowak");
+            patient.setPesel("85020212345");
+            patient.setDateOfBirth(LocalDate.of(1985, 2, 2));
+            patient.setAddress("ul. Polna 3, Lublin");
+            s.persist(patient);
+            Allergy allergy = new Allergy();
+            allergy.setPatient(patient);
+            allergy.setAllergen("Penicylina");
+            allergy.setReaction("Pokrzywka, obrzęk warg");
+            s.persist(allergy);
+            return patient;
+        });
+    }
+
+    @Test
+    void persist_randomFieldsOfPatientEntities_useTheirDataKey() {
+        // When: zapis przez Hibernate – serwis nie wie nic o kluczach pacjenta
+        Patient patient = persistPatientWithAllergy();
+
+        // Then: pola RANDOM pacjenta i jego alergii w formacie v3p, deterministyczne bez zmian, jeden DEK
+        String prefix = "v3p:" + patient.getId() + ":";
+        assertThat(jdbcTemplate.queryForObject("SELECT address FROM emr.patients", String.class)).startsWith(prefix);
+        assertThat(jdbcTemplate.queryForObject("SELECT reaction FROM emr.allergies", String.class)).startsWith(prefix);
+        assertThat(jdbcTemplate.queryForObject("SELECT allergen FROM emr.allergies", String.class)).startsWith("v1d:k1:");
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM emr.patient_data_keys", Integer.class)).isEqualTo(1);
+        Allergy loaded = sessionFactory.fromSession(s -> s.createQuery("from Allergy", Allergy.class).getSingleResult());
+        assertThat(loaded.getReaction()).isEqualTo("Pokrzywka, obrzęk warg");
+        assertThat(PatientKeyScope.current()).isNull();
+    }
+
+    @Test
+    void shred_makesPatientFieldsUnreadable_andBlocksNewWrites() {
+        // Given
+        Patient patient = persistPatientWithAllergy();
+
+        // When
+        assertThat(keys.shred(patient.getId())).isTrue();
+
+        // Then: pola pod DEK puste, pola deterministyczne (wyszukiwanie) nadal czytelne, nowy zapis odrzucony
+        Patient loaded = sessionFactory.fromSession(s -> s.find(Patient.class, patient.getId()));
+        assertThat(loaded.getAddress()).isNull();
+        assertThat(loaded.getLastName()).isEqualTo("Nowak");
+        assertThat(jdbcTemplate.queryForObject("SELECT wrapped_key FROM emr.patient_data_keys", String.class)).isNull();
+        assertThatThrownBy(() -> sessionFactory.inTransaction(s -> {
+            Allergy allergy = new Allergy();
+            allergy.setPatient(s.getReference(Patient.class, patient.getId()));
+            allergy.setAllergen("Lateks");
+            allergy.setReaction("Rumień");
+            s.persist(allergy);
+        })).isInstanceOf(DataKeyDestroyedException.class);
+    }
+
+    @Test
+    void shredder_reencryptsLegacyRandomFields_andReportsWhatStaysReadable() {
+        // Given: alergia zapisana przed v3p – reakcja szyfrowana kluczem głównym (v2r)
+        Patient patient = persistPatientWithAllergy();
+        String legacy = encryptionService.encryptField("allergy.reaction", Encrypted.Mode.RANDOM, "Duszność");
+        jdbcTemplate.update("INSERT INTO emr.allergies(id, patient_id, allergen, reaction) VALUES (?, ?, ?, ?)",
+                UUID.randomUUID(), patient.getId(), encryptionService.encryptDeterministic("allergy.allergen", "Lateks"), legacy);
+        PatientKeyShredder shredder = new PatientKeyShredder(jdbcTemplate, encryptionService, keys);
+
+        // When
+        PatientKeyShredder.Report report = shredder.shred(patient.getId());
+
+        // Then: starsza reakcja zniszczona razem z kluczem, w raporcie tylko pola deterministyczne
+        assertThat(report.keyDestroyed()).isTrue();
+        assertThat(report.reencrypted()).isEqualTo(1);
+        assertThat(jdbcTemplate.queryForList("SELECT reaction FROM emr.allergies", String.class)).allMatch(r -> r.startsWith("v3p:"));
+        assertThat(report.stillReadable()).extracting(PatientKeyShredder.ReadableField::column)
+                .containsExactlyInAnyOrder("first_name", "last_name", "pesel", "allergen");
+        assertThat(report.stillReadable()).allMatch(f -> f.mode() == Encrypted.Mode.DETERMINISTIC);
+    }
+
+    @Test
+    void shredder_deletesDerivedIndexes_andReportsUnencryptedData() throws InterruptedException {
+        // Given: tokeny nazwiska, klucz blokujący i para kandydatów oraz dokumentacja i plik bez szyfrowania
+        Patient patient = persistPatientWithAllergy();
+        Patient other = persistPatientWithAllergy();
+        PatientNameIndex nameIndex = new PatientNameIndex(jdbcTemplate, encryptionService);
+        nameIndex.reindex(patient.getId(), patient.getLastName());
+        long tokens = jdbcTemplate.queryForObject("SELECT count(*) FROM emr.patient_name_tokens", Long.class);
+        jdbcTemplate.update("INSERT INTO emr.patient_blocking_keys(block_key, patient_id) VALUES ('b1', ?)", patient.getId());
+        jdbcTemplate.update("INSERT INTO emr.patient_duplicate_candidates(patient_a, patient_b, score) VALUES (?, ?, 0.9)",
+                other.getId(), patient.getId());
+        jdbcTemplate.update("INSERT INTO emr.medical_records(patient_id, record_type, content) VALUES (?, 'NOTE', ?)",
+                patient.getId(), "{\"wywiad\": \"bóle głowy\"}");
+        jdbcTemplate.update("INSERT INTO emr.medical_files(patient_id, file_name, file_path) VALUES (?, ?, ?)",
+                patient.getId(), "rtg-nowak.pdf", "/data/files/rtg-nowak.pdf");
+        PatientKeyShredder shredder = new PatientKeyShredder(jdbcTemplate, encryptionService, keys);
+
+        // When
+        PatientKeyShredder.Report report = shredder.shred(patient.getId());
+        EncryptionMigrationProperties properties = new EncryptionMigrationProperties();
+        PatientNameIndexJob job = new PatientNameIndexJob(jdbcTemplate, new DataSourceTransactionManager(db),
+                encryptionService, nameIndex, properties);
+        assertThat(job.start()).isTrue();
+        assertThat(job.await(Duration.ofSeconds(10))).isTrue();
+
+        // Then: indeksy usunięte i nieodtworzone przebudową, kolumny jawne wymienione w raporcie
+        assertThat(tokens).isPositive();
+        assertThat(report.derivedDeleted()).isEqualTo(tokens + 2);
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM emr.patient_name_tokens WHERE patient_id = ?",
+                Long.class, patient.getId())).isZero();
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM emr.patient_name_tokens WHERE patient_id = ?",
+                Long.class, other.getId())).isPositive();
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM emr.patient_duplicate_candidates", Long.class)).isZero();
+        assertThat(report.unencrypted()).containsExactlyInAnyOrder(
+                new PatientKeyShredder.UnencryptedField("emr.medical_records", "content", 1),
+                new PatientKeyShredder.UnencryptedField("emr.medical_files", "file_name", 1),
+                new PatientKeyShredder.UnencryptedField("emr.medical_files", "file_path", 1));
+    }
+
+    @Test
+    void keyForWrite_inTransaction_cachedOnlyAfterCommit_andRolledBackWithData() {
+        // Given
+        UUID rolledBack = UUID.randomUUID();
+        UUID committed = UUID.randomUUID();
+        TransactionTemplate tx = new TransactionTemplate(new DataSourceTransactionManager(db));
+
+        // When: DEK utworzony w transakcji wycofanej – kolejne pole tej transakcji używa tego samego klucza
+        tx.executeWithoutResult(status -> {
+            assertThat(keys.keyForWrite(rolledBack)).isSameAs(keys.keyForWrite(rolledBack));
+            assertThat(keys.cachedKeys()).isZero();
+            status.setRollbackOnly();
+        });
+        tx.executeWithoutResult(status -> keys.keyForWrite(committed));
+
+        // Then: wycofany klucz zniknął razem z transakcją i nie trafił do cache, zatwierdzony jest w obu
+        assertThat(jdbcTemplate.queryForList("SELECT patient_id FROM emr.patient_data_keys", UUID.class)).containsExactly(committed);
+        assertThat(keys.cachedKeys()).isEqualTo(1);
+        assertThat(keys.keyForRead(committed)).isEqualTo(keys.keyForWrite(committed));
+    }
+
+    @Test
+    void keyForWrite_poolOfOneConnection_createsKeyOnCallersConnection() {
+        // Given: pula jednego połączenia zajętego przez transakcję zapisu pacjenta
+        try (HikariDataSource pool = new HikariDataSource()) {
+            pool.setDataSource(db);
+            pool.setMaximumPoolSize(1);
+            pool.setConnectionTimeout(250);
+            JdbcTemplate pooled = new JdbcTemplate(pool);
+            PatientDataKeyService pooledKeys = new PatientDataKeyService(pooled, encryptionService, new SimpleMeterRegistry(),
+                    100, Duration.ofMinutes(5));
+            UUID patientId = UUID.randomUUID();
+
+            // When: pierwszy zapis pola pacjenta tworzy DEK
+            new TransactionTemplate(new DataSourceTransactionManager(pool))
+                    .executeWithoutResult(status -> pooledKeys.keyForWrite(patientId));
+
+            // Then: bez drugiego połączenia z puli
+            assertThat(pooledKeys.keyForRead(patientId)).isNotNull();
+            assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM emr.patient_data_keys", Integer.class)).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void migration_afterKeyRotation_rewrapsDataKeys_andCountsThemStaleUntilDone() throws InterruptedException {
+        // Given: DEK zawinięty kluczem k1, potem rotacja na k2
+        Patient patient = persistPatientWithAllergy();
+        byte[] dek = keys.keyForRead(patient.getId()).getEncoded();
+        byte[] k2 = new byte[32];
+        for (int i = 0; i < k2.length; i++) k2[i] = (byte) (100 + i);
+        encryptionService.reloadKeys(Base64.getEncoder().encodeToString(k2), "k2");
+        EncryptionMigrationJob job = new EncryptionMigrationJob(jdbcTemplate, encryptionService,
+                new EncryptionMigrationProperties(), new SimpleMeterRegistry(), List.of());
+
+        // When: walidacja, potem migracja
+        assertThat(job.start(EncryptionMigrationJob.Mode.VALIDATE, false)).isTrue();
+        assertThat(job.await(Duration.ofSeconds(10))).isTrue();
+        long staleBefore = job.progress().remainingStale();
+        assertThat(job.start(EncryptionMigrationJob.Mode.MIGRATE, false)).isTrue();
+        assertThat(job.await(Duration.ofSeconds(10))).isTrue();
+
+        // Then: przed migracją klucz stary, po niej zawinięty k2 – odczytywalny bez k1 w pierścieniu
+        assertThat(staleBefore).isEqualTo(1);
+        assertThat(job.progress().migrated()).isEqualTo(1);
+        assertThat(job.progress().remainingStale()).isZero();
+        assertThat(keys.staleKeys()).isZero();
+        EncryptionService onlyK2 = TestEncryptionKeys.init(new EncryptionService(), k2, "k2");
+        PatientDataKeyService fresh = new PatientDataKeyService(jdbcTemplate, onlyK2, new SimpleMeterRegistry(), 100,
+                Duration.ofMinutes(5));
+        assertThat(fresh.keyForRead(patient.getId()).getEncoded()).isEqualTo(dek);
+    }
+
+    @Test
+    void keyForRead_wrappedKeyOfAnotherPatient_isRejected() {
+        // Given: zawinięty klucz pacjenta A przepisany do wiersza pacjenta B
+        UUID a = UUID.randomUUID();
+        UUID b = UUID.randomUUID();
+        keys.keyForWrite(a);
+        jdbcTemplate.update("INSERT INTO emr.patient_data_keys(patient_id, key_id, wrapped_key) "
+                + "SELECT ?, key_id, wrapped_key FROM emr.patient_data_keys WHERE patient_id = ?", b, a);
+
+        // When / Then: id pacjenta jest AAD zawinięcia
+        assertThatThrownBy(() -> keys.keyForRead(b)).isInstanceOf(IllegalStateException.class);
+    }
+}
@@ -0,0 +1,197 @@
+package com.example.emr_server.security.encryption;
+
+import com.example.emr_server.entity.Patient;
+import com.example.emr_server.entity.PatientNameToken;
+import com.example.emr_server.entity.User;
+import com.example.emr_server.repository.spec.PatientSpecifications;
+import com.example.emr_server.testsupport.EmrTestDatabase;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Root;
+import org.hibernate.SessionFactory;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.AvailableSettings;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Base64;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PatientNameIndexTest {
+
+    private EmbeddedDatabase db;
+    private JdbcTemplate jdbcTemplate;
+    private EncryptionService encryptionService;
+    private PatientNameIndex nameIndex;
+    private SessionFactory sessionFactory;
+
+    @BeforeEach
+    void setUp() {
+        db = EmrTestDatabase.create();
+        jdbcTemplate = new JdbcTemplate(db);
+        encryptionService = TestEncryptionKeys.encryptionService();
+        nameIndex = new PatientNameIndex(jdbcTemplate, encryptionService);
+
+        sessionFactory = new MetadataSources(new StandardServiceRegistryBuilder()
+                .applySetting(AvailableSettings.JAKARTA_NON_JTA_DATASOURCE, db)
+                .applySetting(AvailableSettings.DEFAULT_SCHEMA, "emr")
+                .build())
+                .addAnnotatedClasses(User.class, Patient.class, PatientNameToken.class)
+                .buildMetadata()
+                .buildSessionFactory();
+    }
+
+    @AfterEach
+    void tearDown() {
+        sessionFactory.close();
+        db.shutdown();
+    }
+
+    private Patient persist(String lastName) {
+        return sessionFactory.fromTransaction(s -> {
+            Patient patient = new Patient();
+            patient.setFirstName("Anna");
+            patient.setLastName(lastName);
+            patient.setPesel(String.valueOf(System.nanoTime()));
+            patient.setDateOfBirth(LocalDate.of(1985, 2, 2));
+            s.persist(patient);
+            return patient;
+        });
+    }
+
+    private List<UUID> search(String prefix) {
+        var spec = PatientSpecifications.lastNameTokens(nameIndex.queryTokens(prefix));
+        return sessionFactory.fromSession(s -> {
+            var cb = s.getCriteriaBuilder();
+            CriteriaQuery<Patient> q = cb.createQuery(Patient.class);
+            Root<Patient> root = q.from(Patient.class);
+            q.select(root).where(spec.toPredicate(root, q, cb));
+            return s.createQuery(q).getResultList().stream().map(Patient::getId).toList();
+        });
+    }
+
+    @Test
+    void normalize_foldsPolishDiacriticsAndSeparators() {
+        assertThat(PatientNameIndex.normalize("  Żółć-Łęcka ")).isEqualTo("zolc lecka");
+        assertThat(PatientNameIndex.prefixes("Nowak-Kowalska"))
+                .contains("now", "nowak", "nowakkow", "kow", "kowalska")
+                .doesNotContain("no", "wak");
+    }
+
+    @Test
+    void prefixSearch_findsPatientsByTokenOnly() {
+        // Given
+        Patient sliwinski = persist("Śliwiński");
+        Patient compound = persist("Nowak-Kowalska");
+        Patient other = persist("Wiśniewska");
+        for (Patient p : List.of(sliwinski, compound, other)) nameIndex.reindex(p.getId(), p.getLastName());
+
+        // Then: bez polskich znaków, człon nazwiska złożonego i całość z łącznikiem
+        assertThat(search("sliw")).containsExactly(sliwinski.getId());
+        assertThat(search("ŚLI")).containsExactly(sliwinski.getId());
+        assertThat(search("kowal")).containsExactly(compound.getId());
+        assertThat(search("Nowak-Ko")).containsExactly(compound.getId());
+        assertThat(search("wis")).containsExactly(other.getId());
+        assertThat(search("iwi")).isEmpty();
+        // tokeny nie zawierają nazwiska ani prefiksu jawnym tekstem
+        assertThat(jdbcTemplate.queryForList("SELECT token FROM emr.patient_name_tokens", String.class))
+                .allSatisfy(t -> assertThat(t).hasSize(22).doesNotContainIgnoringCase("sli"));
+    }
+
+    @Test
+    void queryTokens_rejectsTooShortPrefix() {
+        assertThatThrownBy(() -> nameIndex.queryTokens("Ń-o"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void reindex_replacesTokensOfRenamedPatient() {
+        // Given
+        Patient patient = persist("Kowalska");
+        nameIndex.reindex(patient.getId(), "Kowalska");
+
+        // When
+        nameIndex.reindex(patient.getId(), "Zielińska");
+
+        // Then
+        assertThat(search("kow")).isEmpty();
+        assertThat(search("zielin")).containsExactly(patient.getId());
+    }
+
+    @Test
+    void reindex_concurrentRenames_areSerializedOnPatientRow() throws Exception {
+        // Given: pierwsza zmiana nazwiska trzyma transakcję otwartą
+        Patient patient = persist("Kowalska");
+        TransactionTemplate tx = new TransactionTemplate(new DataSourceTransactionManager(db));
+        CountDownLatch firstIndexed = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread first = Thread.ofPlatform().start(() -> tx.executeWithoutResult(status -> {
+            nameIndex.reindex(patient.getId(), "Kowalska");
+            firstIndexed.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        assertThat(firstIndexed.await(5, TimeUnit.SECONDS)).isTrue();
+
+        // When: druga zmiana czeka na blokadę wiersza pacjenta
+        CompletableFuture<Void> second = CompletableFuture.runAsync(() ->
+                tx.executeWithoutResult(status -> nameIndex.reindex(patient.getId(), "Zielińska")));
+        Thread.sleep(200);
+        boolean secondWaited = !second.isDone();
+        release.countDown();
+        first.join();
+        second.get(5, TimeUnit.SECONDS);
+
+        // Then: tylko tokeny ostatniego nazwiska
+        assertThat(secondWaited).isTrue();
+        assertThat(search("kow")).isEmpty();
+        assertThat(search("zielin")).containsExactly(patient.getId());
+    }
+
+    @Test
+    void backfillJob_indexesExistingPatients_afterKeyRotation() throws InterruptedException {
+        // Given: pacjenci sprzed indeksu, tokeny starym kluczem dla jednego z nich
+        Patient first = persist("Wójcik");
+        Patient second = persist("Kamińska");
+        nameIndex.reindex(second.getId(), second.getLastName());
+        byte[] k2 = new byte[32];
+        for (int i = 0; i < k2.length; i++) k2[i] = (byte) (100 + i);
+        encryptionService.reloadKeys(Base64.getEncoder().encodeToString(k2), "k2");
+
+        EncryptionMigrationProperties properties = new EncryptionMigrationProperties();
+        properties.setPageSize(1);
+        properties.setMaxRowsPerSecond(0);
+        PatientNameIndexJob job = new PatientNameIndexJob(jdbcTemplate, new DataSourceTransactionManager(db),
+                encryptionService, nameIndex, properties);
+
+        // When
+        assertThat(job.start()).isTrue();
+        assertThat(job.await(Duration.ofSeconds(10))).isTrue();
+
+        // Then: tokeny aktywnym kluczem – stare zastąpione, brakujące dopisane
+        assertThat(job.progress().state()).isEqualTo(EncryptionMigrationJob.State.COMPLETED);
+        assertThat(job.progress().indexed()).isEqualTo(2);
+        assertThat(search("wojc")).containsExactly(first.getId());
+        assertThat(search("kamin")).containsExactly(second.getId());
+        List<String> active = encryptionService.blindTokens(PatientNameIndex.FIELD, List.of("kam"));
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM emr.patient_name_tokens WHERE token = ?",
+                Integer.class, active.get(0))).isEqualTo(1);
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.emr_server.security.encryption;
+
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Base64;
+
+/**
+ * Stały klucz główny testów i benchmarków (bajty 0..31 jako {@value #KEY_ID}) – szyfrogramy powtarzalne
+ * między uruchomieniami, bez konfiguracji Springa.
+ */
+public final class TestEncryptionKeys {
+
+    public static final String KEY_ID = "k1";
+
+    private TestEncryptionKeys() {
+    }
+
+    public static byte[] master() {
+        byte[] master = new byte[32];
+        for (int i = 0; i < master.length; i++) master[i] = (byte) i;
+        return master;
+    }
+
+    /** Nowy EncryptionService z kluczem {@link #master()}. */
+    public static EncryptionService encryptionService() {
+        return init(new EncryptionService());
+    }
+
+    /** Inicjalizuje przygotowaną instancję (własny cache, liczniki, keystore) kluczem {@link #master()}. */
+    public static <T extends EncryptionService> T init(T service) {
+        return init(service, master(), KEY_ID);
+    }
+
+    public static <T extends EncryptionService> T init(T service, byte[] master, String keyId) {
+        ReflectionTestUtils.setField(service, "masterKeyB64", Base64.getEncoder().encodeToString(master));
+        ReflectionTestUtils.setField(service, "activeKeyId", keyId);
+        service.init();
+        return service;
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.emr_server.security.monitoring;
+
+import com.example.emr_server.security.SecurityMonitoringService.SecurityEventType;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SuspiciousActivityDetectorTest {
+
+    private final AtomicLong clock = new AtomicLong(1_000_000L);
+
+    private SuspiciousActivityDetector detector(SecurityMonitoringProperties props) {
+        return new SuspiciousActivityDetector(props, clock::get);
+    }
+
+    @Test
+    void record_alertsOnceWhenThresholdCrossed_andAgainAfterDecay() {
+        // Given: próg 5, half-life 10 min
+        SecurityMonitoringProperties props = new SecurityMonitoringProperties();
+        props.setDefaultThreshold(5);
+        SuspiciousActivityDetector detector = detector(props);
+
+        // When: 8 zdarzeń
+        List<SuspiciousActivityDetector.Alert> alerts = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            var alert = detector.record(SecurityEventType.AUTHENTICATION_FAILURE, "10.0.0.1");
+            if (alert != null) alerts.add(alert);
+        }
+
+        // Then: jeden alert, w chwili przekroczenia
+        assertThat(alerts).containsExactly(new SuspiciousActivityDetector.Alert(SecurityEventType.AUTHENTICATION_FAILURE, "10.0.0.1", 5, 5));
+
+        // When: 20 minut ciszy – dwa okresy połowienia (8 -> 2)
+        clock.addAndGet(Duration.ofMinutes(20).toMillis());
+
+        // Then: licznik zanikł, kolejne przekroczenie znów alarmuje
+        assertThat(detector.estimate(SecurityEventType.AUTHENTICATION_FAILURE, "10.0.0.1")).isEqualTo(2);
+        alerts.clear();
+        for (int i = 0; i < 3; i++) {
+            var alert = detector.record(SecurityEventType.AUTHENTICATION_FAILURE, "10.0.0.1");
+            if (alert != null) alerts.add(alert);
+        }
+        assertThat(alerts).hasSize(1);
+    }
+
+    @Test
+    void manyDistinctSpoofedKeys_stateBounded_heavyHitterStillOnTop() {
+        // Given: top-K = 5
+        SecurityMonitoringProperties props = new SecurityMonitoringProperties();
+        props.setTopK(5);
+        SuspiciousActivityDetector detector = detector(props);
+
+        // When: 100k jednorazowych identyfikatorów i jeden powtarzający się
+        for (int i = 0; i < 100_000; i++) {
+            detector.record(SecurityEventType.UNAUTHORIZED_ACCESS_ATTEMPT, "spoof-" + i);
+            if (i % 1000 == 0) detector.record(SecurityEventType.UNAUTHORIZED_ACCESS_ATTEMPT, "203.0.113.9");
+        }
+
+        // Then: lista ograniczona do K, najczęstszy klucz na szczycie z estymatą >= rzeczywistej liczby
+        var top = detector.topOffenders(SecurityEventType.UNAUTHORIZED_ACCESS_ATTEMPT, 10);
+        assertThat(top).hasSize(5);
+        assertThat(top.get(0).identifier()).isEqualTo("203.0.113.9");
+        assertThat(top.get(0).estimate()).isGreaterThanOrEqualTo(100);
+    }
+
+    @Test
+    void thresholds_configurablePerEventType() {
+        // Given: niższy próg dla podejrzanych zapytań
+        SecurityMonitoringProperties props = new SecurityMonitoringProperties();
+        props.getThresholds().put(SecurityEventType.SUSPICIOUS_QUERY_PATTERN, 2);
+        SuspiciousActivityDetector detector = detector(props);
+
+        // When
+        detector.record(SecurityEventType.SUSPICIOUS_QUERY_PATTERN, "ip");
+        var second = detector.record(SecurityEventType.SUSPICIOUS_QUERY_PATTERN, "ip");
+        detector.record(SecurityEventType.AUTHENTICATION_FAILURE, "ip");
+        var authSecond = detector.record(SecurityEventType.AUTHENTICATION_FAILURE, "ip");
+
+        // Then: typy liczone osobno, każdy z własnym progiem
+        assertThat(second).isNotNull();
+        assertThat(authSecond).isNull();
+    }
+
+    @Test
+    void record_collidingKeys_alertOnlyOnCrossing() {
+        // Given: sketch 1x1 – wszystkie klucze dzielą licznik, próg 5
+        SecurityMonitoringProperties props = new SecurityMonitoringProperties();
+        props.setSketchDepth(1);
+        props.setSketchWidth(1);
+        props.setDefaultThreshold(5);
+        SuspiciousActivityDetector detector = detector(props);
+
+        // When: inny klucz podbija wspólny licznik tuż pod próg, potem kolejne zdarzenia
+        List<SuspiciousActivityDetector.Alert> alerts = new ArrayList<>();
+        for (int i = 0; i < 4; i++) detector.record(SecurityEventType.AUTHENTICATION_FAILURE, "10.0.0.1");
+        for (int i = 0; i < 3; i++) {
+            var alert = detector.record(SecurityEventType.AUTHENTICATION_FAILURE, "10.0.0.2");
+            if (alert != null) alerts.add(alert);
+        }
+        var afterCrossing = detector.record(SecurityEventType.AUTHENTICATION_FAILURE, "10.0.0.1");
+
+        // Then: alert dla klucza, którego zdarzenie przekroczyło próg, i tylko raz
+        assertThat(alerts).containsExactly(new SuspiciousActivityDetector.Alert(SecurityEventType.AUTHENTICATION_FAILURE, "10.0.0.2", 5, 5));
+        assertThat(afterCrossing).isNull();
+    }
+
+    @Test
+    void estimate_onHalfLifeBoundary_sketchAndTopKDecayTogether() {
+        // Given: zegar przesuwający się o 1 ms przy każdym odczycie, 8 zdarzeń
+        SecurityMonitoringProperties props = new SecurityMonitoringProperties();
+        long start = clock.get();
+        AtomicLong ticking = new AtomicLong(start);
+        SuspiciousActivityDetector detector = new SuspiciousActivityDetector(props, ticking::getAndIncrement);
+        for (int i = 0; i < 8; i++) detector.record(SecurityEventType.AUTHENTICATION_FAILURE, "10.0.0.1");
+
+        // When: odczyt estymaty 1 ms przed granicą okresu połowienia
+        ticking.set(start + props.getHalfLife().toMillis() - 1);
+        detector.estimate(SecurityEventType.AUTHENTICATION_FAILURE, "10.0.0.1");
+
+        // Then: po granicy top-K i sketch połowione razem (8 -> 4)
+        var top = detector.topOffenders(SecurityEventType.AUTHENTICATION_FAILURE, 1);
+        assertThat(top.get(0).estimate()).isEqualTo(4);
+        assertThat(detector.estimate(SecurityEventType.AUTHENTICATION_FAILURE, "10.0.0.1")).isEqualTo(4);
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.emr_server.security.ratelimit;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class JdbcRateLimitBackendTest {
+
+    private static final RateLimitService.RateLimitSpec FIVE_PER_MINUTE = new RateLimitService.RateLimitSpec(5, Duration.ofMinutes(1));
+
+    private EmbeddedDatabase db;
+    private JdbcTemplate jdbcTemplate;
+    private final AtomicLong clock = new AtomicLong(Duration.ofDays(20_000).toMillis());
+
+    @BeforeEach
+    void setUp() {
+        db = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).generateUniqueName(true).build();
+        jdbcTemplate = new JdbcTemplate(db);
+        jdbcTemplate.execute("CREATE SCHEMA emr");
+        jdbcTemplate.execute("CREATE TABLE emr.rate_limit_counters (bucket VARCHAR(64) NOT NULL, key_hash VARCHAR(32) NOT NULL, "
+                + "window_start BIGINT NOT NULL, hits BIGINT NOT NULL, expires_at BIGINT NOT NULL, "
+                + "PRIMARY KEY (bucket, key_hash, window_start))");
+    }
+
+    @AfterEach
+    void tearDown() {
+        db.shutdown();
+    }
+
+    private JdbcRateLimitBackend node() {
+        return new JdbcRateLimitBackend(jdbcTemplate, 200, new SimpleMeterRegistry(), clock::get);
+    }
+
+    @Test
+    void hotKey_incrementsPreAggregatedIntoOneRow() {
+        // Given: 100 żądań jednego klucza przed flush
+        JdbcRateLimitBackend node = node();
+        RateLimitBackend.Limiter limiter = node.limiter("GLOBAL_IP", new RateLimitService.RateLimitSpec(1000, Duration.ofMinutes(1)));
+        for (int i = 0; i < 100; i++) limiter.tryConsume("10.0.0.1");
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM emr.rate_limit_counters", Integer.class)).isZero();
+
+        // When
+        node.flush();
+
+        // Then: jeden wiersz z sumą, klucz zapisany jako skrót
+        assertThat(jdbcTemplate.queryForObject("SELECT hits FROM emr.rate_limit_counters", Long.class)).isEqualTo(100);
+        assertThat(jdbcTemplate.queryForObject("SELECT key_hash FROM emr.rate_limit_counters", String.class))
+                .isEqualTo(JdbcRateLimitBackend.hash("10.0.0.1"));
+    }
+
+    @Test
+    void twoNodes_shareLimitAfterFlush() {
+        // Given: dwa węzły, limit 5/min na login
+        JdbcRateLimitBackend a = node();
+        JdbcRateLimitBackend b = node();
+        RateLimitBackend.Limiter la = a.limiter("LOGIN_USER", FIVE_PER_MINUTE);
+        RateLimitBackend.Limiter lb = b.limiter("LOGIN_USER", FIVE_PER_MINUTE);
+        for (int i = 0; i < 3; i++) assertThat(la.tryConsume("jan@example.com").allowed()).isTrue();
+        a.flush();
+
+        // When: węzeł B po pierwszym flush zna sumę globalną
+        assertThat(lb.tryConsume("jan@example.com").allowed()).isTrue();
+        b.flush();
+        assertThat(lb.tryConsume("jan@example.com").allowed()).isTrue();
+        assertThat(lb.tryConsume("jan@example.com").allowed()).isFalse();
+        b.flush();
+
+        // Then: A (nieświeży o jedno okno flush) przepuszcza co najwyżej jedno żądanie, potem odrzuca
+        assertThat(la.tryConsume("jan@example.com").allowed()).isTrue();
+        a.flush();
+        assertThat(la.tryConsume("jan@example.com").allowed()).isFalse();
+        assertThat(jdbcTemplate.queryForObject("SELECT hits FROM emr.rate_limit_counters", Long.class)).isEqualTo(6);
+    }
+
+    @Test
+    void slidingWindow_previousWindowWeighted() {
+        // Given: limit wyczerpany pod koniec okna
+        JdbcRateLimitBackend node = node();
+        RateLimitBackend.Limiter limiter = node.limiter("LOGIN_USER", FIVE_PER_MINUTE);
+        long windowStart = clock.get() / 60_000 * 60_000;
+        clock.set(windowStart + 59_000);
+        for (int i = 0; i < 5; i++) limiter.tryConsume("ip");
+        node.flush();
+
+        // When: 1 s po granicy okna
+        clock.set(windowStart + 61_000);
+
+        // Then: poprzednie okno nadal waży ~98% – brak podwojenia limitu
+        assertThat(limiter.tryConsume("ip").allowed()).isFalse();
+
+        // When: pod koniec nowego okna waga poprzedniego spada
+        clock.set(windowStart + 60_000 + 50_000);
+        assertThat(limiter.tryConsume("ip").allowed()).isTrue();
+    }
+
+    @Test
+    void burstBelowLimit_capsShortBursts_likeMemoryBackend() {
+        // Given: 60/min z burstem 20 – okno burst 20 s
+        JdbcRateLimitBackend node = node();
+        RateLimitBackend.Limiter limiter = node.limiter("GLOBAL_IP", new RateLimitService.RateLimitSpec(60, Duration.ofMinutes(1), 20));
+        long windowStart = clock.get() / 60_000 * 60_000;
+        clock.set(windowStart);
+
+        // When: seria żądań w jednej chwili
+        int allowed = 0;
+        for (int i = 0; i < 30; i++) if (limiter.tryConsume("10.0.0.1").allowed()) allowed++;
+        node.flush();
+
+        // Then: przepuszczone tylko do wielkości burstu, oba okna zapisane w bazie
+        assertThat(allowed).isEqualTo(20);
+        assertThat(jdbcTemplate.queryForObject("SELECT hits FROM emr.rate_limit_counters WHERE bucket = 'GLOBAL_IP:burst'",
+                Long.class)).isEqualTo(20);
+
+        // When: po dwóch oknach burst poprzednie już nie waży
+        clock.set(windowStart + 40_000);
+
+        // Then: kolejne żądania przechodzą, dopóki nie wyczerpią limitu minutowego
+        assertThat(limiter.tryConsume("10.0.0.1").allowed()).isTrue();
+    }
+}
@@ -0,0 +1,166 @@
+package com.example.emr_server.security.ratelimit;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RateLimitIncidentAggregatorTest {
+
+    private EmbeddedDatabase db;
+    private JdbcTemplate jdbcTemplate;
+    private final AtomicReference<Instant> clock = new AtomicReference<>(Instant.parse("2025-01-01T10:00:00Z"));
+
+    @BeforeEach
+    void setUp() {
+        db = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).generateUniqueName(true).build();
+        jdbcTemplate = new JdbcTemplate(db);
+        jdbcTemplate.execute("CREATE SCHEMA emr");
+        jdbcTemplate.execute("CREATE TABLE emr.security_incidents (id UUID PRIMARY KEY, detected_at TIMESTAMP WITH TIME ZONE, "
+                + "severity VARCHAR(20) NOT NULL, category VARCHAR(50) NOT NULL, description TEXT, user_id UUID, "
+                + "status VARCHAR(20), occurrences INT NOT NULL DEFAULT 1, first_seen_at TIMESTAMP WITH TIME ZONE, "
+                + "last_seen_at TIMESTAMP WITH TIME ZONE, source_ip VARCHAR(45))");
+    }
+
+    @AfterEach
+    void tearDown() {
+        db.shutdown();
+    }
+
+    private RateLimitIncidentAggregator aggregator(int maxKeys) {
+        return new RateLimitIncidentAggregator(jdbcTemplate, new SimpleMeterRegistry(), Duration.ofSeconds(30),
+                Duration.ofMinutes(15), maxKeys, clock::get);
+    }
+
+    @Test
+    void burst_aggregatedIntoSingleIncident() {
+        // Given: 500 odrzuceń z jednego IP na ścieżkach różniących się tylko identyfikatorem
+        RateLimitIncidentAggregator aggregator = aggregator(100);
+        for (int i = 0; i < 500; i++) {
+            aggregator.record("HEAVY_IP", "10.0.0.9", "/api/recepty/" + (1000 + i % 7) + "/pdf");
+            clock.set(clock.get().plusMillis(10));
+        }
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM emr.security_incidents", Integer.class)).isZero();
+
+        // When
+        aggregator.flush();
+
+        // Then: jeden incydent z liczbą, zakresem czasu i przykładowymi ścieżkami
+        Map<String, Object> row = jdbcTemplate.queryForMap("SELECT * FROM emr.security_incidents");
+        assertThat(row.get("OCCURRENCES")).isEqualTo(500);
+        assertThat(row.get("SEVERITY")).isEqualTo("high");
+        assertThat(row.get("SOURCE_IP")).isEqualTo("10.0.0.9");
+        assertThat((String) row.get("DESCRIPTION")).contains("HEAVY_IP", "/api/recepty/{id}/pdf", "/api/recepty/1000/pdf");
+        assertThat(jdbcTemplate.queryForObject("SELECT DATEDIFF('SECOND', first_seen_at, last_seen_at) FROM emr.security_incidents",
+                Long.class)).isEqualTo(4);
+    }
+
+    @Test
+    void nextSeries_appendedToOpenIncident_untilClosed() {
+        // Given: zapisany incydent
+        RateLimitIncidentAggregator aggregator = aggregator(100);
+        aggregator.record("LOGIN_IP", "10.0.0.1", "/auth/login");
+        aggregator.flush();
+
+        // When: kolejna seria w oknie deduplikacji
+        aggregator.record("LOGIN_IP", "10.0.0.1", "/auth/login");
+        aggregator.record("LOGIN_IP", "10.0.0.1", "/auth/login");
+        aggregator.flush();
+
+        // Then: ten sam wiersz
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM emr.security_incidents", Integer.class)).isEqualTo(1);
+        assertThat(jdbcTemplate.queryForObject("SELECT occurrences FROM emr.security_incidents", Integer.class)).isEqualTo(3);
+
+        // When: incydent zamknięty przez administratora, potem kolejna seria
+        jdbcTemplate.update("UPDATE emr.security_incidents SET status = 'closed'");
+        aggregator.record("LOGIN_IP", "10.0.0.1", "/auth/login");
+        aggregator.flush();
+
+        // Then: nowy incydent
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM emr.security_incidents WHERE status = 'open'", Integer.class)).isEqualTo(1);
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM emr.security_incidents", Integer.class)).isEqualTo(2);
+    }
+
+    @Test
+    void keyLimitExceeded_overflowFoldedIntoBucketKey() {
+        // Given: limit 2 kluczy
+        RateLimitIncidentAggregator aggregator = aggregator(2);
+
+        // When: 5 różnych adresów IP
+        for (int i = 0; i < 5; i++) aggregator.record("GLOBAL_IP", "10.0.0." + i, "/api/pacjenci");
+        aggregator.flush();
+
+        // Then: 2 klucze indywidualne + zbiorczy z pozostałymi 3
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM emr.security_incidents", Integer.class)).isEqualTo(3);
+        assertThat(jdbcTemplate.queryForObject("SELECT occurrences FROM emr.security_incidents WHERE source_ip = '*'", Integer.class)).isEqualTo(3);
+    }
+
+    @Test
+    void spoofedForwardedFor_storedAsPlaceholder_withoutFailingBatch() {
+        // Given: obok zwykłego adresu wartość X-Forwarded-For dłuższa niż source_ip varchar(45)
+        RateLimitIncidentAggregator aggregator = aggregator(100);
+        aggregator.record("GLOBAL_IP", "10.0.0.1", "/api/pacjenci");
+        aggregator.record("GLOBAL_IP", "x".repeat(200), "/api/pacjenci");
+        aggregator.record("GLOBAL_IP", "2001:DB8::1", "/api/pacjenci");
+
+        // When
+        aggregator.flush();
+
+        // Then: wszystkie incydenty zapisane, niepoprawny adres jako placeholder
+        assertThat(jdbcTemplate.queryForList("SELECT source_ip FROM emr.security_incidents ORDER BY source_ip", String.class))
+                .containsExactly("10.0.0.1", "2001:db8::1", RateLimitIncidentAggregator.INVALID_IP);
+    }
+
+    @Test
+    void rejectedRow_requeued_restOfBatchWritten() {
+        // Given: baza odrzuca jeden z wierszy paczki
+        jdbcTemplate.execute("ALTER TABLE emr.security_incidents ADD CONSTRAINT no_bad CHECK (description NOT LIKE '%BAD_BUCKET%')");
+        RateLimitIncidentAggregator aggregator = aggregator(100);
+        aggregator.record("LOGIN_IP", "10.0.0.1", "/auth/login");
+        aggregator.record("BAD_BUCKET", "10.0.0.2", "/auth/login");
+
+        // When
+        aggregator.flush();
+
+        // Then: poprawny wiersz zapisany, odrzucony czeka w kolejce
+        assertThat(jdbcTemplate.queryForList("SELECT source_ip FROM emr.security_incidents", String.class)).containsExactly("10.0.0.1");
+
+        // When: baza znów przyjmuje wiersz, w międzyczasie kolejne odrzucenie
+        jdbcTemplate.execute("ALTER TABLE emr.security_incidents DROP CONSTRAINT no_bad");
+        aggregator.record("BAD_BUCKET", "10.0.0.2", "/auth/login");
+        aggregator.flush();
+
+        // Then: jeden incydent z obiema seriami
+        assertThat(jdbcTemplate.queryForObject("SELECT occurrences FROM emr.security_incidents WHERE source_ip = '10.0.0.2'",
+                Integer.class)).isEqualTo(2);
+    }
+
+    @Test
+    void databaseUnavailable_aggregatesRequeued_andNotRegisteredAsOpen() {
+        // Given: tabela niedostępna przy pierwszym flushu
+        RateLimitIncidentAggregator aggregator = aggregator(100);
+        aggregator.record("LOGIN_IP", "10.0.0.1", "/auth/login");
+        jdbcTemplate.execute("ALTER TABLE emr.security_incidents RENAME TO security_incidents_off");
+
+        // When
+        aggregator.flush();
+        jdbcTemplate.execute("ALTER TABLE emr.security_incidents_off RENAME TO security_incidents");
+        aggregator.record("LOGIN_IP", "10.0.0.1", "/auth/login");
+        aggregator.flush();
+
+        // Then: nowy incydent (nie UPDATE nieistniejącego id) z obiema seriami
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM emr.security_incidents", Integer.class)).isEqualTo(1);
+        assertThat(jdbcTemplate.queryForObject("SELECT occurrences FROM emr.security_incidents", Integer.class)).isEqualTo(2);
+    }
+}
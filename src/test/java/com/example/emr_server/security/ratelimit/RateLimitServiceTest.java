@@ -0,0 +1,119 @@
+package com.example.emr_server.security.ratelimit;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RateLimitServiceTest {
+
+    private final AtomicLong clock = new AtomicLong(1_000_000_000L);
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private RateLimitService service(RateLimitService.RateLimitSpec spec) {
+        return new RateLimitService(Map.of("B", spec), new InMemoryRateLimitBackend(clock::get), registry);
+    }
+
+    @Test
+    void burstThenReject_refillsOneTokenPerEmissionInterval() {
+        // Given: 6/min (token co 10 s), burst 3
+        RateLimitService rl = service(new RateLimitService.RateLimitSpec(6, Duration.ofMinutes(1), 3));
+
+        // When / Then: 3 żądania naraz, czwarte odrzucone
+        assertThat(rl.tryConsume("B", "1.2.3.4").remaining()).isEqualTo(2);
+        assertThat(rl.tryConsume("B", "1.2.3.4").allowed()).isTrue();
+        assertThat(rl.tryConsume("B", "1.2.3.4").allowed()).isTrue();
+        assertThat(rl.tryConsume("B", "1.2.3.4").allowed()).isFalse();
+        assertThat(rl.tryConsume("B", "5.6.7.8").allowed()).isTrue();
+
+        // Then: po 10 s dokładnie jeden token
+        clock.addAndGet(Duration.ofSeconds(10).toNanos());
+        assertThat(rl.tryConsume("B", "1.2.3.4").allowed()).isTrue();
+        assertThat(rl.tryConsume("B", "1.2.3.4").allowed()).isFalse();
+        assertThat(registry.get("ratelimit.requests").tag("bucket", "B").tag("outcome", "allowed").counter().count()).isEqualTo(5);
+        assertThat(registry.get("ratelimit.requests").tag("bucket", "B").tag("outcome", "rejected").counter().count()).isEqualTo(2);
+    }
+
+    @Test
+    void noDoubleLimitAcrossWindowEdge() {
+        // Given: 10/min, limit wyczerpany tuż przed "granicą okna"
+        RateLimitService rl = service(new RateLimitService.RateLimitSpec(10, Duration.ofMinutes(1)));
+        int allowed = 0;
+        for (int i = 0; i < 10; i++) if (rl.tryConsume("B", "ip").allowed()) allowed++;
+
+        // When: 1 s później kolejna seria
+        clock.addAndGet(Duration.ofSeconds(1).toNanos());
+        for (int i = 0; i < 10; i++) if (rl.tryConsume("B", "ip").allowed()) allowed++;
+
+        // Then: nie 20 jak przy fixed-window
+        assertThat(allowed).isEqualTo(10);
+    }
+
+    @Test
+    void concurrentRequestsFromOneKey_neverExceedBurst() throws Exception {
+        // Given: burst 100, 64 wątki po 50 żądań w tej samej chwili
+        RateLimitService rl = service(new RateLimitService.RateLimitSpec(100, Duration.ofHours(1)));
+        ExecutorService pool = Executors.newFixedThreadPool(64);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int t = 0; t < 64; t++) {
+            results.add(pool.submit(() -> {
+                start.await();
+                int ok = 0;
+                for (int i = 0; i < 50; i++) if (rl.tryConsume("B", "10.0.0.1").allowed()) ok++;
+                return ok;
+            }));
+        }
+
+        // When
+        start.countDown();
+        int total = 0;
+        for (Future<Integer> f : results) total += f.get(10, TimeUnit.SECONDS);
+        pool.shutdown();
+
+        // Then: dokładnie pojemność kubełka
+        assertThat(total).isEqualTo(100);
+    }
+
+    @Test
+    void specs_fromProperties() {
+        // Given: globalny limit z requests-per-minute/burst-capacity, nadpisany limit HEAVY_IP
+        RateLimitProperties props = new RateLimitProperties();
+        props.setRequestsPerMinute(60);
+        props.setBurstCapacity(20);
+        RateLimitProperties.Bucket heavy = new RateLimitProperties.Bucket();
+        heavy.setLimit(3);
+        props.getBuckets().put("heavy-ip", heavy);
+
+        // When
+        Map<String, RateLimitService.RateLimitSpec> specs = RateLimitService.specs(props);
+
+        // Then: okres HEAVY_IP zostaje domyślny
+        assertThat(specs.get("GLOBAL_IP")).isEqualTo(new RateLimitService.RateLimitSpec(60, Duration.ofMinutes(1), 20));
+        assertThat(specs.get("HEAVY_IP")).isEqualTo(new RateLimitService.RateLimitSpec(3, Duration.ofMinutes(5), 3));
+    }
+
+    @Test
+    void specs_newBucketWithoutPeriod_rejected() {
+        // Given: nieznany kubełek bez period
+        RateLimitProperties props = new RateLimitProperties();
+        RateLimitProperties.Bucket custom = new RateLimitProperties.Bucket();
+        custom.setLimit(7);
+        props.getBuckets().put("custom", custom);
+
+        // When / Then
+        assertThatThrownBy(() -> RateLimitService.specs(props)).isInstanceOf(IllegalStateException.class);
+    }
+}
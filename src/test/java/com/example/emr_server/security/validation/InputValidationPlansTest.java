@@ -0,0 +1,74 @@
+package com.example.emr_server.security.validation;
+
+import com.example.emr_server.controller.dto.request.PrescriptionCreateRequest;
+import com.example.emr_server.controller.dto.request.PrescriptionItemRequest;
+import com.example.emr_server.security.dto.AuthRequest;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.PageRequest;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Predicate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class InputValidationPlansTest {
+
+    private final Predicate<String> unsafe = s -> s.contains("<script");
+
+    @Test
+    void findUnsafe_nestedRecordInList_returnsFieldPath() {
+        // Given: niebezpieczny tekst w drugiej pozycji recepty
+        PrescriptionCreateRequest request = new PrescriptionCreateRequest(UUID.randomUUID(), "ok",
+                LocalDate.now(), null, false, List.of(
+                        new PrescriptionItemRequest(UUID.randomUUID(), "1x dziennie", 1, "op."),
+                        new PrescriptionItemRequest(UUID.randomUUID(), "<script>alert(1)</script>", 1, "op.")));
+
+        // When
+        String path = InputValidationPlans.findUnsafe(request, unsafe);
+
+        // Then
+        assertThat(path).isEqualTo("items[1].dosageInfo");
+    }
+
+    @Test
+    void findUnsafe_plainClassAndMap_coveredWithoutEchoingKeys() {
+        // Given
+        AuthRequest auth = new AuthRequest();
+        auth.setUsernameOrEmail("<script>");
+        Map<String, Object> content = Map.of("<script>key", "x");
+
+        // When / Then: pole klasy (Lombok) i klucz mapy; klucz nie trafia do ścieżki
+        assertThat(InputValidationPlans.findUnsafe(auth, unsafe)).isEqualTo("usernameOrEmail");
+        assertThat(InputValidationPlans.findUnsafe(content, unsafe)).isEqualTo("[]");
+        assertThat(InputValidationPlans.findUnsafe("<script>", unsafe)).isEmpty();
+    }
+
+    @Test
+    void findUnsafe_frameworkTypesAndSafeInput_returnNull() {
+        // Given / When / Then: Pageable, Optional i typy spoza aplikacji nie są przeglądane
+        assertThat(InputValidationPlans.findUnsafe(PageRequest.of(0, 20), unsafe)).isNull();
+        assertThat(InputValidationPlans.findUnsafe(Optional.of(UUID.randomUUID()), unsafe)).isNull();
+        assertThat(InputValidationPlans.findUnsafe(new PrescriptionItemRequest(null, "2x dziennie", 1, null), unsafe)).isNull();
+        assertThat(InputValidationPlans.findUnsafe(null, unsafe)).isNull();
+    }
+
+    @Test
+    void findUnsafe_nestingBeyondLimit_rejectedInsteadOfSkipped() {
+        // Given: payload zawinięty w 40 poziomów map (jak MedicalRecordCreateRequest.content)
+        Object deep = "<script>alert(1)</script>";
+        for (int i = 0; i < 40; i++) deep = Map.of("k", deep);
+        Object harmlessDeep = "ok";
+        for (int i = 0; i < 40; i++) harmlessDeep = List.of(harmlessDeep);
+        Object shallow = "ok";
+        for (int i = 0; i < 10; i++) shallow = Map.of("k", shallow);
+
+        // When / Then: zbyt głęboka struktura jest niebezpieczna niezależnie od treści, płytka przechodzi
+        assertThat(InputValidationPlans.findUnsafe(deep, unsafe)).isNotNull().startsWith("[]");
+        assertThat(InputValidationPlans.findUnsafe(harmlessDeep, unsafe)).isNotNull();
+        assertThat(InputValidationPlans.findUnsafe(shallow, unsafe)).isNull();
+    }
+}
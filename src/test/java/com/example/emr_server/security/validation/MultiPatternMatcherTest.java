@@ -0,0 +1,55 @@
+package com.example.emr_server.security.validation;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MultiPatternMatcherTest {
+
+    private static final int SQL = 1;
+    private static final int XSS = 2;
+
+    private final MultiPatternMatcher matcher = MultiPatternMatcher.builder()
+            .add(SQL, "select", "union", "--")
+            .add(XSS, "<script", "onerror=")
+            .build();
+
+    @Test
+    void find_overlappingPatterns_reportsCategoryOfSuffixMatch() {
+        // Given: "unio" nie kończy się dopasowaniem, ale "<scr" wewnątrz musi zostać odnalezione przez stan porażki
+        String input = "xx unio<script>";
+
+        // When / Then
+        assertThat(matcher.find(input, SQL | XSS)).isEqualTo(XSS);
+        assertThat(matcher.find(input, SQL)).isZero();
+        assertThat(matcher.find("a --b", SQL)).isEqualTo(SQL);
+    }
+
+    @Test
+    void find_isCaseInsensitiveAndNormalizesUnicode() {
+        // Given / When / Then: wielkie litery i znaki pełnej szerokości (NFKC -> ASCII)
+        assertThat(matcher.find("UnIoN SeLeCt", SQL)).isEqualTo(SQL);
+        assertThat(matcher.find("ＳＥＬＥＣＴ * from", SQL)).isEqualTo(SQL);
+        assertThat(matcher.find("img ONERROR=alert(1)", XSS)).isEqualTo(XSS);
+    }
+
+    @Test
+    void find_polishTextWithoutPatterns_returnsZero() {
+        // Given: zwykły tekst medyczny z polskimi znakami – znak spoza ASCII przerywa dopasowanie częściowe
+        String input = "Zalecono wybór leku, seląect nie jest słowem kluczowym";
+
+        // When / Then
+        assertThat(matcher.find(input, SQL | XSS)).isZero();
+        assertThat(matcher.find(null, SQL)).isZero();
+        assertThat(matcher.find("", SQL)).isZero();
+    }
+
+    @Test
+    void builder_rejectsNonAsciiPatternsAndEmptyCategory() {
+        assertThatThrownBy(() -> MultiPatternMatcher.builder().add(SQL, "zażółć"))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> MultiPatternMatcher.builder().add(0, "x"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.emr_server.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AuditWriterTest {
+
+    @TempDir
+    Path tempDir;
+
+    private EmbeddedDatabase db;
+    private JdbcTemplate jdbcTemplate;
+    private SimpleMeterRegistry meterRegistry;
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    @BeforeEach
+    void setUp() {
+        db = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).generateUniqueName(true).build();
+        jdbcTemplate = new JdbcTemplate(db);
+        jdbcTemplate.execute("CREATE SCHEMA emr");
+        jdbcTemplate.execute("CREATE TABLE emr.audit_log (id INT AUTO_INCREMENT PRIMARY KEY, user_id UUID, "
+                + "patient_id UUID, action VARCHAR(50), description TEXT, \"timestamp\" TIMESTAMP WITH TIME ZONE)");
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @AfterEach
+    void tearDown() {
+        db.shutdown();
+    }
+
+    @Test
+    void flush_manyEvents_writesAllInBatches() {
+        // Given: writer with batch size 20
+        AuditWriter writer = writer(1000, 20);
+
+        // When: 50 events flushed in batches
+        List<AuditWriter.AuditEvent> events = events(50);
+        for (int i = 0; i < events.size(); i += 20) {
+            writer.flush(events.subList(i, Math.min(events.size(), i + 20)));
+        }
+
+        // Then: every event stored and batch metrics recorded
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM emr.audit_log", Integer.class)).isEqualTo(50);
+        assertThat(meterRegistry.get("audit.batch.size").summary().count()).isEqualTo(3);
+        assertThat(meterRegistry.get("audit.flush.latency").timer().count()).isEqualTo(3);
+    }
+
+    @Test
+    void submit_queueFull_spillsToFileAndReplaysOnRestart() throws Exception {
+        // Given: writer not started, queue of 2
+        AuditWriter writer = writer(2, 20);
+
+        // When: 5 events submitted
+        events(5).forEach(writer::submit);
+
+        // Then: overflow written to the spill file
+        assertThat(Files.readAllLines(tempDir.resolve("audit-spill.jsonl"))).hasSize(3);
+        assertThat(meterRegistry.get("audit.spilled").counter().count()).isEqualTo(3);
+        assertThat(meterRegistry.get("audit.queue.depth").gauge().value()).isEqualTo(2);
+
+        // When: next instance starts and replays the file
+        writer(2, 20).replaySpillFile();
+
+        // Then: spilled events are stored and the file is consumed
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM emr.audit_log", Integer.class)).isEqualTo(3);
+        assertThat(tempDir.resolve("audit-spill.jsonl")).doesNotExist();
+        assertThat(tempDir.resolve("audit-spill.jsonl.replay")).doesNotExist();
+    }
+
+    @Test
+    void flush_databaseUnavailable_spillsBatch() throws Exception {
+        // Given: audit table missing
+        jdbcTemplate.execute("DROP TABLE emr.audit_log");
+        AuditWriter writer = writer(10, 20);
+
+        // When: flushing a batch
+        writer.flush(events(4));
+
+        // Then: nothing lost – events in the spill file
+        assertThat(Files.readAllLines(tempDir.resolve("audit-spill.jsonl"))).hasSize(4);
+    }
+
+    private AuditWriter writer(int capacity, int batchSize) {
+        return new AuditWriter(jdbcTemplate, objectMapper, meterRegistry, capacity, batchSize, 50,
+                tempDir.resolve("audit-spill.jsonl"));
+    }
+
+    private List<AuditWriter.AuditEvent> events(int n) {
+        List<AuditWriter.AuditEvent> list = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            list.add(new AuditWriter.AuditEvent(UUID.randomUUID(), null, "CREATE_VISIT", "visitId=" + i, Instant.now()));
+        }
+        return list;
+    }
+}
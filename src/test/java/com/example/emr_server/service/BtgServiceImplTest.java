@@ -5,6 +5,7 @@ import com.example.emr_server.entity.PatientConsent;
 import com.example.emr_server.entity.User;
 import com.example.emr_server.repository.PatientConsentRepository;
 import com.example.emr_server.repository.PatientRepository;
+import com.example.emr_server.security.ConsentCache;
 import com.example.emr_server.security.CustomUserDetails;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -27,6 +28,7 @@ import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
@@ -39,6 +41,9 @@ class BtgServiceImplTest {
     @Mock
     private PatientConsentRepository patientConsentRepository;
 
+    @Mock
+    private ConsentCache consentCache;
+
     @Mock
     private SecurityContext securityContext;
 
@@ -103,6 +108,7 @@ class BtgServiceImplTest {
         verify(patientRepository).findById(patientId);
         verify(patientConsentRepository).findByPatientAndGrantedToAndScopeAndRevokedAtIsNull(patient, currentUser, "btg");
         verify(patientConsentRepository).save(consentCaptor.capture());
+        verify(consentCache).invalidate(currentUser.getId());
 
         PatientConsent capturedConsent = consentCaptor.getValue();
         assertThat(capturedConsent.getPatient()).isEqualTo(patient);
@@ -208,6 +214,7 @@ class BtgServiceImplTest {
 
         verify(patientRepository).findById(nonExistentPatientId);
         verify(patientConsentRepository, never()).save(any());
+        verifyNoInteractions(consentCache);
         verifyNoMoreInteractions(patientRepository, patientConsentRepository);
     }
 
@@ -229,6 +236,7 @@ class BtgServiceImplTest {
 
         verify(patientRepository).findById(patientId);
         verify(patientConsentRepository, never()).save(any());
+        verifyNoInteractions(consentCache);
         verifyNoMoreInteractions(patientRepository, patientConsentRepository);
     }
 
@@ -397,6 +405,7 @@ class BtgServiceImplTest {
         verify(patientRepository).findById(patientId);
         verify(patientConsentRepository).findByPatientAndGrantedToAndScopeAndRevokedAtIsNull(patient, currentUser, "btg");
         verify(patientConsentRepository).save(consentCaptor.capture());
+        verify(consentCache).invalidate(currentUser.getId());
 
         PatientConsent revokedConsent = consentCaptor.getValue();
         assertThat(revokedConsent.getRevokedAt()).isNotNull();
@@ -434,6 +443,7 @@ class BtgServiceImplTest {
         verify(patientRepository).findById(patientId);
         verify(patientConsentRepository).findByPatientAndGrantedToAndScopeAndRevokedAtIsNull(patient, currentUser, "btg");
         verify(patientConsentRepository, never()).save(any());
+        verifyNoInteractions(consentCache);
         verifyNoMoreInteractions(patientRepository, patientConsentRepository);
     }
 
@@ -471,6 +481,7 @@ class BtgServiceImplTest {
         verify(patientRepository).findById(patientId);
         verify(patientConsentRepository).findByPatientAndGrantedToAndScopeAndRevokedAtIsNull(patient, currentUser, "btg");
         verify(patientConsentRepository, never()).save(any());
+        verifyNoInteractions(consentCache);
         verifyNoMoreInteractions(patientRepository, patientConsentRepository);
     }
 
@@ -488,6 +499,7 @@ class BtgServiceImplTest {
         verify(patientRepository).findById(nonExistentPatientId);
         verify(patientConsentRepository, never()).findByPatientAndGrantedToAndScopeAndRevokedAtIsNull(any(), any(), any());
         verify(patientConsentRepository, never()).save(any());
+        verifyNoInteractions(consentCache);
         verifyNoMoreInteractions(patientRepository, patientConsentRepository);
     }
 }
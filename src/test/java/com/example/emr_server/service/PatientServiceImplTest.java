@@ -0,0 +1,92 @@
+package com.example.emr_server.service;
+
+import com.example.emr_server.entity.Patient;
+import com.example.emr_server.exception.ValidationException;
+import com.example.emr_server.repository.PatientRepository;
+import com.example.emr_server.repository.UserRepository;
+import com.example.emr_server.security.AuthorizationService;
+import com.example.emr_server.security.encryption.EncryptionService;
+import com.example.emr_server.security.encryption.PatientNameIndex;
+import com.example.emr_server.security.encryption.TestEncryptionKeys;
+import com.example.emr_server.testsupport.EmrJpaTest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.time.LocalDate;
+import java.util.Base64;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+
+@EmrJpaTest
+class PatientServiceImplTest {
+
+    @Autowired
+    private PatientRepository patientRepository;
+
+    @Autowired
+    private EncryptionService encryptionService;
+
+    private PatientServiceImpl service;
+    private String initialKeyId;
+
+    @BeforeEach
+    void setUp() {
+        // EncryptedStringType szyfruje instancją zainicjalizowaną jako ostatnia – ta sama co w serwisie
+        TestEncryptionKeys.init(encryptionService);
+        service = new PatientServiceImpl(patientRepository, encryptionService, mock(AuthorizationService.class),
+                mock(UserRepository.class), mock(AuditService.class), mock(PatientNameIndex.class));
+        initialKeyId = encryptionService.activeKeyId();
+    }
+
+    @AfterEach
+    void tearDown() {
+        // pierścień jest współdzielony przez kontekst – przywracamy aktywny klucz
+        encryptionService.activateKey(initialKeyId);
+    }
+
+    private Patient patient(String lastName, String pesel) {
+        Patient p = new Patient();
+        p.setFirstName("Jan");
+        p.setLastName(lastName);
+        p.setPesel(pesel);
+        p.setDateOfBirth(LocalDate.of(1990, 1, 1));
+        return p;
+    }
+
+    private void rotateKey() {
+        byte[] next = new byte[32];
+        next[0] = 42;
+        encryptionService.reloadKeys(Base64.getEncoder().encodeToString(next), "k-next");
+    }
+
+    @Test
+    void savePatient_rejectsPeselStoredUnderPreviousKey() {
+        // Given: PESEL zapisany przed rotacją klucza
+        patientRepository.saveAndFlush(patient("Kowalski", "90010112345"));
+        rotateKey();
+
+        // When / Then: szyfrogram w nowym kluczu jest inny, ale duplikat zostaje wykryty
+        assertThatThrownBy(() -> service.savePatient(patient("Nowak", "90010112345")))
+                .isInstanceOf(ValidationException.class)
+                .hasMessageNotContaining("90010112345");
+        assertThat(patientRepository.count()).isEqualTo(1);
+    }
+
+    @Test
+    void updatePatient_rejectsPeselOfAnotherPatient_andKeepsOwnPesel() {
+        // Given: dwaj pacjenci zapisani przed rotacją klucza
+        Patient first = patientRepository.saveAndFlush(patient("Kowalski", "90010112345"));
+        Patient second = patientRepository.saveAndFlush(patient("Nowak", "90010154321"));
+        rotateKey();
+
+        // When / Then: PESEL innego pacjenta odrzucony, własny PESEL przy zmianie nazwiska przechodzi
+        assertThatThrownBy(() -> service.updatePatient(second.getId(), patient("Nowak", "90010112345")))
+                .isInstanceOf(ValidationException.class);
+        assertThat(service.updatePatient(first.getId(), patient("Kowalska", "90010112345")))
+                .hasValueSatisfying(p -> assertThat(p.getLastName()).isEqualTo("Kowalska"));
+    }
+}
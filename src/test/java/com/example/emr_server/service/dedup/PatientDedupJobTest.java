@@ -0,0 +1,184 @@
+package com.example.emr_server.service.dedup;
+
+import com.example.emr_server.security.encryption.EncryptionMigrationJob.State;
+import com.example.emr_server.security.encryption.EncryptionService;
+import com.example.emr_server.security.encryption.TestEncryptionKeys;
+import com.example.emr_server.testsupport.EmrTestDatabase;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.Base64;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PatientDedupJobTest {
+
+    private static final LocalDate DOB = LocalDate.of(1980, 5, 4);
+
+    private EmbeddedDatabase db;
+    private JdbcTemplate jdbcTemplate;
+    private EncryptionService encryptionService;
+    private final PatientDedupProperties properties = new PatientDedupProperties();
+    private PatientDedupJob job;
+
+    @BeforeEach
+    void setUp() {
+        db = EmrTestDatabase.create();
+        jdbcTemplate = new JdbcTemplate(db);
+        encryptionService = TestEncryptionKeys.encryptionService();
+
+        properties.setThreads(2);
+        properties.setPageSize(2);
+        job = new PatientDedupJob(jdbcTemplate, encryptionService, properties);
+    }
+
+    @AfterEach
+    void tearDown() {
+        db.shutdown();
+    }
+
+    private UUID patient(String firstName, String lastName, String pesel, LocalDate dob, Instant createdAt) {
+        UUID id = UUID.randomUUID();
+        jdbcTemplate.update("INSERT INTO emr.patients(id, first_name, last_name, pesel, date_of_birth, created_at) "
+                + "VALUES (?, ?, ?, ?, ?, ?)", id,
+                encryptionService.encryptDeterministic("patient.first_name", firstName),
+                encryptionService.encryptDeterministic("patient.last_name", lastName),
+                encryptionService.encryptDeterministic("patient.pesel", pesel), dob, Timestamp.from(createdAt));
+        return id;
+    }
+
+    private void runToEnd(boolean full) throws InterruptedException {
+        assertThat(job.start(full)).isTrue();
+        assertThat(job.await(Duration.ofSeconds(20))).isTrue();
+        assertThat(job.progress().state()).isEqualTo(State.COMPLETED);
+    }
+
+    private Set<Set<UUID>> candidatePairs() {
+        return jdbcTemplate.query("SELECT patient_a, patient_b FROM emr.patient_duplicate_candidates",
+                        (rs, i) -> Set.of(rs.getObject(1, UUID.class), rs.getObject(2, UUID.class)))
+                .stream().collect(Collectors.toSet());
+    }
+
+    @Test
+    void phonetic_groupsPolishSpellingVariants() {
+        assertThat(PolishPhonetic.encode("Kowalski")).isEqualTo("KFLSK")
+                .isEqualTo(PolishPhonetic.encode("Kovalsky"))
+                .isEqualTo(PolishPhonetic.encode("Kowalska"));
+        assertThat(PolishPhonetic.encode("Wiśniewska")).isEqualTo(PolishPhonetic.encode("Wiszniewska"));
+        assertThat(PolishPhonetic.encode("Grzegorz")).isEqualTo(PolishPhonetic.encode("Gżegoż"));
+        assertThat(PolishPhonetic.encode("Nowak")).isNotEqualTo(PolishPhonetic.encode("Kowalski"));
+    }
+
+    @Test
+    void fullRun_findsTyposAndDuplicatePesel_withoutComparingEveryPair() throws InterruptedException {
+        // Given
+        Instant yesterday = Instant.now().minus(1, ChronoUnit.DAYS);
+        UUID kowalski = patient("Jan", "Kowalski", "80050412345", DOB, yesterday);
+        UUID typo = patient("Jan", "Kovalsky", "80050412354", DOB, yesterday);
+        UUID wisniewska = patient("Katarzyna", "Wiśniewska", "75121254321", LocalDate.of(1975, 12, 12), yesterday);
+        UUID wisniewskaAscii = patient("Katarzyna", "Wisniewska", "75121254321", LocalDate.of(1975, 12, 12), yesterday);
+        patient("Jan", "Kowalski", "80050498765", DOB, yesterday); // zgodne dane, zupełnie inny PESEL – poniżej progu
+        patient("Anna", "Nowak", "90010112345", LocalDate.of(1990, 1, 1), yesterday);
+
+        // When
+        runToEnd(true);
+
+        // Then: dwie pary do przeglądu; klucze blokujące bez jawnych kodów fonetycznych
+        assertThat(candidatePairs()).containsExactlyInAnyOrder(Set.of(kowalski, typo), Set.of(wisniewska, wisniewskaAscii));
+        assertThat(jdbcTemplate.queryForObject("SELECT reasons FROM emr.patient_duplicate_candidates WHERE patient_a = ? "
+                + "OR patient_b = ?", String.class, typo, typo)).contains("pesel=typo", "dob=eq");
+        assertThat(jdbcTemplate.queryForList("SELECT block_key FROM emr.patient_blocking_keys", String.class))
+                .allSatisfy(k -> assertThat(k).hasSize(22).doesNotContain("KFLSK"));
+    }
+
+    @Test
+    void fullRun_skipsPatientsWithShreddedKey() throws InterruptedException {
+        // Given: para duplikatów, klucz jednego z pacjentów zniszczony
+        Instant yesterday = Instant.now().minus(1, ChronoUnit.DAYS);
+        UUID kowalski = patient("Jan", "Kowalski", "80050412345", DOB, yesterday);
+        UUID shredded = patient("Jan", "Kovalsky", "80050412354", DOB, yesterday);
+        jdbcTemplate.update("INSERT INTO emr.patient_data_keys(patient_id, destroyed_at) VALUES (?, CURRENT_TIMESTAMP)", shredded);
+
+        // When
+        runToEnd(true);
+
+        // Then: bez kluczy blokujących i kandydatów dla pacjenta po crypto-shreddingu
+        assertThat(jdbcTemplate.queryForList("SELECT DISTINCT patient_id FROM emr.patient_blocking_keys", UUID.class))
+                .containsExactly(kowalski);
+        assertThat(candidatePairs()).isEmpty();
+    }
+
+    @Test
+    void incrementalRun_scoresOnlyNewPatients_andKeepsReviewDecisions() throws InterruptedException {
+        // Given: pełny przebieg i decyzja recenzenta
+        Instant yesterday = Instant.now().minus(1, ChronoUnit.DAYS);
+        UUID kowalski = patient("Jan", "Kowalski", "80050412345", DOB, yesterday);
+        UUID typo = patient("Jan", "Kowalsky", "80050412354", DOB, yesterday);
+        patient("Anna", "Nowak", "90010112345", LocalDate.of(1990, 1, 1), yesterday);
+        runToEnd(true);
+        jdbcTemplate.update("UPDATE emr.patient_duplicate_candidates SET status = 'REJECTED'");
+
+        // When: nowa rejestracja z tym samym PESEL-em, imię z literówką
+        UUID again = patient("Jn", "Kowalski", "80050412345", DOB, Instant.now());
+        runToEnd(false);
+
+        // Then: przyrostowo tylko nowy pacjent, pary z nim dopisane, decyzja bez zmian
+        assertThat(job.progress().mode()).isEqualTo(PatientDedupJob.Mode.INCREMENTAL);
+        assertThat(job.progress().patients()).isEqualTo(1);
+        assertThat(candidatePairs()).containsExactlyInAnyOrder(Set.of(kowalski, typo), Set.of(kowalski, again), Set.of(typo, again));
+        assertThat(jdbcTemplate.queryForList("SELECT status FROM emr.patient_duplicate_candidates ORDER BY status", String.class))
+                .isEqualTo(List.of("OPEN", "OPEN", "REJECTED"));
+    }
+
+    @Test
+    void incrementalRun_afterKeyRotation_fallsBackToFull() throws InterruptedException {
+        // Given
+        Instant yesterday = Instant.now().minus(1, ChronoUnit.DAYS);
+        patient("Jan", "Kowalski", "80050412345", DOB, yesterday);
+        patient("Jan", "Kovalsky", "80050412354", DOB, yesterday);
+        runToEnd(false);
+        assertThat(job.progress().mode()).isEqualTo(PatientDedupJob.Mode.FULL);
+        byte[] k2 = new byte[32];
+        for (int i = 0; i < k2.length; i++) k2[i] = (byte) (50 + i);
+        encryptionService.reloadKeys(Base64.getEncoder().encodeToString(k2), "k2");
+
+        // When
+        runToEnd(false);
+
+        // Then: klucze blokujące przeliczone nowym kluczem – wszyscy pacjenci
+        assertThat(job.progress().mode()).isEqualTo(PatientDedupJob.Mode.FULL);
+        assertThat(job.progress().patients()).isEqualTo(2);
+        assertThat(candidatePairs()).hasSize(1);
+    }
+
+    @Test
+    void fullRun_undecryptableRow_skippedAndCounted() throws InterruptedException {
+        // Given: para duplikatów i wiersz z uszkodzonym szyfrogramem
+        Instant yesterday = Instant.now().minus(1, ChronoUnit.DAYS);
+        UUID kowalski = patient("Jan", "Kowalski", "80050412345", DOB, yesterday);
+        UUID typo = patient("Jan", "Kovalsky", "80050412354", DOB, yesterday);
+        UUID corrupt = patient("Anna", "Nowak", "90010112345", LocalDate.of(1990, 1, 1), yesterday);
+        jdbcTemplate.update("UPDATE emr.patients SET last_name = 'v1d:k1:AAAA' WHERE id = ?", corrupt);
+
+        // When: dwa kolejne przebiegi pełne
+        runToEnd(true);
+        runToEnd(true);
+
+        // Then: przebieg kończy się, wiersz pominięty, para znaleziona
+        assertThat(job.progress().skipped()).isEqualTo(1);
+        assertThat(job.progress().patients()).isEqualTo(3);
+        assertThat(candidatePairs()).containsExactly(Set.of(kowalski, typo));
+    }
+}
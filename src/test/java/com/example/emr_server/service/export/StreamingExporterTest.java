@@ -0,0 +1,104 @@
+package com.example.emr_server.service.export;
+
+import com.example.emr_server.controller.dto.PatientDto;
+import com.example.emr_server.entity.Patient;
+import com.example.emr_server.repository.spec.PatientSpecifications;
+import com.example.emr_server.testsupport.EmrJpaTest;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.test.context.TestPropertySource;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@EmrJpaTest
+@Import({StreamingExporter.class, JacksonAutoConfiguration.class})
+@TestPropertySource(properties = "app.export.fetch-size=4")
+class StreamingExporterTest {
+
+    private static final Sort SORT = Sort.by(Sort.Direction.DESC, "createdAt", "id");
+
+    @Autowired
+    private EntityManager em;
+
+    @Autowired
+    private StreamingExporter exporter;
+
+    @BeforeEach
+    void setUp() {
+        for (int i = 0; i < 10; i++) {
+            Patient p = new Patient();
+            p.setFirstName("Jan" + i);
+            p.setLastName("Kowalski");
+            p.setPesel("9001011234" + i);
+            p.setGender(i % 2 == 0 ? "M" : "K");
+            p.setDateOfBirth(LocalDate.of(1990, 1, 1));
+            p.setAddress(i == 0 ? "=HYPERLINK(\"x\")" : "ul. Polna " + i + ", Kraków");
+            em.persist(p);
+        }
+        em.flush();
+        em.clear();
+    }
+
+    @Test
+    void ndjson_oneLinePerRowAcrossChunks() {
+        // Given: 10 rows, fetch size 4 (3 chunks, context cleared after each)
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // When
+        long rows = exporter.export(Patient.class, Specification.where(null), SORT, PatientDto.class, this::toDto, ExportFormat.NDJSON, out);
+
+        // Then: every row written as a separate JSON document
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertThat(rows).isEqualTo(10);
+        assertThat(lines).hasSize(10).allMatch(l -> l.startsWith("{\"id\":") && l.endsWith("}"));
+        assertThat(lines[0]).contains("\"lastName\":\"Kowalski\"", "\"dateOfBirth\":\"1990-01-01\"");
+    }
+
+    @Test
+    void csv_headerFromRecordAndEscapedCells() {
+        // Given: filter on gender (5 x K) – same Specification as the list endpoint
+        var spec = PatientSpecifications.withFilters(Optional.empty(), Optional.empty(), Optional.empty(),
+                Optional.empty(), Optional.empty(), Optional.of("K"), Optional.empty(), Optional.empty());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // When
+        long rows = exporter.export(Patient.class, spec, SORT, PatientDto.class, this::toDto, ExportFormat.CSV, out);
+
+        // Then: header + 5 rows, cells with commas quoted
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\r\n");
+        assertThat(rows).isEqualTo(5);
+        assertThat(lines).hasSize(6);
+        assertThat(lines[0]).isEqualTo("id,firstName,lastName,dateOfBirth,gender,contactInfo,address");
+        assertThat(lines[1]).contains(",K,", "\"ul. Polna ").endsWith(", Kraków\"");
+    }
+
+    @Test
+    void csv_formulaInTextCellNeutralized() {
+        // Given: address starting with '=' (patient 0, gender M)
+        var spec = PatientSpecifications.withFilters(Optional.empty(), Optional.empty(), Optional.empty(),
+                Optional.empty(), Optional.empty(), Optional.of("M"), Optional.empty(), Optional.empty());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // When
+        exporter.export(Patient.class, spec, SORT, PatientDto.class, this::toDto, ExportFormat.CSV, out);
+
+        // Then: prefixed with apostrophe and quoted
+        assertThat(out.toString(StandardCharsets.UTF_8)).contains("\"'=HYPERLINK(\"\"x\"\")\"");
+    }
+
+    private PatientDto toDto(Patient p) {
+        return new PatientDto(p.getId(), p.getFirstName(), p.getLastName(), p.getDateOfBirth(),
+                p.getGender(), p.getContactInfo(), p.getAddress());
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.emr_server.testsupport;
+
+import com.example.emr_server.security.encryption.DeterministicValueCache;
+import com.example.emr_server.security.encryption.EncryptionService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.jdbc.Sql;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Test repozytoriów JPA na H2 w trybie PostgreSQL ze wspólnym schematem emr ({@link EmrTestDatabase#SCHEMA})
+ * zamiast Flyway i ddl-auto, z szyfrowaniem kolumn jak w aplikacji. Każdy kontekst dostaje własną bazę;
+ * dodatkowe @Import i @TestPropertySource klasy testu są łączone z tymi tutaj.
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({EncryptionService.class, DeterministicValueCache.class, SimpleMeterRegistry.class})
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:${random.uuid};MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.flyway.enabled=false",
+        "spring.jpa.hibernate.ddl-auto=none"
+})
+@Sql("/" + EmrTestDatabase.SCHEMA)
+public @interface EmrJpaTest {
+}
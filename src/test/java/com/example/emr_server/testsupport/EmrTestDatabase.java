@@ -0,0 +1,23 @@
+package com.example.emr_server.testsupport;
+
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+/**
+ * Wbudowana baza H2 ze wspólnym schematem emr testów ({@value #SCHEMA}) – dla testów na samym JdbcTemplate.
+ * Testy JPA dostają ten sam schemat przez {@link EmrJpaTest}.
+ */
+public final class EmrTestDatabase {
+
+    public static final String SCHEMA = "db/emr-h2-schema.sql";
+
+    private EmrTestDatabase() {
+    }
+
+    /** Nowa baza o unikalnej nazwie; test zamyka ją przez {@link EmbeddedDatabase#shutdown()}. */
+    public static EmbeddedDatabase create() {
+        return new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).generateUniqueName(true)
+                .addScript(SCHEMA).build();
+    }
+}
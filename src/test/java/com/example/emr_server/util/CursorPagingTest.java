@@ -0,0 +1,108 @@
+package com.example.emr_server.util;
+
+import com.example.emr_server.controller.dto.CursorPage;
+import com.example.emr_server.entity.Patient;
+import com.example.emr_server.repository.PatientRepository;
+import com.example.emr_server.repository.spec.PatientSpecifications;
+import com.example.emr_server.testsupport.EmrJpaTest;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.test.context.TestPropertySource;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@EmrJpaTest
+@TestPropertySource(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+class CursorPagingTest {
+
+    private static final Sort SORT = Sort.by(Sort.Direction.DESC, "createdAt", "id");
+
+    @Autowired
+    private EntityManager em;
+
+    @Autowired
+    private EntityManagerFactory emf;
+
+    @Autowired
+    private PatientRepository patientRepository;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        statistics = emf.unwrap(SessionFactory.class).getStatistics();
+        for (int i = 0; i < 25; i++) {
+            Patient p = new Patient();
+            p.setFirstName("Jan" + i);
+            p.setLastName("Kowalski");
+            p.setPesel("9001011234" + (i % 10));
+            p.setGender(i % 2 == 0 ? "M" : "K");
+            p.setDateOfBirth(LocalDate.of(1990, 1, 1));
+            em.persist(p);
+        }
+        em.flush();
+        em.clear();
+        statistics.clear();
+    }
+
+    @Test
+    void scroll_walksAllPagesWithoutDuplicatesOrCount() {
+        // Given: 25 patients, many sharing created_at (ties broken by id)
+        List<UUID> seen = new ArrayList<>();
+        List<Integer> pageSizes = new ArrayList<>();
+        String after = "";
+
+        // When: following next cursors with size 10
+        do {
+            CursorPage<UUID> page = CursorPaging.scroll(patientRepository, Specification.where(null), SORT, after, 10, Patient::getId);
+            page.content().forEach(seen::add);
+            pageSizes.add(page.content().size());
+            after = page.next();
+        } while (after != null);
+
+        // Then: 10 + 10 + 5, every row exactly once, one select per page and no COUNT
+        assertThat(pageSizes).containsExactly(10, 10, 5);
+        assertThat(seen).hasSize(25).doesNotHaveDuplicates();
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(3);
+    }
+
+    @Test
+    void scroll_combinesWithFilterSpecification() {
+        // Given: filter on gender (13 x M)
+        var spec = PatientSpecifications.withFilters(Optional.empty(), Optional.empty(), Optional.empty(),
+                Optional.empty(), Optional.empty(), Optional.of("M"), Optional.empty(), Optional.empty());
+
+        // When: two pages
+        CursorPage<String> first = CursorPaging.scroll(patientRepository, spec, SORT, null, 10, Patient::getGender);
+        CursorPage<String> second = CursorPaging.scroll(patientRepository, spec, SORT, first.next(), 10, Patient::getGender);
+
+        // Then: only matching rows, last page has no cursor
+        assertThat(first.content()).hasSize(10).containsOnly("M");
+        assertThat(second.content()).hasSize(3).containsOnly("M");
+        assertThat(second.next()).isNull();
+    }
+
+    @Test
+    void decode_tamperedOrForeignCursor_rejected() {
+        // Given: cursor for a different sort
+        String foreign = CursorPaging.encode(java.util.Map.of("visitDate", java.time.Instant.now(), "id", UUID.randomUUID()));
+
+        // When / Then
+        assertThatThrownBy(() -> CursorPaging.decode("%%%", SORT)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> CursorPaging.decode(foreign, SORT)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
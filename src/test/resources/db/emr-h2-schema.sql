@@ -0,0 +1,186 @@
+-- Schemat emr dla testów na H2 (MODE=PostgreSQL i tryb domyślny): tabele jak po migracjach Flyway, typy
+-- dopasowane do H2 (UUID z DEFAULT random_uuid() zamiast gen_random_uuid(), JSON zamiast jsonb, kolumny
+-- szyfrowane poszerzone jak w V8). Bez ograniczeń, których testy nie sprawdzają (FK do users, CHECK, polityki RLS).
+-- IF NOT EXISTS – @Sql wykonuje skrypt przed każdą metodą testu na tej samej bazie.
+CREATE SCHEMA IF NOT EXISTS emr;
+
+CREATE TABLE IF NOT EXISTS emr.users (
+    id UUID PRIMARY KEY,
+    username VARCHAR(50) NOT NULL,
+    email VARCHAR(100) NOT NULL,
+    password_hash TEXT NOT NULL,
+    role VARCHAR(20) NOT NULL,
+    created_at TIMESTAMP WITH TIME ZONE,
+    last_password_change TIMESTAMP WITH TIME ZONE,
+    is_account_locked BOOLEAN,
+    failed_login_attempts INT,
+    mfa_secret VARCHAR(256),
+    last_login_at TIMESTAMP WITH TIME ZONE,
+    last_login_ip VARCHAR(64),
+    password_algo VARCHAR(30),
+    mfa_enabled BOOLEAN
+);
+
+CREATE TABLE IF NOT EXISTS emr.patients (
+    id UUID DEFAULT random_uuid() PRIMARY KEY,
+    first_name VARCHAR(300) NOT NULL,
+    last_name VARCHAR(300) NOT NULL,
+    date_of_birth DATE NOT NULL,
+    gender VARCHAR(10),
+    pesel VARCHAR(200) NOT NULL,
+    contact_info JSON,
+    address TEXT,
+    created_by UUID,
+    created_at TIMESTAMP WITH TIME ZONE DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE TABLE IF NOT EXISTS emr.allergies (
+    id UUID DEFAULT random_uuid() PRIMARY KEY,
+    patient_id UUID NOT NULL,
+    allergen TEXT NOT NULL,
+    reaction TEXT,
+    severity VARCHAR(20),
+    noted_by UUID
+);
+
+CREATE TABLE IF NOT EXISTS emr.chronic_diseases (
+    id UUID DEFAULT random_uuid() PRIMARY KEY,
+    patient_id UUID NOT NULL,
+    disease_name TEXT NOT NULL,
+    diagnosed_date DATE,
+    notes TEXT
+);
+
+CREATE TABLE IF NOT EXISTS emr.lab_results (
+    id UUID DEFAULT random_uuid() PRIMARY KEY,
+    patient_id UUID NOT NULL,
+    ordered_by UUID,
+    test_name TEXT NOT NULL,
+    result TEXT,
+    result_date DATE,
+    unit VARCHAR(20),
+    reference_range TEXT,
+    status VARCHAR(20) DEFAULT 'completed'
+);
+
+CREATE TABLE IF NOT EXISTS emr.medical_files (
+    id UUID DEFAULT random_uuid() PRIMARY KEY,
+    patient_id UUID NOT NULL,
+    uploaded_by UUID,
+    file_name TEXT,
+    file_path TEXT,
+    mime_type TEXT,
+    uploaded_at TIMESTAMP WITH TIME ZONE DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE TABLE IF NOT EXISTS emr.medical_records (
+    id UUID DEFAULT random_uuid() PRIMARY KEY,
+    patient_id UUID NOT NULL,
+    created_by UUID,
+    record_type VARCHAR(50) NOT NULL,
+    content JSON,
+    is_encrypted BOOLEAN DEFAULT FALSE,
+    encrypted_checksum VARCHAR(128),
+    created_at TIMESTAMP WITH TIME ZONE DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE TABLE IF NOT EXISTS emr.medication_history (
+    id UUID DEFAULT random_uuid() PRIMARY KEY,
+    patient_id UUID NOT NULL,
+    medication_id UUID,
+    start_date DATE,
+    end_date DATE,
+    reason TEXT
+);
+
+CREATE TABLE IF NOT EXISTS emr.prescriptions (
+    id UUID DEFAULT random_uuid() PRIMARY KEY,
+    patient_id UUID NOT NULL,
+    doctor_id UUID NOT NULL,
+    dosage_info TEXT,
+    issued_date DATE,
+    expiration_date DATE,
+    is_repeatable BOOLEAN
+);
+
+CREATE TABLE IF NOT EXISTS emr.prescription_medications (
+    id UUID DEFAULT random_uuid() PRIMARY KEY,
+    prescription_id UUID NOT NULL,
+    medication_id UUID,
+    dosage_info VARCHAR(10000),
+    quantity INT,
+    unit VARCHAR(50)
+);
+
+CREATE TABLE IF NOT EXISTS emr.visits (
+    id UUID DEFAULT random_uuid() PRIMARY KEY,
+    patient_id UUID NOT NULL,
+    doctor_id UUID NOT NULL,
+    visit_date TIMESTAMP WITH TIME ZONE NOT NULL,
+    end_date TIMESTAMP WITH TIME ZONE,
+    visit_type VARCHAR(50),
+    reason TEXT,
+    diagnosis TEXT,
+    notes TEXT,
+    is_confidential BOOLEAN,
+    status VARCHAR(20)
+);
+
+-- V25, V26
+CREATE TABLE IF NOT EXISTS emr.encryption_migration_checkpoints (
+    table_name VARCHAR(100) PRIMARY KEY,
+    last_id UUID,
+    completed BOOLEAN NOT NULL DEFAULT FALSE,
+    rows_scanned BIGINT NOT NULL DEFAULT 0,
+    rows_migrated BIGINT NOT NULL DEFAULT 0,
+    key_id VARCHAR(50),
+    updated_at TIMESTAMP WITH TIME ZONE NOT NULL
+);
+
+-- V27
+CREATE TABLE IF NOT EXISTS emr.patient_data_keys (
+    patient_id UUID PRIMARY KEY,
+    key_id VARCHAR(50),
+    wrapped_key VARCHAR(200),
+    created_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    destroyed_at TIMESTAMP WITH TIME ZONE
+);
+
+-- V28
+CREATE TABLE IF NOT EXISTS emr.patient_name_tokens (
+    token VARCHAR(32) NOT NULL,
+    patient_id UUID NOT NULL REFERENCES emr.patients(id) ON DELETE CASCADE,
+    PRIMARY KEY (token, patient_id)
+);
+
+-- V29
+CREATE TABLE IF NOT EXISTS emr.patient_blocking_keys (
+    block_key VARCHAR(32) NOT NULL,
+    patient_id UUID NOT NULL REFERENCES emr.patients(id) ON DELETE CASCADE,
+    PRIMARY KEY (block_key, patient_id)
+);
+
+CREATE TABLE IF NOT EXISTS emr.patient_duplicate_candidates (
+    patient_a UUID NOT NULL REFERENCES emr.patients(id) ON DELETE CASCADE,
+    patient_b UUID NOT NULL REFERENCES emr.patients(id) ON DELETE CASCADE,
+    score DOUBLE PRECISION NOT NULL,
+    reasons VARCHAR(200),
+    status VARCHAR(20) NOT NULL DEFAULT 'OPEN',
+    found_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    reviewed_by UUID,
+    reviewed_at TIMESTAMP WITH TIME ZONE,
+    PRIMARY KEY (patient_a, patient_b)
+);
+
+CREATE TABLE IF NOT EXISTS emr.patient_dedup_runs (
+    id UUID PRIMARY KEY,
+    mode VARCHAR(20) NOT NULL,
+    state VARCHAR(20) NOT NULL,
+    key_id VARCHAR(50) NOT NULL,
+    watermark TIMESTAMP WITH TIME ZONE NOT NULL,
+    patients BIGINT NOT NULL DEFAULT 0,
+    pairs BIGINT NOT NULL DEFAULT 0,
+    candidates BIGINT NOT NULL DEFAULT 0,
+    started_at TIMESTAMP WITH TIME ZONE NOT NULL,
+    finished_at TIMESTAMP WITH TIME ZONE
+);